@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates deterministic English-like text (words, sentences, paragraphs) for the benchmarks.
+ *
+ * @since 2023
+ */
+public class BenchmarkTexts {
+
+    protected static final String[] WORDS = { "the", "model", "document", "summary", "of", "and", "a", "to", "is",
+            "content", "Nuxeo", "repository", "with", "request", "response", "in", "for", "text", "token", "that",
+            "performance", "blob", "extraction", "prompt", "on", "by", "configuration", "service", "region" };
+
+    private BenchmarkTexts() {
+        // Utility class
+    }
+
+    /**
+     * @param size in chars
+     */
+    public static String generate(int size) {
+
+        Random random = new Random(size);
+        StringBuilder sb = new StringBuilder(size + 64);
+        int wordsInSentence = 0;
+        int sentencesInParagraph = 0;
+        while (sb.length() < size) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (wordsInSentence == 0) {
+                sb.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            } else {
+                sb.append(' ').append(word);
+            }
+            wordsInSentence++;
+            if (wordsInSentence > 8 + random.nextInt(12)) {
+                sb.append(random.nextInt(10) == 0 ? ", " : ". ");
+                wordsInSentence = 0;
+                sentencesInParagraph++;
+                if (sentencesInParagraph > 3 + random.nextInt(5)) {
+                    sb.append("\n\n");
+                    sentencesInParagraph = 0;
+                }
+            }
+        }
+        sb.setLength(size);
+
+        return sb.toString();
+    }
+
+}
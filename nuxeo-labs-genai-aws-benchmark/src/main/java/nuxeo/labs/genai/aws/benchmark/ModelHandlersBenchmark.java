@@ -0,0 +1,136 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import nuxeo.labs.genai.aws.models.AWSTitan;
+import nuxeo.labs.genai.aws.models.AnthropicClaude;
+import nuxeo.labs.genai.aws.models.AnthropicClaudeMessages;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+
+/**
+ * Request body building and response parsing of the model handlers, and parsing of the model parameters.
+ * {@code promptSize} is the size of the prompt (request) and of the completion (response), in chars.
+ *
+ * @since 2023
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ModelHandlersBenchmark {
+
+    @Param({ "claude", "claude3", "titan" })
+    public String model;
+
+    @Param({ "1024", "102400", "1048576" })
+    public int promptSize;
+
+    protected RequestResponseHandlers handler;
+
+    protected RequestParameters params;
+
+    protected JSONObject paramsJson;
+
+    protected InvokeModelResponse response;
+
+    @Setup
+    public void setup() {
+
+        String text = BenchmarkTexts.generate(promptSize);
+
+        params = new RequestParameters(text, 0.5F, 0.9F, 1000, null);
+        params.setStopSequences("\n\nHuman:", "</answer>");
+
+        paramsJson = new JSONObject();
+        paramsJson.put("prompt", text);
+        paramsJson.put("temperature", 0.5);
+        paramsJson.put("topP", 0.9);
+        paramsJson.put("responseMaxTokenCount", 1000);
+        paramsJson.put("stopSequences", params.getStopSequences());
+
+        JSONObject responseBody = new JSONObject();
+        if ("claude".equals(model)) {
+            handler = new AnthropicClaude();
+            responseBody.put("completion", text);
+            responseBody.put("stop_reason", "stop_sequence");
+        } else if ("claude3".equals(model)) {
+            handler = new AnthropicClaudeMessages();
+            JSONObject content = new JSONObject();
+            content.put("type", "text");
+            content.put("text", text);
+            responseBody.append("content", content);
+            responseBody.put("stop_reason", "end_turn");
+            responseBody.put("usage", new JSONObject().put("input_tokens", 100).put("output_tokens", promptSize / 4));
+        } else {
+            handler = new AWSTitan();
+            JSONObject result = new JSONObject();
+            result.put("tokenCount", promptSize / 4);
+            result.put("outputText", text);
+            result.put("completionReason", "FINISH");
+            responseBody.put("inputTextTokenCount", 100);
+            responseBody.append("results", result);
+        }
+        response = InvokeModelResponse.builder()
+                                      .contentType("application/json")
+                                      .body(SdkBytes.fromUtf8String(responseBody.toString()))
+                                      .build();
+    }
+
+    @Benchmark
+    public SdkBytes getRequestBody() {
+        // As sent to Bedrock
+        return SdkBytes.fromUtf8String(handler.getRequestBody(params).toString());
+    }
+
+    @Benchmark
+    public SdkBytes getRequestBodyBytes() {
+        return handler.getRequestBodyBytes(params);
+    }
+
+    @Benchmark
+    public String getStringResult() {
+        return handler.getStringResult(response);
+    }
+
+    @Benchmark
+    public RequestParameters parseRequestParameters() {
+        return new RequestParameters(paramsJson);
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.models.AnthropicClaude;
+import nuxeo.labs.genai.aws.text.TextChunker;
+import nuxeo.labs.genai.aws.tokens.TokenEstimators;
+import software.amazon.awssdk.core.SdkBytes;
+
+/**
+ * What {@code InvokeBedrock.run(String, Blob, String)} does with the text of a blob before calling the model: prompt
+ * assembly, token estimation, request body. Plus the chunking done for big documents.
+ * <br>
+ * The text extraction itself (any2text converters) needs a running Nuxeo and is not covered here, see the
+ * {@code nuxeo.bedrock.text.extraction} metric instead.
+ *
+ * @since 2023
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PromptBenchmark {
+
+    protected static final String PROMPT = "Summarize the text between the <text> and </text> tags in 3 sentences.\n\n";
+
+    protected static final String TAG = "{TEXT}";
+
+    // 1KB to 10MB
+    @Param({ "1024", "102400", "1048576", "10485760" })
+    public int textSize;
+
+    protected String blobText;
+
+    protected String promptWithTag;
+
+    @Setup
+    public void setup() {
+        blobText = BenchmarkTexts.generate(textSize);
+        promptWithTag = PROMPT + "<text>" + TAG + "</text>";
+    }
+
+    @Benchmark
+    public String assemblePromptAppend() {
+        return InvokeBedrock.assemblePrompt(PROMPT, blobText, null);
+    }
+
+    @Benchmark
+    public String assemblePromptReplaceTag() {
+        return InvokeBedrock.assemblePrompt(promptWithTag, blobText, TAG);
+    }
+
+    @Benchmark
+    public int estimateTokens() {
+        return TokenEstimators.CLAUDE.estimate(blobText);
+    }
+
+    @Benchmark
+    public SdkBytes buildRequestBody() {
+        // String concatenations, then org.json (baseline)
+        String prompt = InvokeBedrock.assemblePrompt(PROMPT, blobText, null);
+        RequestParameters params = new RequestParameters(prompt, 0F, null, 500, null);
+        return SdkBytes.fromUtf8String(new AnthropicClaude().getRequestBody(params).toString());
+    }
+
+    @Benchmark
+    public SdkBytes writeRequestBody() {
+        // Same steps as InvokeBedrock.buildRequest, without the Nuxeo services
+        CharSequence prompt = InvokeBedrock.assemblePromptText(PROMPT, blobText, null);
+        RequestParameters params = new RequestParameters(prompt, 0F, null, 500, null);
+        return new AnthropicClaude().getRequestBodyBytes(params);
+    }
+
+    @Benchmark
+    public int chunk() {
+        return new TextChunker(8000, TokenEstimators.CLAUDE).split(blobText).size();
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.models.AnthropicClaude;
+import nuxeo.labs.genai.aws.standin.BedrockStandInServer;
+import nuxeo.labs.genai.aws.throttling.AdaptiveConcurrencyLimiter;
+import nuxeo.labs.genai.aws.throttling.BackoffPolicy;
+import nuxeo.labs.genai.aws.throttling.ThrottledInvoker;
+import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
+
+/**
+ * Throughput of batches of calls against the local Bedrock stand-in, which throttles above {@code quota} requests in
+ * flight (as an account quota would) and answers with a log-normal latency. Compares the adaptive concurrency limiter
+ * with no limit (every call is sent at once, throttled calls are only retried).
+ *
+ * @since 2023
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class StandInInvokeBenchmark {
+
+    private static final Logger log = LogManager.getLogger(StandInInvokeBenchmark.class);
+
+    protected static final int BATCH_SIZE = 200;
+
+    @Param({ "adaptive", "none" })
+    public String limiter;
+
+    @Param({ "32" })
+    public int quota;
+
+    @Param({ "50" })
+    public int latencyMillis;
+
+    protected BedrockStandInServer server;
+
+    protected BedrockRuntimeAsyncClient client;
+
+    protected ThrottledInvoker invoker;
+
+    protected InvokeModelRequest request;
+
+    @Setup
+    public void setup() throws Exception {
+
+        server = new BedrockStandInServer().setLatency(Duration.ofMillis(latencyMillis), 0.5)
+                                           .setMaxConcurrency(quota);
+
+        NettyNioAsyncHttpClient.Builder httpClientBuilder = NettyNioAsyncHttpClient.builder().maxConcurrency(512);
+        client = BedrockRuntimeAsyncClient.builder()
+                                          .region(Region.US_EAST_1)
+                                          .credentialsProvider(AnonymousCredentialsProvider.create())
+                                          .endpointOverride(server.getEndpoint())
+                                          .httpClientBuilder(httpClientBuilder)
+                                          .overrideConfiguration(c -> c.retryPolicy(RetryPolicy.none()))
+                                          .build();
+
+        AdaptiveConcurrencyLimiter concurrencyLimiter = null;
+        if ("adaptive".equals(limiter)) {
+            concurrencyLimiter = new AdaptiveConcurrencyLimiter(8, 1, 256, 0.7, 4);
+        }
+        BackoffPolicy backoff = new BackoffPolicy(20, Duration.ofMillis(20), Duration.ofSeconds(2));
+        invoker = new ThrottledInvoker("benchmark", concurrencyLimiter, backoff);
+
+        RequestParameters params = new RequestParameters("Summarize this text.", 0F, null, 200, null);
+        SdkBytes body = SdkBytes.fromUtf8String(new AnthropicClaude().getRequestBody(params).toString());
+        request = InvokeModelRequest.builder().modelId(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2).body(body).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        log.info("Stand-in: {} requests, {} throttled", server.getRequests(), server.getThrottled());
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int invokeBatch() {
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            futures.add(invoker.callAsync(() -> client.invokeModel(request)));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        return futures.size();
+    }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import nuxeo.labs.genai.aws.operations.BedrockSummarizeOp;
+import nuxeo.labs.genai.aws.prompts.PromptTemplate;
+import nuxeo.labs.genai.aws.text.TextChunker;
+import nuxeo.labs.genai.aws.throttling.BackoffPolicy;
+
+/**
+ * Summarizes texts bigger than what a model accepts (or that would make a single very long call), "map-reduce" style:
+ * <ul>
+ * <li>The text is split in chunks of at most {@code maxChunkTokens} (see {@link TextChunker}), as estimated by the
+ * token estimator of the model, and never more than the prompt budget of the model</li>
+ * <li>Each chunk is summarized, in parallel (at most {@code maxInFlight} calls at a time)</li>
+ * <li>The partial summaries are summarized in a final call. If they are still too big for one chunk, they are
+ * summarized again, chunk by chunk, until they fit</li>
+ * </ul>
+ * A text that fits in one chunk is summarized in a single call. The text of a blob is read while the chunks are
+ * summarized, so a big document is never entirely in memory.
+ * <br>
+ * The model, region, parameters, etc. are the ones of the {@code InvokeBedrock} passed to the constructor.
+ *
+ * @since 2023
+ */
+public class ChunkedSummarizer {
+
+    public static final int DEFAULT_MAX_CHUNK_TOKENS = 8000;
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    protected final InvokeBedrock ibr;
+
+    protected final String language;
+
+    protected final int countSentences;
+
+    protected int maxChunkTokens = DEFAULT_MAX_CHUNK_TOKENS;
+
+    protected PromptTemplate finalTemplate;
+
+    protected final PromptTemplate partialTemplate;
+
+    protected final Map<String, Object> values;
+
+    protected int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * @param ibr, used for all the calls
+     * @param language, see {@link BedrockSummarizeOp#getSummarizeTemplate(String, int)}
+     * @param countSentences, number of sentences of the final summary (0 => no constraint)
+     */
+    public ChunkedSummarizer(InvokeBedrock ibr, String language, int countSentences) {
+        this.ibr = ibr;
+        this.language = language;
+        this.countSentences = countSentences;
+        finalTemplate = BedrockSummarizeOp.getSummarizeTemplate(language, countSentences);
+        // Partial summaries: no constraint on the number of sentences
+        partialTemplate = BedrockSummarizeOp.getSummarizeTemplate(language, 0);
+        values = BedrockSummarizeOp.getSummarizeValues(language, countSentences);
+    }
+
+    /**
+     * Replaces the template of the final summary (the partial summaries still use the {@code summarize.{language}}
+     * one)
+     *
+     * @since 2023
+     */
+    public void setPromptTemplate(PromptTemplate value) {
+        finalTemplate = value;
+    }
+
+    public void setMaxChunkTokens(int value) {
+        maxChunkTokens = value;
+    }
+
+    public void setMaxInFlight(int value) {
+        maxInFlight = value;
+    }
+
+    /**
+     * The text of the blob is read as the chunks are summarized (see {@link #summarize(Reader)}), unless it is
+     * already in the cache of the extracted texts.
+     */
+    public String summarize(Blob blob) {
+
+        try (Reader reader = InvokeBedrock.openText(blob)) {
+            return summarize(reader);
+        } catch (IOException e) {
+            throw new NuxeoException("Error reading the text of the blob", e);
+        }
+    }
+
+    public String summarize(String text) {
+
+        TextChunker chunker = newChunker();
+        List<String> chunks = chunker.split(text);
+        if (chunks.size() <= 1) {
+            return ibr.run(finalTemplate.render(values, text).toString(), null, null);
+        }
+
+        return reduce(chunker, summarizeAll(partialTemplate, chunks.iterator()));
+    }
+
+    /**
+     * Same as {@link #summarize(String)}, but the text is read as the chunks are summarized, so at most
+     * {@code maxInFlight} chunks are in memory whatever the size of the text. The text is used as is: the reader of
+     * {@link InvokeBedrock#openText(Blob)} is already preprocessed. The reader is not closed.
+     *
+     * @since 2023
+     */
+    public String summarize(Reader reader) {
+
+        TextChunker chunker = newChunker();
+        try {
+            Iterator<String> chunks = chunker.chunks(reader);
+            String first = chunks.hasNext() ? chunks.next() : "";
+            if (!chunks.hasNext()) {
+                return ibr.run(finalTemplate.render(values, first).toString(), null, null);
+            }
+
+            Iterator<String> all = new Iterator<>() {
+
+                protected boolean firstDone;
+
+                @Override
+                public boolean hasNext() {
+                    return !firstDone || chunks.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    if (!firstDone) {
+                        firstDone = true;
+                        return first;
+                    }
+                    return chunks.next();
+                }
+            };
+
+            return reduce(chunker, summarizeAll(partialTemplate, all));
+        } catch (UncheckedIOException e) {
+            throw new NuxeoException("Error reading the text to summarize", e.getCause());
+        }
+    }
+
+    protected TextChunker newChunker() {
+
+        // A chunk (plus the prompt) must fit in the context window of the model
+        int promptTokens = ibr.estimateTokens(finalTemplate.render(values, ""));
+        int chunkTokens = Math.min(maxChunkTokens, ibr.getPromptTokenBudget() - promptTokens);
+        return new TextChunker(Math.max(chunkTokens, 1), ibr.getTokenEstimator());
+    }
+
+    /**
+     * Summarizes the partial summaries, again by chunks until they fit in one
+     */
+    protected String reduce(TextChunker chunker, List<String> summaries) {
+
+        String joined = String.join("\n\n", summaries);
+        List<String> chunks = chunker.split(joined);
+        while (chunks.size() > 1) {
+            summaries = summarizeAll(partialTemplate, chunks.iterator());
+            String newJoined = String.join("\n\n", summaries);
+            if (newJoined.length() >= joined.length()) {
+                // Should not happen, but never loop forever
+                break;
+            }
+            joined = newJoined;
+            chunks = chunker.split(joined);
+        }
+
+        return ibr.run(finalTemplate.render(values, joined).toString(), null, null);
+    }
+
+    /**
+     * The next text is read only once a call can be made, so at most {@code maxInFlight} texts are in memory if
+     * {@code texts} reads them lazily. Stops at the first failed call: no more text is read nor sent, and the calls
+     * still in flight are cancelled.
+     */
+    protected List<String> summarizeAll(PromptTemplate template, Iterator<String> texts) {
+
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        while (failure.get() == null && texts.hasNext()) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelAll(futures);
+                throw new NuxeoException(e);
+            }
+            // A call may have failed while waiting for the permit
+            if (failure.get() != null) {
+                break;
+            }
+            String text;
+            try {
+                text = texts.next();
+            } catch (RuntimeException e) {
+                cancelAll(futures);
+                throw e;
+            }
+            CompletableFuture<String> future;
+            try {
+                future = ibr.runAsync(template.render(values, text).toString(), null, null);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((result, e) -> {
+                if (e != null) {
+                    failure.compareAndSet(null, e);
+                }
+                inFlight.release();
+            });
+            futures.add(future);
+        }
+
+        Throwable error = failure.get();
+        List<String> results = new ArrayList<>();
+        if (error == null) {
+            try {
+                for (CompletableFuture<String> future : futures) {
+                    results.add(future.join());
+                }
+            } catch (CompletionException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            cancelAll(futures);
+            throw new NuxeoException("Error summarizing a chunk", BackoffPolicy.unwrap(error));
+        }
+
+        return results;
+    }
+
+    protected static void cancelAll(List<? extends CompletableFuture<?>> futures) {
+        futures.forEach(future -> future.cancel(false));
+    }
+
+}
@@ -1,8 +1,24 @@
 package nuxeo.labs.genai.aws;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
@@ -16,13 +32,38 @@ import org.nuxeo.ecm.core.convert.api.ConversionException;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
 import org.nuxeo.runtime.api.Framework;
 
-import nuxeo.labs.genai.aws.models.AWSTitan;
-import nuxeo.labs.genai.aws.models.AnthropicClaude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import io.dropwizard.metrics5.Timer;
+import nuxeo.labs.genai.aws.budget.TokenBudgetService;
+import nuxeo.labs.genai.aws.budget.TokenCharge;
+import nuxeo.labs.genai.aws.cache.BedrockCacheService;
+import nuxeo.labs.genai.aws.cache.SemanticCache;
+import nuxeo.labs.genai.aws.client.BedrockClientService;
+import nuxeo.labs.genai.aws.metrics.BedrockMetrics;
+import nuxeo.labs.genai.aws.models.JsonResponses;
+import nuxeo.labs.genai.aws.models.ModelHandlerService;
+import nuxeo.labs.genai.aws.models.TitanEmbeddings;
+import nuxeo.labs.genai.aws.preprocessing.PreprocessingReader;
+import nuxeo.labs.genai.aws.preprocessing.TextPreprocessingService;
+import nuxeo.labs.genai.aws.text.NulFilterReader;
+import nuxeo.labs.genai.aws.text.PromptText;
+import nuxeo.labs.genai.aws.throttling.BackoffPolicy;
+import nuxeo.labs.genai.aws.throttling.CircuitBreaker;
+import nuxeo.labs.genai.aws.throttling.CircuitOpenException;
+import nuxeo.labs.genai.aws.throttling.ThrottledInvoker;
+import nuxeo.labs.genai.aws.tokens.TokenEstimator;
+import nuxeo.labs.genai.aws.tokens.TokenEstimators;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
 import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler;
+import software.amazon.awssdk.services.bedrockruntime.model.PayloadPart;
 
 /**
  * Also see AWS documentation of course. Such as:
@@ -39,7 +80,16 @@ public class InvokeBedrock {
 
     public static final Region DEFAULT_REGION = Region.US_EAST_1;
 
-    protected Region region = DEFAULT_REGION;
+    protected static final String INVOCATION_METRICS = "amazon-bedrock-invocationMetrics";
+
+    // null => the region of the client configuration, or DEFAULT_REGION
+    protected Region region = null;
+
+    // Name of the configuration contributed to the BedrockClientService. null => "default"
+    protected String clientConfig = null;
+
+    // null => the endpoint of the client configuration, or the AWS endpoint of the region
+    protected String endpoint = null;
 
     // Reminder: as of today (end 2023), Titan is EN only:
     // "Sorry, this model is only accessible for English only applications. Please consider revising your content to be
@@ -50,11 +100,30 @@ public class InvokeBedrock {
 
     public static final String MODEL_ANTHROPIC_CLAUDE_V2 = "anthropic.claude-v2";
 
+    public static final String MODEL_ANTHROPIC_CLAUDE_3_HAIKU = "anthropic.claude-3-haiku-20240307-v1:0";
+
+    public static final String MODEL_ANTHROPIC_CLAUDE_3_SONNET = "anthropic.claude-3-sonnet-20240229-v1:0";
+
+    public static final String MODEL_TITAN_TEXT_PREMIER_V1 = "amazon.titan-text-premier-v1:0";
+
+    public static final String MODEL_META_LLAMA3_8B_INSTRUCT = "meta.llama3-8b-instruct-v1:0";
+
+    public static final String MODEL_META_LLAMA3_70B_INSTRUCT = "meta.llama3-70b-instruct-v1:0";
+
+    public static final String MODEL_MISTRAL_7B_INSTRUCT = "mistral.mistral-7b-instruct-v0:2";
+
+    public static final String MODEL_MIXTRAL_8X7B_INSTRUCT = "mistral.mixtral-8x7b-instruct-v0:1";
+
+    public static final String MODEL_TITAN_EMBED_TEXT_V1 = "amazon.titan-embed-text-v1";
+
+    public static final String MODEL_TITAN_EMBED_TEXT_V2 = "amazon.titan-embed-text-v2:0";
+
     public static final String DEFAULT_MODEL = MODEL_ANTHROPIC_CLAUDE_INSTANT_V1;// MODEL_TITAN_TEXT_EXPRESS_V1;// ;
 
     protected String modelId = DEFAULT_MODEL;
 
-    protected String prompt;
+    // A PromptText when a blob is used: the text of the blob is not copied
+    protected CharSequence prompt;
 
     protected Blob sourceBlob;
 
@@ -73,20 +142,44 @@ public class InvokeBedrock {
 
     protected ArrayList<String> stopSequences = null;
 
-    BedrockRuntimeClient bedrockRuntime = null;
+    // null => the response is cached only if temperature is 0 (same request => same response)
+    protected Boolean useCache = null;
+
+    // false => the semantic cache is never used, even if the response can be cached
+    protected boolean useSemanticCache = true;
+
+    /**
+     * What to do when the estimated number of tokens of the prompt is more than what the model accepts (see
+     * {@link #getPromptTokenBudget()})
+     *
+     * @since 2023
+     */
+    public enum PromptBudgetPolicy {
+        /** Send the prompt anyway, the model decides */
+        NONE,
+        /** Throw a {@code NuxeoException}, the model is not called */
+        REJECT,
+        /** Truncate the text of the blob (or the end of the prompt if there is no blob) */
+        TRUNCATE
+    }
+
+    // Concurrent identical requests share the same call
+    protected boolean coalesce = true;
+
+    protected PromptBudgetPolicy promptBudgetPolicy = PromptBudgetPolicy.REJECT;
+
+    // Titan Embeddings V2 only: 256, 512 or 1024. null => default of the model
+    protected Integer embeddingDimensions = null;
 
     public InvokeBedrock() {
-        getBedrockRuntime();
     }
 
     public InvokeBedrock(Region region, String modelId) {
-        getBedrockRuntime();
         setRegion(region);
         setModelId(modelId);
     }
 
     public InvokeBedrock(Region region, String modelId, Float temperature, Float topP, Integer responseMaxTokens) {
-        getBedrockRuntime();
         setRegion(region);
         setModelId(modelId);
         setTemperature(temperature);
@@ -94,15 +187,191 @@ public class InvokeBedrock {
         setResponseMaxTokenCount(responseMaxTokens);
     }
 
-    protected void getBedrockRuntime() {
-        if (bedrockRuntime == null) {
-            bedrockRuntime = BedrockRuntimeClient.builder().region(region).build();
+    /**
+     * The client is shared (see {@code BedrockClientService}), it must not be closed by the caller.
+     * 
+     * @return the client for the current region and client configuration
+     * @since 2023
+     */
+    protected BedrockRuntimeClient getBedrockRuntime() {
+        return Framework.getService(BedrockClientService.class).getClient(clientConfig, region, endpoint);
+    }
+
+    /**
+     * The client is shared (see {@code BedrockClientService}), it must not be closed by the caller.
+     * 
+     * @return the asynchronous client for the current region and client configuration
+     * @since 2023
+     */
+    protected BedrockRuntimeAsyncClient getBedrockRuntimeAsync() {
+        return Framework.getService(BedrockClientService.class).getAsyncClient(clientConfig, region, endpoint);
+    }
+
+    /**
+     * All the calls to the model go through this invoker: they are limited and retried if throttled.
+     * 
+     * @return the shared invoker for the current model, region and client configuration
+     * @since 2023
+     */
+    protected ThrottledInvoker getInvoker() {
+        return Framework.getService(BedrockClientService.class).getInvoker(clientConfig, region, modelId);
+    }
+
+    /**
+     * @return the region actually called: the one set, or the one of the client configuration, or DEFAULT_REGION
+     * @since 2023
+     */
+    public String getRegionId() {
+
+        if (region != null) {
+            return region.id();
         }
+
+        String configRegion = Framework.getService(BedrockClientService.class).getConfig(clientConfig).getRegion();
+        return StringUtils.isNotBlank(configRegion) ? configRegion : DEFAULT_REGION.id();
+    }
+
+    /**
+     * @return the metrics of the current model and region
+     * @since 2023
+     */
+    protected BedrockMetrics getMetrics() {
+        return BedrockMetrics.of(modelId, getRegionId());
+    }
+
+    /**
+     * @return the client of {@code region}, for the current client configuration
+     * @since 2023
+     */
+    protected BedrockRuntimeClient getBedrockRuntime(Region region) {
+        return Framework.getService(BedrockClientService.class).getClient(clientConfig, region, endpoint);
+    }
+
+    /**
+     * @return the asynchronous client of {@code region}, for the current client configuration
+     * @since 2023
+     */
+    protected BedrockRuntimeAsyncClient getBedrockRuntimeAsync(Region region) {
+        return Framework.getService(BedrockClientService.class).getAsyncClient(clientConfig, region, endpoint);
+    }
+
+    /**
+     * @return the shared invoker (and circuit breaker) of the current model in {@code region}
+     * @since 2023
+     */
+    protected ThrottledInvoker getInvoker(Region region) {
+        return Framework.getService(BedrockClientService.class).getInvoker(clientConfig, region, modelId);
+    }
+
+    /**
+     * @return the metrics of the current model in {@code region}
+     * @since 2023
+     */
+    protected BedrockMetrics getMetrics(Region region) {
+        return BedrockMetrics.of(modelId, region.id());
+    }
+
+    /**
+     * @return the regions to call, in order: the region (see {@link #getRegionId()}), then the
+     *         {@code fallbackRegions} of the client configuration
+     * @since 2023
+     */
+    public List<Region> getRegions() {
+
+        List<Region> regions = new ArrayList<>();
+        regions.add(Region.of(getRegionId()));
+        List<String> fallbacks = Framework.getService(BedrockClientService.class)
+                                          .getConfig(clientConfig)
+                                          .getFallbackRegions();
+        for (String fallback : fallbacks) {
+            if (StringUtils.isNotBlank(fallback)) {
+                Region r = Region.of(fallback.trim());
+                if (!regions.contains(r)) {
+                    regions.add(r);
+                }
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * @return true if a call that failed with {@code e} can be sent to another region: the circuit of the region is
+     *         open, the region failed, or the call is still throttled after the retries
+     * @since 2023
+     */
+    protected static boolean shouldFailover(Throwable e) {
+        Throwable cause = BackoffPolicy.unwrap(e);
+        return cause instanceof CircuitOpenException || CircuitBreaker.isRegionFailure(cause)
+                || BackoffPolicy.isThrottling(cause);
+    }
+
+    /**
+     * Calls {@code call} with the first region of {@code regions}, then with the next one as long as it fails with an
+     * error of the region (see {@link #shouldFailover(Throwable)}). Any other error is thrown right away.
+     *
+     * @since 2023
+     */
+    protected <T> T callWithFailover(List<Region> regions, Function<Region, T> call) {
+
+        for (int i = 0;; i++) {
+            Region r = regions.get(i);
+            try {
+                return call.apply(r);
+            } catch (RuntimeException e) {
+                if (i + 1 >= regions.size() || !shouldFailover(e)) {
+                    throw e;
+                }
+                failover(r, regions.get(i + 1), e);
+            }
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #callWithFailover(List, Function)}. {@code canFailover} is tested before calling
+     * the next region (for example, a stream that has started cannot be sent again).
+     *
+     * @since 2023
+     */
+    protected <T> CompletableFuture<T> callWithFailoverAsync(List<Region> regions,
+            Function<Region, CompletableFuture<T>> call, Predicate<Throwable> canFailover) {
+        return callWithFailoverAsync(regions, 0, call, canFailover);
+    }
+
+    protected <T> CompletableFuture<T> callWithFailoverAsync(List<Region> regions, int index,
+            Function<Region, CompletableFuture<T>> call, Predicate<Throwable> canFailover) {
+
+        Region r = regions.get(index);
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(r);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        if (index + 1 >= regions.size()) {
+            return future;
+        }
+
+        return future.handle((value, e) -> {
+            if (e == null) {
+                return CompletableFuture.completedFuture(value);
+            }
+            Throwable cause = BackoffPolicy.unwrap(e);
+            if (!shouldFailover(cause) || !canFailover.test(cause)) {
+                return CompletableFuture.<T> failedFuture(cause);
+            }
+            failover(r, regions.get(index + 1), cause);
+            return callWithFailoverAsync(regions, index + 1, call, canFailover);
+        }).thenCompose(Function.identity());
+    }
+
+    protected void failover(Region failed, Region next, Throwable e) {
+        log.debug("Call to {} failed in {} ({}), trying {}", modelId, failed.id(), e.toString(), next.id());
+        getMetrics(failed).recordFailover();
     }
 
     public void setParameters(RequestParameters params) {
 
-        prompt = params.getPrompt();
+        prompt = params.getPromptText();
         temperature = params.getTemperature();
         topP = params.getTopP();
         responseMaxTokenCount = params.getResponseMaxTokenCount();
@@ -118,6 +387,94 @@ public class InvokeBedrock {
         }
     }
 
+    /**
+     * @param name of a configuration contributed to the {@code clients} extension point of the
+     *            {@code BedrockClientService}. {@code null} => "default"
+     * @since 2023
+     */
+    public void setClientConfig(String name) {
+        clientConfig = name;
+    }
+
+    /**
+     * @param value the URL to call instead of the AWS endpoint (or the endpoint of the client configuration), for
+     *            example a local stand-in for tests. {@code null} => no override.
+     * @since 2023
+     */
+    public void setEndpoint(String value) {
+        endpoint = value;
+    }
+
+    /**
+     * @param value {@code true}/{@code false} to force using (or not) the cache of responses (see
+     *            {@code BedrockCacheService}). {@code null} => the cache is used only if temperature is 0.
+     * @since 2023
+     */
+    public void setUseCache(Boolean value) {
+        useCache = value;
+    }
+
+    /**
+     * @param value if {@code false}, the semantic cache (see {@code SemanticCache}) is not used. Default is
+     *            {@code true}: it is used if it is enabled and the response can be cached (see
+     *            {@link #setUseCache(Boolean)})
+     * @since 2023
+     */
+    public void setUseSemanticCache(boolean value) {
+        useSemanticCache = value;
+    }
+
+    /**
+     * @param value if {@code true} (default), concurrent identical requests (same model, same body, same client
+     *            configuration, endpoint and regions) share the same call to the model (see {@code SingleFlight}).
+     *            Streaming and raw calls are never coalesced.
+     * @since 2023
+     */
+    public void setCoalesce(boolean value) {
+        coalesce = value;
+    }
+
+    /**
+     * @param value {@code null} => {@code REJECT}
+     * @since 2023
+     */
+    public void setPromptBudgetPolicy(PromptBudgetPolicy value) {
+        promptBudgetPolicy = value == null ? PromptBudgetPolicy.REJECT : value;
+    }
+
+    /**
+     * @return the local estimator of the number of tokens for the current model
+     * @since 2023
+     */
+    public TokenEstimator getTokenEstimator() {
+        return Framework.getService(ModelHandlerService.class).getTokenEstimator(modelId);
+    }
+
+    /**
+     * Local estimation, no call to the model. Can be used to decide to split a text, to batch several ones, etc.
+     *
+     * @return the estimated number of tokens of {@code text} for the current model
+     * @since 2023
+     */
+    public int estimateTokens(CharSequence text) {
+        return text == null ? 0 : getTokenEstimator().estimate(text);
+    }
+
+    /**
+     * @return the max. number of tokens of the prompt: the context window of the model minus responseMaxTokenCount
+     *         (if set). {@code Integer.MAX_VALUE} if the model is not known.
+     * @since 2023
+     */
+    public int getPromptTokenBudget() {
+
+        int contextWindow = Framework.getService(ModelHandlerService.class).getContextWindow(modelId);
+        if (contextWindow == TokenEstimators.UNKNOWN_CONTEXT_WINDOW || responseMaxTokenCount == null) {
+            return contextWindow;
+        }
+
+        return Math.max(contextWindow - responseMaxTokenCount, 0);
+    }
+
     // null => model will use a default value
     public void setResponseMaxTokenCount(Integer value) {
         responseMaxTokenCount = value;
@@ -128,6 +485,11 @@ public class InvokeBedrock {
         topP = value;
     }
 
+    // null => default of the model. Titan Embeddings V2 only
+    public void setEmbeddingDimensions(Integer value) {
+        embeddingDimensions = value;
+    }
+
     public void setModelId(String modelID) {
         if (StringUtils.isNotBlank(modelId)) {
             this.modelId = modelID;
@@ -155,6 +517,9 @@ public class InvokeBedrock {
 
     /**
      * Extract the text from a blob (typically, pdf, Word), with punctuation
+     * <br>
+     * The text is cached by the digest of the blob (see {@code BedrockCacheService}), so the same blob is converted
+     * only once. It is preprocessed (see {@link TextPreprocessingService}) before being cached.
      * 
      * @param blob
      * @return the text in the blob, without styling or formatting.
@@ -162,37 +527,72 @@ public class InvokeBedrock {
      */
     public static String blobToText(Blob blob) {
 
+        try (Timer.Context timer = BedrockMetrics.getTextExtractionTimer().time()) {
+            return Framework.getService(BedrockCacheService.class).getBlobText(blob, InvokeBedrock::extractText);
+        }
+    }
+
+    /**
+     * Streaming alternative to {@link #blobToText(Blob)}, for big blobs: the text is read from the converted blob as
+     * it is consumed, with the {@code '\0'} chars replaced on the fly (see {@link NulFilterReader}), so it is never
+     * entirely in memory. If the text of the blob is already cached, it is read from the cache.
+     * <br>
+     * Either way the text is preprocessed (see {@link TextPreprocessingService}), and only once: the cached text was
+     * preprocessed before being cached, the converted text is preprocessed by blocks as it is read (see
+     * {@link PreprocessingReader}), without the steps that need the whole text (the removal of the repeated lines and
+     * the maximum length). The converted text is not cached. The caller must close the reader.
+     *
+     * @since 2023
+     */
+    public static Reader openText(Blob blob) {
+
+        String cached = Framework.getService(BedrockCacheService.class).getCachedBlobText(blob);
+        if (cached != null) {
+            return new StringReader(cached);
+        }
+
         try {
-            ConversionService conversionService = Framework.getService(ConversionService.class);
-            BlobHolder blobHolder = conversionService.convert("any2text", new SimpleBlobHolder(blob), null);
-            Blob resultBlob = blobHolder.getBlob();
-            String string;
-            string = resultBlob.getString();
-            // strip '\0 chars from text, if any
-            if (string.indexOf('\0') >= 0) {
-                string = string.replace("\0", " ");
-            }
-            return string;
+            Reader reader = openConvertedText(blob);
+            TextPreprocessingService preprocessing = Framework.getService(TextPreprocessingService.class);
+            return preprocessing == null ? reader
+                    : new PreprocessingReader(reader, preprocessing, PreprocessingReader.DEFAULT_BLOCK_SIZE);
         } catch (ConversionException | IOException e) {
             throw new NuxeoException("Error extracting text from blob", e);
         }
-
     }
 
-    protected boolean looksLikeTitan() {
-        if (StringUtils.isNotBlank(modelId)) {
-            return modelId.startsWith("amazon.titan");
-        }
+    protected static Reader openConvertedText(Blob blob) throws IOException {
 
-        return false;
+        ConversionService conversionService = Framework.getService(ConversionService.class);
+        BlobHolder blobHolder = conversionService.convert("any2text", new SimpleBlobHolder(blob), null);
+        Blob resultBlob = blobHolder.getBlob();
+        Charset charset = StringUtils.isBlank(resultBlob.getEncoding()) ? StandardCharsets.UTF_8
+                : Charset.forName(resultBlob.getEncoding());
+
+        return new NulFilterReader(new InputStreamReader(resultBlob.getStream(), charset));
     }
 
-    protected boolean looksLikeClaude() {
-        if (StringUtils.isNotBlank(modelId)) {
-            return modelId.startsWith("anthropic.claude");
+    protected static String extractText(Blob blob) {
+
+        String string;
+        // Read once, '\0' filtered while reading (no copy of the whole text to replace them)
+        try (Reader reader = openConvertedText(blob)) {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[8192];
+            int count;
+            while ((count = reader.read(buffer)) >= 0) {
+                sb.append(buffer, 0, count);
+            }
+            string = sb.toString();
+        } catch (ConversionException | IOException e) {
+            throw new NuxeoException("Error extracting text from blob", e);
         }
 
-        return false;
+        TextPreprocessingService preprocessing = Framework.getService(TextPreprocessingService.class);
+        if (preprocessing != null) {
+            string = preprocessing.preprocess(string);
+        }
+        return string;
     }
 
     /**
@@ -207,6 +607,21 @@ public class InvokeBedrock {
      * <br>
      * {@code prompt} can be {@code null}: This would be the case os setParameters has been called previously, with a
      * prompt. If it is not @code null}, then it replaces any previous value.
+     * <br>
+     * The call is limited and retried if throttled, see {@link #getInvoker()}. If the region fails (or its circuit is
+     * open), the call is sent to the next region of {@link #getRegions()}. If the same request is already in flight
+     * (another thread), its result is shared instead of calling the model again, see {@link #setCoalesce(boolean)}.
+     * <br>
+     * Before calling the model, the number of tokens of the prompt is estimated locally and checked against
+     * {@link #getPromptTokenBudget()}, see {@link #setPromptBudgetPolicy(PromptBudgetPolicy)}.
+     * <br>
+     * If the semantic cache is enabled (see {@code SemanticCache}), the prompt (without the text of the blob) is
+     * embedded, and the response of a previous request with a similar prompt, for the same blob, is returned. Requests
+     * without a blob, or whose prompt is too long to be embedded whole, do not use it.
+     * <br>
+     * If the model is called, the estimated tokens of the prompt are first charged to the token budgets of the current
+     * user (see {@code TokenBudgetService}): over budget, a {@code NuxeoException} (status 429) is thrown without any
+     * network call. A caller sharing the call of another one is charged the same way, to its own budgets.
      * 
      * @param prompt
      * @param blob
@@ -216,41 +631,257 @@ public class InvokeBedrock {
      */
     public String run(String prompt, Blob blob, String insertInPromptReplaceTag) {
 
-        if (blob != null) {
-            String blobText = blobToText(blob);
-            if(prompt == null) {
-                prompt = blobText;
-            } else {
-                if (StringUtils.isNotBlank(insertInPromptReplaceTag)) {
-                    prompt = prompt.replace(insertInPromptReplaceTag, blobText);
-                } else {
-                    if(!prompt.endsWith("\n\n")) {
-                        if(!prompt.endsWith("\n")) {
-                            prompt += "\n";
-                        } else {
-                            prompt += "\n\n";
-                        }
-                    }
-                    prompt += blobText;
-                }
+        // Before the text of the blob is added
+        CharSequence instructions = prompt != null ? prompt : this.prompt;
+        InvokeModelRequest request = buildRequest(prompt, blob, insertInPromptReplaceTag);
+
+        BedrockCacheService cacheService = Framework.getService(BedrockCacheService.class);
+        String cacheKey = getResponseCacheKey(request);
+        if (cacheKey != null) {
+            String cached = cacheService.getResponse(cacheKey);
+            if (cached != null) {
+                return cached;
             }
         }
-        if (prompt != null) {
-            this.prompt = prompt;
+
+        SemanticCache semanticCache = isCacheable() && useSemanticCache ? cacheService.getSemanticCache() : null;
+        String semanticScope = semanticCache == null ? null : getSemanticCacheScope(blob);
+        float[] promptVector = semanticScope == null ? null : embedForSemanticCache(semanticCache, instructions);
+        if (promptVector != null) {
+            String cached = semanticCache.get(semanticScope, promptVector);
+            if (cached != null) {
+                return cached;
+            }
         }
 
-        JSONObject jsonBody = getRequestBodyForModel();
+        List<Region> regions = getRegions();
+        RequestResponseHandlers handler = getHandlerForModel();
+        Supplier<ModelResult> call = () -> {
+            ModelResult modelResult = callWithFailover(regions, r -> {
+                BedrockRuntimeClient client = getBedrockRuntime(r);
+                BedrockMetrics metrics = getMetrics(r);
+                return getInvoker(r).call(() -> invokeModel(client, request, handler, metrics));
+            });
+            String result = modelResult.getText();
+            if (cacheKey != null) {
+                cacheService.putResponse(cacheKey, result);
+            }
+            if (promptVector != null) {
+                semanticCache.put(semanticScope, promptVector, result);
+            }
+            return modelResult;
+        };
 
-        SdkBytes body = SdkBytes.fromUtf8String(jsonBody.toString());
+        // Before sharing the call of another caller: each caller is charged to its own budgets
+        TokenCharge charge = chargeTokenBudget(this.prompt);
+        ModelResult modelResult;
+        try {
+            modelResult = coalesce
+                    ? cacheService.getResponseSingleFlight().call(getSingleFlightKey(request, regions), call)
+                    : call.get();
+        } catch (RuntimeException e) {
+            charge.cancel();
+            throw e;
+        }
+        charge.complete(modelResult.getInputTokenCount(), modelResult.getOutputTokenCount());
+        return modelResult.getText();
+    }
 
-        // System.out.println("====================\nINVOKING MODEL " + modelId);
-        InvokeModelRequest request = InvokeModelRequest.builder().modelId(modelId).body(body).build();
+    /**
+     * Asynchronous version of {@link #run(String, Blob, String)}, using the Netty based {@code BedrockRuntimeAsyncClient}:
+     * no thread is blocked while waiting for the model.
+     * <br>
+     * Notice the text of the blob (if any) is extracted and the request is built <i>before</i> returning (so the
+     * caller can change the parameters of this {@code InvokeBedrock} and call {@code runAsync} again right away). Only
+     * the call to the model is asynchronous.
+     * <br>
+     * The returned future completes in a thread of the AWS SDK: do not block in the code chained to it.
+     * <br>
+     * As for {@code run}, the call waits for a permit of the concurrency limiter of the model (without blocking a
+     * thread), and is retried if throttled. The token budgets are charged the same way, also without blocking a thread
+     * while waiting for them: over budget, the returned future completes exceptionally with a {@code NuxeoException}
+     * (status 429).
+     * 
+     * @param prompt
+     * @param blob
+     * @param insertInPromptReplaceTag
+     * @return a future completed with the result of the model
+     * @since 2023
+     */
+    public CompletableFuture<String> runAsync(String prompt, Blob blob, String insertInPromptReplaceTag) {
 
-        InvokeModelResponse response = bedrockRuntime.invokeModel(request);
+        InvokeModelRequest request = buildRequest(prompt, blob, insertInPromptReplaceTag);
+        RequestResponseHandlers handler = getHandlerForModel();
 
-        String result = getStringResultForModel(response);
+        BedrockCacheService cacheService = Framework.getService(BedrockCacheService.class);
+        String cacheKey = getResponseCacheKey(request);
+        if (cacheKey != null) {
+            String cached = cacheService.getResponse(cacheKey);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
 
-        return result;
+        List<Region> regions = getRegions();
+        Supplier<CompletableFuture<ModelResult>> call = () -> {
+            CompletableFuture<ModelResult> result = callWithFailoverAsync(regions, r -> {
+                BedrockRuntimeAsyncClient client = getBedrockRuntimeAsync(r);
+                BedrockMetrics metrics = getMetrics(r);
+                return getInvoker(r).callAsync(() -> invokeModel(client, request, handler, metrics));
+            }, e -> true);
+            if (cacheKey != null) {
+                result = result.thenApply(modelResult -> {
+                    cacheService.putResponse(cacheKey, modelResult.getText());
+                    return modelResult;
+                });
+            }
+            return result;
+        };
+
+        // Before sharing the call of another caller: each caller is charged to its own budgets
+        String key = coalesce ? getSingleFlightKey(request, regions) : null;
+        return chargeTokenBudgetAsync(this.prompt).thenCompose(charge -> {
+            CompletableFuture<ModelResult> result = key == null ? call.get()
+                    : cacheService.getResponseSingleFlight().callAsync(key, call);
+            return result.whenComplete((modelResult, e) -> {
+                if (e == null) {
+                    charge.complete(modelResult.getInputTokenCount(), modelResult.getOutputTokenCount());
+                } else {
+                    charge.cancel();
+                }
+            });
+        }).thenApply(ModelResult::getText);
+    }
+
+    /**
+     * Streaming version of {@link #run(String, Blob, String)}: calls the model with
+     * {@code InvokeModelWithResponseStream}, and passes the text to {@code chunkConsumer} as soon as it is received, so
+     * the first tokens are available before the model has finished. As for {@link #runAsync(String, Blob, String)}, the
+     * request is built before returning.
+     * <br>
+     * {@code chunkConsumer} is called in a thread of the AWS SDK, in order. If it throws an exception, the stream is
+     * cancelled and the returned future completes exceptionally.
+     * <br>
+     * Over a token budget, the returned future completes exceptionally with a {@code NuxeoException} (status 429), see
+     * {@link #runAsync(String, Blob, String)}.
+     * 
+     * @param prompt
+     * @param blob
+     * @param insertInPromptReplaceTag
+     * @param chunkConsumer
+     * @return a future completed when the whole response has been received
+     * @since 2023
+     */
+    public CompletableFuture<Void> runStream(String prompt, Blob blob, String insertInPromptReplaceTag,
+            Consumer<String> chunkConsumer) {
+
+        InvokeModelRequest request = buildRequest(prompt, blob, insertInPromptReplaceTag);
+        RequestResponseHandlers handler = getHandlerForModel();
+
+        InvokeModelWithResponseStreamRequest streamRequest = InvokeModelWithResponseStreamRequest.builder()
+                .modelId(modelId)
+                .body(request.body())
+                .build();
+
+        List<Region> regions = getRegions();
+        AtomicReference<BedrockMetrics> attemptMetrics = new AtomicReference<>();
+        AtomicLong attemptStart = new AtomicLong();
+        AtomicBoolean started = new AtomicBoolean();
+        int[] tokenCounts = { -1, -1 };
+        Consumer<PayloadPart> onChunk = chunk -> {
+            if (started.compareAndSet(false, true)) {
+                attemptMetrics.get().recordFirstChunk(System.nanoTime() - attemptStart.get());
+            }
+            readInvocationMetrics(chunk, tokenCounts);
+            String text = handler.getStringChunk(chunk);
+            if (StringUtils.isNotEmpty(text)) {
+                chunkConsumer.accept(text);
+            }
+        };
+        InvokeModelWithResponseStreamResponseHandler.Visitor visitor = InvokeModelWithResponseStreamResponseHandler.Visitor.builder()
+                .onChunk(onChunk)
+                .build();
+
+        // A new response handler for each attempt. Once the consumer has received text, retrying (or calling another
+        // region) would send it twice
+        return chargeTokenBudgetAsync(this.prompt).thenCompose(charge -> callWithFailoverAsync(regions, r -> {
+            BedrockRuntimeAsyncClient client = getBedrockRuntimeAsync(r);
+            BedrockMetrics metrics = getMetrics(r);
+            return getInvoker(r).callAsync(() -> {
+                InvokeModelWithResponseStreamResponseHandler responseHandler = InvokeModelWithResponseStreamResponseHandler.builder()
+                        .subscriber(visitor)
+                        .build();
+                long start = System.nanoTime();
+                attemptStart.set(start);
+                attemptMetrics.set(metrics);
+                return client.invokeModelWithResponseStream(streamRequest, responseHandler).whenComplete((v, e) -> {
+                    if (e == null) {
+                        metrics.recordSuccess(System.nanoTime() - start, tokenCounts[0], tokenCounts[1]);
+                    } else {
+                        metrics.recordError(System.nanoTime() - start, e);
+                    }
+                });
+            }, e -> !started.get());
+        }, e -> !started.get()).whenComplete((v, e) -> {
+            if (e == null || started.get()) {
+                charge.complete(tokenCounts[0], tokenCounts[1]);
+            } else {
+                charge.cancel();
+            }
+        }));
+    }
+
+    /**
+     * Same as {@link #runStream(String, Blob, String, Consumer)}, writing the text (UTF-8) to {@code out}, which is
+     * flushed after each chunk. {@code out} is not closed.
+     * 
+     * @since 2023
+     */
+    public CompletableFuture<Void> runStream(String prompt, Blob blob, String insertInPromptReplaceTag,
+            OutputStream out) {
+
+        return runStream(prompt, blob, insertInPromptReplaceTag, text -> {
+            try {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Calls an embeddings model (Amazon Titan Embeddings, see {@link #MODEL_TITAN_EMBED_TEXT_V2}) and returns the
+     * vector of {@code text}. The text is truncated to what the model accepts.
+     * <br>
+     * As for {@code run}, the call is limited and retried if throttled.
+     *
+     * @return the embedding, its size depends on the model (and {@link #setEmbeddingDimensions(Integer)})
+     * @since 2023
+     */
+    public float[] embed(CharSequence text) {
+
+        if (text == null || text.length() == 0) {
+            throw new IllegalArgumentException("Cannot compute the embedding of an empty text");
+        }
+        int maxTokens = Math.min(TitanEmbeddings.MAX_INPUT_TOKENS, getPromptTokenBudget());
+        InvokeModelRequest request = buildRequest(
+                TitanEmbeddings.getRequestBody(truncate(text, maxTokens), embeddingDimensions, null));
+
+        List<Region> regions = getRegions();
+        InvokeModelResponse response = callCharged(estimateTokens(text),
+                () -> callWithFailover(regions, r -> invokeModel(r, request)));
+
+        return TitanEmbeddings.readEmbedding(response.body());
+    }
+
+    /**
+     * Same as {@link #embed(CharSequence)} with the text of {@code blob} (see {@link #blobToText(Blob)})
+     *
+     * @since 2023
+     */
+    public float[] embed(Blob blob) {
+        return embed(blobToText(blob));
     }
 
     /**
@@ -265,47 +896,502 @@ public class InvokeBedrock {
      */
     public InvokeModelResponse run(JSONObject requestBody) {
 
-        SdkBytes body = SdkBytes.fromUtf8String(requestBody.toString());
-
-        // System.out.println("====================\nINVOKING MODEL " + modelId);
-        InvokeModelRequest request = InvokeModelRequest.builder().modelId(modelId).body(body).build();
+        InvokeModelRequest request = buildRequest(requestBody);
 
-        InvokeModelResponse response = bedrockRuntime.invokeModel(request);
+        List<Region> regions = getRegions();
+        // The whole body is estimated, the format of the prompt depends on the model
+        InvokeModelResponse response = callCharged(estimateTokens(request.body().asUtf8String()),
+                () -> callWithFailover(regions, r -> invokeModel(r, request)));
 
         return response;
     }
 
-    protected JSONObject getRequestBodyForModel() {
+    /**
+     * Asynchronous version of {@link #run(JSONObject)}
+     * 
+     * @param requestBody
+     * @return a future completed with the InvokeModelResponse
+     * @since 2023
+     */
+    public CompletableFuture<InvokeModelResponse> runAsync(JSONObject requestBody) {
+
+        InvokeModelRequest request = buildRequest(requestBody);
+
+        List<Region> regions = getRegions();
+        return chargeTokenBudgetAsync(request.body().asUtf8String()).thenCompose(
+                charge -> callWithFailoverAsync(regions, r -> {
+                    BedrockRuntimeAsyncClient client = getBedrockRuntimeAsync(r);
+                    BedrockMetrics metrics = getMetrics(r);
+                    return getInvoker(r).callAsync(() -> invokeModel(client, request, metrics));
+                }, e -> true).whenComplete((response, e) -> {
+                    if (e == null) {
+                        charge.complete(-1, -1);
+                    } else {
+                        charge.cancel();
+                    }
+                }));
+    }
 
-        RequestParameters params = new RequestParameters(prompt, temperature, topP, responseMaxTokenCount,
-                stopSequences);
+    /**
+     * Charges the estimated tokens of {@code input} to the token budgets of the current user, before calling the
+     * model. See {@code TokenBudgetService}.
+     *
+     * @throws NuxeoException (status 429) if a budget is exceeded
+     * @since 2023
+     */
+    protected TokenCharge chargeTokenBudget(CharSequence input) {
 
-        if (looksLikeTitan()) {
-            AWSTitan titan = new AWSTitan();
-            return titan.getRequestBody(params);
+        TokenBudgetService budgets = Framework.getService(TokenBudgetService.class);
+        if (budgets == null || input == null) {
+            return TokenCharge.NONE;
         }
+        return budgets.charge(estimateTokens(input));
+    }
+
+    /**
+     * Same as {@link #chargeTokenBudget(CharSequence)}, without blocking the calling thread while waiting for the
+     * budget (see {@code maxWait})
+     *
+     * @return a future completed with the charge, or completed exceptionally (status 429) if a budget is exceeded
+     * @since 2023
+     */
+    protected CompletableFuture<TokenCharge> chargeTokenBudgetAsync(CharSequence input) {
 
-        if (looksLikeClaude()) {
-            AnthropicClaude claude = new AnthropicClaude();
-            return claude.getRequestBody(params);
+        TokenBudgetService budgets = Framework.getService(TokenBudgetService.class);
+        if (budgets == null || input == null) {
+            return CompletableFuture.completedFuture(TokenCharge.NONE);
         }
+        return budgets.chargeAsync(estimateTokens(input));
+    }
 
-        throw new IllegalArgumentException("Model shoud be Titan or Anthropic-Claude, but is " + modelId);
+    /**
+     * Calls {@code call} once {@code estimatedTokens} are charged to the token budgets. The estimation is kept if the
+     * call succeeds, given back if it fails.
+     *
+     * @since 2023
+     */
+    protected <T> T callCharged(int estimatedTokens, Supplier<T> call) {
 
+        TokenBudgetService budgets = Framework.getService(TokenBudgetService.class);
+        TokenCharge charge = budgets == null ? TokenCharge.NONE : budgets.charge(estimatedTokens);
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            charge.cancel();
+            throw e;
+        }
+        charge.complete(-1, -1);
+        return result;
     }
 
-    protected String getStringResultForModel(InvokeModelResponse response) {
+    /**
+     * Builds the prompt (see {@link #run(String, Blob, String)}), then the request for the current model
+     * 
+     * @since 2023
+     */
+    protected InvokeModelRequest buildRequest(String prompt, Blob blob, String insertInPromptReplaceTag) {
+
+        long start = System.nanoTime();
+        CharSequence fullPrompt = prompt;
+        if (blob != null) {
+            String blobText = blobToText(blob);
+            // The extraction has its own metric
+            start = System.nanoTime();
+            if (promptBudgetPolicy == PromptBudgetPolicy.TRUNCATE) {
+                CharSequence instructions = prompt == null ? this.prompt : prompt;
+                int available = getPromptTokenBudget() - estimateTokens(instructions);
+                blobText = truncate(blobText, available);
+            }
+            fullPrompt = assemblePromptText(prompt, blobText, insertInPromptReplaceTag);
+        }
+        if (fullPrompt != null) {
+            this.prompt = fullPrompt;
+        }
+
+        checkPromptBudget();
+
+        InvokeModelRequest request = buildRequest(getRequestBodyBytesForModel());
+        getMetrics().recordRequestBuild(System.nanoTime() - start);
+
+        return request;
+    }
+
+    /**
+     * Builds the body of the request exactly as {@link #run(String, Blob, String)} would send it (prompt assembly,
+     * {@link PromptBudgetPolicy}, model handler), without calling the model. Used to write the records of a batch
+     * inference job, see {@link nuxeo.labs.genai.aws.batch.BatchInputWriter}.
+     *
+     * @since 2023
+     */
+    public SdkBytes buildRequestBody(String prompt, Blob blob, String insertInPromptReplaceTag) {
+        return buildRequest(prompt, blob, insertInPromptReplaceTag).body();
+    }
+
+    /**
+     * One call to the model, with its metrics. The response is parsed once, by {@code handler}, for the text and the
+     * token counts
+     *
+     * @since 2023
+     */
+    protected static ModelResult invokeModel(BedrockRuntimeClient client, InvokeModelRequest request,
+            RequestResponseHandlers handler, BedrockMetrics metrics) {
+
+        long start = System.nanoTime();
+        try {
+            InvokeModelResponse response = client.invokeModel(request);
+            return readResult(metrics, System.nanoTime() - start, response, handler);
+        } catch (RuntimeException e) {
+            metrics.recordError(System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #invokeModel(BedrockRuntimeClient, InvokeModelRequest, RequestResponseHandlers,
+     * BedrockMetrics)}
+     *
+     * @since 2023
+     */
+    protected static CompletableFuture<ModelResult> invokeModel(BedrockRuntimeAsyncClient client,
+            InvokeModelRequest request, RequestResponseHandlers handler, BedrockMetrics metrics) {
+
+        long start = System.nanoTime();
+        return client.invokeModel(request)
+                     .thenApply(response -> readResult(metrics, System.nanoTime() - start, response, handler))
+                     .whenComplete((result, e) -> {
+                         if (e != null) {
+                             metrics.recordError(System.nanoTime() - start, e);
+                         }
+                     });
+    }
+
+    /**
+     * One call to the model, with its metrics. The token counts are read from the Bedrock headers
+     *
+     * @since 2023
+     */
+    protected static InvokeModelResponse invokeModel(BedrockRuntimeClient client, InvokeModelRequest request,
+            BedrockMetrics metrics) {
+
+        long start = System.nanoTime();
+        try {
+            InvokeModelResponse response = client.invokeModel(request);
+            recordSuccess(metrics, System.nanoTime() - start, response);
+            return response;
+        } catch (RuntimeException e) {
+            metrics.recordError(System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Calls the model in {@code region}, through the invoker of this region
+     *
+     * @since 2023
+     */
+    protected InvokeModelResponse invokeModel(Region region, InvokeModelRequest request) {
+
+        BedrockRuntimeClient client = getBedrockRuntime(region);
+        BedrockMetrics metrics = getMetrics(region);
+        return getInvoker(region).call(() -> invokeModel(client, request, metrics));
+    }
+
+    /**
+     * Asynchronous version of {@link #invokeModel(BedrockRuntimeClient, InvokeModelRequest, BedrockMetrics)}
+     *
+     * @since 2023
+     */
+    protected static CompletableFuture<InvokeModelResponse> invokeModel(BedrockRuntimeAsyncClient client,
+            InvokeModelRequest request, BedrockMetrics metrics) {
+
+        long start = System.nanoTime();
+        return client.invokeModel(request).whenComplete((response, e) -> {
+            if (e == null) {
+                recordSuccess(metrics, System.nanoTime() - start, response);
+            } else {
+                metrics.recordError(System.nanoTime() - start, e);
+            }
+        });
+    }
+
+    protected static ModelResult readResult(BedrockMetrics metrics, long nanos, InvokeModelResponse response,
+            RequestResponseHandlers handler) {
+
+        ModelResult result = handler.getResult(response);
+        metrics.recordSuccess(nanos, result.getInputTokenCount(), result.getOutputTokenCount());
+
+        return result;
+    }
+
+    protected static void recordSuccess(BedrockMetrics metrics, long nanos, InvokeModelResponse response) {
+
+        int inputTokens = RequestResponseHandlers.getIntHeader(response,
+                RequestResponseHandlers.INPUT_TOKEN_COUNT_HEADER);
+        int outputTokens = RequestResponseHandlers.getIntHeader(response,
+                RequestResponseHandlers.OUTPUT_TOKEN_COUNT_HEADER);
+        metrics.recordSuccess(nanos, inputTokens, outputTokens);
+    }
+
+    /**
+     * The last chunk of a stream holds the token counts, in {@code amazon-bedrock-invocationMetrics}
+     *
+     * @param tokenCounts updated with the input and output token counts, if found
+     * @since 2023
+     */
+    protected static void readInvocationMetrics(PayloadPart chunk, int[] tokenCounts) {
+
+        try (JsonParser parser = JsonResponses.createObjectParser(chunk.bytes())) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (!INVOCATION_METRICS.equals(name) || token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String metric = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("inputTokenCount".equals(metric)) {
+                        tokenCounts[0] = JsonResponses.getIntValue(parser, -1);
+                    } else if ("outputTokenCount".equals(metric)) {
+                        tokenCounts[1] = JsonResponses.getIntValue(parser, -1);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot parse the response of the model", e);
+        }
+    }
+
+    /**
+     * Adds the text of a blob to the prompt, see {@link #run(String, Blob, String)}
+     *
+     * @param prompt can be {@code null}, the result is then {@code blobText}
+     * @since 2023
+     */
+    public static String assemblePrompt(String prompt, String blobText, String insertInPromptReplaceTag) {
+
+        return assemblePromptText(prompt, blobText, insertInPromptReplaceTag).toString();
+    }
+
+    /**
+     * Same as {@link #assemblePrompt(String, String, String)}, without copying {@code blobText}: the result is a
+     * {@link PromptText} made of the parts of the prompt and the text of the blob
+     *
+     * @since 2023
+     */
+    public static CharSequence assemblePromptText(String prompt, String blobText, String insertInPromptReplaceTag) {
+
+        if(prompt == null) {
+            return blobText;
+        }
+
+        if (StringUtils.isNotBlank(insertInPromptReplaceTag)) {
+            // Same as prompt.replace(insertInPromptReplaceTag, blobText)
+            List<CharSequence> segments = new ArrayList<>();
+            int from = 0;
+            int index;
+            while ((index = prompt.indexOf(insertInPromptReplaceTag, from)) >= 0) {
+                segments.add(prompt.substring(from, index));
+                segments.add(blobText);
+                from = index + insertInPromptReplaceTag.length();
+            }
+            segments.add(prompt.substring(from));
+            return PromptText.of(segments.toArray(CharSequence[]::new));
+        }
+
+        String separator = "";
+        if(!prompt.endsWith("\n\n")) {
+            if(!prompt.endsWith("\n")) {
+                separator = "\n";
+            } else {
+                separator = "\n\n";
+            }
+        }
+
+        return PromptText.of(prompt, separator, blobText);
+    }
+
+    /**
+     * Applies the {@link PromptBudgetPolicy} to the current prompt
+     *
+     * @since 2023
+     */
+    protected void checkPromptBudget() {
+
+        if (promptBudgetPolicy == PromptBudgetPolicy.NONE || prompt == null) {
+            return;
+        }
+
+        int budget = getPromptTokenBudget();
+        if (budget == TokenEstimators.UNKNOWN_CONTEXT_WINDOW) {
+            return;
+        }
+
+        int estimate = estimateTokens(prompt);
+        if (estimate <= budget) {
+            return;
+        }
+
+        if (promptBudgetPolicy == PromptBudgetPolicy.REJECT) {
+            throw new NuxeoException("The prompt is too big for " + modelId + ": ~" + estimate
+                    + " tokens (estimated), max. is " + budget);
+        }
+
+        log.debug("Truncating the prompt for {}: ~{} tokens (estimated), max. is {}", modelId, estimate, budget);
+        prompt = truncate(prompt, budget);
+    }
+
+    protected String truncate(String text, int maxTokens) {
+
+        if (maxTokens <= 0) {
+            return "";
+        }
+
+        int length = getTokenEstimator().prefixLength(text, maxTokens);
+        return length < text.length() ? text.substring(0, length) : text;
+    }
+
+    protected CharSequence truncate(CharSequence text, int maxTokens) {
+
+        if (maxTokens <= 0) {
+            return "";
+        }
+
+        int length = getTokenEstimator().prefixLength(text, maxTokens);
+        return length < text.length() ? text.subSequence(0, length) : text;
+    }
+
+    protected InvokeModelRequest buildRequest(JSONObject requestBody) {
+
+        return buildRequest(SdkBytes.fromUtf8String(requestBody.toString()));
+    }
 
-        if (looksLikeTitan()) {
-            AWSTitan titan = new AWSTitan();
-            return titan.getStringResult(response);
+    protected InvokeModelRequest buildRequest(SdkBytes body) {
+
+        // System.out.println("====================\nINVOKING MODEL " + modelId);
+        return InvokeModelRequest.builder().modelId(modelId).body(body).build();
+    }
+
+    /**
+     * @return the key of the request in the cache of responses, {@code null} if the response must not be cached
+     * @since 2023
+     */
+    protected String getResponseCacheKey(InvokeModelRequest request) {
+
+        if (!isCacheable() || !Framework.getService(BedrockCacheService.class).isResponseCacheEnabled()) {
+            return null;
         }
 
-        if (looksLikeClaude()) {
-            AnthropicClaude claude = new AnthropicClaude();
-            return claude.getStringResult(response);
+        return BedrockCacheService.computeResponseKey(request.modelId(), request.body());
+    }
+
+    /**
+     * @return the key of the request in the single-flight of the responses: same model and body, but also same client
+     *         configuration, endpoint and regions, so a call is never shared with callers using other credentials,
+     *         another account or another region
+     * @since 2023
+     */
+    protected String getSingleFlightKey(InvokeModelRequest request, List<Region> regions) {
+
+        StringBuilder key = new StringBuilder();
+        key.append(BedrockCacheService.computeResponseKey(request.modelId(), request.body()));
+        key.append('|').append(StringUtils.defaultString(clientConfig));
+        key.append('|').append(StringUtils.defaultString(endpoint));
+        regions.forEach(region -> key.append('|').append(region.id()));
+        return key.toString();
+    }
+
+    /**
+     * @return {@code true} if the response can be cached, see {@link #setUseCache(Boolean)}
+     * @since 2023
+     */
+    protected boolean isCacheable() {
+        return useCache == null ? temperature == 0F : useCache.booleanValue();
+    }
+
+    /**
+     * @return the scope of the request in the semantic cache: the model, the parameters and the digest of the blob.
+     *         {@code null} if there is no blob or it has no digest (the request is not cached: without a blob, the
+     *         whole request is the prompt, two similar prompts can be different requests)
+     * @since 2023
+     */
+    protected String getSemanticCacheScope(Blob blob) {
+
+        String digest = blob == null ? null : blob.getDigest();
+        if (StringUtils.isBlank(digest)) {
+            return null;
         }
 
-        throw new IllegalArgumentException("Model shoud be AWS-Titan or Anthropic-Claude. It is " + modelId);
+        return String.join("\n", modelId, digest, String.valueOf(temperature), String.valueOf(topP),
+                String.valueOf(responseMaxTokenCount), String.valueOf(stopSequences));
+    }
+
+    /**
+     * The embedding of the prompt, with the embeddings model of the semantic cache, in the same region and client
+     * configuration as the model
+     *
+     * @return {@code null} if the prompt is empty, too long for the embeddings model, or the embedding failed (the
+     *         model is called as usual)
+     * @since 2023
+     */
+    protected float[] embedForSemanticCache(SemanticCache semanticCache, CharSequence instructions) {
+
+        if (StringUtils.isBlank(instructions)) {
+            return null;
+        }
+
+        InvokeBedrock embedder = new InvokeBedrock();
+        embedder.setModelId(semanticCache.getEmbeddingModelId());
+        embedder.region = region;
+        embedder.clientConfig = clientConfig;
+        embedder.endpoint = endpoint;
+        embedder.setEmbeddingDimensions(semanticCache.getDimensions());
+        int maxTokens = Math.min(TitanEmbeddings.MAX_INPUT_TOKENS, embedder.getPromptTokenBudget());
+        if (embedder.estimateTokens(instructions) > maxTokens) {
+            // embed() would truncate it: prompts differing only after the cut would match
+            log.debug("Prompt too long for the semantic cache");
+            return null;
+        }
+        try {
+            return embedder.embed(instructions);
+        } catch (RuntimeException e) {
+            log.warn("Cannot compute the embedding of the prompt for the semantic cache: {}", e.getMessage());
+            log.debug("Embedding error", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the handler of the current model, see {@link ModelHandlerService}
+     * @throws IllegalArgumentException if the model is not supported
+     * @since 2023
+     */
+    protected RequestResponseHandlers getHandlerForModel() {
+        return Framework.getService(ModelHandlerService.class).getHandler(modelId);
+    }
+
+    protected JSONObject getRequestBodyForModel() {
+
+        RequestParameters params = new RequestParameters(prompt, temperature, topP, responseMaxTokenCount,
+                stopSequences);
+
+        return getHandlerForModel().getRequestBody(params);
+    }
+
+    protected SdkBytes getRequestBodyBytesForModel() {
+
+        RequestParameters params = new RequestParameters(prompt, temperature, topP, responseMaxTokenCount,
+                stopSequences);
+
+        return getHandlerForModel().getRequestBodyBytes(params);
+    }
+
+    protected String getStringResultForModel(InvokeModelResponse response) {
+
+        return getHandlerForModel().getStringResult(response);
     }
 }
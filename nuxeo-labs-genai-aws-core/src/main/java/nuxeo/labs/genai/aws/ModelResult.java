@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws;
+
+/**
+ * What is read from the response of a model: the text, and the token counts when available (from the Bedrock headers
+ * or from the body, depending on the model). See {@link RequestResponseHandlers#getResult}.
+ * 
+ * @since 2023
+ */
+public class ModelResult {
+
+    protected final String text;
+
+    protected final int inputTokenCount;
+
+    protected final int outputTokenCount;
+
+    protected final String stopReason;
+
+    public ModelResult(String text, int inputTokenCount, int outputTokenCount, String stopReason) {
+        this.text = text;
+        this.inputTokenCount = inputTokenCount;
+        this.outputTokenCount = outputTokenCount;
+        this.stopReason = stopReason;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the number of tokens of the prompt, -1 if unknown
+     */
+    public int getInputTokenCount() {
+        return inputTokenCount;
+    }
+
+    /**
+     * @return the number of tokens of the response, -1 if unknown
+     */
+    public int getOutputTokenCount() {
+        return outputTokenCount;
+    }
+
+    /**
+     * @return why the model stopped, as returned by the model ("stop_sequence", "FINISH", ...), null if unknown
+     */
+    public String getStopReason() {
+        return stopReason;
+    }
+
+}
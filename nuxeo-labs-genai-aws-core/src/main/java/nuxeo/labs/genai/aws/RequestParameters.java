@@ -35,7 +35,8 @@ import org.json.JSONObject;
  */
 public class RequestParameters {
 
-    protected String prompt;
+    // Can be a PromptText (see InvokeBedrock#run), not copied to a String when writing the request body
+    protected CharSequence prompt;
 
     public static final float DEFAULT_TEMPERATURE = 0.8F;
 
@@ -52,7 +53,7 @@ public class RequestParameters {
 
     protected ArrayList<String> stopSequences = null;
 
-    public RequestParameters(String prompt, Float temperature, Float topP, Integer responseMaxTokenCount,
+    public RequestParameters(CharSequence prompt, Float temperature, Float topP, Integer responseMaxTokenCount,
             ArrayList<String> stopSequences) {
         super();
 
@@ -115,11 +116,22 @@ public class RequestParameters {
         setStopSequences(list);
     }
 
-    public void setPrompt(String value) {
+    public void setPrompt(CharSequence value) {
         prompt = value;
     }
 
+    /**
+     * Builds the String if the prompt was set as a {@code PromptText}. Use {@link #getPromptText()} to avoid the copy
+     */
     public String getPrompt() {
+        return prompt == null ? null : prompt.toString();
+    }
+
+    /**
+     * @return the prompt, as set
+     * @since 2023
+     */
+    public CharSequence getPromptText() {
         return prompt;
     }
 
@@ -18,9 +18,12 @@
  */
 package nuxeo.labs.genai.aws;
 
+import org.apache.commons.lang3.math.NumberUtils;
 import org.json.JSONObject;
 
+import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.PayloadPart;
 
 /**
  * Formatting the body of a request, and getting the result depending on the mode
@@ -28,19 +31,86 @@ import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
  * @since 2023
  */
 public interface RequestResponseHandlers {
-    
+
+    // Set by Bedrock for all the models
+    public static final String INPUT_TOKEN_COUNT_HEADER = "X-Amzn-Bedrock-Input-Token-Count";
+
+    public static final String OUTPUT_TOKEN_COUNT_HEADER = "X-Amzn-Bedrock-Output-Token-Count";
+
     /**
      * 
      * @return a JSONObject, body to be send along with the @{code InvokeModelRequest}
      * @since 2023
      */
     public JSONObject getRequestBody(RequestParameters params);
+
+    /**
+     * The body of the {@code InvokeModelRequest}, encoded in UTF-8. Default implementation serializes
+     * {@link #getRequestBody(RequestParameters)}. Implementations should write it with
+     * {@link nuxeo.labs.genai.aws.models.JsonRequests}, without building the whole prompt and JSON as Strings.
+     *
+     * @since 2023
+     */
+    public default SdkBytes getRequestBodyBytes(RequestParameters params) {
+        return SdkBytes.fromUtf8String(getRequestBody(params).toString());
+    }
     
+    /**
+     * Reads the text and the token counts from the response. Implementations parse the body in streaming mode (see
+     * {@link nuxeo.labs.genai.aws.models.JsonResponses}) instead of building the whole JSON tree: a long completion
+     * is not held twice in memory.
+     *
+     * @return the {@code ModelResult} read from the @{code InvokeModelResponse}
+     * @since 2023
+     */
+    public ModelResult getResult(InvokeModelResponse response);
+
     /**
      * 
      * @return a String, extracted from the @{code InvokeModelResponse}
      * @since 2023
      */
-    public String getStringResult(InvokeModelResponse response);
+    public default String getStringResult(InvokeModelResponse response) {
+        return getResult(response).getText();
+    }
+
+    /**
+     * @param chunk, a part received when calling the model with {@code InvokeModelWithResponseStream}
+     * @return a String, the text of this chunk (can be empty, if the chunk only holds metadata)
+     * @since 2023
+     */
+    public String getStringChunk(PayloadPart chunk);
+
+    /**
+     * Default implementation reads the header set by Bedrock
+     *
+     * @return the number of tokens of the prompt, -1 if unknown
+     * @since 2023
+     */
+    public default int getInputTokenCount(InvokeModelResponse response) {
+        return getIntHeader(response, INPUT_TOKEN_COUNT_HEADER);
+    }
+
+    /**
+     * Default implementation reads the header set by Bedrock
+     *
+     * @return the number of tokens of the response, -1 if unknown
+     * @since 2023
+     */
+    public default int getOutputTokenCount(InvokeModelResponse response) {
+        return getIntHeader(response, OUTPUT_TOKEN_COUNT_HEADER);
+    }
+
+    public static int getIntHeader(InvokeModelResponse response, String header) {
+
+        if (response.sdkHttpResponse() == null) {
+            return -1;
+        }
+
+        return response.sdkHttpResponse()
+                       .firstMatchingHeader(header)
+                       .map(value -> NumberUtils.toInt(value, -1))
+                       .orElse(-1);
+    }
 
 }
@@ -0,0 +1,98 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.autosummarize;
+
+import static org.nuxeo.ecm.core.api.event.DocumentEventTypes.DOCUMENT_CREATED;
+import static org.nuxeo.ecm.core.api.event.DocumentEventTypes.DOCUMENT_UPDATED;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.model.PropertyNotFoundException;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventBundle;
+import org.nuxeo.ecm.core.event.PostCommitFilteringEventListener;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.lib.stream.computation.StreamManager;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.stream.StreamService;
+
+import nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction;
+import nuxeo.labs.genai.aws.bulk.DocumentSummarizer;
+
+/**
+ * Post-commit listener: appends the documents created or modified with a blob (at the {@code xpath} of the
+ * configuration, default file:content) to the {@value AutoSummarizeProcessor#STREAM_NAME} stream, they are
+ * summarized later by {@link AutoSummarizeProcessor}. Does nothing unless {@code nuxeo.bedrock.autoSummarize.enabled}
+ * is true.
+ * <br>
+ * Documents saved with the summary (see {@link DocumentSummarizer#SUMMARIZED_CONTEXT_DATA}), proxies and versions are
+ * ignored. A document whose blob did not change is appended, but not summarized again.
+ *
+ * @since 2023
+ */
+public class AutoSummarizeListener implements PostCommitFilteringEventListener {
+
+    private static final Logger log = LogManager.getLogger(AutoSummarizeListener.class);
+
+    @Override
+    public boolean acceptEvent(Event event) {
+        String name = event.getName();
+        return (DOCUMENT_CREATED.equals(name) || DOCUMENT_UPDATED.equals(name))
+                && event.getContext() instanceof DocumentEventContext
+                && !Boolean.TRUE.equals(event.getContext().getProperty(DocumentSummarizer.SUMMARIZED_CONTEXT_DATA));
+    }
+
+    @Override
+    public void handleEvent(EventBundle events) {
+
+        if (!AutoSummarizeProcessor.isEnabled()) {
+            return;
+        }
+
+        String xpath = AutoSummarizeProcessor.getParameter(BedrockSummarizeAction.PARAM_XPATH);
+        StreamManager streamManager = Framework.getService(StreamService.class).getStreamManager();
+        Set<String> appended = new HashSet<>();
+        for (Event event : events) {
+            if (!acceptEvent(event)) {
+                continue;
+            }
+            DocumentModel doc = ((DocumentEventContext) event.getContext()).getSourceDocument();
+            if (doc == null || doc.isProxy() || doc.isVersion() || appended.contains(doc.getId())) {
+                continue;
+            }
+            Blob blob;
+            try {
+                blob = (Blob) doc.getPropertyValue(xpath);
+            } catch (PropertyNotFoundException e) {
+                continue;
+            }
+            if (blob != null) {
+                streamManager.append(AutoSummarizeProcessor.STREAM_NAME, AutoSummarizeProcessor.newRecord(doc));
+                appended.add(doc.getId());
+            }
+        }
+        log.debug("Auto-summarize: {} documents appended", appended.size());
+    }
+
+}
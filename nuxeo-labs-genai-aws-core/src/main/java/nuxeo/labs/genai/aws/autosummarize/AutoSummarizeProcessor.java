@@ -0,0 +1,208 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.autosummarize;
+
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.lib.stream.computation.AbstractBatchComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.services.config.ConfigurationService;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction;
+import nuxeo.labs.genai.aws.bulk.DocumentSummarizer;
+import nuxeo.labs.genai.aws.throttling.RateLimiter;
+
+/**
+ * Summarizes the documents whose blob changed, out of the transaction that changed them: {@link AutoSummarizeListener}
+ * appends their ids to the {@value #STREAM_NAME} stream, and this processor reads them by batches (see the
+ * {@code batchCapacity} and {@code batchThreshold} of its policy), summarizes them with {@link DocumentSummarizer}
+ * and stores the summary. The model latency has no impact on the transactions, if the model is slower than the
+ * changes the records wait in the stream.
+ * <br>
+ * Configured with {@code ConfigurationService} properties, {@code nuxeo.bedrock.autoSummarize.*}: {@code enabled}
+ * (default false), {@code maxCallsPerSecond} (per node, default 0 => no limit, read at startup), and the parameters of
+ * the {@code bedrockSummarize} bulk action: {@code targetXpath} (default dc:description), {@code xpath} (default
+ * file:content), {@code modelId}, {@code awsRegion}, {@code clientConfig}, {@code language}, {@code numberOfSentences},
+ * {@code promptTemplate}, {@code modelParams}, {@code maxInFlight}.
+ * <br>
+ * The digest of the summarized blob is kept in the {@value #KV_STORE} KeyValueStore: a document is summarized again
+ * only if its blob changed.
+ *
+ * @since 2023
+ */
+public class AutoSummarizeProcessor implements StreamProcessorTopology {
+
+    private static final Logger log = LogManager.getLogger(AutoSummarizeProcessor.class);
+
+    public static final String STREAM_NAME = "bedrock/autoSummarize";
+
+    public static final String COMPUTATION_NAME = "bedrock/autoSummarize";
+
+    public static final String CONFIG_PREFIX = "nuxeo.bedrock.autoSummarize.";
+
+    public static final String CONFIG_ENABLED = CONFIG_PREFIX + "enabled";
+
+    public static final String CONFIG_MAX_CALLS_PER_SECOND = CONFIG_PREFIX + "maxCallsPerSecond";
+
+    public static final String KV_STORE = "bedrockAutoSummarize";
+
+    // The digest of a document not changed for this long is forgotten
+    public static final long DIGEST_TTL_SECONDS = Duration.ofDays(30).toSeconds();
+
+    public static boolean isEnabled() {
+        return Framework.getService(ConfigurationService.class).isBooleanTrue(CONFIG_ENABLED);
+    }
+
+    /**
+     * @param name a parameter of the {@code bedrockSummarize} bulk action
+     * @return the value of {@code nuxeo.bedrock.autoSummarize.{name}}, {@code null} if not set (except xpath and
+     *         targetXpath, which have a default value)
+     * @since 2023
+     */
+    public static String getParameter(String name) {
+
+        String value = Framework.getService(ConfigurationService.class).getString(CONFIG_PREFIX + name, null);
+        if (StringUtils.isNotBlank(value)) {
+            return value;
+        }
+        switch (name) {
+        case BedrockSummarizeAction.PARAM_XPATH:
+            return "file:content";
+        case BedrockSummarizeAction.PARAM_TARGET_XPATH:
+            return "dc:description";
+        default:
+            return null;
+        }
+    }
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+
+        // One limiter for all the threads of the node
+        double maxCallsPerSecond = Double.parseDouble(
+                Framework.getService(ConfigurationService.class).getString(CONFIG_MAX_CALLS_PER_SECOND, "0"));
+        RateLimiter rateLimiter = maxCallsPerSecond > 0 ? new RateLimiter(maxCallsPerSecond) : null;
+
+        return Topology.builder()
+                       .addComputation(() -> new AutoSummarizeComputation(rateLimiter),
+                               Collections.singletonList(INPUT_1 + ":" + STREAM_NAME))
+                       .build();
+    }
+
+    /**
+     * Record: key is the document id, data is the repository name
+     *
+     * @since 2023
+     */
+    public static Record newRecord(DocumentModel doc) {
+        return Record.of(doc.getId(), doc.getRepositoryName().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static class AutoSummarizeComputation extends AbstractBatchComputation {
+
+        protected final RateLimiter rateLimiter;
+
+        public AutoSummarizeComputation(RateLimiter rateLimiter) {
+            super(COMPUTATION_NAME, 1, 0);
+            this.rateLimiter = rateLimiter;
+        }
+
+        @Override
+        protected void batchProcess(ComputationContext context, String inputStreamName, List<Record> records) {
+
+            if (!isEnabled()) {
+                // Disabled since the records were appended
+                return;
+            }
+
+            // repository => ids, a document modified several times is summarized once
+            Map<String, Set<String>> ids = new LinkedHashMap<>();
+            for (Record record : records) {
+                ids.computeIfAbsent(new String(record.getData(), StandardCharsets.UTF_8), k -> new LinkedHashSet<>())
+                   .add(record.getKey());
+            }
+
+            DocumentSummarizer summarizer = new DocumentSummarizer(AutoSummarizeProcessor::getParameter);
+            summarizer.setRateLimiter(rateLimiter);
+            KeyValueStore digests = Framework.getService(KeyValueService.class).getKeyValueStore(KV_STORE);
+            ids.forEach((repository, docIds) -> TransactionHelper.runInTransaction(
+                    () -> summarize(CoreInstance.getCoreSessionSystem(repository), docIds, summarizer, digests)));
+        }
+
+        protected void summarize(CoreSession session, Set<String> ids, DocumentSummarizer summarizer,
+                KeyValueStore digests) {
+
+            List<DocumentModel> docs = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                IdRef ref = new IdRef(id);
+                // Deleted since
+                if (session.exists(ref)) {
+                    docs.add(session.getDocument(ref));
+                }
+            }
+
+            List<DocumentModel> summarized = summarizer.summarize(session, docs, (doc, blob) -> {
+                String digest = blob.getDigest();
+                return digest == null || !digest.equals(digests.getString(getDigestKey(doc)));
+            });
+            for (DocumentModel doc : summarized) {
+                Blob blob = (Blob) doc.getPropertyValue(summarizer.getXpath());
+                if (blob != null && blob.getDigest() != null) {
+                    digests.put(getDigestKey(doc), blob.getDigest(), DIGEST_TTL_SECONDS);
+                }
+            }
+            log.debug("Auto-summarize: {} documents summarized out of {}", summarized.size(), ids.size());
+        }
+
+        protected static String getDigestKey(DocumentModel doc) {
+            return doc.getRepositoryName() + ":" + doc.getId();
+        }
+
+        @Override
+        public void batchFailure(ComputationContext context, String inputStreamName, List<Record> records) {
+            log.warn("Auto-summarize: cannot process {} documents, skipping them", records.size());
+        }
+    }
+
+}
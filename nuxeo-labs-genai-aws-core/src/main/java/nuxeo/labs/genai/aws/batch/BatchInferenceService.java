@@ -0,0 +1,32 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.batch;
+
+/**
+ * Batch inference: instead of calling the model for each document, the requests are written to a JSONL file (see
+ * {@link BatchInputWriter}), run as one job by the {@link BatchJobClient} contributed to the {@code jobClient}
+ * extension point, and the output is read back record by record (see {@link BatchOutputReader}).
+ *
+ * @since 2023
+ */
+public interface BatchInferenceService {
+
+    public BatchJobClient getJobClient();
+
+}
@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.batch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+/**
+ * @since 2023
+ */
+public class BatchInferenceServiceImpl extends DefaultComponent implements BatchInferenceService {
+
+    private static final Logger log = LogManager.getLogger(BatchInferenceServiceImpl.class);
+
+    public static final String XP_JOB_CLIENT = "jobClient";
+
+    protected BatchJobClient jobClient;
+
+    @Override
+    public void start(ComponentContext context) {
+
+        BatchJobClientDescriptor descriptor = this.<BatchJobClientDescriptor> getRegistryContribution(
+                XP_JOB_CLIENT).orElseGet(BatchJobClientDescriptor::new);
+        try {
+            jobClient = descriptor.getKlass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new NuxeoException("Cannot instantiate the batch job client " + descriptor.getKlass(), e);
+        }
+        jobClient.init(descriptor);
+        log.debug("Bedrock batch job client: {}", descriptor.getKlass().getName());
+    }
+
+    @Override
+    public void stop(ComponentContext context) throws InterruptedException {
+        if (jobClient != null) {
+            jobClient.close();
+            jobClient = null;
+        }
+        super.stop(context);
+    }
+
+    @Override
+    public BatchJobClient getJobClient() {
+        return jobClient;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import software.amazon.awssdk.core.SdkBytes;
+
+/**
+ * Writes the JSONL input file of a batch inference job, one record at a time, to a file {@code Blob}: the records are
+ * not held in memory. The body of each record is built by the model handler, for example with
+ * {@link nuxeo.labs.genai.aws.InvokeBedrock#buildRequestBody(String, Blob, String)}.
+ *
+ * <pre>
+ * try (BatchInputWriter writer = new BatchInputWriter()) {
+ *     for (DocumentModel doc : docs) {
+ *         writer.add(doc.getId(), ibr.buildRequestBody(prompt, (Blob) doc.getPropertyValue("file:content"), null));
+ *     }
+ *     input = writer.getBlob();
+ * }
+ * </pre>
+ *
+ * @since 2023
+ */
+public class BatchInputWriter implements Closeable {
+
+    public static final String JSONL_MIME_TYPE = "application/jsonl";
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected final Blob blob;
+
+    protected final OutputStream out;
+
+    protected int count;
+
+    public BatchInputWriter() {
+        try {
+            blob = Blobs.createBlobWithExtension(".jsonl");
+            out = new BufferedOutputStream(new FileOutputStream(blob.getFile()), BUFFER_SIZE);
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot create the batch input file", e);
+        }
+        blob.setMimeType(JSONL_MIME_TYPE);
+        blob.setEncoding("UTF-8");
+    }
+
+    /**
+     * @param recordId used to match the output with the input, typically the id of a document
+     * @param modelInput the body of the request
+     * @since 2023
+     */
+    public void add(String recordId, SdkBytes modelInput) {
+
+        try {
+            BatchRecord.writeInput(out, recordId, modelInput);
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot write the batch input file", e);
+        }
+        count++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Flushes the records written so far
+     *
+     * @return the JSONL blob
+     * @since 2023
+     */
+    public Blob getBlob() {
+
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot write the batch input file", e);
+        }
+
+        return blob;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.batch;
+
+/**
+ * A batch inference job submitted to a {@link BatchJobClient}. Its state is updated by the client while the job runs.
+ *
+ * @since 2023
+ */
+public class BatchJob {
+
+    public enum Status {
+        SUBMITTED, IN_PROGRESS, COMPLETED, FAILED;
+
+        public boolean isDone() {
+            return this == COMPLETED || this == FAILED;
+        }
+    }
+
+    protected final String id;
+
+    protected final String modelId;
+
+    protected volatile Status status = Status.SUBMITTED;
+
+    protected volatile String message;
+
+    protected volatile int processedCount;
+
+    protected volatile int errorCount;
+
+    public BatchJob(String id, String modelId) {
+        this.id = id;
+        this.modelId = modelId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * @return the reason of the failure, if any
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public int getProcessedCount() {
+        return processedCount;
+    }
+
+    public void setProcessedCount(int processedCount) {
+        this.processedCount = processedCount;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public void setErrorCount(int errorCount) {
+        this.errorCount = errorCount;
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.batch;
+
+import org.nuxeo.ecm.core.api.Blob;
+
+/**
+ * Runs batch inference jobs. Implementations must be thread-safe and have a public no-argument constructor, the
+ * class to use is set in the {@code jobClient} extension point of {@link BatchInferenceService}.
+ * <br>
+ * The input and output are JSONL blobs in the Bedrock batch inference format (see {@link BatchRecord}). An
+ * implementation for Bedrock uploads the input to S3, creates the model invocation job (with the role and the S3
+ * output location of its configuration), and reads the output back from S3.
+ *
+ * @since 2023
+ */
+public interface BatchJobClient {
+
+    /**
+     * Called once, before any other call
+     *
+     * @since 2023
+     */
+    public void init(BatchJobClientDescriptor descriptor);
+
+    /**
+     * @param input the JSONL input, see {@link BatchInputWriter}
+     * @return the job, submitted
+     * @since 2023
+     */
+    public BatchJob submit(String modelId, Blob input);
+
+    /**
+     * @return the job, with its current status, {@code null} if unknown
+     * @since 2023
+     */
+    public BatchJob getJob(String jobId);
+
+    /**
+     * @return the JSONL output of a {@code COMPLETED} job, see {@link BatchOutputReader}. {@code null} if the job is
+     *         not completed
+     * @since 2023
+     */
+    public Blob getOutput(String jobId);
+
+    /**
+     * Called when the component stops
+     *
+     * @since 2023
+     */
+    public default void close() {
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.batch;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.common.xmap.registry.XRegistry;
+
+/**
+ * Configuration of the client running the batch inference jobs, see {@link BatchInferenceService}.
+ *
+ * <pre>
+ * &lt;jobClient&gt;
+ *   &lt;class&gt;nuxeo.labs.genai.aws.batch.LocalBatchJobClient&lt;/class&gt;
+ *   &lt;!-- The Bedrock client configuration, region and endpoint are optional --&gt;
+ *   &lt;clientConfig&gt;default&lt;/clientConfig&gt;
+ *   &lt;region&gt;us-east-1&lt;/region&gt;
+ *   &lt;endpoint&gt;http://localhost:8080&lt;/endpoint&gt;
+ *   &lt;!-- Number of jobs run at the same time --&gt;
+ *   &lt;threads&gt;2&lt;/threads&gt;
+ * &lt;/jobClient&gt;
+ * </pre>
+ *
+ * @since 2023
+ */
+@XObject("jobClient")
+@XRegistry(enable = false)
+public class BatchJobClientDescriptor {
+
+    @XNode("class")
+    protected Class<? extends BatchJobClient> klass = LocalBatchJobClient.class;
+
+    @XNode("clientConfig")
+    protected String clientConfig;
+
+    @XNode("region")
+    protected String region;
+
+    @XNode("endpoint")
+    protected String endpoint;
+
+    @XNode("threads")
+    protected int threads = 2;
+
+    public Class<? extends BatchJobClient> getKlass() {
+        return klass;
+    }
+
+    public String getClientConfig() {
+        return clientConfig;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+}
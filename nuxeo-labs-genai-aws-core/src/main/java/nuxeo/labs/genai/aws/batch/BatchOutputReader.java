@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.batch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+
+/**
+ * Reads the JSONL output file of a batch inference job line by line: only one record is in memory at a time, and its
+ * {@code modelInput} (the prompt) is skipped.
+ *
+ * @since 2023
+ */
+public class BatchOutputReader {
+
+    private BatchOutputReader() {
+        // Utility class
+    }
+
+    /**
+     * @param handler the handler of the model of the job, parses the {@code modelOutput} of each record
+     * @param consumer called for each record, in the order of the file
+     * @return the number of records
+     * @since 2023
+     */
+    public static int read(Blob output, RequestResponseHandlers handler, Consumer<BatchResult> consumer) {
+
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(output.getStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                consumer.accept(toResult(BatchRecord.parse(line, false), handler));
+                count++;
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot read the batch output file", e);
+        }
+
+        return count;
+    }
+
+    protected static BatchResult toResult(BatchRecord record, RequestResponseHandlers handler) {
+
+        if (record.isError()) {
+            String message = StringUtils.defaultIfBlank(record.getErrorMessage(), "No modelOutput");
+            if (record.getErrorCode() > 0) {
+                message = record.getErrorCode() + ": " + message;
+            }
+            return new BatchResult(record.getRecordId(), null, message);
+        }
+
+        InvokeModelResponse response = InvokeModelResponse.builder().body(record.getModelOutput()).build();
+        try {
+            return new BatchResult(record.getRecordId(), handler.getResult(response), null);
+        } catch (NuxeoException e) {
+            return new BatchResult(record.getRecordId(), null, e.getMessage());
+        }
+    }
+
+}
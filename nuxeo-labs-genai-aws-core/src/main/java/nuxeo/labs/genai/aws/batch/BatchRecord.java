@@ -0,0 +1,248 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import nuxeo.labs.genai.aws.models.JsonResponses;
+import software.amazon.awssdk.core.SdkBytes;
+
+/**
+ * One line of a batch inference JSONL file, in the Bedrock format:
+ *
+ * <pre>
+ * {"recordId": "...", "modelInput": {...the body of an InvokeModel request...}}
+ * </pre>
+ *
+ * In the output file, the line also has the body of the response, {@code "modelOutput": {...}}, or
+ * {@code "error": {"errorCode": 400, "errorMessage": "..."}}.
+ *
+ * @since 2023
+ */
+public class BatchRecord {
+
+    protected static final byte[] RECORD_ID = "{\"recordId\":".getBytes(StandardCharsets.UTF_8);
+
+    protected static final byte[] MODEL_INPUT = ",\"modelInput\":".getBytes(StandardCharsets.UTF_8);
+
+    protected static final byte[] MODEL_OUTPUT = ",\"modelOutput\":".getBytes(StandardCharsets.UTF_8);
+
+    protected static final byte[] ERROR_CODE = ",\"error\":{\"errorCode\":".getBytes(StandardCharsets.UTF_8);
+
+    protected static final byte[] ERROR_MESSAGE = ",\"errorMessage\":".getBytes(StandardCharsets.UTF_8);
+
+    protected static final byte[] END = "}\n".getBytes(StandardCharsets.UTF_8);
+
+    protected String recordId;
+
+    protected SdkBytes modelInput;
+
+    protected SdkBytes modelOutput;
+
+    protected int errorCode;
+
+    protected String errorMessage;
+
+    public String getRecordId() {
+        return recordId;
+    }
+
+    /**
+     * @return the body of the request, {@code null} if not read (see {@link #parse(String, boolean)})
+     */
+    public SdkBytes getModelInput() {
+        return modelInput;
+    }
+
+    /**
+     * @return the body of the response, {@code null} if the record failed
+     */
+    public SdkBytes getModelOutput() {
+        return modelOutput;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public boolean isError() {
+        return modelOutput == null;
+    }
+
+    /**
+     * Writes a line of the input file. {@code modelInput} is copied as is, it must be a JSON object on one line (as
+     * the bodies built by the model handlers, where line breaks are escaped).
+     *
+     * @since 2023
+     */
+    public static void writeInput(OutputStream out, String recordId, SdkBytes modelInput) throws IOException {
+
+        out.write(RECORD_ID);
+        writeString(out, recordId);
+        out.write(MODEL_INPUT);
+        writeBytes(out, modelInput);
+        out.write(END);
+    }
+
+    /**
+     * Writes a line of the output file, with the response of the model
+     *
+     * @since 2023
+     */
+    public static void writeOutput(OutputStream out, String recordId, SdkBytes modelInput, SdkBytes modelOutput)
+            throws IOException {
+
+        out.write(RECORD_ID);
+        writeString(out, recordId);
+        out.write(MODEL_INPUT);
+        writeBytes(out, modelInput);
+        out.write(MODEL_OUTPUT);
+        writeBytes(out, modelOutput);
+        out.write(END);
+    }
+
+    /**
+     * Writes a line of the output file, for a failed record
+     *
+     * @since 2023
+     */
+    public static void writeError(OutputStream out, String recordId, SdkBytes modelInput, int errorCode,
+            String errorMessage) throws IOException {
+
+        out.write(RECORD_ID);
+        writeString(out, recordId);
+        out.write(MODEL_INPUT);
+        writeBytes(out, modelInput);
+        out.write(ERROR_CODE);
+        out.write(Integer.toString(errorCode).getBytes(StandardCharsets.UTF_8));
+        out.write(ERROR_MESSAGE);
+        writeString(out, errorMessage == null ? "" : errorMessage);
+        out.write(END);
+    }
+
+    // The request bodies wrap a part of a larger buffer (see JsonRequests): asByteArrayUnsafe() would copy them
+    protected static void writeBytes(OutputStream out, SdkBytes bytes) throws IOException {
+        bytes.asInputStream().transferTo(out);
+    }
+
+    protected static void writeString(OutputStream out, String value) throws IOException {
+        out.write('"');
+        out.write(JsonStringEncoder.getInstance().quoteAsUTF8(value));
+        out.write('"');
+    }
+
+    /**
+     * @param withInput if false, the {@code modelInput} is skipped (it is not needed to read the output, and it holds
+     *            the whole prompt)
+     * @return the record read from one line of a JSONL file
+     * @since 2023
+     */
+    public static BatchRecord parse(String line, boolean withInput) {
+
+        BatchRecord record = new BatchRecord();
+        try (JsonParser parser = JsonResponses.JSON_FACTORY.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new NuxeoException("A batch record must be a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (name) {
+                case "recordId":
+                    record.recordId = parser.getValueAsString();
+                    break;
+                case "modelInput":
+                    if (withInput && token == JsonToken.START_OBJECT) {
+                        record.modelInput = copyObject(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "modelOutput":
+                    if (token == JsonToken.START_OBJECT) {
+                        record.modelOutput = copyObject(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "error":
+                    if (token == JsonToken.START_OBJECT) {
+                        readError(parser, record);
+                    } else {
+                        record.errorMessage = parser.getValueAsString();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot parse the batch record", e);
+        }
+
+        if (record.recordId == null) {
+            throw new NuxeoException("No recordId in the batch record");
+        }
+
+        return record;
+    }
+
+    protected static void readError(JsonParser parser, BatchRecord record) throws IOException {
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("errorCode".equals(name)) {
+                record.errorCode = JsonResponses.getIntValue(parser, 0);
+            } else if ("errorMessage".equals(name)) {
+                record.errorMessage = JsonResponses.getStringValue(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // The parser is on the start of the object
+    protected static SdkBytes copyObject(JsonParser parser) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JsonResponses.JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.copyCurrentStructure(parser);
+        }
+
+        return SdkBytes.fromByteArrayUnsafe(out.toByteArray());
+    }
+
+}
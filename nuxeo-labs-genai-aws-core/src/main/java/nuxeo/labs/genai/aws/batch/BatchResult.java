@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.batch;
+
+import nuxeo.labs.genai.aws.ModelResult;
+
+/**
+ * The result of one record of a batch inference job, see {@link BatchOutputReader}
+ *
+ * @since 2023
+ */
+public class BatchResult {
+
+    protected final String recordId;
+
+    protected final ModelResult result;
+
+    protected final String errorMessage;
+
+    public BatchResult(String recordId, ModelResult result, String errorMessage) {
+        this.recordId = recordId;
+        this.result = result;
+        this.errorMessage = errorMessage;
+    }
+
+    public String getRecordId() {
+        return recordId;
+    }
+
+    /**
+     * @return the result, {@code null} if the record failed
+     */
+    public ModelResult getResult() {
+        return result;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public boolean isError() {
+        return result == null;
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.labs.genai.aws.client.BedrockClientService;
+import nuxeo.labs.genai.aws.throttling.ThrottledInvoker;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+
+/**
+ * Runs the batch jobs in this JVM: the records are read from the input file one by one, sent with
+ * {@code InvokeModel} (through the invoker of the model, so limited and retried if throttled), and the responses are
+ * written to the output file as they are received. Used for tests (with a stand-in of Bedrock, see the
+ * {@code endpoint} of the configuration), for development, and where the Bedrock batch API is not available.
+ * <br>
+ * Jobs are kept in memory, they are lost when the server stops.
+ *
+ * @since 2023
+ */
+public class LocalBatchJobClient implements BatchJobClient {
+
+    private static final Logger log = LogManager.getLogger(LocalBatchJobClient.class);
+
+    protected static final SdkBytes EMPTY_INPUT = SdkBytes.fromUtf8String("{}");
+
+    protected String clientConfig;
+
+    protected Region region;
+
+    protected volatile String endpoint;
+
+    protected ExecutorService executor;
+
+    protected final Map<String, BatchJob> jobs = new ConcurrentHashMap<>();
+
+    protected final Map<String, Blob> outputs = new ConcurrentHashMap<>();
+
+    @Override
+    public void init(BatchJobClientDescriptor descriptor) {
+
+        clientConfig = descriptor.getClientConfig();
+        region = StringUtils.isBlank(descriptor.getRegion()) ? null : Region.of(descriptor.getRegion());
+        endpoint = descriptor.getEndpoint();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(descriptor.getThreads(), 1), runnable -> {
+            Thread thread = new Thread(runnable, "bedrock-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Overrides the endpoint of the configuration, for the jobs submitted after the call
+     *
+     * @since 2023
+     */
+    public void setEndpoint(String value) {
+        endpoint = value;
+    }
+
+    @Override
+    public BatchJob submit(String modelId, Blob input) {
+
+        BatchJob job = new BatchJob(UUID.randomUUID().toString(), modelId);
+        jobs.put(job.getId(), job);
+        String jobEndpoint = endpoint;
+        executor.execute(() -> run(job, input, jobEndpoint));
+
+        return job;
+    }
+
+    @Override
+    public BatchJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    @Override
+    public Blob getOutput(String jobId) {
+        return outputs.get(jobId);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        jobs.clear();
+        outputs.clear();
+    }
+
+    protected void run(BatchJob job, Blob input, String jobEndpoint) {
+
+        job.setStatus(BatchJob.Status.IN_PROGRESS);
+        BedrockClientService clients = Framework.getService(BedrockClientService.class);
+        BedrockRuntimeClient client = clients.getClient(clientConfig, region, jobEndpoint);
+        ThrottledInvoker invoker = clients.getInvoker(clientConfig, region, job.getModelId());
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(input.getStream(), StandardCharsets.UTF_8))) {
+            Blob output = Blobs.createBlobWithExtension(".jsonl");
+            output.setMimeType(BatchInputWriter.JSONL_MIME_TYPE);
+            output.setEncoding("UTF-8");
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output.getFile()),
+                    BatchInputWriter.BUFFER_SIZE)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (StringUtils.isBlank(line)) {
+                        continue;
+                    }
+                    runRecord(job, BatchRecord.parse(line, true), client, invoker, out);
+                    job.setProcessedCount(job.getProcessedCount() + 1);
+                }
+            }
+            outputs.put(job.getId(), output);
+            job.setStatus(BatchJob.Status.COMPLETED);
+            log.debug("Batch job {}: {} records, {} errors", job.getId(), job.getProcessedCount(),
+                    job.getErrorCount());
+        } catch (IOException | RuntimeException e) {
+            log.error("Batch job {} failed", job.getId(), e);
+            job.setMessage(e.getMessage());
+            job.setStatus(BatchJob.Status.FAILED);
+        }
+    }
+
+    protected void runRecord(BatchJob job, BatchRecord record, BedrockRuntimeClient client,
+            ThrottledInvoker invoker, OutputStream out) throws IOException {
+
+        SdkBytes modelInput = record.getModelInput();
+        if (modelInput == null) {
+            job.setErrorCount(job.getErrorCount() + 1);
+            BatchRecord.writeError(out, record.getRecordId(), EMPTY_INPUT, 400, "No modelInput");
+            return;
+        }
+
+        InvokeModelRequest request = InvokeModelRequest.builder()
+                                                        .modelId(job.getModelId())
+                                                        .body(modelInput)
+                                                        .build();
+        try {
+            InvokeModelResponse response = invoker.call(() -> client.invokeModel(request));
+            BatchRecord.writeOutput(out, record.getRecordId(), modelInput, response.body());
+        } catch (AwsServiceException e) {
+            job.setErrorCount(job.getErrorCount() + 1);
+            BatchRecord.writeError(out, record.getRecordId(), modelInput, e.statusCode(), e.getMessage());
+        } catch (SdkException e) {
+            job.setErrorCount(job.getErrorCount() + 1);
+            BatchRecord.writeError(out, record.getRecordId(), modelInput, 0, e.getMessage());
+        }
+    }
+
+}
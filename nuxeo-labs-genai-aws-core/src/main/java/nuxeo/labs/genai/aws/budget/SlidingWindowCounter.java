@@ -0,0 +1,93 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.budget;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sum of the values added during the last {@code window} milliseconds, lock-free: the window is split in
+ * {@code buckets} buckets, each a {@link LongAdder}, so concurrent additions do not contend. A bucket is reset when
+ * it is reused for a new period, and the sum is precise to one bucket.
+ * <br>
+ * A value added while its bucket is being reset may be lost: this is meant for accounting, not for exact counts.
+ *
+ * @since 2023
+ */
+public class SlidingWindowCounter {
+
+    protected final long bucketMillis;
+
+    protected final LongAdder[] adders;
+
+    // Period (time / bucketMillis) of each bucket
+    protected final AtomicLongArray periods;
+
+    public SlidingWindowCounter(long windowMillis, int buckets) {
+        if (buckets <= 0 || windowMillis < buckets) {
+            throw new IllegalArgumentException("Invalid window: " + windowMillis + "ms, " + buckets + " buckets");
+        }
+        bucketMillis = windowMillis / buckets;
+        adders = new LongAdder[buckets];
+        periods = new AtomicLongArray(buckets);
+        for (int i = 0; i < buckets; i++) {
+            adders[i] = new LongAdder();
+            periods.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * @return the period of {@code nowMillis}, the buckets of the window are the ones of the last periods
+     */
+    public long getPeriod(long nowMillis) {
+        return nowMillis / bucketMillis;
+    }
+
+    /**
+     * @param value can be negative
+     */
+    public void add(long value, long nowMillis) {
+
+        long period = getPeriod(nowMillis);
+        int index = (int) Math.floorMod(period, (long) adders.length);
+        long current = periods.get(index);
+        if (current < period && periods.compareAndSet(index, current, period)) {
+            adders[index].reset();
+        }
+        adders[index].add(value);
+    }
+
+    public long sum(long nowMillis) {
+
+        long period = getPeriod(nowMillis);
+        long sum = 0;
+        for (int i = 0; i < adders.length; i++) {
+            long bucketPeriod = periods.get(i);
+            if (bucketPeriod > period - adders.length && bucketPeriod <= period) {
+                sum += adders[i].sum();
+            }
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.budget;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+/**
+ * The tokens used per user (or per tenant) during the last {@code window}, see {@link TokenBudgetDescriptor}. The
+ * tokens are counted locally with a {@link SlidingWindowCounter} per user, no lock.
+ * <br>
+ * With a {@code keyValueStore}, the counts of all the nodes are aggregated: each node adds what it counted since the
+ * previous flush to a key per user and per bucket (expiring after the window) in the store, every
+ * {@code flushInterval}, and reads the total of the buckets of the window. The usage of a user is then the total of
+ * the cluster at the last flush plus what this node counted since. A user can exceed its budget by what the other
+ * nodes counted during one {@code flushInterval}.
+ *
+ * @since 2023
+ */
+public class TokenBudget {
+
+    public static final String KEY_PREFIX = "bedrock:budget:";
+
+    public static final int SC_TOO_MANY_REQUESTS = 429;
+
+    protected final String name;
+
+    protected final String scope;
+
+    protected final long maxTokens;
+
+    protected final long windowMillis;
+
+    protected final int buckets;
+
+    protected final long maxWaitMillis;
+
+    // null => not aggregated
+    protected final String storeName;
+
+    protected final long ttlSeconds;
+
+    protected final LongSupplier clock;
+
+    protected final Map<String, Usage> usages = new ConcurrentHashMap<>();
+
+    public TokenBudget(TokenBudgetDescriptor descriptor) {
+        this(descriptor, System::currentTimeMillis);
+    }
+
+    public TokenBudget(TokenBudgetDescriptor descriptor, LongSupplier clock) {
+        if (descriptor.getMaxTokens() <= 0) {
+            throw new IllegalArgumentException("maxTokens must be > 0 for the token budget " + descriptor.getName());
+        }
+        if (!TokenBudgetDescriptor.SCOPE_USER.equals(descriptor.getScope())
+                && !TokenBudgetDescriptor.SCOPE_TENANT.equals(descriptor.getScope())) {
+            throw new IllegalArgumentException(
+                    "Invalid scope for the token budget " + descriptor.getName() + ": " + descriptor.getScope());
+        }
+        name = descriptor.getName();
+        scope = descriptor.getScope();
+        maxTokens = descriptor.getMaxTokens();
+        windowMillis = descriptor.getWindow().toMillis();
+        buckets = descriptor.getBuckets();
+        maxWaitMillis = descriptor.getMaxWait().toMillis();
+        storeName = StringUtils.trimToNull(descriptor.getKeyValueStore());
+        ttlSeconds = TimeUnit.MILLISECONDS.toSeconds(windowMillis + windowMillis / buckets) + 1;
+        this.clock = clock;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * @return the user (the acting user for a system principal) or the tenant of {@code principal}, depending on the
+     *         scope. {@code null} if there is none, then the budget does not apply
+     */
+    public String getKey(NuxeoPrincipal principal) {
+
+        if (TokenBudgetDescriptor.SCOPE_TENANT.equals(scope)) {
+            return StringUtils.trimToNull(principal.getTenantId());
+        }
+        return principal.getActingUser();
+    }
+
+    /**
+     * @return the tokens used by {@code key} during the window
+     */
+    public long getUsage(String key) {
+        Usage usage = usages.get(key);
+        return usage == null ? 0 : usage.get();
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Adds {@code tokens} to the usage of {@code key}. If this exceeds the budget, waits up to {@code maxWait} for
+     * tokens to leave the window.
+     *
+     * @throws NuxeoException (429) if over budget
+     */
+    protected Usage charge(String key, long tokens) {
+
+        long deadline = clock.getAsLong() + maxWaitMillis;
+        while (true) {
+            Usage usage = tryCharge(key, tokens);
+            if (usage != null) {
+                return usage;
+            }
+            long remaining = deadline - clock.getAsLong();
+            if (remaining <= 0) {
+                throw newExceededException(key, tokens);
+            }
+            try {
+                Thread.sleep(getRetryDelay(remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException(e);
+            }
+        }
+    }
+
+    /**
+     * Adds {@code tokens} to the usage of {@code key}, without waiting
+     *
+     * @return the usage, {@code null} if over budget (nothing is charged then)
+     */
+    protected Usage tryCharge(String key, long tokens) {
+
+        while (true) {
+            Usage usage = usages.computeIfAbsent(key, Usage::new);
+            // Optimistic: added then removed if over budget, so concurrent callers do not pass together
+            usage.add(tokens);
+            if (usage.detached) {
+                // Being removed by flush(), charge the new one
+                usage.add(-tokens);
+                continue;
+            }
+            if (usage.get() <= maxTokens) {
+                return usage;
+            }
+            usage.add(-tokens);
+            return null;
+        }
+    }
+
+    /**
+     * @return how long to wait before charging again when over budget, at most {@code remaining}
+     */
+    protected long getRetryDelay(long remaining) {
+        return Math.min(remaining, Math.min(windowMillis / buckets, 1000));
+    }
+
+    protected NuxeoException newExceededException(String key, long tokens) {
+        return new NuxeoException(String.format(
+                "Token budget %s exceeded for %s: %d tokens used in the last %ds, %d more requested, max. is %d", name,
+                key, getUsage(key), TimeUnit.MILLISECONDS.toSeconds(windowMillis), tokens, maxTokens),
+                SC_TOO_MANY_REQUESTS);
+    }
+
+    /**
+     * Sends the tokens counted since the previous flush to the {@code KeyValueStore} (if any), reads the total of the
+     * cluster, and forgets the users who used no tokens during the window.
+     */
+    public void flush() {
+
+        KeyValueStore store = storeName == null ? null
+                : Framework.getService(KeyValueService.class).getKeyValueStore(storeName);
+        long now = clock.getAsLong();
+        for (Usage usage : usages.values()) {
+            if (store != null) {
+                long period = usage.local.getPeriod(now);
+                long delta = usage.unflushed.sumThenReset();
+                if (delta != 0) {
+                    String bucketKey = getBucketKey(usage.key, period);
+                    store.addAndGet(bucketKey, delta);
+                    store.setTTL(bucketKey, ttlSeconds);
+                }
+                usage.cluster = readCluster(store, usage.key, period);
+            }
+            if (usage.isIdle(now)) {
+                // A charge may have got it in the meantime: detached first, then checked again, so a concurrent
+                // charge is either seen here or sees it detached and is retried on a new one, see charge()
+                usages.computeIfPresent(usage.key, (k, current) -> {
+                    if (current != usage) {
+                        return current;
+                    }
+                    usage.detached = true;
+                    if (!usage.isIdle(clock.getAsLong())) {
+                        usage.detached = false;
+                        return current;
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    protected String getBucketKey(String key, long period) {
+        return KEY_PREFIX + name + ":" + key + ":" + period;
+    }
+
+    protected long readCluster(KeyValueStore store, String key, long period) {
+
+        List<String> keys = new ArrayList<>(buckets);
+        for (long p = period - buckets + 1; p <= period; p++) {
+            keys.add(getBucketKey(key, p));
+        }
+        long total = 0;
+        for (Long value : store.getLongs(keys).values()) {
+            if (value != null) {
+                total += value.longValue();
+            }
+        }
+        return total;
+    }
+
+    protected class Usage {
+
+        protected final String key;
+
+        protected final SlidingWindowCounter local;
+
+        // Counted since the last flush to the KeyValueStore
+        protected final LongAdder unflushed = new LongAdder();
+
+        // Total of the cluster at the last flush
+        protected volatile long cluster;
+
+        // Removed from the usages by flush(), not charged anymore
+        protected volatile boolean detached;
+
+        protected Usage(String key) {
+            this.key = key;
+            local = new SlidingWindowCounter(windowMillis, buckets);
+            if (storeName != null) {
+                KeyValueStore store = Framework.getService(KeyValueService.class).getKeyValueStore(storeName);
+                cluster = readCluster(store, key, local.getPeriod(clock.getAsLong()));
+            }
+        }
+
+        protected void add(long tokens) {
+            local.add(tokens, clock.getAsLong());
+            if (storeName != null) {
+                unflushed.add(tokens);
+            }
+        }
+
+        protected long get() {
+            return storeName != null ? cluster + unflushed.sum() : local.sum(clock.getAsLong());
+        }
+
+        /**
+         * @return {@code true} if no tokens were used during the whole window
+         */
+        protected boolean isIdle(long now) {
+            return local.sum(now) == 0 && unflushed.sum() == 0 && cluster == 0;
+        }
+    }
+
+}
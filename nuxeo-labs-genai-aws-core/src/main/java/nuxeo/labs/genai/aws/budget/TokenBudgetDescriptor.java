@@ -0,0 +1,122 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.budget;
+
+import java.time.Duration;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.common.xmap.registry.XRegistry;
+import org.nuxeo.common.xmap.registry.XRegistryId;
+
+/**
+ * A token budget, contributed to the {@code tokenBudgets} extension point of {@link TokenBudgetService}:
+ *
+ * <pre>
+ * &lt;budget name="perUser" enabled="true"&gt;
+ *   &lt;!-- user or tenant --&gt;
+ *   &lt;scope&gt;user&lt;/scope&gt;
+ *   &lt;maxTokens&gt;500000&lt;/maxTokens&gt;
+ *   &lt;window&gt;1h&lt;/window&gt;
+ *   &lt;buckets&gt;12&lt;/buckets&gt;
+ *   &lt;!-- 0 =&gt; rejected right away when over budget --&gt;
+ *   &lt;maxWait&gt;0s&lt;/maxWait&gt;
+ *   &lt;!-- Empty =&gt; counted on this node only --&gt;
+ *   &lt;keyValueStore&gt;bedrockTokenBudgets&lt;/keyValueStore&gt;
+ *   &lt;flushInterval&gt;5s&lt;/flushInterval&gt;
+ * &lt;/budget&gt;
+ * </pre>
+ *
+ * @since 2023
+ */
+@XObject("budget")
+@XRegistry(enable = false)
+public class TokenBudgetDescriptor {
+
+    public static final String SCOPE_USER = "user";
+
+    public static final String SCOPE_TENANT = "tenant";
+
+    public static final String DEFAULT_KEY_VALUE_STORE = "bedrockTokenBudgets";
+
+    @XNode("@name")
+    @XRegistryId
+    protected String name;
+
+    @XNode("@enabled")
+    protected boolean enabled = true;
+
+    @XNode("scope")
+    protected String scope = SCOPE_USER;
+
+    @XNode("maxTokens")
+    protected long maxTokens;
+
+    @XNode("window")
+    protected Duration window = Duration.ofHours(1);
+
+    @XNode("buckets")
+    protected int buckets = 12;
+
+    @XNode("maxWait")
+    protected Duration maxWait = Duration.ZERO;
+
+    @XNode("keyValueStore")
+    protected String keyValueStore = DEFAULT_KEY_VALUE_STORE;
+
+    @XNode("flushInterval")
+    protected Duration flushInterval = Duration.ofSeconds(5);
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public long getMaxTokens() {
+        return maxTokens;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public String getKeyValueStore() {
+        return keyValueStore;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+}
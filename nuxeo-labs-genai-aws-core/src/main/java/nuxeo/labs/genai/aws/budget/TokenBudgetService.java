@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.budget;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+
+/**
+ * Limits the tokens used per user and per tenant over a sliding window, so a few users cannot use the whole Bedrock
+ * quota of the account. The budgets are contributed to the {@code tokenBudgets} extension point (see
+ * {@link TokenBudgetDescriptor}), none is enabled by default.
+ * <br>
+ * {@code InvokeBedrock} charges the estimated tokens of the prompt before calling the model, so a request over
+ * budget is rejected (or waits, see {@code maxWait}) without any network call, then replaces the estimation with the
+ * counts returned by Bedrock. Responses from the caches cost nothing, a caller sharing the call of another one
+ * (see {@code InvokeBedrock#setCoalesce}) is charged as if it had made it.
+ * <br>
+ * Calls made without a user (system code, bulk actions) are not limited.
+ *
+ * @since 2023
+ */
+public interface TokenBudgetService {
+
+    /**
+     * Same as {@link #charge(NuxeoPrincipal, long)} for the current principal
+     *
+     * @since 2023
+     */
+    public TokenCharge charge(long estimatedTokens);
+
+    /**
+     * Charges {@code estimatedTokens} to all the budgets of {@code principal}
+     *
+     * @return the charge, to complete or cancel once the model has answered. {@link TokenCharge#NONE} if no budget
+     *         applies
+     * @throws org.nuxeo.ecm.core.api.NuxeoException (status 429) if a budget is exceeded. Nothing is charged then
+     * @since 2023
+     */
+    public TokenCharge charge(NuxeoPrincipal principal, long estimatedTokens);
+
+    /**
+     * Same as {@link #chargeAsync(NuxeoPrincipal, long)} for the current principal
+     *
+     * @since 2023
+     */
+    public CompletableFuture<TokenCharge> chargeAsync(long estimatedTokens);
+
+    /**
+     * Same as {@link #charge(NuxeoPrincipal, long)}, without blocking the calling thread: when over a budget with a
+     * {@code maxWait}, the charge is attempted again later in another thread, until it passes or {@code maxWait} has
+     * elapsed.
+     *
+     * @return a future completed with the charge, or completed exceptionally with a
+     *         {@link org.nuxeo.ecm.core.api.NuxeoException} (status 429) if a budget is exceeded
+     * @since 2023
+     */
+    public CompletableFuture<TokenCharge> chargeAsync(NuxeoPrincipal principal, long estimatedTokens);
+
+    /**
+     * @param key the user name or the tenant id, depending on the scope of the budget
+     * @return the tokens used during the window of the budget (0 if the budget does not exist)
+     * @since 2023
+     */
+    public long getUsage(String budgetName, String key);
+
+    /**
+     * @return the names of the enabled budgets
+     * @since 2023
+     */
+    public List<String> getBudgetNames();
+
+    /**
+     * Aggregates the counts of the cluster now, instead of waiting for the next {@code flushInterval}
+     *
+     * @since 2023
+     */
+    public void flush();
+
+}
@@ -0,0 +1,203 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.budget;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+/**
+ * @since 2023
+ */
+public class TokenBudgetServiceImpl extends DefaultComponent implements TokenBudgetService {
+
+    private static final Logger log = LogManager.getLogger(TokenBudgetServiceImpl.class);
+
+    public static final String XP_TOKEN_BUDGETS = "tokenBudgets";
+
+    protected volatile Map<String, TokenBudget> budgets = Collections.emptyMap();
+
+    protected ScheduledExecutorService flusher;
+
+    @Override
+    public void start(ComponentContext context) {
+
+        List<TokenBudgetDescriptor> descriptors = new ArrayList<>();
+        Map<String, TokenBudget> enabled = new LinkedHashMap<>();
+        for (TokenBudgetDescriptor descriptor : this.<TokenBudgetDescriptor> getRegistryContributions(
+                XP_TOKEN_BUDGETS)) {
+            if (descriptor.isEnabled()) {
+                descriptors.add(descriptor);
+                enabled.put(descriptor.getName(), new TokenBudget(descriptor));
+            }
+        }
+        budgets = Collections.unmodifiableMap(enabled);
+        if (enabled.isEmpty()) {
+            return;
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bedrock-token-budgets");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (TokenBudgetDescriptor descriptor : descriptors) {
+            TokenBudget budget = enabled.get(descriptor.getName());
+            long interval = Math.max(descriptor.getFlushInterval().toMillis(), 100);
+            flusher.scheduleWithFixedDelay(() -> flush(budget), interval, interval, TimeUnit.MILLISECONDS);
+            log.debug("Token budget {}: {} tokens per {} and {}", descriptor.getName(), descriptor.getMaxTokens(),
+                    descriptor.getScope(), descriptor.getWindow());
+        }
+    }
+
+    @Override
+    public void stop(ComponentContext context) throws InterruptedException {
+
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+        budgets = Collections.emptyMap();
+        super.stop(context);
+    }
+
+    protected void flush(TokenBudget budget) {
+        try {
+            budget.flush();
+        } catch (RuntimeException e) {
+            // Else the task is not scheduled anymore
+            log.error("Cannot flush the token budget {}", budget.getName(), e);
+        }
+    }
+
+    @Override
+    public TokenCharge charge(long estimatedTokens) {
+        return charge(NuxeoPrincipal.getCurrent(), estimatedTokens);
+    }
+
+    @Override
+    public TokenCharge charge(NuxeoPrincipal principal, long estimatedTokens) {
+
+        Map<String, TokenBudget> current = budgets;
+        if (current.isEmpty() || principal == null
+                || SecurityConstants.SYSTEM_USERNAME.equals(principal.getActingUser())) {
+            return TokenCharge.NONE;
+        }
+
+        List<TokenBudget.Usage> usages = new ArrayList<>(current.size());
+        try {
+            for (TokenBudget budget : current.values()) {
+                String key = budget.getKey(principal);
+                if (key != null) {
+                    usages.add(budget.charge(key, estimatedTokens));
+                }
+            }
+        } catch (NuxeoException e) {
+            usages.forEach(usage -> usage.add(-estimatedTokens));
+            throw e;
+        }
+
+        return usages.isEmpty() ? TokenCharge.NONE : new TokenCharge(usages, estimatedTokens);
+    }
+
+    @Override
+    public CompletableFuture<TokenCharge> chargeAsync(long estimatedTokens) {
+        return chargeAsync(NuxeoPrincipal.getCurrent(), estimatedTokens);
+    }
+
+    @Override
+    public CompletableFuture<TokenCharge> chargeAsync(NuxeoPrincipal principal, long estimatedTokens) {
+
+        Map<String, TokenBudget> current = budgets;
+        if (current.isEmpty() || principal == null
+                || SecurityConstants.SYSTEM_USERNAME.equals(principal.getActingUser())) {
+            return CompletableFuture.completedFuture(TokenCharge.NONE);
+        }
+
+        CompletableFuture<TokenCharge> result = new CompletableFuture<>();
+        tryCharge(current, principal, estimatedTokens, System.currentTimeMillis(), result);
+        return result;
+    }
+
+    /**
+     * Charges all the budgets without waiting. If one is exceeded, nothing is charged and the attempt is scheduled
+     * again (see {@link CompletableFuture#delayedExecutor}) until its {@code maxWait} has elapsed since {@code start}
+     */
+    protected void tryCharge(Map<String, TokenBudget> current, NuxeoPrincipal principal, long estimatedTokens,
+            long start, CompletableFuture<TokenCharge> result) {
+
+        List<TokenBudget.Usage> usages = new ArrayList<>(current.size());
+        for (TokenBudget budget : current.values()) {
+            String key = budget.getKey(principal);
+            if (key == null) {
+                continue;
+            }
+            TokenBudget.Usage usage = budget.tryCharge(key, estimatedTokens);
+            if (usage == null) {
+                usages.forEach(u -> u.add(-estimatedTokens));
+                long remaining = start + budget.getMaxWaitMillis() - System.currentTimeMillis();
+                if (remaining <= 0 || result.isDone()) {
+                    result.completeExceptionally(budget.newExceededException(key, estimatedTokens));
+                } else {
+                    CompletableFuture.delayedExecutor(budget.getRetryDelay(remaining), TimeUnit.MILLISECONDS)
+                                     .execute(() -> tryCharge(current, principal, estimatedTokens, start, result));
+                }
+                return;
+            }
+            usages.add(usage);
+        }
+
+        TokenCharge charge = usages.isEmpty() ? TokenCharge.NONE : new TokenCharge(usages, estimatedTokens);
+        if (!result.complete(charge)) {
+            // Cancelled by the caller in the meantime
+            charge.cancel();
+        }
+    }
+
+    @Override
+    public long getUsage(String budgetName, String key) {
+        TokenBudget budget = budgets.get(budgetName);
+        return budget == null ? 0 : budget.getUsage(key);
+    }
+
+    @Override
+    public List<String> getBudgetNames() {
+        return new ArrayList<>(budgets.keySet());
+    }
+
+    @Override
+    public void flush() {
+        budgets.values().forEach(this::flush);
+    }
+
+}
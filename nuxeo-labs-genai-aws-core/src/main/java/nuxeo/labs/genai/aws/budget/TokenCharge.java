@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.budget;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The estimated tokens of a call, charged to the budgets before calling the model (see
+ * {@link TokenBudgetService#charge(long)}). Once the model has answered, {@link #complete(int, int)} replaces the
+ * estimation with the counts returned by Bedrock, {@link #cancel()} gives the tokens back if the call failed.
+ * <br>
+ * Only the first call to {@code complete} or {@code cancel} counts.
+ *
+ * @since 2023
+ */
+public class TokenCharge {
+
+    public static final TokenCharge NONE = new TokenCharge(Collections.emptyList(), 0);
+
+    protected final List<TokenBudget.Usage> usages;
+
+    protected final long estimatedTokens;
+
+    protected final AtomicBoolean done = new AtomicBoolean();
+
+    protected TokenCharge(List<TokenBudget.Usage> usages, long estimatedTokens) {
+        this.usages = usages;
+        this.estimatedTokens = estimatedTokens;
+    }
+
+    /**
+     * @param inputTokenCount -1 if unknown, the estimation is kept
+     * @param outputTokenCount -1 if unknown
+     */
+    public void complete(int inputTokenCount, int outputTokenCount) {
+
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        long delta = (inputTokenCount >= 0 ? inputTokenCount - estimatedTokens : 0) + Math.max(outputTokenCount, 0);
+        if (delta != 0) {
+            usages.forEach(usage -> usage.add(delta));
+        }
+    }
+
+    public void cancel() {
+
+        if (done.compareAndSet(false, true)) {
+            usages.forEach(usage -> usage.add(-estimatedTokens));
+        }
+    }
+
+}
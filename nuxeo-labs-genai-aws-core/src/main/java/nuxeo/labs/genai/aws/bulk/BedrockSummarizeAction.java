@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.bulk;
+
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.bulk.action.computation.AbstractBulkComputation;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+
+/**
+ * Bulk Action summarizing the blob of every document returned by the query of the bulk command, and storing the
+ * summary in a text field. Same prompts as {@code BedrockSummarizeOp}, see {@link DocumentSummarizer}.
+ * <br>
+ * Parameters of the command (all optional, except targetXpath):
+ * <ul>
+ * <li>targetXpath: the field receiving the summary (for example "dc:description")</li>
+ * <li>xpath: the blob to summarize, default "file:content"</li>
+ * <li>modelId, awsRegion, clientConfig, language, numberOfSentences, promptTemplate, modelParams: see
+ * {@code BedrockSummarizeOp}</li>
+ * <li>maxInFlight: the max. number of concurrent calls to Bedrock per computation thread, default 4</li>
+ * </ul>
+ * The number of threads per node is the concurrency of the stream processor (see the XML contribution), so a node
+ * never has more than concurrency x maxInFlight requests in flight. Progress is available in the {@code BulkStatus}
+ * of the command (processed/total, start and end of processing). The documents that cannot be summarized are counted
+ * in its errors (error count, and the message of the first one), they are not retried.
+ *
+ * @since 2023
+ */
+public class BedrockSummarizeAction implements StreamProcessorTopology {
+
+    public static final String ACTION_NAME = "bedrockSummarize";
+
+    public static final String ACTION_FULL_NAME = "bulk/" + ACTION_NAME;
+
+    public static final String PARAM_TARGET_XPATH = "targetXpath";
+
+    public static final String PARAM_XPATH = "xpath";
+
+    public static final String PARAM_MODEL_ID = "modelId";
+
+    public static final String PARAM_AWS_REGION = "awsRegion";
+
+    public static final String PARAM_CLIENT_CONFIG = "clientConfig";
+
+    public static final String PARAM_LANGUAGE = "language";
+
+    public static final String PARAM_NUMBER_OF_SENTENCES = "numberOfSentences";
+
+    public static final String PARAM_PROMPT_TEMPLATE = "promptTemplate";
+
+    public static final String PARAM_MODEL_PARAMS = "modelParams";
+
+    public static final String PARAM_MAX_IN_FLIGHT = "maxInFlight";
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = DocumentSummarizer.DEFAULT_MAX_IN_FLIGHT;
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        return Topology.builder()
+                       .addComputation(BedrockSummarizeComputation::new,
+                               Arrays.asList(INPUT_1 + ":" + ACTION_FULL_NAME, OUTPUT_1 + ":" + STATUS_STREAM))
+                       .build();
+    }
+
+    public static class BedrockSummarizeComputation extends AbstractBulkComputation {
+
+        private static final Logger log = LogManager.getLogger(BedrockSummarizeComputation.class);
+
+        public BedrockSummarizeComputation() {
+            super(ACTION_FULL_NAME);
+        }
+
+        @Override
+        protected void compute(CoreSession session, List<String> ids, Map<String, Serializable> properties) {
+
+            DocumentSummarizer summarizer = new DocumentSummarizer(name -> getString(properties, name, null));
+            summarizer.summarize(session, loadDocuments(session, ids), null, (doc, e) -> {
+                log.warn("Cannot summarize document {}", doc.getId(), e);
+                delta.inError(String.format("Cannot summarize document %s: %s", doc.getId(),
+                        StringUtils.defaultIfBlank(e.getMessage(), e.toString())));
+            });
+        }
+
+        protected String getString(Map<String, Serializable> properties, String name, String defaultValue) {
+            Serializable value = properties.get(name);
+            return value == null ? defaultValue : value.toString();
+        }
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.bulk;
+
+import static nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction.PARAM_AWS_REGION;
+import static nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction.PARAM_CLIENT_CONFIG;
+import static nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction.PARAM_LANGUAGE;
+import static nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction.PARAM_MAX_IN_FLIGHT;
+import static nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction.PARAM_MODEL_ID;
+import static nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction.PARAM_MODEL_PARAMS;
+import static nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction.PARAM_NUMBER_OF_SENTENCES;
+import static nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction.PARAM_PROMPT_TEMPLATE;
+import static nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction.PARAM_TARGET_XPATH;
+import static nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction.PARAM_XPATH;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.operations.BedrockSummarizeOp;
+import nuxeo.labs.genai.aws.prompts.PromptTemplate;
+import nuxeo.labs.genai.aws.prompts.PromptTemplateService;
+import nuxeo.labs.genai.aws.throttling.BackoffPolicy;
+import nuxeo.labs.genai.aws.throttling.RateLimiter;
+import software.amazon.awssdk.regions.Region;
+
+/**
+ * Summarizes the blob of documents and stores the summary in a text field, with the prompts of
+ * {@code BedrockSummarizeOp}. Used by the {@code bedrockSummarize} bulk action and by the automatic summarization
+ * (see {@code AutoSummarizeListener}).
+ * <br>
+ * Bedrock is called asynchronously, with at most {@code maxInFlight} calls at a time, and at most one call per
+ * permit of the {@link RateLimiter} if one is set. The documents are updated in the calling thread once all the
+ * calls are done (the session is not thread-safe).
+ *
+ * @since 2023
+ */
+public class DocumentSummarizer {
+
+    private static final Logger log = LogManager.getLogger(DocumentSummarizer.class);
+
+    /**
+     * Put in the context data of the documents it saves, so their modification does not trigger a new summary
+     */
+    public static final String SUMMARIZED_CONTEXT_DATA = "bedrockSummarized";
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    protected final String xpath;
+
+    protected final String targetXpath;
+
+    protected final int maxInFlight;
+
+    protected final String prompt;
+
+    protected final InvokeBedrock ibr;
+
+    protected RateLimiter rateLimiter;
+
+    /**
+     * @param parameters returns the value of the parameters (see the {@code PARAM_*} of
+     *            {@link BedrockSummarizeAction}), {@code null} => default value
+     * @since 2023
+     */
+    public DocumentSummarizer(Function<String, String> parameters) {
+
+        targetXpath = parameters.apply(PARAM_TARGET_XPATH);
+        if (targetXpath == null) {
+            throw new NuxeoException("The " + PARAM_TARGET_XPATH + " parameter is required");
+        }
+        xpath = StringUtils.defaultIfBlank(parameters.apply(PARAM_XPATH), "file:content");
+        String modelId = StringUtils.defaultIfBlank(parameters.apply(PARAM_MODEL_ID),
+                InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_INSTANT_V1);
+        String awsRegion = parameters.apply(PARAM_AWS_REGION);
+        String modelParams = parameters.apply(PARAM_MODEL_PARAMS);
+        int countSentences = (int) Double.parseDouble(
+                StringUtils.defaultIfBlank(parameters.apply(PARAM_NUMBER_OF_SENTENCES), "0"));
+        maxInFlight = Integer.parseInt(StringUtils.defaultIfBlank(parameters.apply(PARAM_MAX_IN_FLIGHT),
+                String.valueOf(DEFAULT_MAX_IN_FLIGHT)));
+
+        String language = StringUtils.defaultIfBlank(parameters.apply(PARAM_LANGUAGE), "en");
+        String templateName = parameters.apply(PARAM_PROMPT_TEMPLATE);
+        PromptTemplate template = StringUtils.isBlank(templateName)
+                ? BedrockSummarizeOp.getSummarizeTemplate(language, countSentences)
+                : Framework.getService(PromptTemplateService.class).getTemplate(templateName);
+        // Rendered once, the text of each blob replaces the tag
+        prompt = template.renderPrompt(BedrockSummarizeOp.getSummarizeValues(language, countSentences), true);
+
+        ibr = new InvokeBedrock();
+        ibr.setModelId(modelId);
+        if (StringUtils.isNotBlank(awsRegion)) {
+            ibr.setRegion(Region.of(awsRegion));
+        }
+        ibr.setClientConfig(parameters.apply(PARAM_CLIENT_CONFIG));
+        if (StringUtils.isNotBlank(modelParams)) {
+            ibr.setParameters(new RequestParameters(modelParams));
+        }
+    }
+
+    public String getXpath() {
+        return xpath;
+    }
+
+    public String getTargetXpath() {
+        return targetXpath;
+    }
+
+    /**
+     * To change the settings of the calls, the endpoint for example
+     */
+    public InvokeBedrock getInvokeBedrock() {
+        return ibr;
+    }
+
+    public void setRateLimiter(RateLimiter value) {
+        rateLimiter = value;
+    }
+
+    /**
+     * Summarizes the documents that have a blob (and accepted by {@code filter}) and saves them. A document that
+     * cannot be summarized is logged and skipped.
+     *
+     * @param filter called with each document and its blob, {@code false} => the document is skipped. {@code null}
+     *            => all the documents with a blob are summarized
+     * @return the documents summarized and saved
+     * @since 2023
+     */
+    public List<DocumentModel> summarize(CoreSession session, Iterable<DocumentModel> documents,
+            BiPredicate<DocumentModel, Blob> filter) {
+        return summarize(session, documents, filter,
+                (doc, e) -> log.warn("Cannot summarize document {}", doc.getId(), e));
+    }
+
+    /**
+     * Same as {@link #summarize(CoreSession, Iterable, BiPredicate)}, {@code onFailure} is called (in the calling
+     * thread) with each document that cannot be summarized and the error.
+     * <br>
+     * At the first failed call, the next documents are not sent and the calls in flight are cancelled (the model is
+     * likely to fail for them too, and they are paid): these documents go to {@code onFailure} with the first error.
+     *
+     * @since 2023
+     */
+    public List<DocumentModel> summarize(CoreSession session, Iterable<DocumentModel> documents,
+            BiPredicate<DocumentModel, Blob> filter, BiConsumer<DocumentModel, Throwable> onFailure) {
+
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<DocumentModel> docs = new ArrayList<>();
+        List<CompletableFuture<String>> summaries = new ArrayList<>();
+        List<DocumentModel> notSent = new ArrayList<>();
+        for (DocumentModel doc : documents) {
+            Blob blob = (Blob) doc.getPropertyValue(xpath);
+            if (blob == null || (filter != null && !filter.test(doc, blob))) {
+                continue;
+            }
+            if (failure.get() == null) {
+                try {
+                    if (rateLimiter != null) {
+                        rateLimiter.acquire();
+                    }
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    summaries.forEach(summary -> summary.cancel(false));
+                    throw new NuxeoException(e);
+                }
+            }
+            // Also if a call failed while waiting for the permit
+            if (failure.get() != null) {
+                notSent.add(doc);
+                continue;
+            }
+            CompletableFuture<String> summary;
+            try {
+                summary = ibr.runAsync(prompt, blob, PromptTemplate.TEXT_TAG);
+            } catch (RuntimeException e) {
+                summary = CompletableFuture.failedFuture(e);
+            }
+            summary.whenComplete((result, e) -> {
+                if (e != null) {
+                    failure.compareAndSet(null, BackoffPolicy.unwrap(e));
+                }
+                inFlight.release();
+            });
+            docs.add(doc);
+            summaries.add(summary);
+        }
+        if (failure.get() != null) {
+            summaries.forEach(summary -> summary.cancel(false));
+        }
+
+        List<DocumentModel> summarized = new ArrayList<>();
+        for (int i = 0; i < docs.size(); i++) {
+            DocumentModel doc = docs.get(i);
+            String summary;
+            try {
+                summary = summaries.get(i).join();
+            } catch (CompletionException e) {
+                onFailure.accept(doc, BackoffPolicy.unwrap(e));
+                continue;
+            } catch (CancellationException e) {
+                onFailure.accept(doc, failure.get());
+                continue;
+            }
+            doc.setPropertyValue(targetXpath, summary);
+            doc.putContextData(SUMMARIZED_CONTEXT_DATA, Boolean.TRUE);
+            summarized.add(session.saveDocument(doc));
+        }
+        notSent.forEach(doc -> onFailure.accept(doc, failure.get()));
+
+        return summarized;
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.cache;
+
+import java.io.File;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.common.Environment;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+import nuxeo.labs.genai.aws.ModelResult;
+
+/**
+ * @since 2023
+ */
+public class BedrockCacheComponent extends DefaultComponent implements BedrockCacheService {
+
+    private static final Logger log = LogManager.getLogger(BedrockCacheComponent.class);
+
+    public static final String XP_RESPONSE_CACHE = "responseCache";
+
+    public static final String XP_TEXT_CACHE = "textCache";
+
+    public static final String XP_SEMANTIC_CACHE = "semanticCache";
+
+    public static final String DEFAULT_TEXT_CACHE_DIRECTORY = "bedrock-text-cache";
+
+    protected ResponseCache responseCache;
+
+    protected final LongAdder hits = new LongAdder();
+
+    protected final LongAdder misses = new LongAdder();
+
+    protected final SingleFlight<ModelResult> responseSingleFlight = new SingleFlight<>();
+
+    protected SemanticCache semanticCache;
+
+    protected BlobTextCache textCache;
+
+    protected final LongAdder textHits = new LongAdder();
+
+    protected final LongAdder textMisses = new LongAdder();
+
+    @Override
+    public void start(ComponentContext context) {
+
+        ResponseCacheDescriptor descriptor = this.<ResponseCacheDescriptor> getRegistryContribution(
+                XP_RESPONSE_CACHE).orElseGet(ResponseCacheDescriptor::new);
+        if (descriptor.isEnabled()) {
+            try {
+                responseCache = descriptor.getKlass().getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new NuxeoException("Cannot instantiate the response cache " + descriptor.getKlass(), e);
+            }
+            responseCache.init(descriptor);
+            log.debug("Bedrock response cache: {}", descriptor.getKlass().getName());
+        } else {
+            responseCache = null;
+        }
+
+        SemanticCacheDescriptor semanticDescriptor = this.<SemanticCacheDescriptor> getRegistryContribution(
+                XP_SEMANTIC_CACHE).orElseGet(SemanticCacheDescriptor::new);
+        semanticCache = semanticDescriptor.isEnabled() ? new SemanticCache(semanticDescriptor) : null;
+
+        TextCacheDescriptor textDescriptor = this.<TextCacheDescriptor> getRegistryContribution(
+                XP_TEXT_CACHE).orElseGet(TextCacheDescriptor::new);
+        if (textDescriptor.isEnabled()) {
+            File directory = StringUtils.isBlank(textDescriptor.getDirectory())
+                    ? new File(Environment.getDefault().getTemp(), DEFAULT_TEXT_CACHE_DIRECTORY)
+                    : new File(textDescriptor.getDirectory());
+            textCache = new BlobTextCache(textDescriptor, directory);
+        } else {
+            textCache = null;
+        }
+    }
+
+    @Override
+    public void stop(ComponentContext context) throws InterruptedException {
+        responseCache = null;
+        semanticCache = null;
+        if (textCache != null) {
+            // Deletes the files
+            textCache.clear();
+            textCache = null;
+        }
+        super.stop(context);
+    }
+
+    @Override
+    public boolean isResponseCacheEnabled() {
+        return responseCache != null;
+    }
+
+    @Override
+    public String getResponse(String key) {
+
+        if (responseCache == null) {
+            return null;
+        }
+
+        String response = responseCache.get(key);
+        if (response == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+
+        return response;
+    }
+
+    @Override
+    public void putResponse(String key, String response) {
+
+        if (responseCache != null && response != null) {
+            responseCache.put(key, response);
+        }
+    }
+
+    @Override
+    public void clearResponseCache() {
+
+        if (responseCache != null) {
+            responseCache.clear();
+        }
+    }
+
+    @Override
+    public long getResponseCacheHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getResponseCacheMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public SingleFlight<ModelResult> getResponseSingleFlight() {
+        return responseSingleFlight;
+    }
+
+    @Override
+    public SemanticCache getSemanticCache() {
+        return semanticCache;
+    }
+
+    @Override
+    public String getBlobText(Blob blob, Function<Blob, String> extractor) {
+
+        String digest = blob.getDigest();
+        if (textCache == null || StringUtils.isBlank(digest)) {
+            return extractor.apply(blob);
+        }
+
+        String text = textCache.get(digest);
+        if (text != null) {
+            textHits.increment();
+            return text;
+        }
+
+        textMisses.increment();
+        text = extractor.apply(blob);
+        if (text != null) {
+            textCache.put(digest, text);
+        }
+
+        return text;
+    }
+
+    @Override
+    public String getCachedBlobText(Blob blob) {
+
+        String digest = blob.getDigest();
+        if (textCache == null || StringUtils.isBlank(digest)) {
+            return null;
+        }
+
+        String text = textCache.get(digest);
+        if (text != null) {
+            textHits.increment();
+        }
+
+        return text;
+    }
+
+    @Override
+    public void clearTextCache() {
+
+        if (textCache != null) {
+            textCache.clear();
+        }
+    }
+
+    @Override
+    public long getTextCacheHits() {
+        return textHits.sum();
+    }
+
+    @Override
+    public long getTextCacheMisses() {
+        return textMisses.sum();
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.function.Function;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.nuxeo.ecm.core.api.Blob;
+
+import nuxeo.labs.genai.aws.ModelResult;
+import software.amazon.awssdk.core.SdkBytes;
+
+/**
+ * Caches the responses of the models, so the same request (same model, same body) does not call Bedrock again. The
+ * storage is pluggable (see {@link ResponseCache}) and configured in the {@code responseCache} extension point.
+ * <br>
+ * It is up to the caller to decide if a response can be cached: with a temperature > 0, the same request can return
+ * different responses. {@code InvokeBedrock} caches only if temperature is 0 or if explicitly asked to.
+ * <br>
+ * Concurrent identical requests (not cached yet) can share the same call, see {@link #getResponseSingleFlight()}.
+ * <br>
+ * An optional {@link SemanticCache} returns the response of a previous request whose prompt has the same meaning,
+ * configured in the {@code semanticCache} extension point.
+ * <br>
+ * It also caches the text extracted from blobs (see {@link BlobTextCache}), configured in the {@code textCache}
+ * extension point.
+ *
+ * @since 2023
+ */
+public interface BedrockCacheService {
+
+    public boolean isResponseCacheEnabled();
+
+    /**
+     * @param key, see {@link #computeResponseKey(String, SdkBytes)}
+     * @return the cached response, {@code null} if not found (or the cache is disabled)
+     * @since 2023
+     */
+    public String getResponse(String key);
+
+    public void putResponse(String key, String response);
+
+    public void clearResponseCache();
+
+    public long getResponseCacheHits();
+
+    public long getResponseCacheMisses();
+
+    /**
+     * Used to coalesce concurrent identical requests (see {@link SingleFlight}). The key is the one of the response
+     * cache plus the client configuration, endpoint and regions. The token counts are shared with the text, so each
+     * caller completes its own token charge.
+     *
+     * @return the shared SingleFlight for the responses
+     * @since 2023
+     */
+    public SingleFlight<ModelResult> getResponseSingleFlight();
+
+    /**
+     * @return the semantic cache, {@code null} if it is disabled
+     * @since 2023
+     */
+    public SemanticCache getSemanticCache();
+
+    /**
+     * If the blob has a digest and its text is in the cache, it is returned. Else, {@code extractor} is called and its
+     * result is cached.
+     *
+     * @param blob
+     * @param extractor called only if the text is not in the cache
+     * @return the text of the blob
+     * @since 2023
+     */
+    public String getBlobText(Blob blob, Function<Blob, String> extractor);
+
+    /**
+     * @return the cached text of the blob, {@code null} if not cached (or the blob has no digest)
+     * @since 2023
+     */
+    public String getCachedBlobText(Blob blob);
+
+    public void clearTextCache();
+
+    public long getTextCacheHits();
+
+    public long getTextCacheMisses();
+
+    /**
+     * @return the key of the request (hash of the model and of the body sent to the model)
+     * @since 2023
+     */
+    public static String computeResponseKey(String modelId, SdkBytes requestBody) {
+
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        digest.update(modelId.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(requestBody.asByteBuffer());
+
+        return Hex.encodeHexString(digest.digest());
+    }
+
+}
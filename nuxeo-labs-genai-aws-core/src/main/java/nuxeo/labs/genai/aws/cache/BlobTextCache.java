@@ -0,0 +1,191 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * LRU cache of the texts extracted from blobs, keyed by the digest of the blob.
+ * <br>
+ * Small texts are kept in memory. Texts bigger than {@code diskThreshold} are gzipped to a file, only their path is
+ * kept in memory. The cache evicts the least recently used entries so that the memory used by the texts (2 bytes per
+ * char) stays below {@code maxMemory} and the files below {@code maxDisk}.
+ *
+ * @since 2023
+ */
+public class BlobTextCache {
+
+    private static final Logger log = LogManager.getLogger(BlobTextCache.class);
+
+    protected static class Entry {
+
+        protected final String text;
+
+        protected final File file;
+
+        protected final long size;
+
+        protected Entry(String text) {
+            this.text = text;
+            this.file = null;
+            this.size = 2L * text.length();
+        }
+
+        protected Entry(File file) {
+            this.text = null;
+            this.file = file;
+            this.size = file.length();
+        }
+    }
+
+    protected final long maxMemoryBytes;
+
+    protected final long diskThresholdBytes;
+
+    protected final long maxDiskBytes;
+
+    protected final File directory;
+
+    // access order => the first entry is the least recently used one
+    protected final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    protected long memoryBytes = 0;
+
+    protected long diskBytes = 0;
+
+    public BlobTextCache(TextCacheDescriptor descriptor, File directory) {
+        maxMemoryBytes = descriptor.getMaxMemoryBytes();
+        diskThresholdBytes = descriptor.getDiskThresholdBytes();
+        maxDiskBytes = descriptor.getMaxDiskBytes();
+        this.directory = directory;
+        directory.mkdirs();
+    }
+
+    /**
+     * @return the cached text, {@code null} if not found
+     * @since 2023
+     */
+    public String get(String digest) {
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(digest);
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.text != null) {
+            return entry.text;
+        }
+
+        try (InputStream in = new GZIPInputStream(new FileInputStream(entry.file))) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // Evicted (deleted) while reading, or an actual error
+            log.debug("Cannot read cached text {}", entry.file, e);
+            return null;
+        }
+    }
+
+    public void put(String digest, String text) {
+
+        Entry entry;
+        if (2L * text.length() > diskThresholdBytes) {
+            File file = new File(directory, UUID.randomUUID().toString() + ".txt.gz");
+            try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+                    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+                writer.write(text);
+            } catch (IOException e) {
+                log.warn("Cannot write text to cache file {}", file, e);
+                FileUtils.deleteQuietly(file);
+                return;
+            }
+            entry = new Entry(file);
+        } else {
+            entry = new Entry(text);
+        }
+
+        synchronized (this) {
+            Entry previous = entries.put(digest, entry);
+            if (previous != null) {
+                release(previous);
+            }
+            add(entry);
+            evict();
+        }
+    }
+
+    public synchronized void clear() {
+
+        entries.values().forEach(this::release);
+        entries.clear();
+    }
+
+    protected void add(Entry entry) {
+        if (entry.file == null) {
+            memoryBytes += entry.size;
+        } else {
+            diskBytes += entry.size;
+        }
+    }
+
+    protected void release(Entry entry) {
+        if (entry.file == null) {
+            memoryBytes -= entry.size;
+        } else {
+            diskBytes -= entry.size;
+            FileUtils.deleteQuietly(entry.file);
+        }
+    }
+
+    protected void evict() {
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((memoryBytes > maxMemoryBytes || diskBytes > maxDiskBytes) && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            // Evict only from the storage that is over its limit
+            boolean overLimit = entry.file == null ? memoryBytes > maxMemoryBytes : diskBytes > maxDiskBytes;
+            if (overLimit) {
+                it.remove();
+                release(entry);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Local LRU cache, bounded to {@code maxEntries}, with entries expiring after {@code ttl}.
+ *
+ * @since 2023
+ */
+public class InMemoryResponseCache implements ResponseCache {
+
+    protected static class Entry {
+
+        protected final String response;
+
+        protected final long expiresAt;
+
+        protected Entry(String response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    protected int maxEntries;
+
+    protected long ttlMillis;
+
+    protected Map<String, Entry> entries;
+
+    @Override
+    public void init(ResponseCacheDescriptor descriptor) {
+
+        maxEntries = descriptor.getMaxEntries();
+        ttlMillis = descriptor.getTtl().toMillis();
+        // access order => the eldest entry is the least recently used one
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public synchronized String get(String key) {
+
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+
+        return entry.response;
+    }
+
+    @Override
+    public synchronized void put(String key, String response) {
+        entries.put(key, new Entry(response, System.currentTimeMillis() + ttlMillis));
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.cache;
+
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+/**
+ * Cache shared by all the nodes of a cluster, stored in a Nuxeo {@code KeyValueStore} (set in the
+ * {@code keyValueStore} element of the configuration). Entries expire after {@code ttl}, {@code maxEntries} is not
+ * used: the size is handled by the store itself.
+ * <br>
+ * {@link #clear()} is not supported (a {@code KeyValueStore} cannot list its keys): entries just expire.
+ *
+ * @since 2023
+ */
+public class KeyValueResponseCache implements ResponseCache {
+
+    public static final String KEY_PREFIX = "bedrock:response:";
+
+    protected String storeName;
+
+    protected long ttlSeconds;
+
+    @Override
+    public void init(ResponseCacheDescriptor descriptor) {
+        storeName = descriptor.getKeyValueStore();
+        ttlSeconds = descriptor.getTtl().getSeconds();
+    }
+
+    protected KeyValueStore getStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(storeName);
+    }
+
+    @Override
+    public String get(String key) {
+        return getStore().getString(KEY_PREFIX + key);
+    }
+
+    @Override
+    public void put(String key, String response) {
+        getStore().put(KEY_PREFIX + key, response, ttlSeconds);
+    }
+
+    @Override
+    public void clear() {
+        // Not supported, see class comment
+    }
+
+}
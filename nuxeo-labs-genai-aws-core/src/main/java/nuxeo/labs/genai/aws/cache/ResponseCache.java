@@ -0,0 +1,46 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.cache;
+
+/**
+ * Storage of the responses cached by {@link BedrockCacheService}. Implementations must be thread-safe and have a
+ * public no-argument constructor, the class to use is set in the {@code responseCache} extension point.
+ *
+ * @since 2023
+ */
+public interface ResponseCache {
+
+    /**
+     * Called once, before any other call
+     *
+     * @since 2023
+     */
+    public void init(ResponseCacheDescriptor descriptor);
+
+    /**
+     * @return the cached response, or {@code null} if not found or expired
+     * @since 2023
+     */
+    public String get(String key);
+
+    public void put(String key, String response);
+
+    public void clear();
+
+}
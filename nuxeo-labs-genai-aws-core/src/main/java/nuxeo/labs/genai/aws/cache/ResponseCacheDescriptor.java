@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.cache;
+
+import java.time.Duration;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.common.xmap.registry.XRegistry;
+
+/**
+ * Configuration of the cache of responses, see {@link BedrockCacheService}.
+ *
+ * <pre>
+ * &lt;responseCache enabled="true"&gt;
+ *   &lt;class&gt;nuxeo.labs.genai.aws.cache.InMemoryResponseCache&lt;/class&gt;
+ *   &lt;maxEntries&gt;1000&lt;/maxEntries&gt;
+ *   &lt;ttl&gt;1h&lt;/ttl&gt;
+ *   &lt;!-- Used by KeyValueResponseCache only --&gt;
+ *   &lt;keyValueStore&gt;default&lt;/keyValueStore&gt;
+ * &lt;/responseCache&gt;
+ * </pre>
+ *
+ * @since 2023
+ */
+@XObject("responseCache")
+@XRegistry(enable = false)
+public class ResponseCacheDescriptor {
+
+    @XNode("@enabled")
+    protected boolean enabled = true;
+
+    @XNode("class")
+    protected Class<? extends ResponseCache> klass = InMemoryResponseCache.class;
+
+    @XNode("maxEntries")
+    protected int maxEntries = 1000;
+
+    @XNode("ttl")
+    protected Duration ttl = Duration.ofHours(1);
+
+    @XNode("keyValueStore")
+    protected String keyValueStore = "default";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Class<? extends ResponseCache> getKlass() {
+        return klass;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public String getKeyValueStore() {
+        return keyValueStore;
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the responses by the meaning of the prompt: a request whose prompt is close enough to the prompt of a
+ * previous request (cosine similarity of their embeddings &gt;= {@code threshold}) gets the same response. "Summarize
+ * this" and "Give me a summary" of the same document, for example.
+ * <br>
+ * Only requests of the same scope are compared: same model, same parameters and same source blob (by digest), see
+ * {@code InvokeBedrock}. A scope holds a few prompts (at most {@code maxEntriesPerScope}, the oldest is evicted), so
+ * they are compared one by one, which is faster than an index for so few vectors. Least recently used scopes are
+ * evicted when there are more than {@code maxEntries} prompts in the cache.
+ * <br>
+ * Local to the node (the vectors are not shared).
+ *
+ * @since 2023
+ */
+public class SemanticCache {
+
+    protected static class Entry {
+
+        protected final float[] vector;
+
+        protected final String response;
+
+        protected final long expiresAt;
+
+        protected Entry(float[] vector, String response, long expiresAt) {
+            this.vector = vector;
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    protected final String embeddingModelId;
+
+    protected final Integer dimensions;
+
+    protected final float threshold;
+
+    protected final int maxEntries;
+
+    protected final int maxEntriesPerScope;
+
+    protected final long ttlMillis;
+
+    // access order => the eldest scope is the least recently used one
+    protected final LinkedHashMap<String, List<Entry>> scopes = new LinkedHashMap<>(16, 0.75f, true);
+
+    protected int size;
+
+    protected final LongAdder hits = new LongAdder();
+
+    protected final LongAdder misses = new LongAdder();
+
+    public SemanticCache(SemanticCacheDescriptor descriptor) {
+        embeddingModelId = descriptor.getEmbeddingModelId();
+        dimensions = descriptor.getDimensions() > 0 ? Integer.valueOf(descriptor.getDimensions()) : null;
+        threshold = descriptor.getThreshold();
+        maxEntries = Math.max(descriptor.getMaxEntries(), 1);
+        maxEntriesPerScope = Math.max(descriptor.getMaxEntriesPerScope(), 1);
+        ttlMillis = descriptor.getTtl().toMillis();
+    }
+
+    public String getEmbeddingModelId() {
+        return embeddingModelId;
+    }
+
+    /**
+     * @return the dimensions of the embeddings, {@code null} => default of the model
+     */
+    public Integer getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @param vector the embedding of the prompt
+     * @return the response of the most similar prompt of {@code scope}, {@code null} if none is similar enough
+     * @since 2023
+     */
+    public String get(String scope, float[] vector) {
+
+        float[] normalized = normalize(vector);
+        String response = null;
+        synchronized (this) {
+            List<Entry> entries = scopes.get(scope);
+            if (entries != null) {
+                long now = System.currentTimeMillis();
+                float best = threshold;
+                for (Iterator<Entry> it = entries.iterator(); it.hasNext();) {
+                    Entry entry = it.next();
+                    if (entry.expiresAt < now) {
+                        it.remove();
+                        size--;
+                        continue;
+                    }
+                    float score = dot(entry.vector, normalized);
+                    if (score >= best) {
+                        best = score;
+                        response = entry.response;
+                    }
+                }
+                if (entries.isEmpty()) {
+                    scopes.remove(scope);
+                }
+            }
+        }
+
+        if (response == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return response;
+    }
+
+    /**
+     * @since 2023
+     */
+    public void put(String scope, float[] vector, String response) {
+
+        if (response == null) {
+            return;
+        }
+        Entry entry = new Entry(normalize(vector), response, System.currentTimeMillis() + ttlMillis);
+        synchronized (this) {
+            List<Entry> entries = scopes.computeIfAbsent(scope, k -> new ArrayList<>());
+            if (entries.size() >= maxEntriesPerScope) {
+                entries.remove(0);
+                size--;
+            }
+            entries.add(entry);
+            size++;
+
+            for (Iterator<Map.Entry<String, List<Entry>>> it = scopes.entrySet().iterator(); size > maxEntries
+                    && it.hasNext();) {
+                Map.Entry<String, List<Entry>> eldest = it.next();
+                if (eldest.getValue() != entries) {
+                    size -= eldest.getValue().size();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        scopes.clear();
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    protected static float dot(float[] a, float[] b) {
+
+        if (a.length != b.length) {
+            return -1;
+        }
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    protected static float[] normalize(float[] vector) {
+
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float inverse = (float) (1 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * inverse;
+        }
+        return normalized;
+    }
+
+}
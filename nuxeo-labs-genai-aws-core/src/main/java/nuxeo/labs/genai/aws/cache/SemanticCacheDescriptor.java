@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.cache;
+
+import java.time.Duration;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.common.xmap.registry.XRegistry;
+
+/**
+ * Configuration of the semantic cache of responses, see {@link SemanticCache}.
+ *
+ * <pre>
+ * &lt;semanticCache enabled="true"&gt;
+ *   &lt;embeddingModelId&gt;amazon.titan-embed-text-v2:0&lt;/embeddingModelId&gt;
+ *   &lt;!-- 0 =&gt; default of the model --&gt;
+ *   &lt;dimensions&gt;256&lt;/dimensions&gt;
+ *   &lt;!-- Min. cosine similarity of the prompts --&gt;
+ *   &lt;threshold&gt;0.95&lt;/threshold&gt;
+ *   &lt;maxEntries&gt;1000&lt;/maxEntries&gt;
+ *   &lt;maxEntriesPerScope&gt;32&lt;/maxEntriesPerScope&gt;
+ *   &lt;ttl&gt;1h&lt;/ttl&gt;
+ * &lt;/semanticCache&gt;
+ * </pre>
+ *
+ * @since 2023
+ */
+@XObject("semanticCache")
+@XRegistry(enable = false)
+public class SemanticCacheDescriptor {
+
+    public static final String DEFAULT_EMBEDDING_MODEL = "amazon.titan-embed-text-v2:0";
+
+    @XNode("@enabled")
+    protected boolean enabled = false;
+
+    @XNode("embeddingModelId")
+    protected String embeddingModelId = DEFAULT_EMBEDDING_MODEL;
+
+    @XNode("dimensions")
+    protected int dimensions = 256;
+
+    @XNode("threshold")
+    protected float threshold = 0.95F;
+
+    @XNode("maxEntries")
+    protected int maxEntries = 1000;
+
+    @XNode("maxEntriesPerScope")
+    protected int maxEntriesPerScope = 32;
+
+    @XNode("ttl")
+    protected Duration ttl = Duration.ofHours(1);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getEmbeddingModelId() {
+        return embeddingModelId;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public int getMaxEntriesPerScope() {
+        return maxEntriesPerScope;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is in flight, other callers with the same key do not
+ * start a new call, they wait for the result of the first one (or for its error). Once the call is finished, the key is
+ * removed, the next call for this key starts a new one.
+ * <br>
+ * Thread-safe.
+ *
+ * @since 2023
+ */
+public class SingleFlight<T> {
+
+    protected final Map<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+
+    protected final LongAdder calls = new LongAdder();
+
+    protected final LongAdder shared = new LongAdder();
+
+    /**
+     * Blocking version. If the call for this key is already in flight, waits for its result. Else, runs {@code call}
+     * in the current thread.
+     *
+     * @throws RuntimeException the error thrown by {@code call}, in this thread or the one doing the call
+     */
+    public T call(String key, Supplier<T> call) {
+
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            shared.increment();
+            return await(existing);
+        }
+
+        calls.increment();
+        try {
+            T result = call.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Asynchronous version. If the call for this key is already in flight, returns a future completed with its result.
+     * Else, calls {@code call}.
+     */
+    public CompletableFuture<T> callAsync(String key, Supplier<CompletableFuture<T>> call) {
+
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            shared.increment();
+            // A copy, so a caller completing/cancelling its future does not impact the others
+            return existing.copy();
+        }
+
+        calls.increment();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, e) -> {
+            inFlight.remove(key, mine);
+            if (e != null) {
+                mine.completeExceptionally(e);
+            } else {
+                mine.complete(result);
+            }
+        });
+
+        return mine.copy();
+    }
+
+    /**
+     * @return the number of calls actually done
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * @return the number of calls that shared the result of a call in flight
+     */
+    public long getShared() {
+        return shared.sum();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    protected T await(CompletableFuture<T> future) {
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new NuxeoException(cause);
+        }
+    }
+
+}
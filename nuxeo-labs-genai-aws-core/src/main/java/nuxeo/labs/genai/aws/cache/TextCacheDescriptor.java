@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.cache;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.common.xmap.registry.XRegistry;
+
+/**
+ * Configuration of the cache of texts extracted from blobs, see {@link BlobTextCache}.
+ *
+ * <pre>
+ * &lt;textCache enabled="true"&gt;
+ *   &lt;maxMemoryMB&gt;64&lt;/maxMemoryMB&gt;
+ *   &lt;diskThresholdKB&gt;256&lt;/diskThresholdKB&gt;
+ *   &lt;maxDiskMB&gt;1024&lt;/maxDiskMB&gt;
+ *   &lt;!-- Default: a subfolder of the Nuxeo temp. folder --&gt;
+ *   &lt;directory&gt;/path/to/folder&lt;/directory&gt;
+ * &lt;/textCache&gt;
+ * </pre>
+ *
+ * @since 2023
+ */
+@XObject("textCache")
+@XRegistry(enable = false)
+public class TextCacheDescriptor {
+
+    @XNode("@enabled")
+    protected boolean enabled = true;
+
+    // Texts are stored in memory up to this size
+    @XNode("maxMemoryMB")
+    protected long maxMemoryMB = 64;
+
+    // Texts bigger than this are compressed and stored on disk
+    @XNode("diskThresholdKB")
+    protected long diskThresholdKB = 256;
+
+    @XNode("maxDiskMB")
+    protected long maxDiskMB = 1024;
+
+    @XNode("directory")
+    protected String directory;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMaxMemoryBytes() {
+        return maxMemoryMB * 1024 * 1024;
+    }
+
+    public long getDiskThresholdBytes() {
+        return diskThresholdKB * 1024;
+    }
+
+    public long getMaxDiskBytes() {
+        return maxDiskMB * 1024 * 1024;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.client;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XNodeList;
+import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.common.xmap.registry.XRegistry;
+import org.nuxeo.common.xmap.registry.XRegistryId;
+
+/**
+ * Configuration of the {@code BedrockRuntimeClient} used for a given region/credentials. Contributed to the
+ * {@code clients} extension point of {@link BedrockClientService}:
+ *
+ * <pre>
+ * &lt;client name="default"&gt;
+ *   &lt;region&gt;us-east-1&lt;/region&gt;
+ *   &lt;fallbackRegions&gt;
+ *     &lt;region&gt;us-west-2&lt;/region&gt;
+ *   &lt;/fallbackRegions&gt;
+ *   &lt;endpoint&gt;https://bedrock-runtime.us-east-1.amazonaws.com&lt;/endpoint&gt;
+ *   &lt;credentialsProfile&gt;my-profile&lt;/credentialsProfile&gt;
+ *   &lt;anonymous&gt;false&lt;/anonymous&gt;
+ *   &lt;maxConnections&gt;50&lt;/maxConnections&gt;
+ *   &lt;connectionTimeout&gt;10s&lt;/connectionTimeout&gt;
+ *   &lt;socketTimeout&gt;120s&lt;/socketTimeout&gt;
+ *   &lt;maxConcurrency&gt;200&lt;/maxConcurrency&gt;
+ *   &lt;concurrencyLimit enabled="true"&gt;
+ *     &lt;initialLimit&gt;20&lt;/initialLimit&gt;
+ *     &lt;minLimit&gt;1&lt;/minLimit&gt;
+ *     &lt;maxLimit&gt;200&lt;/maxLimit&gt;
+ *     &lt;backoffRatio&gt;0.7&lt;/backoffRatio&gt;
+ *     &lt;latencyTolerance&gt;4&lt;/latencyTolerance&gt;
+ *   &lt;/concurrencyLimit&gt;
+ *   &lt;retry&gt;
+ *     &lt;maxRetries&gt;5&lt;/maxRetries&gt;
+ *     &lt;baseDelay&gt;500ms&lt;/baseDelay&gt;
+ *     &lt;maxDelay&gt;30s&lt;/maxDelay&gt;
+ *   &lt;/retry&gt;
+ *   &lt;circuitBreaker enabled="true"&gt;
+ *     &lt;failureThreshold&gt;5&lt;/failureThreshold&gt;
+ *     &lt;openDuration&gt;30s&lt;/openDuration&gt;
+ *   &lt;/circuitBreaker&gt;
+ * &lt;/client&gt;
+ * </pre>
+ *
+ * All values are optional. No region => the region passed by the caller (or us-east-1) is used. No endpoint => the
+ * AWS endpoint of the region. No credentialsProfile => the default AWS credentials chain (environment variables,
+ * instance profile, etc.). anonymous: requests are not signed, only useful with an endpoint that does not check
+ * the signature (a local stand-in for tests)
+ * <br>
+ * maxConnections is for the synchronous client, maxConcurrency for the asynchronous one (max. number of requests in
+ * flight).
+ * <br>
+ * concurrencyLimit: the calls to a model in a region are limited, the limit adapts to the throttling of the account
+ * (see {@code AdaptiveConcurrencyLimiter}). retry: throttled calls and server errors are retried with an exponential
+ * backoff (see {@code BackoffPolicy}). When maxRetries is more than 0, the retries of the AWS SDK are disabled.
+ * <br>
+ * circuitBreaker: after failureThreshold consecutive failures (server errors, timeouts) of a model in a region, the
+ * calls fail right away during openDuration (see {@code CircuitBreaker}). fallbackRegions: when a call fails in a
+ * region (or its circuit is open), it is made in the next region, in order. The endpoint, if any, is used for all
+ * the regions.
+ *
+ * @since 2023
+ */
+@XObject("client")
+@XRegistry(enable = false)
+public class BedrockClientDescriptor {
+
+    public static final String DEFAULT_CONFIG = "default";
+
+    @XNode("@name")
+    @XRegistryId
+    protected String name = DEFAULT_CONFIG;
+
+    @XNode("region")
+    protected String region;
+
+    @XNodeList(value = "fallbackRegions/region", type = ArrayList.class, componentType = String.class)
+    protected List<String> fallbackRegions = new ArrayList<>();
+
+    @XNode("endpoint")
+    protected String endpoint;
+
+    @XNode("credentialsProfile")
+    protected String credentialsProfile;
+
+    @XNode("anonymous")
+    protected boolean anonymous;
+
+    @XNode("maxConnections")
+    protected int maxConnections = 50;
+
+    @XNode("connectionTimeout")
+    protected Duration connectionTimeout = Duration.ofSeconds(10);
+
+    // Models can take a while before sending the first byte of a long completion
+    @XNode("socketTimeout")
+    protected Duration socketTimeout = Duration.ofSeconds(120);
+
+    @XNode("maxConcurrency")
+    protected int maxConcurrency = 200;
+
+    @XNode("concurrencyLimit")
+    protected ConcurrencyLimitDescriptor concurrencyLimit = new ConcurrencyLimitDescriptor();
+
+    @XNode("retry")
+    protected RetryDescriptor retry = new RetryDescriptor();
+
+    @XNode("circuitBreaker")
+    protected CircuitBreakerDescriptor circuitBreaker = new CircuitBreakerDescriptor();
+
+    public String getName() {
+        return name;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public List<String> getFallbackRegions() {
+        return fallbackRegions;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getCredentialsProfile() {
+        return credentialsProfile;
+    }
+
+    public boolean isAnonymous() {
+        return anonymous;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public Duration getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public Duration getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public ConcurrencyLimitDescriptor getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public RetryDescriptor getRetry() {
+        return retry;
+    }
+
+    public CircuitBreakerDescriptor getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.client;
+
+import nuxeo.labs.genai.aws.throttling.ThrottledInvoker;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+
+/**
+ * Holds the {@code BedrockRuntimeClient}s used by the plugin. A client is thread-safe and owns its HTTP connection
+ * pool and its credentials provider, so it is built once per region/endpoint/credentials profile and shared by all
+ * the callers, instead of being built for every call.
+ *
+ * @since 2023
+ */
+public interface BedrockClientService {
+
+    /**
+     * @param configName name of the client configuration, contributed to the {@code clients} extension point. If
+     *            blank, "default" is used.
+     * @param region the region to call. If {@code null}, the region of the configuration is used, or us-east-1 if the
+     *            configuration has no region.
+     * @return the shared client for this configuration and region
+     * @since 2023
+     */
+    public default BedrockRuntimeClient getClient(String configName, Region region) {
+        return getClient(configName, region, null);
+    }
+
+    /**
+     * Same as {@link #getClient(String, Region)}, calling {@code endpoint} instead of the endpoint of the
+     * configuration (a local stand-in, a VPC endpoint, etc.)
+     *
+     * @param endpoint if blank, the endpoint of the configuration is used
+     * @since 2023
+     */
+    public BedrockRuntimeClient getClient(String configName, Region region, String endpoint);
+
+    /**
+     * Same as {@link #getClient(String, Region)}, for the asynchronous (Netty based) client.
+     *
+     * @since 2023
+     */
+    public default BedrockRuntimeAsyncClient getAsyncClient(String configName, Region region) {
+        return getAsyncClient(configName, region, null);
+    }
+
+    /**
+     * Same as {@link #getClient(String, Region, String)}, for the asynchronous (Netty based) client.
+     *
+     * @since 2023
+     */
+    public BedrockRuntimeAsyncClient getAsyncClient(String configName, Region region, String endpoint);
+
+    /**
+     * The calls to a model must go through the returned invoker, so they are limited and retried (see the
+     * {@code concurrencyLimit} and {@code retry} settings of the configuration), and fail fast while the model fails
+     * in the region (see {@code circuitBreaker}). There is one invoker per configuration/region/model, as the quotas
+     * of an AWS account are per model and per region.
+     *
+     * @since 2023
+     */
+    public ThrottledInvoker getInvoker(String configName, Region region, String modelId);
+
+    /**
+     * @param configName name of the client configuration. If blank, "default" is used.
+     * @return the configuration
+     * @since 2023
+     */
+    public BedrockClientDescriptor getConfig(String configName);
+
+}
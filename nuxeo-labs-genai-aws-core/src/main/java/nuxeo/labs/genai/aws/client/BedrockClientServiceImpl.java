@@ -0,0 +1,244 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.client;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.throttling.AdaptiveConcurrencyLimiter;
+import nuxeo.labs.genai.aws.throttling.CircuitBreaker;
+import nuxeo.labs.genai.aws.throttling.ThrottledInvoker;
+import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClientBuilder;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClientBuilder;
+
+/**
+ * Clients are cached by region + endpoint + credentials profile (or anonymous). If two configurations share these 3 values, they
+ * share the same client (and the HTTP settings of the first one used apply)
+ *
+ * @since 2023
+ */
+public class BedrockClientServiceImpl extends DefaultComponent implements BedrockClientService {
+
+    private static final Logger log = LogManager.getLogger(BedrockClientServiceImpl.class);
+
+    public static final String XP_CLIENTS = "clients";
+
+    protected final Map<String, BedrockRuntimeClient> clients = new ConcurrentHashMap<>();
+
+    protected final Map<String, BedrockRuntimeAsyncClient> asyncClients = new ConcurrentHashMap<>();
+
+    protected final Map<String, ThrottledInvoker> invokers = new ConcurrentHashMap<>();
+
+    @Override
+    public BedrockRuntimeClient getClient(String configName, Region region, String endpoint) {
+
+        BedrockClientDescriptor config = getConfig(configName);
+        Region actualRegion = resolveRegion(config, region);
+        String actualEndpoint = StringUtils.defaultIfBlank(endpoint, config.getEndpoint());
+
+        return clients.computeIfAbsent(getClientKey(config, actualRegion, actualEndpoint),
+                k -> buildClient(config, actualRegion, actualEndpoint));
+    }
+
+    @Override
+    public BedrockRuntimeAsyncClient getAsyncClient(String configName, Region region, String endpoint) {
+
+        BedrockClientDescriptor config = getConfig(configName);
+        Region actualRegion = resolveRegion(config, region);
+        String actualEndpoint = StringUtils.defaultIfBlank(endpoint, config.getEndpoint());
+
+        return asyncClients.computeIfAbsent(getClientKey(config, actualRegion, actualEndpoint),
+                k -> buildAsyncClient(config, actualRegion, actualEndpoint));
+    }
+
+    @Override
+    public ThrottledInvoker getInvoker(String configName, Region region, String modelId) {
+
+        BedrockClientDescriptor config = getConfig(configName);
+        Region actualRegion = resolveRegion(config, region);
+        String key = config.getName() + "|" + actualRegion.id() + "|" + modelId;
+
+        return invokers.computeIfAbsent(key, k -> {
+            AdaptiveConcurrencyLimiter limiter = null;
+            if (config.getConcurrencyLimit().isEnabled()) {
+                limiter = config.getConcurrencyLimit().newLimiter();
+            }
+            CircuitBreaker circuitBreaker = null;
+            if (config.getCircuitBreaker().isEnabled()) {
+                circuitBreaker = config.getCircuitBreaker().newCircuitBreaker(k);
+            }
+            return new ThrottledInvoker(k, limiter, config.getRetry().newBackoffPolicy(), circuitBreaker);
+        });
+    }
+
+    @Override
+    public BedrockClientDescriptor getConfig(String configName) {
+
+        String name = StringUtils.isBlank(configName) ? BedrockClientDescriptor.DEFAULT_CONFIG : configName;
+        return this.<BedrockClientDescriptor> getRegistryContribution(XP_CLIENTS, name).orElseGet(() -> {
+            if (BedrockClientDescriptor.DEFAULT_CONFIG.equals(name)) {
+                return new BedrockClientDescriptor();
+            }
+            throw new NuxeoException("No Bedrock client configuration named " + name);
+        });
+    }
+
+    @Override
+    public void stop(ComponentContext context) throws InterruptedException {
+        // Contributions may change before next start (hot reload) => clients are rebuilt lazily
+        closeClients();
+        super.stop(context);
+    }
+
+    @Override
+    public void deactivate(ComponentContext context) {
+        closeClients();
+        super.deactivate(context);
+    }
+
+    protected Region resolveRegion(BedrockClientDescriptor config, Region region) {
+
+        if (region != null) {
+            return region;
+        }
+
+        if (StringUtils.isNotBlank(config.getRegion())) {
+            return Region.of(config.getRegion());
+        }
+
+        return InvokeBedrock.DEFAULT_REGION;
+    }
+
+    protected String getClientKey(BedrockClientDescriptor config, Region region, String endpoint) {
+        String credentials = config.isAnonymous() ? "(anonymous)"
+                : StringUtils.defaultString(config.getCredentialsProfile());
+        return region.id() + "|" + StringUtils.defaultString(endpoint) + "|" + credentials;
+    }
+
+    protected BedrockRuntimeClient buildClient(BedrockClientDescriptor config, Region region, String endpoint) {
+
+        log.debug("Building BedrockRuntimeClient for configuration {}, region {}", config.getName(), region);
+
+        ApacheHttpClient.Builder httpClientBuilder = ApacheHttpClient.builder()
+                                                                     .maxConnections(config.getMaxConnections())
+                                                                     .connectionTimeout(config.getConnectionTimeout())
+                                                                     .socketTimeout(config.getSocketTimeout());
+
+        BedrockRuntimeClientBuilder builder = BedrockRuntimeClient.builder()
+                                                                  .region(region)
+                                                                  .credentialsProvider(getCredentialsProvider(config))
+                                                                  .httpClientBuilder(httpClientBuilder);
+        builder.overrideConfiguration(getOverrideConfiguration(config));
+        if (StringUtils.isNotBlank(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+
+        return builder.build();
+    }
+
+    protected BedrockRuntimeAsyncClient buildAsyncClient(BedrockClientDescriptor config, Region region,
+            String endpoint) {
+
+        log.debug("Building BedrockRuntimeAsyncClient for configuration {}, region {}", config.getName(), region);
+
+        NettyNioAsyncHttpClient.Builder httpClientBuilder = NettyNioAsyncHttpClient.builder();
+        httpClientBuilder.maxConcurrency(config.getMaxConcurrency())
+                         .connectionTimeout(config.getConnectionTimeout())
+                         .readTimeout(config.getSocketTimeout());
+
+        BedrockRuntimeAsyncClientBuilder builder = BedrockRuntimeAsyncClient.builder();
+        builder.region(region)
+               .credentialsProvider(getCredentialsProvider(config))
+               .httpClientBuilder(httpClientBuilder)
+               .overrideConfiguration(getOverrideConfiguration(config));
+        if (StringUtils.isNotBlank(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+
+        return builder.build();
+    }
+
+    protected ClientOverrideConfiguration getOverrideConfiguration(BedrockClientDescriptor config) {
+
+        ClientOverrideConfiguration.Builder builder = ClientOverrideConfiguration.builder();
+        if (config.getRetry().getMaxRetries() > 0) {
+            // Retried by the ThrottledInvoker, which must see the throttling to adjust its limit
+            builder.retryPolicy(RetryPolicy.none());
+        }
+
+        return builder.build();
+    }
+
+    protected AwsCredentialsProvider getCredentialsProvider(BedrockClientDescriptor config) {
+
+        if (config.isAnonymous()) {
+            return AnonymousCredentialsProvider.create();
+        }
+
+        if (StringUtils.isNotBlank(config.getCredentialsProfile())) {
+            return ProfileCredentialsProvider.create(config.getCredentialsProfile());
+        }
+
+        return DefaultCredentialsProvider.create();
+    }
+
+    protected void closeClients() {
+
+        clients.values().forEach(client -> {
+            try {
+                client.close();
+            } catch (RuntimeException e) {
+                log.warn("Error closing a BedrockRuntimeClient", e);
+            }
+        });
+        clients.clear();
+
+        asyncClients.values().forEach(client -> {
+            try {
+                client.close();
+            } catch (RuntimeException e) {
+                log.warn("Error closing a BedrockRuntimeAsyncClient", e);
+            }
+        });
+        asyncClients.clear();
+
+        invokers.clear();
+    }
+
+}
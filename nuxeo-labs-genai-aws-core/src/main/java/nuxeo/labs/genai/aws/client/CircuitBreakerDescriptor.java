@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.client;
+
+import java.time.Duration;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+
+import nuxeo.labs.genai.aws.throttling.CircuitBreaker;
+
+/**
+ * Settings of the {@link CircuitBreaker} used for each model/region of a client configuration
+ *
+ * @since 2023
+ */
+@XObject("circuitBreaker")
+public class CircuitBreakerDescriptor {
+
+    @XNode("@enabled")
+    protected boolean enabled = true;
+
+    @XNode("failureThreshold")
+    protected int failureThreshold = 5;
+
+    @XNode("openDuration")
+    protected Duration openDuration = Duration.ofSeconds(30);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CircuitBreaker newCircuitBreaker(String name) {
+        return new CircuitBreaker(name, failureThreshold, openDuration.toMillis());
+    }
+
+}
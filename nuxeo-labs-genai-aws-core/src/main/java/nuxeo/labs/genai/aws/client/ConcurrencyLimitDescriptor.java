@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.client;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+
+import nuxeo.labs.genai.aws.throttling.AdaptiveConcurrencyLimiter;
+
+/**
+ * Settings of the {@link AdaptiveConcurrencyLimiter} used for each model/region of a client configuration
+ *
+ * @since 2023
+ */
+@XObject("concurrencyLimit")
+public class ConcurrencyLimitDescriptor {
+
+    @XNode("@enabled")
+    protected boolean enabled = true;
+
+    @XNode("initialLimit")
+    protected int initialLimit = 20;
+
+    @XNode("minLimit")
+    protected int minLimit = 1;
+
+    @XNode("maxLimit")
+    protected int maxLimit = 200;
+
+    @XNode("backoffRatio")
+    protected double backoffRatio = 0.7;
+
+    // 0 => latency is not used to adjust the limit
+    @XNode("latencyTolerance")
+    protected double latencyTolerance = 4;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public AdaptiveConcurrencyLimiter newLimiter() {
+        return new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, backoffRatio, latencyTolerance);
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.client;
+
+import java.time.Duration;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+
+import nuxeo.labs.genai.aws.throttling.BackoffPolicy;
+
+/**
+ * Settings of the {@link BackoffPolicy} used for the calls of a client configuration
+ *
+ * @since 2023
+ */
+@XObject("retry")
+public class RetryDescriptor {
+
+    @XNode("maxRetries")
+    protected int maxRetries = 5;
+
+    @XNode("baseDelay")
+    protected Duration baseDelay = Duration.ofMillis(500);
+
+    @XNode("maxDelay")
+    protected Duration maxDelay = Duration.ofSeconds(30);
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public BackoffPolicy newBackoffPolicy() {
+        return new BackoffPolicy(maxRetries, baseDelay, maxDelay);
+    }
+
+}
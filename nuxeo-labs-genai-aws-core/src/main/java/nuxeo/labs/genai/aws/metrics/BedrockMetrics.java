@@ -0,0 +1,173 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.Histogram;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
+import nuxeo.labs.genai.aws.throttling.BackoffPolicy;
+
+/**
+ * Metrics of the calls to Bedrock, registered in the Nuxeo metric registry, so they are published by the configured
+ * reporters (JMX, Prometheus, Datadog...). Tagged by {@code model} and {@code region}:
+ * <ul>
+ * <li>{@code nuxeo.bedrock.request.build}: timer, building the request (prompt assembly, JSON)</li>
+ * <li>{@code nuxeo.bedrock.invoke}: timer, the calls to Bedrock (each attempt, so this is the network latency plus
+ * the time of the model)</li>
+ * <li>{@code nuxeo.bedrock.stream.first.chunk}: timer, time to receive the first chunk of a streaming call</li>
+ * <li>{@code nuxeo.bedrock.tokens.input}, {@code nuxeo.bedrock.tokens.output}: histograms, the number of tokens of
+ * each call, as reported by Bedrock</li>
+ * <li>{@code nuxeo.bedrock.throttles}: counter, throttled calls</li>
+ * <li>{@code nuxeo.bedrock.errors}: counter, other failed calls</li>
+ * <li>{@code nuxeo.bedrock.failovers}: counter, calls that failed in this region and were sent to the next one (see
+ * {@code fallbackRegions})</li>
+ * </ul>
+ * Plus, not tagged:
+ * <ul>
+ * <li>{@code nuxeo.bedrock.text.extraction}: timer, getting the text of a blob (from the cache or not)</li>
+ * <li>{@code nuxeo.bedrock.preprocessing}: timer, the preprocessing of the extracted text</li>
+ * <li>{@code nuxeo.bedrock.preprocessing.chars.saved}, {@code nuxeo.bedrock.preprocessing.tokens.saved}: counters,
+ * characters removed by the preprocessing, and the tokens they would have cost (estimated locally)</li>
+ * </ul>
+ *
+ * @since 2023
+ */
+public class BedrockMetrics {
+
+    public static final String PREFIX = "nuxeo.bedrock";
+
+    public static final String MODEL_TAG = "model";
+
+    public static final String REGION_TAG = "region";
+
+    protected static final Map<String, BedrockMetrics> METRICS = new ConcurrentHashMap<>();
+
+    protected final Timer requestBuild;
+
+    protected final Timer invoke;
+
+    protected final Timer streamFirstChunk;
+
+    protected final Histogram inputTokens;
+
+    protected final Histogram outputTokens;
+
+    protected final Counter throttles;
+
+    protected final Counter errors;
+
+    protected final Counter failovers;
+
+    protected BedrockMetrics(String modelId, String region) {
+
+        MetricRegistry registry = getRegistry();
+        requestBuild = registry.timer(name("request.build", modelId, region));
+        invoke = registry.timer(name("invoke", modelId, region));
+        streamFirstChunk = registry.timer(name("stream.first.chunk", modelId, region));
+        inputTokens = registry.histogram(name("tokens.input", modelId, region));
+        outputTokens = registry.histogram(name("tokens.output", modelId, region));
+        throttles = registry.counter(name("throttles", modelId, region));
+        errors = registry.counter(name("errors", modelId, region));
+        failovers = registry.counter(name("failovers", modelId, region));
+    }
+
+    /**
+     * @return the (shared) metrics of this model in this region
+     */
+    public static BedrockMetrics of(String modelId, String region) {
+        return METRICS.computeIfAbsent(modelId + "|" + region, k -> new BedrockMetrics(modelId, region));
+    }
+
+    public static Timer getTextExtractionTimer() {
+        return getRegistry().timer(MetricName.build(PREFIX, "text.extraction"));
+    }
+
+    /**
+     * @since 2023
+     */
+    public static void recordPreprocessing(long nanos, long charsSaved, long tokensSaved) {
+
+        MetricRegistry registry = getRegistry();
+        registry.timer(MetricName.build(PREFIX, "preprocessing")).update(nanos, TimeUnit.NANOSECONDS);
+        if (charsSaved > 0) {
+            registry.counter(MetricName.build(PREFIX, "preprocessing.chars.saved")).inc(charsSaved);
+        }
+        if (tokensSaved > 0) {
+            registry.counter(MetricName.build(PREFIX, "preprocessing.tokens.saved")).inc(tokensSaved);
+        }
+    }
+
+    protected static MetricRegistry getRegistry() {
+        return SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+    }
+
+    protected static MetricName name(String name, String modelId, String region) {
+        return MetricName.build(PREFIX, name).tagged(MODEL_TAG, modelId, REGION_TAG, region);
+    }
+
+    public void recordRequestBuild(long nanos) {
+        requestBuild.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param inputTokenCount -1 if unknown
+     * @param outputTokenCount -1 if unknown
+     */
+    public void recordSuccess(long nanos, int inputTokenCount, int outputTokenCount) {
+
+        invoke.update(nanos, TimeUnit.NANOSECONDS);
+        if (inputTokenCount >= 0) {
+            inputTokens.update(inputTokenCount);
+        }
+        if (outputTokenCount >= 0) {
+            outputTokens.update(outputTokenCount);
+        }
+    }
+
+    public void recordError(long nanos, Throwable e) {
+
+        invoke.update(nanos, TimeUnit.NANOSECONDS);
+        if (BackoffPolicy.isThrottling(e)) {
+            throttles.inc();
+        } else {
+            errors.inc();
+        }
+    }
+
+    public void recordFirstChunk(long nanos) {
+        streamFirstChunk.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @since 2023
+     */
+    public void recordFailover() {
+        failovers.inc();
+    }
+
+}
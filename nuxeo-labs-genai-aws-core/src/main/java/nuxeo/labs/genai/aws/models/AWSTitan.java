@@ -18,14 +18,20 @@
  */
 package nuxeo.labs.genai.aws.models;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
+import org.nuxeo.ecm.core.api.NuxeoException;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import nuxeo.labs.genai.aws.ModelResult;
 import nuxeo.labs.genai.aws.RequestParameters;
 import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.PayloadPart;
 
 /**
  * 
@@ -62,10 +68,38 @@ public class AWSTitan implements RequestResponseHandlers {
     }
 
     @Override
-    public String getStringResult(InvokeModelResponse response) {
-        
-        JSONObject jsonResponse = new JSONObject(response.body().asString(StandardCharsets.UTF_8));
-        
+    public SdkBytes getRequestBodyBytes(RequestParameters params) {
+
+        // Same body as getRequestBody, the prompt is not copied
+        CharSequence prompt = params.getPromptText();
+
+        return JsonRequests.write(prompt == null ? 0 : prompt.length(), generator -> {
+            generator.writeStartObject();
+            if (prompt != null) {
+                generator.writeFieldName("inputText");
+                JsonRequests.writeString(generator, prompt);
+            }
+            if (params.getTopP() != null) {
+                generator.writeNumberField("topP", params.getTopP().floatValue());
+            }
+            generator.writeObjectFieldStart("textGenerationConfig");
+            if (params.getTemperature() != null) {
+                generator.writeNumberField("temperature", params.getTemperature().floatValue());
+            }
+            if (params.getResponseMaxTokenCount() != null) {
+                generator.writeNumberField("maxTokenCount", params.getResponseMaxTokenCount().intValue());
+            }
+            if (params.hasStopSequences()) {
+                JsonRequests.writeStringArray(generator, "stopSequences", params.getStopSequences());
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        });
+    }
+
+    @Override
+    public ModelResult getResult(InvokeModelResponse response) {
+
         // {
         // "inputTextTokenCount": 11,
         // "results": [
@@ -76,12 +110,110 @@ public class AWSTitan implements RequestResponseHandlers {
         // }
         // ]
         // }
-        JSONArray results = jsonResponse.getJSONArray("results");
-        // check...
-        // First implementation => assume there is at least one
-        String result = results.getJSONObject(0).getString("outputText");
-        
-        return result;
+        String text = null;
+        String stopReason = null;
+        int inputTokenCount = -1;
+        int outputTokenCount = -1;
+        try (JsonParser parser = JsonResponses.createObjectParser(response.body())) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("inputTextTokenCount".equals(name)) {
+                    inputTokenCount = JsonResponses.getIntValue(parser, -1);
+                } else if ("results".equals(name) && token == JsonToken.START_ARRAY) {
+                    // First implementation => the text of the first result only, the tokens of all of them
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String resultName = parser.getCurrentName();
+                            parser.nextToken();
+                            switch (resultName) {
+                            case "outputText":
+                                String outputText = JsonResponses.getStringValue(parser);
+                                text = text == null ? outputText : text;
+                                break;
+                            case "tokenCount":
+                                outputTokenCount = Math.max(outputTokenCount, 0)
+                                        + JsonResponses.getIntValue(parser, 0);
+                                break;
+                            case "completionReason":
+                                String reason = JsonResponses.getStringValue(parser);
+                                stopReason = stopReason == null ? reason : stopReason;
+                                break;
+                            default:
+                                parser.skipChildren();
+                                break;
+                            }
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot parse the response of the model", e);
+        }
+
+        if (text == null) {
+            throw new NuxeoException("No outputText in the response of the model");
+        }
+
+        // The Bedrock headers, if set, take precedence
+        int count = RequestResponseHandlers.super.getInputTokenCount(response);
+        inputTokenCount = count < 0 ? inputTokenCount : count;
+        count = RequestResponseHandlers.super.getOutputTokenCount(response);
+        outputTokenCount = count < 0 ? outputTokenCount : count;
+
+        return new ModelResult(text, inputTokenCount, outputTokenCount, stopReason);
+    }
+
+    @Override
+    public int getInputTokenCount(InvokeModelResponse response) {
+        int count = RequestResponseHandlers.super.getInputTokenCount(response);
+        return count < 0 ? JsonResponses.readIntPath(response.body(), -1, "inputTextTokenCount") : count;
+    }
+
+    @Override
+    public int getOutputTokenCount(InvokeModelResponse response) {
+
+        int count = RequestResponseHandlers.super.getOutputTokenCount(response);
+        if (count >= 0) {
+            return count;
+        }
+
+        // Like getResult: the tokens of all the results. The texts are skipped
+        try (JsonParser parser = JsonResponses.createObjectParser(response.body())) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (!"results".equals(name) || token != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String resultName = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("tokenCount".equals(resultName)) {
+                            count = Math.max(count, 0) + JsonResponses.getIntValue(parser, 0);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot parse the response of the model", e);
+        }
+
+        return count;
+    }
+
+    @Override
+    public String getStringChunk(PayloadPart chunk) {
+
+        // {"outputText":" The","index":0,"totalOutputTextTokenCount":null,"completionReason":null,
+        // "inputTextTokenCount":11}
+        return JsonResponses.readStringField(chunk.bytes(), "outputText", "");
     }
 
 }
@@ -18,13 +18,22 @@
  */
 package nuxeo.labs.genai.aws.models;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 
+import org.apache.commons.lang3.StringUtils;
 import org.json.JSONObject;
+import org.nuxeo.ecm.core.api.NuxeoException;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import nuxeo.labs.genai.aws.ModelResult;
 import nuxeo.labs.genai.aws.RequestParameters;
 import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import nuxeo.labs.genai.aws.text.PromptText;
+import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.PayloadPart;
 
 /**
  * @since TODO
@@ -67,12 +76,72 @@ public class AnthropicClaude implements RequestResponseHandlers {
     }
 
     @Override
-    public String getStringResult(InvokeModelResponse response) {
-        
-        JSONObject jsonResponse = new JSONObject(response.body().asString(StandardCharsets.UTF_8));
-        String result = jsonResponse.getString("completion");
-        
-        return result;
+    public SdkBytes getRequestBodyBytes(RequestParameters params) {
+
+        // Same body as getRequestBody, the prompt is not copied
+        CharSequence prompt = params.getPromptText();
+        PromptText modifiedPrompt = PromptText.of("Human: ", StringUtils.startsWith(prompt, "\n\n") ? "" : "\n\n",
+                prompt, "\n\nAssistant: ");
+
+        return JsonRequests.write(modifiedPrompt.length(), generator -> {
+            generator.writeStartObject();
+            generator.writeFieldName("prompt");
+            JsonRequests.writeString(generator, modifiedPrompt);
+            if (params.getTemperature() != null) {
+                generator.writeNumberField("temperature", params.getTemperature().floatValue());
+            }
+            if (params.getTopP() != null) {
+                generator.writeNumberField("top_p", params.getTopP().floatValue());
+            }
+            int responseMaxTokenCount;
+            if (params.getResponseMaxTokenCount() == null) {
+                responseMaxTokenCount = 1024;
+            } else {
+                responseMaxTokenCount = params.getResponseMaxTokenCount().intValue();
+            }
+            generator.writeNumberField("max_tokens_to_sample", responseMaxTokenCount);
+            if (params.hasStopSequences()) {
+                JsonRequests.writeStringArray(generator, "stop_sequences", params.getStopSequences());
+            }
+            generator.writeEndObject();
+        });
+    }
+
+    @Override
+    public ModelResult getResult(InvokeModelResponse response) {
+
+        // {"completion":" The distance...","stop_reason":"stop_sequence","stop":"\n\nHuman:"}
+        String text = null;
+        String stopReason = null;
+        try (JsonParser parser = JsonResponses.createObjectParser(response.body())) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if ("completion".equals(name)) {
+                    text = JsonResponses.getStringValue(parser);
+                } else if ("stop_reason".equals(name)) {
+                    stopReason = JsonResponses.getStringValue(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot parse the response of the model", e);
+        }
+
+        if (text == null) {
+            throw new NuxeoException("No completion in the response of the model");
+        }
+
+        // Claude does not return the token counts in the body
+        return new ModelResult(text, getInputTokenCount(response), getOutputTokenCount(response), stopReason);
+    }
+
+    @Override
+    public String getStringChunk(PayloadPart chunk) {
+
+        // {"completion":" The","stop_reason":null,"stop":null}
+        return JsonResponses.readStringField(chunk.bytes(), "completion", "");
     }
 
 }
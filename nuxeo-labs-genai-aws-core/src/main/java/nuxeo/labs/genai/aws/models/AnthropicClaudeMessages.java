@@ -0,0 +1,173 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.models;
+
+import java.io.IOException;
+
+import org.json.JSONObject;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import nuxeo.labs.genai.aws.ModelResult;
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.PayloadPart;
+
+/**
+ * Anthropic Claude with the Messages API, required by Claude 3 (also accepted by Claude 2.x and Instant). The prompt
+ * is sent as one user message.
+ *
+ * @since 2023
+ */
+public class AnthropicClaudeMessages implements RequestResponseHandlers {
+
+    public static final String ANTHROPIC_VERSION = "bedrock-2023-05-31";
+
+    public static final int DEFAULT_MAX_TOKENS = 1024;
+
+    // See https://docs.aws.amazon.com/bedrock/latest/userguide/model-parameters-anthropic-claude-messages.html
+    @Override
+    public JSONObject getRequestBody(RequestParameters params) {
+        return new JSONObject(getRequestBodyBytes(params).asUtf8String());
+    }
+
+    @Override
+    public SdkBytes getRequestBodyBytes(RequestParameters params) {
+
+        CharSequence prompt = params.getPromptText();
+
+        return JsonRequests.write(prompt == null ? 0 : prompt.length(), generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("anthropic_version", ANTHROPIC_VERSION);
+            // Required by the Messages API
+            generator.writeNumberField("max_tokens", params.getResponseMaxTokenCount() == null ? DEFAULT_MAX_TOKENS
+                    : params.getResponseMaxTokenCount().intValue());
+            generator.writeArrayFieldStart("messages");
+            generator.writeStartObject();
+            generator.writeStringField("role", "user");
+            generator.writeArrayFieldStart("content");
+            generator.writeStartObject();
+            generator.writeStringField("type", "text");
+            generator.writeFieldName("text");
+            JsonRequests.writeString(generator, prompt == null ? "" : prompt);
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            if (params.getTemperature() != null) {
+                generator.writeNumberField("temperature", params.getTemperature().floatValue());
+            }
+            if (params.getTopP() != null) {
+                generator.writeNumberField("top_p", params.getTopP().floatValue());
+            }
+            if (params.hasStopSequences()) {
+                JsonRequests.writeStringArray(generator, "stop_sequences", params.getStopSequences());
+            }
+            generator.writeEndObject();
+        });
+    }
+
+    @Override
+    public ModelResult getResult(InvokeModelResponse response) {
+
+        // {"id":"msg_...","type":"message","role":"assistant",
+        // "content":[{"type":"text","text":"The distance..."}],
+        // "stop_reason":"end_turn","stop_sequence":null,"usage":{"input_tokens":14,"output_tokens":31}}
+        StringBuilder text = null;
+        String stopReason = null;
+        int inputTokenCount = -1;
+        int outputTokenCount = -1;
+        try (JsonParser parser = JsonResponses.createObjectParser(response.body())) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("content".equals(name) && token == JsonToken.START_ARRAY) {
+                    text = new StringBuilder();
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        // Only text blocks have a text field
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String blockName = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("text".equals(blockName)) {
+                                text.append(JsonResponses.getStringValue(parser));
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                } else if ("stop_reason".equals(name)) {
+                    stopReason = JsonResponses.getStringValue(parser);
+                } else if ("usage".equals(name) && token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String usageName = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("input_tokens".equals(usageName)) {
+                            inputTokenCount = JsonResponses.getIntValue(parser, -1);
+                        } else if ("output_tokens".equals(usageName)) {
+                            outputTokenCount = JsonResponses.getIntValue(parser, -1);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot parse the response of the model", e);
+        }
+
+        if (text == null) {
+            throw new NuxeoException("No content in the response of the model");
+        }
+
+        // The Bedrock headers, if set, take precedence
+        int count = RequestResponseHandlers.super.getInputTokenCount(response);
+        inputTokenCount = count < 0 ? inputTokenCount : count;
+        count = RequestResponseHandlers.super.getOutputTokenCount(response);
+        outputTokenCount = count < 0 ? outputTokenCount : count;
+
+        return new ModelResult(text.toString(), inputTokenCount, outputTokenCount, stopReason);
+    }
+
+    @Override
+    public int getInputTokenCount(InvokeModelResponse response) {
+        int count = RequestResponseHandlers.super.getInputTokenCount(response);
+        return count < 0 ? JsonResponses.readIntPath(response.body(), -1, "usage", "input_tokens") : count;
+    }
+
+    @Override
+    public int getOutputTokenCount(InvokeModelResponse response) {
+        int count = RequestResponseHandlers.super.getOutputTokenCount(response);
+        return count < 0 ? JsonResponses.readIntPath(response.body(), -1, "usage", "output_tokens") : count;
+    }
+
+    @Override
+    public String getStringChunk(PayloadPart chunk) {
+
+        // {"type":"content_block_delta","index":0,"delta":{"type":"text_delta","text":" The"}}
+        // Other events (message_start, message_delta, ...) have no delta.text
+        return JsonResponses.readStringPath(chunk.bytes(), "", "delta", "text");
+    }
+
+}
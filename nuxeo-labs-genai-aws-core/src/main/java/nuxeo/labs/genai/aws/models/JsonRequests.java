@@ -0,0 +1,108 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.models;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import nuxeo.labs.genai.aws.text.PromptText;
+import software.amazon.awssdk.core.SdkBytes;
+
+/**
+ * Streaming (Jackson) writing of the body of the requests: the JSON is encoded in UTF-8 directly into one buffer,
+ * and the prompt is read from its segments (see {@link PromptText}). For a prompt of several MB, this replaces the
+ * copies done when concatenating the prompt, then when building the JSON String, then when encoding it. The body
+ * wraps the part of the buffer that was written, it is not copied to an array of the exact size.
+ *
+ * @since 2023
+ */
+public class JsonRequests {
+
+    @FunctionalInterface
+    public interface BodyWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    // JSON envelope, parameters and escaping, added to the size of the prompt to size the buffer
+    protected static final int BODY_OVERHEAD = 1024;
+
+    private JsonRequests() {
+        // Utility class
+    }
+
+    /**
+     * @param sizeHint expected number of chars of the text(s) written, to size the buffer
+     * @return the body
+     */
+    public static SdkBytes write(int sizeHint, BodyWriter writer) {
+
+        BodyOutputStream out = new BodyOutputStream(sizeHint + BODY_OVERHEAD);
+        try (JsonGenerator generator = JsonResponses.JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            writer.write(generator);
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot write the request body", e);
+        }
+
+        return out.toSdkBytes();
+    }
+
+    /**
+     * Writes a string value, a {@code PromptText} is read from its segments
+     */
+    public static void writeString(JsonGenerator generator, CharSequence text) throws IOException {
+
+        if (text == null) {
+            generator.writeNull();
+        } else if (text instanceof PromptText) {
+            generator.writeString(((PromptText) text).reader(), text.length());
+        } else {
+            generator.writeString(text.toString());
+        }
+    }
+
+    public static void writeStringArray(JsonGenerator generator, String fieldName, List<String> values)
+            throws IOException {
+
+        generator.writeArrayFieldStart(fieldName);
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    protected static class BodyOutputStream extends ByteArrayOutputStream {
+
+        public BodyOutputStream(int size) {
+            super(size);
+        }
+
+        // The buffer is sized from a number of chars plus BODY_OVERHEAD, so it is almost never full => wrapped
+        public SdkBytes toSdkBytes() {
+            return SdkBytes.fromByteBufferUnsafe(ByteBuffer.wrap(buf, 0, count));
+        }
+    }
+
+}
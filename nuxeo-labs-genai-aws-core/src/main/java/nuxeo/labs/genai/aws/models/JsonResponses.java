@@ -0,0 +1,148 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.models;
+
+import java.io.IOException;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import software.amazon.awssdk.core.SdkBytes;
+
+/**
+ * Streaming (Jackson) parsing of the JSON returned by the models: the values are read from the bytes of the response,
+ * without decoding the whole body to a String and without building the JSON tree. The unexpected values are skipped.
+ * 
+ * @since 2023
+ */
+public class JsonResponses {
+
+    public static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private JsonResponses() {
+        // Utility class
+    }
+
+    /**
+     * The parser reads the bytes without copying them. It is positioned on the first token, which must be the start
+     * of an object.
+     */
+    public static JsonParser createObjectParser(SdkBytes bytes) throws IOException {
+
+        JsonParser parser = JSON_FACTORY.createParser(bytes.asByteArrayUnsafe());
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            parser.close();
+            throw new NuxeoException("Expecting a JSON object in the response of the model");
+        }
+
+        return parser;
+    }
+
+    /**
+     * @return the value of a top level field of the JSON object, {@code defaultValue} if not found or not a string
+     */
+    public static String readStringField(SdkBytes bytes, String fieldName, String defaultValue) {
+        return readStringPath(bytes, defaultValue, fieldName);
+    }
+
+    /**
+     * Reads a string nested in objects: {@code readStringPath(bytes, "", "delta", "text")} reads
+     * <code>{"delta": {"text": "..."}}</code>. When a field is an array, its first element is used:
+     * {@code readStringPath(bytes, "", "outputs", "text")} reads <code>{"outputs": [{"text": "..."}]}</code>.
+     *
+     * @return the value, {@code defaultValue} if not found or not a string
+     */
+    public static String readStringPath(SdkBytes bytes, String defaultValue, String... path) {
+
+        try (JsonParser parser = createObjectParser(bytes)) {
+            JsonToken token = moveToPath(parser, path, 0);
+            return token == JsonToken.VALUE_STRING ? parser.getText() : defaultValue;
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot parse the response of the model", e);
+        }
+    }
+
+    /**
+     * Same as {@link #readStringPath(SdkBytes, String, String...)} for an integer, for example a token count: the
+     * other values, like the text of the response, are skipped without being decoded.
+     *
+     * @return the value, {@code defaultValue} if not found or not an integer
+     */
+    public static int readIntPath(SdkBytes bytes, int defaultValue, String... path) {
+
+        try (JsonParser parser = createObjectParser(bytes)) {
+            JsonToken token = moveToPath(parser, path, 0);
+            return token == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : defaultValue;
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot parse the response of the model", e);
+        }
+    }
+
+    // The parser is on the start of an object. Returns the token of the value, null if not found
+    protected static JsonToken moveToPath(JsonParser parser, String[] path, int depth) throws IOException {
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (!path[depth].equals(name)) {
+                parser.skipChildren();
+                continue;
+            }
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            if (depth == path.length - 1) {
+                return token;
+            }
+            return token == JsonToken.START_OBJECT ? moveToPath(parser, path, depth + 1) : null;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the value of the current token if it is a string, else null (and the value is skipped)
+     */
+    public static String getStringValue(JsonParser parser) throws IOException {
+
+        if (parser.currentToken() == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+
+        return null;
+    }
+
+    /**
+     * @return the value of the current token if it is a number, else {@code defaultValue} (and the value is skipped)
+     */
+    public static int getIntValue(JsonParser parser, int defaultValue) throws IOException {
+
+        if (parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getIntValue();
+        }
+        parser.skipChildren();
+
+        return defaultValue;
+    }
+
+}
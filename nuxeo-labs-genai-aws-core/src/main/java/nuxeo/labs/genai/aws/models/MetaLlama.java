@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.models;
+
+import java.io.IOException;
+
+import org.json.JSONObject;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import nuxeo.labs.genai.aws.ModelResult;
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import nuxeo.labs.genai.aws.text.PromptText;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.PayloadPart;
+
+/**
+ * Meta Llama 3 instruct models. The prompt is wrapped in the Llama 3 chat format, as one user message. Llama does
+ * not support stop sequences, they are ignored.
+ *
+ * @since 2023
+ */
+public class MetaLlama implements RequestResponseHandlers {
+
+    public static final int DEFAULT_MAX_GEN_LEN = 512;
+
+    /**
+     * @return the prompt in the chat format of the model
+     * @since 2023
+     */
+    protected PromptText formatPrompt(CharSequence prompt) {
+        return PromptText.of("<|begin_of_text|><|start_header_id|>user<|end_header_id|>\n\n", prompt,
+                "<|eot_id|><|start_header_id|>assistant<|end_header_id|>\n\n");
+    }
+
+    // See https://docs.aws.amazon.com/bedrock/latest/userguide/model-parameters-meta.html
+    @Override
+    public JSONObject getRequestBody(RequestParameters params) {
+        return new JSONObject(getRequestBodyBytes(params).asUtf8String());
+    }
+
+    @Override
+    public SdkBytes getRequestBodyBytes(RequestParameters params) {
+
+        PromptText formattedPrompt = formatPrompt(params.getPromptText());
+
+        return JsonRequests.write(formattedPrompt.length(), generator -> {
+            generator.writeStartObject();
+            generator.writeFieldName("prompt");
+            JsonRequests.writeString(generator, formattedPrompt);
+            if (params.getTemperature() != null) {
+                generator.writeNumberField("temperature", params.getTemperature().floatValue());
+            }
+            if (params.getTopP() != null) {
+                generator.writeNumberField("top_p", params.getTopP().floatValue());
+            }
+            generator.writeNumberField("max_gen_len", params.getResponseMaxTokenCount() == null
+                    ? DEFAULT_MAX_GEN_LEN : params.getResponseMaxTokenCount().intValue());
+            generator.writeEndObject();
+        });
+    }
+
+    @Override
+    public ModelResult getResult(InvokeModelResponse response) {
+
+        // {"generation":"The distance...","prompt_token_count":14,"generation_token_count":31,
+        // "stop_reason":"stop"}
+        String text = null;
+        String stopReason = null;
+        int inputTokenCount = -1;
+        int outputTokenCount = -1;
+        try (JsonParser parser = JsonResponses.createObjectParser(response.body())) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                switch (name) {
+                case "generation":
+                    text = JsonResponses.getStringValue(parser);
+                    break;
+                case "prompt_token_count":
+                    inputTokenCount = JsonResponses.getIntValue(parser, -1);
+                    break;
+                case "generation_token_count":
+                    outputTokenCount = JsonResponses.getIntValue(parser, -1);
+                    break;
+                case "stop_reason":
+                    stopReason = JsonResponses.getStringValue(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot parse the response of the model", e);
+        }
+
+        if (text == null) {
+            throw new NuxeoException("No generation in the response of the model");
+        }
+
+        // The Bedrock headers, if set, take precedence
+        int count = RequestResponseHandlers.super.getInputTokenCount(response);
+        inputTokenCount = count < 0 ? inputTokenCount : count;
+        count = RequestResponseHandlers.super.getOutputTokenCount(response);
+        outputTokenCount = count < 0 ? outputTokenCount : count;
+
+        return new ModelResult(text, inputTokenCount, outputTokenCount, stopReason);
+    }
+
+    @Override
+    public int getInputTokenCount(InvokeModelResponse response) {
+        int count = RequestResponseHandlers.super.getInputTokenCount(response);
+        return count < 0 ? JsonResponses.readIntPath(response.body(), -1, "prompt_token_count") : count;
+    }
+
+    @Override
+    public int getOutputTokenCount(InvokeModelResponse response) {
+        int count = RequestResponseHandlers.super.getOutputTokenCount(response);
+        return count < 0 ? JsonResponses.readIntPath(response.body(), -1, "generation_token_count") : count;
+    }
+
+    @Override
+    public String getStringChunk(PayloadPart chunk) {
+
+        // {"generation":" The","prompt_token_count":null,"generation_token_count":2,"stop_reason":null}
+        return JsonResponses.readStringPath(chunk.bytes(), "", "generation");
+    }
+
+}
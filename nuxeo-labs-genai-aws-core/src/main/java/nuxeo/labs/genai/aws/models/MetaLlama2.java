@@ -0,0 +1,35 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.models;
+
+import nuxeo.labs.genai.aws.text.PromptText;
+
+/**
+ * Meta Llama 2 chat models: same body as Llama 3, with the Llama 2 chat format.
+ *
+ * @since 2023
+ */
+public class MetaLlama2 extends MetaLlama {
+
+    @Override
+    protected PromptText formatPrompt(CharSequence prompt) {
+        return PromptText.of("<s>[INST] ", prompt, " [/INST]");
+    }
+
+}
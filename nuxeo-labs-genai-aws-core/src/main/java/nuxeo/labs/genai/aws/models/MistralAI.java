@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.models;
+
+import java.io.IOException;
+
+import org.json.JSONObject;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import nuxeo.labs.genai.aws.ModelResult;
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import nuxeo.labs.genai.aws.text.PromptText;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.PayloadPart;
+
+/**
+ * Mistral AI instruct models (Mistral, Mixtral). The prompt is wrapped in the instruct format.
+ *
+ * @since 2023
+ */
+public class MistralAI implements RequestResponseHandlers {
+
+    public static final int DEFAULT_MAX_TOKENS = 512;
+
+    // See https://docs.aws.amazon.com/bedrock/latest/userguide/model-parameters-mistral.html
+    @Override
+    public JSONObject getRequestBody(RequestParameters params) {
+        return new JSONObject(getRequestBodyBytes(params).asUtf8String());
+    }
+
+    @Override
+    public SdkBytes getRequestBodyBytes(RequestParameters params) {
+
+        PromptText formattedPrompt = PromptText.of("<s>[INST] ", params.getPromptText(), " [/INST]");
+
+        return JsonRequests.write(formattedPrompt.length(), generator -> {
+            generator.writeStartObject();
+            generator.writeFieldName("prompt");
+            JsonRequests.writeString(generator, formattedPrompt);
+            generator.writeNumberField("max_tokens", params.getResponseMaxTokenCount() == null ? DEFAULT_MAX_TOKENS
+                    : params.getResponseMaxTokenCount().intValue());
+            if (params.getTemperature() != null) {
+                generator.writeNumberField("temperature", params.getTemperature().floatValue());
+            }
+            if (params.getTopP() != null) {
+                generator.writeNumberField("top_p", params.getTopP().floatValue());
+            }
+            if (params.hasStopSequences()) {
+                JsonRequests.writeStringArray(generator, "stop", params.getStopSequences());
+            }
+            generator.writeEndObject();
+        });
+    }
+
+    @Override
+    public ModelResult getResult(InvokeModelResponse response) {
+
+        // {"outputs":[{"text":"The distance...","stop_reason":"stop"}]}
+        String text = null;
+        String stopReason = null;
+        try (JsonParser parser = JsonResponses.createObjectParser(response.body())) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("outputs".equals(name) && token == JsonToken.START_ARRAY) {
+                    // The first output only
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String outputName = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("text".equals(outputName)) {
+                                String outputText = JsonResponses.getStringValue(parser);
+                                text = text == null ? outputText : text;
+                            } else if ("stop_reason".equals(outputName)) {
+                                String reason = JsonResponses.getStringValue(parser);
+                                stopReason = stopReason == null ? reason : stopReason;
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot parse the response of the model", e);
+        }
+
+        if (text == null) {
+            throw new NuxeoException("No outputs in the response of the model");
+        }
+
+        // Mistral does not return the token counts in the body
+        return new ModelResult(text, getInputTokenCount(response), getOutputTokenCount(response), stopReason);
+    }
+
+    @Override
+    public String getStringChunk(PayloadPart chunk) {
+
+        // {"outputs":[{"text":" The","stop_reason":null}]}
+        return JsonResponses.readStringPath(chunk.bytes(), "", "outputs", "text");
+    }
+
+}
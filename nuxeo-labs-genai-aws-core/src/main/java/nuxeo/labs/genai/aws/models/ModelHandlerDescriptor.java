@@ -0,0 +1,108 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XNodeList;
+import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.common.xmap.registry.XRegistry;
+import org.nuxeo.common.xmap.registry.XRegistryId;
+
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+
+/**
+ * Handler of the models whose id matches one of the patterns (regular expressions, the whole id must match),
+ * contributed to the {@code modelHandlers} extension point of {@link ModelHandlerService}:
+ *
+ * <pre>
+ * &lt;handler name="anthropic.claude-3" order="10"&gt;
+ *   &lt;pattern&gt;anthropic\.claude-3-.*&lt;/pattern&gt;
+ *   &lt;class&gt;nuxeo.labs.genai.aws.models.AnthropicClaudeMessages&lt;/class&gt;
+ *   &lt;!-- Optional, default values are given by TokenEstimators --&gt;
+ *   &lt;contextWindow&gt;200000&lt;/contextWindow&gt;
+ *   &lt;charsPerToken&gt;3.5&lt;/charsPerToken&gt;
+ * &lt;/handler&gt;
+ * </pre>
+ *
+ * Handlers are tested by increasing order, the first matching one is used.
+ *
+ * @since 2023
+ */
+@XObject("handler")
+@XRegistry(enable = false)
+public class ModelHandlerDescriptor {
+
+    public static final int DEFAULT_ORDER = 100;
+
+    @XNode("@name")
+    @XRegistryId
+    protected String name;
+
+    @XNode("@enabled")
+    protected boolean enabled = true;
+
+    @XNode("@order")
+    protected int order = DEFAULT_ORDER;
+
+    @XNodeList(value = "pattern", type = ArrayList.class, componentType = String.class)
+    protected List<String> patterns = new ArrayList<>();
+
+    @XNode("class")
+    protected Class<? extends RequestResponseHandlers> klass;
+
+    // 0 => TokenEstimators.getContextWindow
+    @XNode("contextWindow")
+    protected int contextWindow;
+
+    // 0 => TokenEstimators.forModel
+    @XNode("charsPerToken")
+    protected double charsPerToken;
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    public Class<? extends RequestResponseHandlers> getKlass() {
+        return klass;
+    }
+
+    public int getContextWindow() {
+        return contextWindow;
+    }
+
+    public double getCharsPerToken() {
+        return charsPerToken;
+    }
+
+}
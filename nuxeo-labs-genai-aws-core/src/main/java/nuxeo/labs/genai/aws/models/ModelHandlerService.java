@@ -0,0 +1,64 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.models;
+
+import java.util.List;
+
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import nuxeo.labs.genai.aws.tokens.TokenEstimator;
+
+/**
+ * Resolves the {@link RequestResponseHandlers} of a model from the handlers contributed to the
+ * {@code modelHandlers} extension point (see {@link ModelHandlerDescriptor}). There is one instance of each handler
+ * class, and the handler of a model id is resolved once then cached, so building a request does not allocate a
+ * handler nor test the patterns again.
+ *
+ * @since 2023
+ */
+public interface ModelHandlerService {
+
+    /**
+     * @throws IllegalArgumentException if no handler matches {@code modelId}
+     * @since 2023
+     */
+    public RequestResponseHandlers getHandler(String modelId);
+
+    public boolean hasHandler(String modelId);
+
+    /**
+     * @return the max. number of tokens (prompt + response) accepted by the model, from the handler if set, else
+     *         from {@link nuxeo.labs.genai.aws.tokens.TokenEstimators#getContextWindow(String)}
+     * @since 2023
+     */
+    public int getContextWindow(String modelId);
+
+    /**
+     * @return the estimator built from the {@code charsPerToken} of the handler if set, else
+     *         {@link nuxeo.labs.genai.aws.tokens.TokenEstimators#forModel(String)}
+     * @since 2023
+     */
+    public TokenEstimator getTokenEstimator(String modelId);
+
+    /**
+     * @return the names of the enabled handlers, in the order they are tested
+     * @since 2023
+     */
+    public List<String> getHandlerNames();
+
+}
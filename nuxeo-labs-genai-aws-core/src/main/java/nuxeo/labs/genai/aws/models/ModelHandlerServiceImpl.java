@@ -0,0 +1,175 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import nuxeo.labs.genai.aws.tokens.HeuristicTokenEstimator;
+import nuxeo.labs.genai.aws.tokens.TokenEstimator;
+import nuxeo.labs.genai.aws.tokens.TokenEstimators;
+
+/**
+ * @since 2023
+ */
+public class ModelHandlerServiceImpl extends DefaultComponent implements ModelHandlerService {
+
+    private static final Logger log = LogManager.getLogger(ModelHandlerServiceImpl.class);
+
+    public static final String XP_MODEL_HANDLERS = "modelHandlers";
+
+    protected volatile List<ModelHandler> handlers = Collections.emptyList();
+
+    // modelId => handler, empty if no handler matches. Cleared when the handlers are compiled
+    protected final Map<String, Optional<ModelHandler>> resolved = new ConcurrentHashMap<>();
+
+    @Override
+    public void start(ComponentContext context) {
+
+        List<ModelHandlerDescriptor> descriptors = new ArrayList<>(
+                this.<ModelHandlerDescriptor> getRegistryContributions(XP_MODEL_HANDLERS));
+        descriptors.sort(Comparator.comparingInt(ModelHandlerDescriptor::getOrder));
+
+        // One instance per class, handlers are stateless
+        Map<Class<? extends RequestResponseHandlers>, RequestResponseHandlers> instances = new HashMap<>();
+        List<ModelHandler> compiled = new ArrayList<>();
+        for (ModelHandlerDescriptor descriptor : descriptors) {
+            if (!descriptor.isEnabled()) {
+                continue;
+            }
+            if (descriptor.getKlass() == null) {
+                throw new NuxeoException("No class for the model handler " + descriptor.getName());
+            }
+            RequestResponseHandlers handler = instances.computeIfAbsent(descriptor.getKlass(), klass -> {
+                try {
+                    return klass.getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException e) {
+                    throw new NuxeoException("Cannot instantiate the model handler " + klass, e);
+                }
+            });
+            compiled.add(new ModelHandler(descriptor, handler));
+            log.debug("Model handler {}: {} for {}", descriptor.getName(), descriptor.getKlass().getName(),
+                    descriptor.getPatterns());
+        }
+        handlers = Collections.unmodifiableList(compiled);
+        resolved.clear();
+    }
+
+    @Override
+    public void stop(ComponentContext context) throws InterruptedException {
+        handlers = Collections.emptyList();
+        resolved.clear();
+        super.stop(context);
+    }
+
+    protected Optional<ModelHandler> resolve(String modelId) {
+
+        if (StringUtils.isBlank(modelId)) {
+            return Optional.empty();
+        }
+
+        return resolved.computeIfAbsent(modelId,
+                id -> handlers.stream().filter(handler -> handler.matches(id)).findFirst());
+    }
+
+    @Override
+    public RequestResponseHandlers getHandler(String modelId) {
+
+        return resolve(modelId).orElseThrow(() -> new IllegalArgumentException(
+                "No model handler for " + modelId + ". Supported models: " + getHandlerNames())).handler;
+    }
+
+    @Override
+    public boolean hasHandler(String modelId) {
+        return resolve(modelId).isPresent();
+    }
+
+    @Override
+    public int getContextWindow(String modelId) {
+
+        int contextWindow = resolve(modelId).map(handler -> handler.contextWindow).orElse(0);
+        return contextWindow > 0 ? contextWindow : TokenEstimators.getContextWindow(modelId);
+    }
+
+    @Override
+    public TokenEstimator getTokenEstimator(String modelId) {
+
+        TokenEstimator estimator = resolve(modelId).map(handler -> handler.estimator).orElse(null);
+        return estimator != null ? estimator : TokenEstimators.forModel(modelId);
+    }
+
+    @Override
+    public List<String> getHandlerNames() {
+        return handlers.stream().map(handler -> handler.name).collect(Collectors.toList());
+    }
+
+    protected static class ModelHandler {
+
+        protected final String name;
+
+        protected final List<Pattern> patterns;
+
+        protected final RequestResponseHandlers handler;
+
+        protected final int contextWindow;
+
+        // null => TokenEstimators.forModel
+        protected final TokenEstimator estimator;
+
+        protected ModelHandler(ModelHandlerDescriptor descriptor, RequestResponseHandlers handler) {
+            name = descriptor.getName();
+            try {
+                patterns = descriptor.getPatterns()
+                                     .stream()
+                                     .map(String::trim)
+                                     .map(Pattern::compile)
+                                     .collect(Collectors.toList());
+            } catch (PatternSyntaxException e) {
+                throw new NuxeoException("Invalid pattern for the model handler " + name, e);
+            }
+            this.handler = handler;
+            contextWindow = descriptor.getContextWindow();
+            estimator = descriptor.getCharsPerToken() > 0
+                    ? new HeuristicTokenEstimator(descriptor.getCharsPerToken())
+                    : null;
+        }
+
+        protected boolean matches(String modelId) {
+            return patterns.stream().anyMatch(pattern -> pattern.matcher(modelId).matches());
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.models;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import software.amazon.awssdk.core.SdkBytes;
+
+/**
+ * Request and response of the Amazon Titan Embeddings models
+ *
+ * @since 2023
+ */
+public class TitanEmbeddings {
+
+    // 8K tokens for Titan Embeddings G1 and V2
+    public static final int MAX_INPUT_TOKENS = 8000;
+
+    private TitanEmbeddings() {
+        // Utility class
+    }
+
+    // See https://docs.aws.amazon.com/bedrock/latest/userguide/model-parameters-titan-embed-text.html
+    /**
+     * @param dimensions {@code null} => default of the model. V2 only (256, 512 or 1024)
+     * @param normalize {@code null} => default of the model. V2 only
+     * @since 2023
+     */
+    public static SdkBytes getRequestBody(CharSequence text, Integer dimensions, Boolean normalize) {
+
+        return JsonRequests.write(text.length(), generator -> {
+            generator.writeStartObject();
+            generator.writeFieldName("inputText");
+            JsonRequests.writeString(generator, text);
+            if (dimensions != null) {
+                generator.writeNumberField("dimensions", dimensions.intValue());
+            }
+            if (normalize != null) {
+                generator.writeBooleanField("normalize", normalize.booleanValue());
+            }
+            generator.writeEndObject();
+        });
+    }
+
+    /**
+     * @return the vector read from the body of the response, {"embedding": [0.1, ...], "inputTextTokenCount": 7}
+     * @since 2023
+     */
+    public static float[] readEmbedding(SdkBytes body) {
+
+        try (JsonParser parser = JsonResponses.createObjectParser(body)) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("embedding".equals(name) && token == JsonToken.START_ARRAY) {
+                    float[] vector = new float[1024];
+                    int size = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        if (size == vector.length) {
+                            vector = Arrays.copyOf(vector, size * 2);
+                        }
+                        vector[size++] = parser.getFloatValue();
+                    }
+                    return size == vector.length ? vector : Arrays.copyOf(vector, size);
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot parse the response of the model", e);
+        }
+
+        throw new NuxeoException("No embedding in the response of the model");
+    }
+
+}
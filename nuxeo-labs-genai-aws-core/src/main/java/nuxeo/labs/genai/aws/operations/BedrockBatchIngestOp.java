@@ -0,0 +1,98 @@
+package nuxeo.labs.genai.aws.operations;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import nuxeo.labs.genai.aws.batch.BatchInferenceService;
+import nuxeo.labs.genai.aws.batch.BatchJob;
+import nuxeo.labs.genai.aws.batch.BatchJobClient;
+import nuxeo.labs.genai.aws.batch.BatchOutputReader;
+import nuxeo.labs.genai.aws.models.ModelHandlerService;
+
+/**
+ *
+ */
+@Operation(id = BedrockBatchIngestOp.ID, category = Constants.CAT_SERVICES, label = "Bedrock: Batch Ingest", description = ""
+        + "Read the results of a batch job submitted with Bedrock.BatchSubmit and store the text of each result in the"
+        + " xpath field of its document (the record id is the id of the document). The output is read record by"
+        + " record, and the transaction is committed every 100 documents."
+        + " Return a Blob (application/json) with the status of the job, and, if it is COMPLETED, the number of"
+        + " documents updated and of errors (failed records, unknown documents)."
+        + " jobId and xpath (for example dc:description) are required.")
+public class BedrockBatchIngestOp {
+
+    private static final Logger log = LogManager.getLogger(BedrockBatchIngestOp.class);
+
+    public static final String ID = "Bedrock.BatchIngest";
+
+    public static final int COMMIT_SIZE = 100;
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "jobId", required = true)
+    protected String jobId;
+
+    @Param(name = "xpath", required = true)
+    protected String xpath;
+
+    @OperationMethod
+    public Blob run() {
+
+        BatchJobClient jobClient = Framework.getService(BatchInferenceService.class).getJobClient();
+        BatchJob job = jobClient.getJob(jobId);
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown batch job " + jobId);
+        }
+
+        JSONObject report = new JSONObject();
+        report.put("jobId", jobId);
+        report.put("status", job.getStatus().name());
+        if (StringUtils.isNotBlank(job.getMessage())) {
+            report.put("message", job.getMessage());
+        }
+        if (job.getStatus() != BatchJob.Status.COMPLETED) {
+            return new StringBlob(report.toString(), "application/json");
+        }
+
+        RequestResponseHandlers handler = Framework.getService(ModelHandlerService.class)
+                                                   .getHandler(job.getModelId());
+        // updated, errors
+        int[] counts = new int[2];
+        BatchOutputReader.read(jobClient.getOutput(jobId), handler, result -> {
+            IdRef ref = new IdRef(result.getRecordId());
+            if (result.isError() || !session.exists(ref)) {
+                log.warn("Batch job {}, record {} not ingested: {}", jobId, result.getRecordId(),
+                        result.isError() ? result.getErrorMessage() : "no such document");
+                counts[1]++;
+                return;
+            }
+            DocumentModel doc = session.getDocument(ref);
+            doc.setPropertyValue(xpath, result.getResult().getText());
+            session.saveDocument(doc);
+            if (++counts[0] % COMMIT_SIZE == 0 && TransactionHelper.isTransactionActive()) {
+                TransactionHelper.commitOrRollbackTransaction();
+                TransactionHelper.startTransaction();
+            }
+        });
+        report.put("updated", counts[0]);
+        report.put("errors", counts[1]);
+
+        return new StringBlob(report.toString(), "application/json");
+    }
+}
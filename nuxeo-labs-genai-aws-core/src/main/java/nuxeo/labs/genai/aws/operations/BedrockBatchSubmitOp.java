@@ -0,0 +1,116 @@
+package nuxeo.labs.genai.aws.operations;
+
+import java.io.IOException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONObject;
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.InvokeBedrock.PromptBudgetPolicy;
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.batch.BatchInferenceService;
+import nuxeo.labs.genai.aws.batch.BatchInputWriter;
+import nuxeo.labs.genai.aws.batch.BatchJob;
+
+/**
+ *
+ */
+@Operation(id = BedrockBatchSubmitOp.ID, category = Constants.CAT_SERVICES, label = "Bedrock: Batch Submit", description = ""
+        + "Prepare one request per input document (same as Bedrock.Run: the text of the blob at xpath is added to the"
+        + " prompt, or replaces insertInPromptReplaceTag), write them to a batch inference file (JSONL, the record id"
+        + " is the id of the document), and submit it as one job."
+        + " Return a Blob (application/json) with the id of the job (jobId), its status, the number of records, and"
+        + " the documents that were skipped (no blob, or prompt too big when promptBudget is 'reject')."
+        + " Use Bedrock.BatchIngest with the jobId to store the results in the documents once the job is completed."
+        + " prompt and modelId are required. modelParams, promptBudget: see Bedrock.Run.")
+public class BedrockBatchSubmitOp {
+
+    public static final String ID = "Bedrock.BatchSubmit";
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "modelId", required = true, values = { InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_INSTANT_V1 })
+    protected String modelId = InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_INSTANT_V1;
+
+    @Param(name = "prompt", required = true)
+    protected String prompt;
+
+    @Param(name = "xpath", required = false, values = { "file:content" })
+    protected String xpath = "file:content";
+
+    @Param(name = "insertInPromptReplaceTag", required = false)
+    protected String insertInPromptReplaceTag;
+
+    @Param(name = "promptBudget", required = false, values = { "reject", "truncate", "none" })
+    protected String promptBudget;
+
+    @Param(name = "modelParams", required = false)
+    protected String modelParams;
+
+    @OperationMethod
+    public Blob run(DocumentModelList docs) {
+
+        // Only builds the requests: no region, no client
+        InvokeBedrock ibr = new InvokeBedrock();
+        ibr.setModelId(modelId);
+        if (StringUtils.isNotBlank(promptBudget)) {
+            ibr.setPromptBudgetPolicy(PromptBudgetPolicy.valueOf(promptBudget.toUpperCase()));
+        }
+        if (modelParams != null) {
+            ibr.setParameters(new RequestParameters(modelParams));
+        }
+
+        JSONObject report = new JSONObject();
+        Blob input;
+        try (BatchInputWriter writer = new BatchInputWriter()) {
+            for (DocumentModel doc : docs) {
+                Blob blob = StringUtils.isBlank(xpath) ? null : (Blob) doc.getPropertyValue(xpath);
+                if (blob == null && StringUtils.isNotBlank(xpath)) {
+                    report.append("skipped", new JSONObject().put("id", doc.getId()).put("error", "No blob"));
+                    continue;
+                }
+                try {
+                    writer.add(doc.getId(), ibr.buildRequestBody(prompt, blob, insertInPromptReplaceTag));
+                } catch (NuxeoException e) {
+                    report.append("skipped", new JSONObject().put("id", doc.getId()).put("error", e.getMessage()));
+                }
+            }
+            input = writer.getBlob();
+            report.put("records", writer.getCount());
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot write the batch input file", e);
+        }
+
+        if (report.getInt("records") == 0) {
+            report.put("status", BatchJob.Status.FAILED.name());
+        } else {
+            BatchJob job = Framework.getService(BatchInferenceService.class).getJobClient().submit(modelId, input);
+            report.put("jobId", job.getId());
+            report.put("status", job.getStatus().name());
+        }
+
+        return new StringBlob(report.toString(), "application/json");
+    }
+
+    @OperationMethod
+    public Blob run(DocumentModel doc) {
+
+        DocumentModelList docs = new DocumentModelListImpl();
+        docs.add(doc);
+        return run(docs);
+    }
+}
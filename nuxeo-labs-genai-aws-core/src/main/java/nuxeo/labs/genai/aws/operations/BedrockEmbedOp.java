@@ -0,0 +1,127 @@
+package nuxeo.labs.genai.aws.operations;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.vectors.VectorIndex;
+import nuxeo.labs.genai.aws.vectors.VectorIndexService;
+import software.amazon.awssdk.regions.Region;
+
+/**
+ *
+ */
+@Operation(id = BedrockEmbedOp.ID, category = Constants.CAT_SERVICES, label = "Bedrock: Embed", description = ""
+        + "Compute the embedding (vector) of a text with an embeddings model (Amazon Titan Embeddings)."
+        + " If input is a Document or a list of Documents, the text of the blob at xpath (default file:content) is"
+        + " embedded and stored in the vector index (name in the index parameter, default 'default'), with the id of"
+        + " the document. Documents without blob are ignored. Return the input. Use Bedrock.FindSimilar to search"
+        + " the index."
+        + " If input is void/null, the text parameter is required, its embedding is returned in a Blob"
+        + " (application/json): {\"embedding\": [...], \"dimensions\": 1024}."
+        + " modelId is required. Default is amazon.titan-embed-text-v2:0. awsRegion is required. Default is us-east-1."
+        + " dimensions is optional (Titan Embeddings V2 only: 256, 512 or 1024), it must match the dimensions of the"
+        + " index. clientConfig is optional, it is the name of a Bedrock client configuration (default is 'default').")
+public class BedrockEmbedOp {
+
+    public static final String ID = "Bedrock.Embed";
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "modelId", required = true, values = { InvokeBedrock.MODEL_TITAN_EMBED_TEXT_V2 })
+    protected String modelId = InvokeBedrock.MODEL_TITAN_EMBED_TEXT_V2;
+
+    @Param(name = "awsRegion", required = true, values = { "us-east-1" })
+    protected String awsRegion = "us-east-1";
+
+    @Param(name = "clientConfig", required = false)
+    protected String clientConfig;
+
+    @Param(name = "text", required = false)
+    protected String text;
+
+    @Param(name = "xpath", required = false, values = { "file:content" })
+    protected String xpath = "file:content";
+
+    @Param(name = "index", required = false, values = { VectorIndexService.DEFAULT_INDEX })
+    protected String index = VectorIndexService.DEFAULT_INDEX;
+
+    @Param(name = "dimensions", required = false)
+    protected Integer dimensions;
+
+    protected InvokeBedrock getInvokeBedrock() {
+
+        InvokeBedrock ibr = new InvokeBedrock(Region.of(awsRegion), modelId);
+        ibr.setClientConfig(clientConfig);
+        ibr.setEmbeddingDimensions(dimensions);
+        return ibr;
+    }
+
+    @OperationMethod
+    public Blob run() {
+
+        if (StringUtils.isBlank(text)) {
+            throw new IllegalArgumentException(
+                    "When calling the " + ID + " operation with no input document, the 'text' parameter is required.");
+        }
+
+        float[] embedding = getInvokeBedrock().embed(text);
+        JSONArray values = new JSONArray();
+        for (float value : embedding) {
+            values.put(value);
+        }
+        JSONObject result = new JSONObject();
+        result.put("embedding", values);
+        result.put("dimensions", embedding.length);
+
+        return new StringBlob(result.toString(), "application/json");
+    }
+
+    @OperationMethod
+    public DocumentModel run(DocumentModel doc) {
+
+        embed(getInvokeBedrock(), Framework.getService(VectorIndexService.class).getIndex(index), doc);
+        return doc;
+    }
+
+    @OperationMethod
+    public DocumentModelList run(DocumentModelList docs) {
+
+        InvokeBedrock ibr = getInvokeBedrock();
+        VectorIndex vectorIndex = Framework.getService(VectorIndexService.class).getIndex(index);
+        for (DocumentModel doc : docs) {
+            embed(ibr, vectorIndex, doc);
+        }
+        return docs;
+    }
+
+    protected void embed(InvokeBedrock ibr, VectorIndex vectorIndex, DocumentModel doc) {
+
+        if (StringUtils.isBlank(xpath)) {
+            throw new IllegalArgumentException(
+                    "When calling the " + ID + " operation with an input document, the 'xpath' parameter is required.");
+        }
+        Blob blob = (Blob) doc.getPropertyValue(xpath);
+        if (blob == null) {
+            return;
+        }
+        String blobText = InvokeBedrock.blobToText(blob);
+        if (StringUtils.isBlank(blobText)) {
+            return;
+        }
+        vectorIndex.add(doc.getId(), ibr.embed(blobText));
+    }
+}
@@ -0,0 +1,139 @@
+package nuxeo.labs.genai.aws.operations;
+
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.DocumentNotFoundException;
+import org.nuxeo.ecm.core.api.DocumentSecurityException;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.vectors.SearchResult;
+import nuxeo.labs.genai.aws.vectors.VectorIndex;
+import nuxeo.labs.genai.aws.vectors.VectorIndexService;
+import software.amazon.awssdk.regions.Region;
+
+/**
+ *
+ */
+@Operation(id = BedrockFindSimilarOp.ID, category = Constants.CAT_SERVICES, label = "Bedrock: Find Similar", description = ""
+        + "Return the documents most similar to the input Document, or to the text parameter if input is void/null,"
+        + " searched in the vector index (name in the index parameter, default 'default') filled by Bedrock.Embed."
+        + " Most similar first, at most k documents (default 10), with a similarity of at least minScore (optional,"
+        + " cosine similarity, -1 to 1)."
+        + " If the input document is in the index, its vector is used, else the text of its blob at xpath (default"
+        + " file:content) is embedded. The input document is never returned. Documents that were deleted, or that"
+        + " the current user cannot read, are skipped."
+        + " modelId, awsRegion, dimensions and clientConfig are used to compute the embedding, see Bedrock.Embed.")
+public class BedrockFindSimilarOp {
+
+    public static final String ID = "Bedrock.FindSimilar";
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "modelId", required = true, values = { InvokeBedrock.MODEL_TITAN_EMBED_TEXT_V2 })
+    protected String modelId = InvokeBedrock.MODEL_TITAN_EMBED_TEXT_V2;
+
+    @Param(name = "awsRegion", required = true, values = { "us-east-1" })
+    protected String awsRegion = "us-east-1";
+
+    @Param(name = "clientConfig", required = false)
+    protected String clientConfig;
+
+    @Param(name = "text", required = false)
+    protected String text;
+
+    @Param(name = "xpath", required = false, values = { "file:content" })
+    protected String xpath = "file:content";
+
+    @Param(name = "index", required = false, values = { VectorIndexService.DEFAULT_INDEX })
+    protected String index = VectorIndexService.DEFAULT_INDEX;
+
+    @Param(name = "dimensions", required = false)
+    protected Integer dimensions;
+
+    @Param(name = "k", required = false)
+    protected Integer k = 10;
+
+    @Param(name = "minScore", required = false)
+    protected Double minScore;
+
+    protected float[] embed(String toEmbed) {
+
+        InvokeBedrock ibr = new InvokeBedrock(Region.of(awsRegion), modelId);
+        ibr.setClientConfig(clientConfig);
+        ibr.setEmbeddingDimensions(dimensions);
+        return ibr.embed(toEmbed);
+    }
+
+    protected DocumentModelList search(VectorIndex vectorIndex, float[] vector, String excludedId) {
+
+        int max = k == null || k.intValue() <= 0 ? 10 : k.intValue();
+        // One more, in case the excluded document is found
+        List<SearchResult> results = vectorIndex.search(vector, excludedId == null ? max : max + 1);
+
+        DocumentModelList docs = new DocumentModelListImpl();
+        for (SearchResult result : results) {
+            if (docs.size() == max || (minScore != null && result.getScore() < minScore.doubleValue())) {
+                break;
+            }
+            if (result.getId().equals(excludedId)) {
+                continue;
+            }
+            try {
+                docs.add(session.getDocument(new IdRef(result.getId())));
+            } catch (DocumentNotFoundException e) {
+                // Deleted with its parent, the listener only sees the parent
+                vectorIndex.remove(result.getId());
+            } catch (DocumentSecurityException e) {
+                // Not readable by the current user
+            }
+        }
+        return docs;
+    }
+
+    @OperationMethod
+    public DocumentModelList run() {
+
+        if (StringUtils.isBlank(text)) {
+            throw new IllegalArgumentException(
+                    "When calling the " + ID + " operation with no input document, the 'text' parameter is required.");
+        }
+
+        VectorIndex vectorIndex = Framework.getService(VectorIndexService.class).getIndex(index);
+        return search(vectorIndex, embed(text), null);
+    }
+
+    @OperationMethod
+    public DocumentModelList run(DocumentModel doc) {
+
+        VectorIndex vectorIndex = Framework.getService(VectorIndexService.class).getIndex(index);
+        float[] vector = vectorIndex.getVector(doc.getId());
+        if (vector == null) {
+            if (StringUtils.isBlank(xpath)) {
+                throw new IllegalArgumentException("When calling the " + ID
+                        + " operation with a document not in the index, the 'xpath' parameter is required.");
+            }
+            Blob blob = (Blob) doc.getPropertyValue(xpath);
+            String blobText = blob == null ? null : InvokeBedrock.blobToText(blob);
+            if (StringUtils.isBlank(blobText)) {
+                return new DocumentModelListImpl();
+            }
+            vector = embed(blobText);
+        }
+
+        return search(vectorIndex, vector, doc.getId());
+    }
+}
@@ -0,0 +1,57 @@
+package nuxeo.labs.genai.aws.operations;
+
+import org.json.JSONObject;
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+
+import nuxeo.labs.genai.aws.stream.StreamedResponse;
+
+/**
+ *
+ */
+@Operation(id = BedrockGetStreamOp.ID, category = Constants.CAT_SERVICES, label = "Bedrock: Get Stream", description = ""
+        + "Return the text received so far for a response streamed by Bedrock.RunStream with waitForCompletion=false."
+        + " streamId is required, it is the one returned by Bedrock.RunStream."
+        + " offset is optional, the number of characters already read (default 0): only the text received after it is"
+        + " returned."
+        + " Return a Blob (application/json): {\"text\": \"...\", \"offset\": (offset for the next call),"
+        + " \"completed\": (true when the whole response has been received), \"error\": (if the call failed)}."
+        + " Poll until completed is true. The response is kept a few minutes after its completion. Only the user who"
+        + " called Bedrock.RunStream can read it.")
+public class BedrockGetStreamOp {
+
+    public static final String ID = "Bedrock.GetStream";
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "streamId", required = true)
+    protected String streamId;
+
+    @Param(name = "offset", required = false)
+    protected int offset = 0;
+
+    @OperationMethod
+    public Blob run() {
+
+        StreamedResponse.Chunk chunk = StreamedResponse.read(streamId, offset, session.getPrincipal().getName());
+        if (chunk == null) {
+            throw new IllegalArgumentException("Unknown or expired stream " + streamId);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("text", chunk.getText());
+        result.put("offset", chunk.getOffset());
+        result.put("completed", chunk.isCompleted());
+        if (chunk.getError() != null) {
+            result.put("error", chunk.getError());
+        }
+        return new StringBlob(result.toString(), "application/json");
+    }
+}
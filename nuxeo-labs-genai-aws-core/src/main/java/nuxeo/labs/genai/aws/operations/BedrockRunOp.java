@@ -8,13 +8,18 @@ import org.nuxeo.ecm.automation.core.annotations.Context;
 import org.nuxeo.ecm.automation.core.annotations.Operation;
 import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
 import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.automation.core.util.Properties;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.runtime.api.Framework;
 
 import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.InvokeBedrock.PromptBudgetPolicy;
 import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.prompts.PromptTemplate;
+import nuxeo.labs.genai.aws.prompts.PromptTemplateService;
 import software.amazon.awssdk.regions.Region;
 
 /**
@@ -22,8 +27,10 @@ import software.amazon.awssdk.regions.Region;
  */
 @Operation(id = BedrockRunOp.ID, category = Constants.CAT_SERVICES, label = "Bedrock: Run", description = ""
         + "Run a model, return the response as Blob (text/plain)."
-        + " The prompt is required and is sent as is to the model."
-        + " modelId is required. Default is anthropic.claude-instant-v1. IMPORTANT: We support only Anthropic Claude and AWS Titan for now."
+        + " The prompt is sent as is to the model. It is required, unless promptTemplate is passed: the name of a"
+        + " prompt template, rendered with the templateValues (key=value lines). Then the text of the blob (if any)"
+        + " goes to its {text} placeholder (or is appended if there is none), and insertInPromptReplaceTag is ignored."
+        + " modelId is required. Default is anthropic.claude-instant-v1. Supported models: Anthropic Claude (including Claude 3), AWS Titan Text, Meta Llama 2 and 3, Mistral AI. Others can be added with the modelHandlers extension point."
         + " awsRegion is required. Default is us-)east-1."
         + " If input is passed and xpath is passed and contains a blob, it is converted to text and added to the prompt,"
         + " with 2 lines before and after. Also, if a blob is used, it can be instertedn in the prompt by replacing the"
@@ -31,7 +38,12 @@ import software.amazon.awssdk.regions.Region;
         + " If input is void/null, the operationwill just send the prompt and return the result."
         + " modelId and awsRegion are required."
         + " If modelParams is passed, it is a JSON string containing values for tuning the model: temperature (0-1), topP (0-1),"
-        + " responseMaxTokenCount (integer), stopSequences (list of strings).")
+        + " responseMaxTokenCount (integer), stopSequences (list of strings)."
+        + " clientConfig is optional, it is the name of a Bedrock client configuration (default is 'default')."
+        + " promptBudget is optional: what to do if the prompt (estimated locally) is too big for the model: 'reject'"
+        + " (default, the model is not called), 'truncate' (the text of the blob is truncated) or 'none'."
+        + " useCache is optional. If true, the response is cached (and returned from the cache for the same request),"
+        + " if false the cache is not used. Default: the cache is used only if the temperature is 0.")
 public class BedrockRunOp {
 
     public static final String ID = "Bedrock.Run";
@@ -45,27 +57,57 @@ public class BedrockRunOp {
     @Param(name = "awsRegion", required = true, values = { "us-east-1" })
     protected String awsRegion = "us-east-1";
 
-    @Param(name = "prompt", required = true)
+    @Param(name = "clientConfig", required = false)
+    protected String clientConfig;
+
+    @Param(name = "prompt", required = false)
     protected String prompt;
 
+    @Param(name = "promptTemplate", required = false)
+    protected String promptTemplate;
+
+    @Param(name = "templateValues", required = false)
+    protected Properties templateValues;
+
     @Param(name = "xpath", required = false)
     protected String xpath;
 
     @Param(name = "insertInPromptReplaceTag", required = false)
     protected String insertInPromptReplaceTag;
 
+    @Param(name = "promptBudget", required = false, values = { "reject", "truncate", "none" })
+    protected String promptBudget;
+
     @Param(name = "modelParams", required = false)
     protected String modelParams;
 
+    @Param(name = "useCache", required = false)
+    protected Boolean useCache;
+
     protected Blob runIt(Blob blob) {
 
         InvokeBedrock ibr = new InvokeBedrock(Region.of(awsRegion), modelId);
+        ibr.setClientConfig(clientConfig);
+        if (StringUtils.isNotBlank(promptBudget)) {
+            ibr.setPromptBudgetPolicy(PromptBudgetPolicy.valueOf(promptBudget.toUpperCase()));
+        }
+        ibr.setUseCache(useCache);
         if (modelParams != null) {
             RequestParameters params = new RequestParameters(modelParams);
             ibr.setParameters(params);
         }
 
-        String resultStr = ibr.run(prompt, blob, null);
+        String resultStr;
+        if (StringUtils.isNotBlank(promptTemplate)) {
+            PromptTemplate template = Framework.getService(PromptTemplateService.class).getTemplate(promptTemplate);
+            boolean withBlob = blob != null;
+            resultStr = ibr.run(template.renderPrompt(templateValues, withBlob), blob,
+                    withBlob ? PromptTemplate.TEXT_TAG : null);
+        } else if (StringUtils.isNotBlank(prompt)) {
+            resultStr = ibr.run(prompt, blob, insertInPromptReplaceTag);
+        } else {
+            throw new IllegalArgumentException("The " + ID + " operation requires prompt or promptTemplate.");
+        }
 
         Blob result = new StringBlob(resultStr, "text/plain");
         result.setFilename(UUID.randomUUID().toString() + ".txt");
@@ -22,7 +22,7 @@ import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
  */
 @Operation(id = BedrockRunRawOp.ID, category = Constants.CAT_SERVICES, label = "Bedrock: Run Raw", description = ""
         + "Run a model, return the java InvokeModelResponse"
-        + " modelId is required. Default is anthropic.claude-instant-v1. IMPORTANT: We support only Anthropic Claude and AWS Titan for now."
+        + " modelId is required. Default is anthropic.claude-instant-v1. Supported models: Anthropic Claude (including Claude 3), AWS Titan Text, Meta Llama 2 and 3, Mistral AI. Others can be added with the modelHandlers extension point."
         + " awsRegion is required. Default is us-)east-1."
         + " requestBody is a JSON string containing all and everything expected by the model. Caller is in charge of filling it with the values"
         + " (with correct field names and types) as expected by the model (see the model documentation on AWS). For example, if a blob must be"
@@ -30,7 +30,8 @@ import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
         + " It returns the InvokeModelResponse as received, caller is in charge of using the misc. InvokeModelResponse to get the details."
         + " This operation allows for calling a model not yet supported by the plugin in terms of eas-of-use"
         + " (formating the request, checking the result, etc.)"
-        + " because it returns the raw InvokeModelResponse, this operation should not be called from the frontend which can't handle Java objects.")
+        + " because it returns the raw InvokeModelResponse, this operation should not be called from the frontend which can't handle Java objects."
+        + " clientConfig is optional, it is the name of a Bedrock client configuration (default is 'default').")
 public class BedrockRunRawOp {
 
     public static final String ID = "Bedrock.RunRaw";
@@ -44,6 +45,9 @@ public class BedrockRunRawOp {
     @Param(name = "awsRegion", required = true, values = { "us-east-1" })
     protected String awsRegion = "us-east-1";
 
+    @Param(name = "clientConfig", required = false)
+    protected String clientConfig;
+
     @Param(name = "requestBody", required = true)
     protected String requestBody;
 
@@ -53,6 +57,7 @@ public class BedrockRunRawOp {
         JSONObject requestBodyJson = new JSONObject(requestBody);
 
         InvokeBedrock ibr = new InvokeBedrock(Region.of(awsRegion), modelId);
+        ibr.setClientConfig(clientConfig);
         InvokeModelResponse response = ibr.run(requestBodyJson);
         
         return response;
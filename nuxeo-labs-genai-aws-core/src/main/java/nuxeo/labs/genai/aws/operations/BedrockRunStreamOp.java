@@ -0,0 +1,195 @@
+package nuxeo.labs.genai.aws.operations;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONObject;
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.automation.core.util.Properties;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.InvokeBedrock.PromptBudgetPolicy;
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.prompts.PromptTemplate;
+import nuxeo.labs.genai.aws.prompts.PromptTemplateService;
+import nuxeo.labs.genai.aws.stream.StreamedResponse;
+import software.amazon.awssdk.regions.Region;
+
+/**
+ *
+ */
+@Operation(id = BedrockRunStreamOp.ID, category = Constants.CAT_SERVICES, label = "Bedrock: Run Stream", description = ""
+        + "Same as Bedrock.Run, but the model is called in streaming mode, and its response is written to the returned"
+        + " Blob (text/plain) as it is received."
+        + " The prompt is required, unless promptTemplate is passed: the name of a prompt template, rendered with the"
+        + " templateValues (key=value lines). Then the text of the blob (if any) goes to its {text} placeholder (or is"
+        + " appended if there is none)."
+        + " If waitForCompletion is true (default), the operation returns once the whole response has been received."
+        + " If it is false, the operation returns right away a Blob (application/json) with the streamId of the"
+        + " response: {\"streamId\": \"...\"}. The response is saved while it is received, the caller gets the text"
+        + " received so far by polling Bedrock.GetStream with this streamId."
+        + " promptBudget is optional: what to do if the prompt (estimated locally) is too big for the model: 'reject'"
+        + " (default, the model is not called), 'truncate' (the text of the blob is truncated) or 'none'."
+        + " Other parameters are the same as Bedrock.Run.")
+public class BedrockRunStreamOp {
+
+    public static final String ID = "Bedrock.RunStream";
+
+    @Context
+    protected CoreSession session;
+
+    @Param(name = "modelId", required = true, values = { InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_INSTANT_V1 })
+    protected String modelId = InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_INSTANT_V1;
+
+    @Param(name = "awsRegion", required = true, values = { "us-east-1" })
+    protected String awsRegion = "us-east-1";
+
+    @Param(name = "clientConfig", required = false)
+    protected String clientConfig;
+
+    @Param(name = "prompt", required = false)
+    protected String prompt;
+
+    @Param(name = "promptTemplate", required = false)
+    protected String promptTemplate;
+
+    @Param(name = "templateValues", required = false)
+    protected Properties templateValues;
+
+    @Param(name = "xpath", required = false)
+    protected String xpath;
+
+    @Param(name = "promptBudget", required = false, values = { "reject", "truncate", "none" })
+    protected String promptBudget;
+
+    @Param(name = "modelParams", required = false)
+    protected String modelParams;
+
+    @Param(name = "waitForCompletion", required = false)
+    protected boolean waitForCompletion = true;
+
+    protected Blob runIt(Blob blob) {
+
+        InvokeBedrock ibr = new InvokeBedrock(Region.of(awsRegion), modelId);
+        ibr.setClientConfig(clientConfig);
+        if (StringUtils.isNotBlank(promptBudget)) {
+            ibr.setPromptBudgetPolicy(PromptBudgetPolicy.valueOf(promptBudget.toUpperCase()));
+        }
+        if (modelParams != null) {
+            RequestParameters params = new RequestParameters(modelParams);
+            ibr.setParameters(params);
+        }
+
+        String actualPrompt;
+        String replaceTag = null;
+        if (StringUtils.isNotBlank(promptTemplate)) {
+            PromptTemplate template = Framework.getService(PromptTemplateService.class).getTemplate(promptTemplate);
+            boolean withBlob = blob != null;
+            actualPrompt = template.renderPrompt(templateValues, withBlob);
+            replaceTag = withBlob ? PromptTemplate.TEXT_TAG : null;
+        } else if (StringUtils.isNotBlank(prompt)) {
+            actualPrompt = prompt;
+        } else {
+            throw new IllegalArgumentException("The " + ID + " operation requires prompt or promptTemplate.");
+        }
+
+        if (!waitForCompletion) {
+            return runInBackground(ibr, actualPrompt, blob, replaceTag);
+        }
+
+        Blob result;
+        OutputStream out;
+        try {
+            result = Blobs.createBlobWithExtension(".txt");
+            out = new FileOutputStream(result.getFile());
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot create the result blob", e);
+        }
+        result.setMimeType("text/plain");
+        result.setEncoding(StandardCharsets.UTF_8.name());
+        result.setFilename(UUID.randomUUID().toString() + ".txt");
+
+        CompletableFuture<Void> completion;
+        try {
+            completion = ibr.runStream(actualPrompt, blob, replaceTag, text -> {
+                try {
+                    out.write(text.getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            IOUtils.closeQuietly(out);
+            throw e;
+        }
+        completion = completion.whenComplete((v, e) -> IOUtils.closeQuietly(out));
+
+        try {
+            completion.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof NuxeoException) {
+                // Over a token budget: keep its status
+                throw (NuxeoException) e.getCause();
+            }
+            throw new NuxeoException("Error calling the model in streaming mode", e.getCause());
+        }
+
+        return result;
+    }
+
+    /**
+     * The response is saved in a {@link StreamedResponse} while it is received, the caller polls it with
+     * {@code Bedrock.GetStream}
+     */
+    protected Blob runInBackground(InvokeBedrock ibr, String actualPrompt, Blob blob, String replaceTag) {
+
+        StreamedResponse response = new StreamedResponse(session.getPrincipal().getName());
+        try {
+            ibr.runStream(actualPrompt, blob, replaceTag, response).whenComplete((v, e) -> response.complete(e));
+        } catch (RuntimeException e) {
+            response.complete(e);
+            throw e;
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("streamId", response.getId());
+        return new StringBlob(result.toString(), "application/json");
+    }
+
+    @OperationMethod
+    public Blob run() {
+
+        return runIt(null);
+    }
+
+    @OperationMethod
+    public Blob run(DocumentModel doc) {
+
+        Blob blob = null;
+        if (StringUtils.isNotBlank(xpath)) {
+            blob = (Blob) doc.getPropertyValue(xpath);
+        }
+
+        return runIt(blob);
+    }
+}
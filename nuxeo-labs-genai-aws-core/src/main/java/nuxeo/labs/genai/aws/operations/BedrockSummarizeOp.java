@@ -1,5 +1,6 @@
 package nuxeo.labs.genai.aws.operations;
 
+import java.util.Map;
 import java.util.UUID;
 
 import org.apache.commons.lang3.StringUtils;
@@ -12,9 +13,14 @@ import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.runtime.api.Framework;
 
+import nuxeo.labs.genai.aws.ChunkedSummarizer;
 import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.InvokeBedrock.PromptBudgetPolicy;
 import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.prompts.PromptTemplate;
+import nuxeo.labs.genai.aws.prompts.PromptTemplateService;
 import software.amazon.awssdk.regions.Region;
 
 /**
@@ -25,19 +31,29 @@ import software.amazon.awssdk.regions.Region;
         + " input can be void/null or a Document. If void/null, the text parameter is required and is the content to summarize."
         + " If input is a Document, then text is ignored and xpath is required and the blob found is the content to summarize."
         + " modelId is required. Default is anthropic.claude-instant-v1"
-        + " IMPORTANT: We support only Anthropic Claude and AWS Titan for now."
+        + " Supported models: Anthropic Claude (including Claude 3), AWS Titan Text, Meta Llama 2 and 3, Mistral AI. Others can be added with the modelHandlers extension point."
         + " awsRegion is required. Default is us-east-1."
-        + " language also is required, because it changes the prompt. We support only English ('en') and French ('fr')."
-        + " For any other language, use Bedrock.Run"
+        + " language also is required, because it changes the prompt. English ('en') and French ('fr') are provided,"
+        + " other languages can be added by contributing summarize.{language} prompt templates (default is English)."
+        + " promptTemplate is optional, the name of a prompt template to use instead (values: count, language, text)."
         + " numberOfSentences, if passed, changes the prompt and asks for a summary in numberOfSentences sentences."
         + " If modelParams is passed, it is a JSON string containing an object with values for tuning the model: temperature (0-1), topP (0-1),"
         + " responseMaxTokenCount (integer), stopSequences (list of strings)."
         + " Notice this is the same a using the Bedrock.Run operation, we just provide the prompt, like 'Summarize the following text:',"
-        + " or 'Merci de resumer ce texte en 3 phrases :'.")
+        + " or 'Merci de resumer ce texte en 3 phrases :'."
+        + " clientConfig is optional, it is the name of a Bedrock client configuration (default is 'default')."
+        + " promptBudget is optional: what to do if the prompt (estimated locally) is too big for the model: 'reject'"
+        + " (default, the model is not called), 'truncate' (the text of the blob is truncated) or 'none'."
+        + " useCache is optional. If true, the response is cached (and returned from the cache for the same request),"
+        + " if false the cache is not used. Default: the cache is used only if the temperature is 0."
+        + " If chunked is true, the text is split in chunks of at most maxChunkTokens tokens (default 8000), each chunk is"
+        + " summarized (in parallel), then the partial summaries are summarized. Use it for big documents.")
 public class BedrockSummarizeOp {
 
     public static final String ID = "Bedrock.Summarize";
 
+    public static final String SUMMARIZE_TEMPLATE_PREFIX = "summarize.";
+
     @Context
     protected CoreSession session;
 
@@ -47,6 +63,9 @@ public class BedrockSummarizeOp {
     @Param(name = "awsRegion", required = true, values = { "us-east-1" })
     protected String awsRegion = "us-east-1";
 
+    @Param(name = "clientConfig", required = false)
+    protected String clientConfig;
+
     @Param(name = "text", required = false)
     protected String text;
 
@@ -59,18 +78,37 @@ public class BedrockSummarizeOp {
     @Param(name = "language", required = true, values = { "en" })
     protected String language = "en";
 
+    @Param(name = "promptTemplate", required = false)
+    protected String promptTemplate;
+
+    @Param(name = "promptBudget", required = false, values = { "reject", "truncate", "none" })
+    protected String promptBudget;
+
     @Param(name = "modelParams", required = false)
     protected String modelParams;
+
+    @Param(name = "useCache", required = false)
+    protected Boolean useCache;
+
+    @Param(name = "chunked", required = false)
+    protected boolean chunked = false;
+
+    @Param(name = "maxChunkTokens", required = false)
+    protected Integer maxChunkTokens;
     
-    protected Blob runIt(Blob blob) {
-        
+    /**
+     * The built-in prompts, used when no {@code summarize.*} prompt template is deployed. See
+     * {@link #getSummarizeTemplate(String, int)}
+     * 
+     * @param language, "en" or "fr". Any other value => "en"
+     * @param countSentences, if > 0, the summary is asked in this number of sentences
+     * @return the prompt to use, to which the text to summarize must be appended
+     * @since 2023
+     */
+    public static String buildPrompt(String language, int countSentences) {
+
         String prompt = "";
-        int countSentences = 0;
-        if (numberOfSentences != null && numberOfSentences.intValue() > 0) {
-            countSentences = numberOfSentences.intValue();
-        }
-        
-        switch (language.toLowerCase()) {
+        switch (StringUtils.defaultString(language).toLowerCase()) {
         case "fr":
             prompt = "Merci de résumer ce texte";
             if (countSentences > 0) {
@@ -93,14 +131,82 @@ public class BedrockSummarizeOp {
         }
         prompt += " :\n\n";
 
+        return prompt;
+    }
+
+    /**
+     * The prompt template for a summary in {@code language}: {@code summarize.{language}},
+     * {@code summarize.{language}.sentence} or {@code summarize.{language}.sentences} depending on
+     * {@code countSentences}. If there is none for this language, the English one. The values are given by
+     * {@link #getSummarizeValues(String, int)}.
+     *
+     * @since 2023
+     */
+    public static PromptTemplate getSummarizeTemplate(String language, int countSentences) {
+
+        String suffix = countSentences == 1 ? ".sentence" : countSentences > 1 ? ".sentences" : "";
+        PromptTemplateService templates = Framework.getService(PromptTemplateService.class);
+        if (templates != null) {
+            for (String lang : new String[] { StringUtils.defaultString(language).toLowerCase(), "en" }) {
+                String name = SUMMARIZE_TEMPLATE_PREFIX + lang + suffix;
+                if (templates.hasTemplate(name)) {
+                    return templates.getTemplate(name);
+                }
+            }
+        }
+
+        // buildPrompt ends with the blank line that the template adds before the text
+        return PromptTemplate.compile(buildPrompt(language, countSentences).trim());
+    }
+
+    /**
+     * @return the values of the placeholders of the summarize templates: {@code count} and {@code language}
+     * @since 2023
+     */
+    public static Map<String, Object> getSummarizeValues(String language, int countSentences) {
+        return Map.of("count", countSentences, "language", StringUtils.defaultString(language));
+    }
+
+    protected Blob runIt(Blob blob) {
+        
+        int countSentences = 0;
+        if (numberOfSentences != null && numberOfSentences.intValue() > 0) {
+            countSentences = numberOfSentences.intValue();
+        }
+        PromptTemplate template;
+        if (StringUtils.isBlank(promptTemplate)) {
+            template = getSummarizeTemplate(language, countSentences);
+        } else {
+            template = Framework.getService(PromptTemplateService.class).getTemplate(promptTemplate);
+        }
+        Map<String, Object> values = getSummarizeValues(language, countSentences);
+
         InvokeBedrock ibr = new InvokeBedrock(Region.of(awsRegion), modelId);
+        ibr.setClientConfig(clientConfig);
+        if (StringUtils.isNotBlank(promptBudget)) {
+            ibr.setPromptBudgetPolicy(PromptBudgetPolicy.valueOf(promptBudget.toUpperCase()));
+        }
+        ibr.setUseCache(useCache);
 
         if (modelParams != null) {
             RequestParameters params = new RequestParameters(modelParams);
             ibr.setParameters(params);
         }
 
-        String summary = ibr.run(prompt, blob, null);
+        String summary;
+        if (chunked) {
+            ChunkedSummarizer summarizer = new ChunkedSummarizer(ibr, language, countSentences);
+            summarizer.setPromptTemplate(template);
+            if (maxChunkTokens != null && maxChunkTokens.intValue() > 0) {
+                summarizer.setMaxChunkTokens(maxChunkTokens.intValue());
+            }
+            summary = summarizer.summarize(blob);
+        } else {
+            // The text of the blob is inserted at the {text} placeholder (or appended)
+            boolean withBlob = blob != null;
+            summary = ibr.run(template.renderPrompt(values, withBlob), blob,
+                    withBlob ? PromptTemplate.TEXT_TAG : null);
+        }
 
         Blob result = new StringBlob(summary, "text/plain");
         result.setFilename(UUID.randomUUID().toString() + ".txt");
@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.preprocessing;
+
+/**
+ * Joins the words split at the end of a line: "exam-\nple" => "example". Only when the hyphen follows a letter and
+ * the next line starts with a lower case letter, so "self-\nService" or "2023-\n24" are not changed.
+ * <br>
+ * Expects lines without trailing spaces: run it after {@link WhitespacePreprocessor}.
+ *
+ * @since 2023
+ */
+public class DehyphenationPreprocessor implements TextPreprocessor {
+
+    @Override
+    public String process(String text) {
+
+        int index = text.indexOf("-\n");
+        if (index < 0) {
+            return text;
+        }
+
+        int length = text.length();
+        StringBuilder sb = new StringBuilder(length);
+        int start = 0;
+        while (index >= 0) {
+            int next = index + 2;
+            if (index > 0 && Character.isLetter(text.charAt(index - 1)) && next < length
+                    && Character.isLowerCase(text.charAt(next))) {
+                sb.append(text, start, index);
+                start = next;
+            }
+            index = text.indexOf("-\n", next);
+        }
+        sb.append(text, start, length);
+
+        return sb.toString();
+    }
+
+}
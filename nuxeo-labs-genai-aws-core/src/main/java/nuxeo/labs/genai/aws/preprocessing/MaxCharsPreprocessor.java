@@ -0,0 +1,63 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.preprocessing;
+
+import java.util.Map;
+
+/**
+ * Keeps the first {@code maxChars} characters of the text (option, required), cut at the last whitespace before the
+ * limit if any, so words are not cut.
+ * <br>
+ * Only applied to the whole text: a text read by parts is not capped (see {@link TextPreprocessor#isWholeText()}).
+ *
+ * @since 2023
+ */
+public class MaxCharsPreprocessor implements TextPreprocessor {
+
+    protected int maxChars = Integer.MAX_VALUE;
+
+    @Override
+    public void init(Map<String, String> options) {
+        String value = options.get("maxChars");
+        if (value == null) {
+            throw new IllegalArgumentException("The maxChars option is required");
+        }
+        maxChars = Integer.parseInt(value.trim());
+    }
+
+    @Override
+    public String process(String text) {
+
+        if (text.length() <= maxChars) {
+            return text;
+        }
+
+        int end = maxChars;
+        while (end > 0 && !Character.isWhitespace(text.charAt(end))) {
+            end--;
+        }
+        return text.substring(0, end == 0 ? maxChars : end);
+    }
+
+    @Override
+    public boolean isWholeText() {
+        return true;
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.preprocessing;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Preprocesses a text as it is read (see {@link TextPreprocessingService#preprocessPart(String)}), by blocks of at most
+ * {@code blockSize} characters, so the whole text is never in memory. The blocks are cut at a page break or between
+ * two paragraphs when possible (else between two lines, else two words), and joined the way
+ * {@link WhitespacePreprocessor} joins them, so the result is the one of the whole text, without the steps that need
+ * it (see {@link TextPreprocessor#isWholeText()}).
+ *
+ * @since 2023
+ */
+public class PreprocessingReader extends Reader {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    protected final Reader in;
+
+    protected final TextPreprocessingService preprocessing;
+
+    protected final char[] block;
+
+    // Characters read from in, not preprocessed yet
+    protected int blockLength;
+
+    protected boolean eof;
+
+    // The preprocessed part being read
+    protected String part = "";
+
+    protected int position;
+
+    protected boolean started;
+
+    protected boolean endsWithBlank;
+
+    // The whitespace between the last part and the next one, removed when each part is preprocessed
+    protected int gapNewLines;
+
+    protected boolean gapPageBreak;
+
+    protected boolean gapSpace;
+
+    public PreprocessingReader(Reader in, TextPreprocessingService preprocessing, int blockSize) {
+        super(in);
+        if (blockSize < 2) {
+            throw new IllegalArgumentException("The block size must be at least 2: " + blockSize);
+        }
+        this.in = in;
+        this.preprocessing = preprocessing;
+        block = new char[blockSize];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+
+        if (len == 0) {
+            return 0;
+        }
+        while (position == part.length()) {
+            if (!nextPart()) {
+                return -1;
+            }
+        }
+        int count = Math.min(len, part.length() - position);
+        part.getChars(position, position + count, cbuf, off);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads and preprocesses the next block, the part can be empty.
+     *
+     * @return {@code false} at the end of the text
+     */
+    protected boolean nextPart() throws IOException {
+
+        while (!eof && blockLength < block.length) {
+            int count = in.read(block, blockLength, block.length - blockLength);
+            if (count < 0) {
+                eof = true;
+            } else {
+                blockLength += count;
+            }
+        }
+        if (blockLength == 0) {
+            return false;
+        }
+
+        int cut = eof ? blockLength : cut();
+        String raw = new String(block, 0, cut);
+        System.arraycopy(block, cut, block, 0, blockLength - cut);
+        blockLength -= cut;
+
+        part = preprocessing.preprocessPart(raw);
+        position = 0;
+        if (part.isEmpty()) {
+            addGap(raw, 0, raw.length());
+            return true;
+        }
+
+        int start = 0;
+        while (start < raw.length() && isBlank(raw.charAt(start))) {
+            start++;
+        }
+        addGap(raw, 0, start);
+        if (started && !endsWithBlank && !isBlank(part.charAt(0))) {
+            part = separator() + part;
+        }
+        started = true;
+        endsWithBlank = isBlank(part.charAt(part.length() - 1));
+
+        gapNewLines = 0;
+        gapPageBreak = false;
+        gapSpace = false;
+        int end = raw.length();
+        while (end > 0 && isBlank(raw.charAt(end - 1))) {
+            end--;
+        }
+        addGap(raw, end, raw.length());
+        return true;
+    }
+
+    /**
+     * @return where to cut the full block: after a page break or a blank line, else after a line break (not after a
+     *         hyphen, see {@link DehyphenationPreprocessor}), else after a space
+     */
+    protected int cut() {
+
+        int line = -1;
+        int space = -1;
+        for (int i = blockLength - 1; i > 0; i--) {
+            char c = block[i];
+            if (c == '\f') {
+                return i + 1;
+            } else if (c == '\n') {
+                int j = i - 1;
+                while (j >= 0 && isSpace(block[j])) {
+                    j--;
+                }
+                if (j >= 0 && (block[j] == '\n' || block[j] == '\f')) {
+                    return i + 1;
+                }
+                if (line < 0 && (j < 0 || block[j] != '-')) {
+                    line = i + 1;
+                }
+            } else if (space < 0 && c != '\r' && isSpace(c) && !isBlank(block[i - 1])) {
+                space = i + 1;
+            }
+        }
+        if (line > 0) {
+            return line;
+        }
+        if (space > 0) {
+            return space;
+        }
+        // No break at all, do not split a surrogate pair
+        return Character.isHighSurrogate(block[blockLength - 1]) ? blockLength - 1 : blockLength;
+    }
+
+    protected void addGap(String text, int start, int end) {
+
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == end || text.charAt(i + 1) != '\n')) {
+                gapNewLines++;
+            } else if (c == '\f') {
+                gapPageBreak = true;
+            } else if (isSpace(c)) {
+                gapSpace = true;
+            }
+        }
+    }
+
+    /**
+     * @return the whitespace {@link WhitespacePreprocessor} keeps between two parts
+     */
+    protected String separator() {
+
+        if (gapPageBreak) {
+            return "\n\f\n";
+        } else if (gapNewLines > 0) {
+            return gapNewLines > 1 ? "\n\n" : "\n";
+        }
+        return gapSpace ? " " : "";
+    }
+
+    protected static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\u00A0' || c == '\u000B' || c == '\r';
+    }
+
+    protected static boolean isBlank(char c) {
+        return c == '\n' || c == '\f' || isSpace(c);
+    }
+
+}
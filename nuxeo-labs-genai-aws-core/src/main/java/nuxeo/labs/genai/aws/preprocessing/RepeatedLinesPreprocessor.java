@@ -0,0 +1,187 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.preprocessing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes the page headers and footers: the short lines (at most {@code maxLineLength} characters) found at the top
+ * or bottom of at least {@code minOccurrences} pages. Only the first and last {@code edgeLines} lines of each page are
+ * considered, so a short line repeated in the body of the pages ("Yes", a table header...) is kept. Digits are ignored
+ * when comparing the lines, so "Page 3 of 12" and "Page 4 of 12" are the same line, and so are the page numbers alone.
+ * <br>
+ * The pages are separated by form feeds (as written by pdftotext, and kept by {@link WhitespacePreprocessor}). A text
+ * without form feeds is not changed: its headers cannot be told from its content.
+ * <br>
+ * Only applied to the whole text, as the lines are counted over all the pages: a text read by parts keeps its headers
+ * and footers (see {@link TextPreprocessor#isWholeText()}).
+ * <br>
+ * Options: {@code minOccurrences} (default 3), {@code maxLineLength} (default 100), {@code edgeLines} (default 2).
+ *
+ * @since 2023
+ */
+public class RepeatedLinesPreprocessor implements TextPreprocessor {
+
+    public static final char PAGE_BREAK = '\f';
+
+    protected int minOccurrences = 3;
+
+    protected int maxLineLength = 100;
+
+    protected int edgeLines = 2;
+
+    @Override
+    public void init(Map<String, String> options) {
+        minOccurrences = Integer.parseInt(options.getOrDefault("minOccurrences", String.valueOf(minOccurrences)));
+        maxLineLength = Integer.parseInt(options.getOrDefault("maxLineLength", String.valueOf(maxLineLength)));
+        edgeLines = Integer.parseInt(options.getOrDefault("edgeLines", String.valueOf(edgeLines)));
+    }
+
+    @Override
+    public boolean isWholeText() {
+        return true;
+    }
+
+    @Override
+    public String process(String text) {
+
+        if (text.indexOf(PAGE_BREAK) < 0) {
+            return text;
+        }
+
+        // First pass: the short lines at the top and bottom of the pages, counted once per page
+        Map<String, Integer> counts = new HashMap<>();
+        List<int[]> edges = new ArrayList<>();
+        List<String> edgeKeys = new ArrayList<>();
+        List<int[]> page = new ArrayList<>();
+        boolean repeated = false;
+        int length = text.length();
+        for (int start = 0; start < length;) {
+            int end = lineEnd(text, start);
+            if (!isBlank(text, start, end)) {
+                page.add(new int[] { start, end });
+            }
+            if (end == length || text.charAt(end) == PAGE_BREAK) {
+                repeated |= endPage(text, page, edges, edgeKeys, counts);
+            }
+            start = end + 1;
+        }
+        repeated |= endPage(text, page, edges, edgeKeys, counts);
+        if (!repeated) {
+            return text;
+        }
+
+        // Second pass: copy the other lines. The page breaks are kept
+        StringBuilder sb = new StringBuilder(length);
+        int copied = 0;
+        for (int i = 0; i < edges.size(); i++) {
+            if (counts.get(edgeKeys.get(i)) < minOccurrences) {
+                continue;
+            }
+            int[] line = edges.get(i);
+            sb.append(text, copied, line[0]);
+            copied = line[1] < length && text.charAt(line[1]) == '\n' ? line[1] + 1 : line[1];
+        }
+        sb.append(text, copied, length);
+
+        return sb.toString();
+    }
+
+    /**
+     * Adds the edge lines of the page, and clears it
+     *
+     * @return {@code true} if a line reached {@code minOccurrences}
+     */
+    protected boolean endPage(String text, List<int[]> page, List<int[]> edges, List<String> edgeKeys,
+            Map<String, Integer> counts) {
+
+        boolean repeated = false;
+        Set<String> pageKeys = new HashSet<>();
+        int size = page.size();
+        for (int i = 0; i < size; i++) {
+            if (i >= edgeLines && i < size - edgeLines) {
+                continue;
+            }
+            int[] line = page.get(i);
+            String key = key(text, line[0], line[1]);
+            if (key == null) {
+                continue;
+            }
+            edges.add(line);
+            edgeKeys.add(key);
+            if (pageKeys.add(key)) {
+                repeated |= counts.merge(key, 1, Integer::sum) >= minOccurrences;
+            }
+        }
+        page.clear();
+
+        return repeated;
+    }
+
+    // A line ends with a line break or a page break
+    protected static int lineEnd(String text, int start) {
+
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == PAGE_BREAK) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    protected static boolean isBlank(String text, int start, int end) {
+
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the line, trimmed, with digits replaced by '#'. {@code null} if blank or too long
+     */
+    protected String key(String text, int start, int end) {
+
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end || end - start > maxLineLength) {
+            return null;
+        }
+
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            chars[i - start] = Character.isDigit(c) ? '#' : c;
+        }
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.preprocessing;
+
+import java.util.List;
+
+/**
+ * Reduces the number of tokens of the text extracted from the blobs before it goes to the prompt: collapses the
+ * whitespaces, removes the repeated headers and footers, joins the hyphenated words, and optionally caps the length.
+ * The steps are contributed to the {@code preprocessors} extension point (see {@link TextPreprocessorDescriptor}).
+ * <br>
+ * Applied by {@link nuxeo.labs.genai.aws.InvokeBedrock#blobToText(org.nuxeo.ecm.core.api.Blob)}, before the text is
+ * cached, so each blob is preprocessed once. A text streamed by
+ * {@link nuxeo.labs.genai.aws.InvokeBedrock#openText(org.nuxeo.ecm.core.api.Blob)} is preprocessed by parts (see
+ * {@link PreprocessingReader}), without the steps that need the whole text.
+ *
+ * @since 2023
+ */
+public interface TextPreprocessingService {
+
+    /**
+     * Applies the enabled preprocessors, by order, and records the time and the estimated number of tokens saved
+     * (see {@link nuxeo.labs.genai.aws.metrics.BedrockMetrics#recordPreprocessing(long, long, long)}).
+     *
+     * @return the preprocessed text, {@code null} if {@code text} is {@code null}
+     * @since 2023
+     */
+    public String preprocess(String text);
+
+    /**
+     * Same as {@link #preprocess(String)}, for a part of a text, cut between two paragraphs: the steps needing the
+     * whole text (see {@link TextPreprocessor#isWholeText()}) are skipped.
+     *
+     * @return the preprocessed part, {@code null} if {@code text} is {@code null}
+     * @since 2023
+     */
+    public String preprocessPart(String text);
+
+    /**
+     * @return the names of the enabled preprocessors, in the order they are applied
+     * @since 2023
+     */
+    public List<String> getPreprocessorNames();
+
+}
@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.preprocessing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+import nuxeo.labs.genai.aws.metrics.BedrockMetrics;
+import nuxeo.labs.genai.aws.tokens.TokenEstimator;
+import nuxeo.labs.genai.aws.tokens.TokenEstimators;
+
+/**
+ * @since 2023
+ */
+public class TextPreprocessingServiceImpl extends DefaultComponent implements TextPreprocessingService {
+
+    private static final Logger log = LogManager.getLogger(TextPreprocessingServiceImpl.class);
+
+    public static final String XP_PREPROCESSORS = "preprocessors";
+
+    // The model is not known when the text is extracted, Titan is the most conservative estimation
+    protected static final TokenEstimator ESTIMATOR = TokenEstimators.TITAN;
+
+    protected volatile List<Preprocessor> preprocessors = Collections.emptyList();
+
+    @Override
+    public void start(ComponentContext context) {
+
+        List<TextPreprocessorDescriptor> descriptors = new ArrayList<>(
+                this.<TextPreprocessorDescriptor> getRegistryContributions(XP_PREPROCESSORS));
+        descriptors.sort(Comparator.comparingInt(TextPreprocessorDescriptor::getOrder));
+
+        List<Preprocessor> compiled = new ArrayList<>();
+        for (TextPreprocessorDescriptor descriptor : descriptors) {
+            if (!descriptor.isEnabled()) {
+                continue;
+            }
+            if (descriptor.getKlass() == null) {
+                throw new NuxeoException("No class for the text preprocessor " + descriptor.getName());
+            }
+            TextPreprocessor preprocessor;
+            try {
+                preprocessor = descriptor.getKlass().getDeclaredConstructor().newInstance();
+                preprocessor.init(descriptor.getOptions());
+            } catch (ReflectiveOperationException | IllegalArgumentException e) {
+                throw new NuxeoException("Cannot instantiate the text preprocessor " + descriptor.getName(), e);
+            }
+            compiled.add(new Preprocessor(descriptor.getName(), preprocessor));
+            log.debug("Text preprocessor {}: {} {}", descriptor.getName(), descriptor.getKlass().getName(),
+                    descriptor.getOptions());
+        }
+        preprocessors = Collections.unmodifiableList(compiled);
+    }
+
+    @Override
+    public void stop(ComponentContext context) throws InterruptedException {
+        preprocessors = Collections.emptyList();
+        super.stop(context);
+    }
+
+    @Override
+    public String preprocess(String text) {
+        return preprocess(text, true);
+    }
+
+    @Override
+    public String preprocessPart(String text) {
+        return preprocess(text, false);
+    }
+
+    protected String preprocess(String text, boolean wholeText) {
+
+        List<Preprocessor> steps = preprocessors;
+        if (text == null || text.isEmpty() || steps.isEmpty()) {
+            return text;
+        }
+
+        long start = System.nanoTime();
+        String result = text;
+        for (Preprocessor step : steps) {
+            if (wholeText || !step.preprocessor.isWholeText()) {
+                result = step.preprocessor.process(result);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        long charsSaved = text.length() - result.length();
+        long tokensSaved = charsSaved == 0 ? 0 : ESTIMATOR.estimate(text) - ESTIMATOR.estimate(result);
+        BedrockMetrics.recordPreprocessing(nanos, charsSaved, tokensSaved);
+        log.trace("Preprocessing: {} chars, {} tokens saved", charsSaved, tokensSaved);
+
+        return result;
+    }
+
+    @Override
+    public List<String> getPreprocessorNames() {
+        return preprocessors.stream().map(step -> step.name).collect(Collectors.toList());
+    }
+
+    protected static class Preprocessor {
+
+        protected final String name;
+
+        protected final TextPreprocessor preprocessor;
+
+        protected Preprocessor(String name, TextPreprocessor preprocessor) {
+            this.name = name;
+            this.preprocessor = preprocessor;
+        }
+    }
+
+}
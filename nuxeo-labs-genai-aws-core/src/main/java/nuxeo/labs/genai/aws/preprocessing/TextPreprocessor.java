@@ -0,0 +1,57 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.preprocessing;
+
+import java.util.Map;
+
+/**
+ * A step of the preprocessing of the text extracted from blobs, see {@link TextPreprocessingService}. Removes what
+ * costs tokens without helping the model: layout whitespace, page headers and footers, etc.
+ * <br>
+ * There is one instance per contribution, called concurrently: implementations must be thread-safe.
+ *
+ * @since 2023
+ */
+public interface TextPreprocessor {
+
+    /**
+     * @param options the options of the contribution, never {@code null}
+     * @since 2023
+     */
+    default void init(Map<String, String> options) {
+        // No options
+    }
+
+    /**
+     * @return the processed text, can be {@code text} if nothing changed
+     * @since 2023
+     */
+    String process(String text);
+
+    /**
+     * @return {@code true} if the step needs the whole text (the pages of the document, its total length...), it is
+     *         then skipped when the text is preprocessed by parts (see
+     *         {@link TextPreprocessingService#preprocessPart(String)})
+     * @since 2023
+     */
+    default boolean isWholeText() {
+        return false;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.preprocessing;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XNodeMap;
+import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.common.xmap.registry.XRegistry;
+import org.nuxeo.common.xmap.registry.XRegistryId;
+
+/**
+ * A step of the preprocessing of the extracted text, contributed to the {@code preprocessors} extension point of
+ * {@link TextPreprocessingService}:
+ *
+ * <pre>
+ * &lt;preprocessor name="maxChars" order="100" enabled="true"&gt;
+ *   &lt;class&gt;nuxeo.labs.genai.aws.preprocessing.MaxCharsPreprocessor&lt;/class&gt;
+ *   &lt;option name="maxChars"&gt;200000&lt;/option&gt;
+ * &lt;/preprocessor&gt;
+ * </pre>
+ *
+ * Preprocessors are applied by increasing order.
+ *
+ * @since 2023
+ */
+@XObject("preprocessor")
+@XRegistry(enable = false)
+public class TextPreprocessorDescriptor {
+
+    public static final int DEFAULT_ORDER = 100;
+
+    @XNode("@name")
+    @XRegistryId
+    protected String name;
+
+    @XNode("@enabled")
+    protected boolean enabled = true;
+
+    @XNode("@order")
+    protected int order = DEFAULT_ORDER;
+
+    @XNode("class")
+    protected Class<? extends TextPreprocessor> klass;
+
+    @XNodeMap(value = "option", key = "@name", type = HashMap.class, componentType = String.class)
+    protected Map<String, String> options = new HashMap<>();
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public Class<? extends TextPreprocessor> getKlass() {
+        return klass;
+    }
+
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.preprocessing;
+
+/**
+ * Collapses the runs of spaces and tabs (including non-breaking spaces) to one space, removes the spaces at the start
+ * and end of the lines, and keeps at most one blank line between paragraphs. The form feeds (page breaks) are kept,
+ * on a line of their own, for {@link RepeatedLinesPreprocessor}.
+ *
+ * @since 2023
+ */
+public class WhitespacePreprocessor implements TextPreprocessor {
+
+    @Override
+    public String process(String text) {
+
+        int length = text.length();
+        StringBuilder sb = new StringBuilder(length);
+        // Spaces and line breaks are written only when followed by something else
+        boolean pendingSpace = false;
+        int pendingNewLines = 0;
+        boolean pendingPageBreak = false;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                pendingSpace = false;
+                pendingNewLines++;
+            } else if (c == '\r') {
+                // \r\n or \r alone
+                if (i + 1 < length && text.charAt(i + 1) == '\n') {
+                    continue;
+                }
+                pendingSpace = false;
+                pendingNewLines++;
+            } else if (c == '\f') {
+                pendingSpace = false;
+                pendingPageBreak = true;
+            } else if (c == ' ' || c == '\t' || c == '\u00A0' || c == '\u000B') {
+                pendingSpace = true;
+            } else {
+                if (pendingPageBreak) {
+                    if (sb.length() > 0) {
+                        sb.append("\n\f\n");
+                    }
+                } else if (pendingNewLines > 0) {
+                    if (sb.length() > 0) {
+                        sb.append(pendingNewLines > 1 ? "\n\n" : "\n");
+                    }
+                } else if (pendingSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                pendingNewLines = 0;
+                pendingPageBreak = false;
+                sb.append(c);
+            }
+        }
+
+        // Page breaks can make the text longer: same length does not mean unchanged
+        return text.contentEquals(sb) ? text : sb.toString();
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.prompts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nuxeo.labs.genai.aws.text.PromptText;
+
+/**
+ * A prompt with named placeholders, {@code {name}}, parsed once ({@link #compile(String)}) into literal parts and
+ * placeholders. Rendering just puts the values between the literal parts (no regex, no copy of the values, see
+ * {@link PromptText}).
+ * <ul>
+ * <li>A name is made of letters, digits, '_', '-' and '.'. Anything else between braces is kept as is</li>
+ * <li><code>{{</code> is a literal '{'</li>
+ * <li>{@code {text}} is where the text of the blob (or the text to summarize) goes. If the template has no
+ * {@code {text}}, the text is appended after a blank line</li>
+ * </ul>
+ * Thread-safe.
+ *
+ * @since 2023
+ */
+public class PromptTemplate {
+
+    public static final String TEXT = "text";
+
+    /**
+     * Inserted in place of the text by {@link #renderPrompt(Map, boolean)}, to be replaced by
+     * {@code InvokeBedrock} with the text of the blob. Unicode private use characters, not found in a real prompt
+     */
+    public static final String TEXT_TAG = "\uE000" + TEXT + "\uE000";
+
+    protected static final String TEXT_SEPARATOR = "\n\n";
+
+    protected final String source;
+
+    // Literal parts and placeholder names, placeholders[i] says which
+    protected final String[] parts;
+
+    protected final boolean[] placeholders;
+
+    protected final Set<String> names;
+
+    protected PromptTemplate(String source, List<String> parts, List<Boolean> placeholders) {
+        this.source = source;
+        this.parts = parts.toArray(String[]::new);
+        this.placeholders = new boolean[parts.size()];
+        Set<String> found = new LinkedHashSet<>();
+        for (int i = 0; i < this.parts.length; i++) {
+            this.placeholders[i] = placeholders.get(i).booleanValue();
+            if (this.placeholders[i]) {
+                found.add(this.parts[i]);
+            }
+        }
+        names = Collections.unmodifiableSet(found);
+    }
+
+    public static PromptTemplate compile(String source) {
+
+        List<String> parts = new ArrayList<>();
+        List<Boolean> placeholders = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (c != '{') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            if (i + 1 < length && source.charAt(i + 1) == '{') {
+                literal.append('{');
+                i += 2;
+                continue;
+            }
+            int end = i + 1;
+            while (end < length && isNameChar(source.charAt(end))) {
+                end++;
+            }
+            if (end == i + 1 || end == length || source.charAt(end) != '}') {
+                // Not a placeholder
+                literal.append(c);
+                i++;
+                continue;
+            }
+            if (literal.length() > 0) {
+                parts.add(literal.toString());
+                placeholders.add(Boolean.FALSE);
+                literal.setLength(0);
+            }
+            parts.add(source.substring(i + 1, end));
+            placeholders.add(Boolean.TRUE);
+            i = end + 1;
+        }
+        if (literal.length() > 0) {
+            parts.add(literal.toString());
+            placeholders.add(Boolean.FALSE);
+        }
+
+        return new PromptTemplate(source, parts, placeholders);
+    }
+
+    protected static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-'
+                || c == '.';
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the names of the placeholders, in order of first appearance
+     */
+    public Set<String> getPlaceholders() {
+        return names;
+    }
+
+    public boolean hasPlaceholder(String name) {
+        return names.contains(name);
+    }
+
+    /**
+     * @param values a value which is not a {@code CharSequence} is converted with {@code String.valueOf}
+     * @return the prompt
+     * @throws IllegalArgumentException if a placeholder has no value
+     */
+    public CharSequence render(Map<String, ?> values) {
+
+        CharSequence[] segments = new CharSequence[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            if (!placeholders[i]) {
+                segments[i] = parts[i];
+                continue;
+            }
+            Object value = values == null ? null : values.get(parts[i]);
+            if (value == null) {
+                throw new IllegalArgumentException(
+                        "No value for the placeholder {" + parts[i] + "} of the prompt template");
+            }
+            segments[i] = value instanceof CharSequence ? (CharSequence) value : String.valueOf(value);
+        }
+
+        return PromptText.of(segments);
+    }
+
+    /**
+     * Renders the template with {@code text} at the {@code {text}} placeholder, or appended after a blank line if
+     * there is none
+     */
+    public CharSequence render(Map<String, ?> values, CharSequence text) {
+
+        if (!hasPlaceholder(TEXT)) {
+            return PromptText.of(render(values), TEXT_SEPARATOR, text);
+        }
+
+        Map<String, Object> all = new HashMap<>();
+        if (values != null) {
+            all.putAll(values);
+        }
+        all.put(TEXT, text);
+
+        return render(all);
+    }
+
+    /**
+     * The prompt to pass to {@code InvokeBedrock#run(String, Blob, String)}. If {@code withBlob} is true, it contains
+     * {@link #TEXT_TAG} where the text of the blob goes, so {@code InvokeBedrock} inserts it there, without copying it
+     * (pass {@code TEXT_TAG} as the {@code insertInPromptReplaceTag}).
+     */
+    public String renderPrompt(Map<String, ?> values, boolean withBlob) {
+
+        if (withBlob) {
+            return render(values, TEXT_TAG).toString();
+        }
+
+        return render(values).toString();
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+}
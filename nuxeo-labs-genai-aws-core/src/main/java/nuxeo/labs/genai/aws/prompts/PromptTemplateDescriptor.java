@@ -0,0 +1,58 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.prompts;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.common.xmap.registry.XRegistry;
+import org.nuxeo.common.xmap.registry.XRegistryId;
+
+/**
+ * A prompt template, contributed to the {@code promptTemplates} extension point of {@link PromptTemplateService}:
+ *
+ * <pre>
+ * &lt;template name="summarize.de"&gt;
+ *   &lt;text&gt;Bitte fassen Sie diesen Text zusammen :&lt;/text&gt;
+ * &lt;/template&gt;
+ * </pre>
+ *
+ * See {@link PromptTemplate} for the syntax. The text is trimmed.
+ *
+ * @since 2023
+ */
+@XObject("template")
+@XRegistry(enable = false)
+public class PromptTemplateDescriptor {
+
+    @XNode("@name")
+    @XRegistryId
+    protected String name;
+
+    @XNode("text")
+    protected String text;
+
+    public String getName() {
+        return name;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.prompts;
+
+import java.util.Set;
+
+/**
+ * Holds the prompt templates contributed to the {@code promptTemplates} extension point, compiled once when the
+ * component starts.
+ * <br>
+ * {@code Bedrock.Summarize} looks for {@code summarize.{language}} (no number of sentences),
+ * {@code summarize.{language}.sentence} (1 sentence) and {@code summarize.{language}.sentences} ({@code {count}}
+ * sentences) templates, so a language can be added by contributing these 3 templates.
+ *
+ * @since 2023
+ */
+public interface PromptTemplateService {
+
+    /**
+     * @throws IllegalArgumentException if there is no template with this name
+     * @since 2023
+     */
+    public PromptTemplate getTemplate(String name);
+
+    public boolean hasTemplate(String name);
+
+    public Set<String> getTemplateNames();
+
+}
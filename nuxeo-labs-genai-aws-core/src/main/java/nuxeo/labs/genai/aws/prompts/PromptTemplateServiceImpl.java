@@ -0,0 +1,77 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.prompts;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+/**
+ * @since 2023
+ */
+public class PromptTemplateServiceImpl extends DefaultComponent implements PromptTemplateService {
+
+    public static final String XP_PROMPT_TEMPLATES = "promptTemplates";
+
+    protected volatile Map<String, PromptTemplate> templates = Collections.emptyMap();
+
+    @Override
+    public void start(ComponentContext context) {
+
+        Map<String, PromptTemplate> compiled = new HashMap<>();
+        for (PromptTemplateDescriptor descriptor : this.<PromptTemplateDescriptor> getRegistryContributions(
+                XP_PROMPT_TEMPLATES)) {
+            compiled.put(descriptor.getName(), PromptTemplate.compile(StringUtils.defaultString(descriptor.getText())));
+        }
+        templates = Collections.unmodifiableMap(compiled);
+    }
+
+    @Override
+    public void stop(ComponentContext context) throws InterruptedException {
+        templates = Collections.emptyMap();
+        super.stop(context);
+    }
+
+    @Override
+    public PromptTemplate getTemplate(String name) {
+
+        PromptTemplate template = templates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("No prompt template named " + name);
+        }
+
+        return template;
+    }
+
+    @Override
+    public boolean hasTemplate(String name) {
+        return templates.containsKey(name);
+    }
+
+    @Override
+    public Set<String> getTemplateNames() {
+        return templates.keySet();
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.stream;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.transientstore.api.TransientStore;
+import org.nuxeo.ecm.core.transientstore.api.TransientStoreService;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.labs.genai.aws.throttling.BackoffPolicy;
+
+/**
+ * The response of a streaming call, made available to other requests (and other nodes) while it is received: the
+ * text is saved in the {@value #STORE_NAME} transient store, at most every {@value #FLUSH_INTERVAL_MS}ms, and once
+ * the call is done. A client polls it with {@link #read(String, int, String)} (see the {@code Bedrock.GetStream}
+ * operation). Only the user who started the call can read it: the response can contain the text of documents other
+ * users cannot read.
+ * <br>
+ * Pass the instance as the chunk consumer of {@code InvokeBedrock#runStream}, then call {@link #complete(Throwable)}
+ * when the returned future completes. Thread-safe.
+ *
+ * @since 2023
+ */
+public class StreamedResponse implements Consumer<String> {
+
+    public static final String STORE_NAME = "bedrockStreamedResponses";
+
+    public static final String TEXT_PARAM = "text";
+
+    public static final String ERROR_PARAM = "error";
+
+    public static final String OWNER_PARAM = "owner";
+
+    public static final long FLUSH_INTERVAL_MS = 200;
+
+    protected final String id;
+
+    protected final TransientStore store;
+
+    protected final StringBuilder text = new StringBuilder();
+
+    protected long lastFlush = System.nanoTime();
+
+    /**
+     * @param owner the name of the user who can read the response
+     */
+    public StreamedResponse(String owner) {
+        id = UUID.randomUUID().toString();
+        store = getStore();
+        store.putParameter(id, OWNER_PARAM, owner);
+        store.putParameter(id, TEXT_PARAM, "");
+        store.setCompleted(id, false);
+    }
+
+    protected static TransientStore getStore() {
+        return Framework.getService(TransientStoreService.class).getStore(STORE_NAME);
+    }
+
+    /**
+     * @return the id to pass to {@link #read(String, int, String)}
+     */
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public synchronized void accept(String chunk) {
+
+        text.append(chunk);
+        if (System.nanoTime() - lastFlush >= TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS)) {
+            flush();
+        }
+    }
+
+    /**
+     * Saves the whole text, and the error if any. The entry is then kept for the {@code secondLevelTTL} of the store.
+     *
+     * @param error null if the call succeeded
+     */
+    public synchronized void complete(Throwable error) {
+
+        if (error != null) {
+            Throwable cause = BackoffPolicy.unwrap(error);
+            store.putParameter(id, ERROR_PARAM, StringUtils.defaultIfBlank(cause.getMessage(), cause.toString()));
+        }
+        flush();
+        store.setCompleted(id, true);
+        store.release(id);
+    }
+
+    protected void flush() {
+        store.putParameter(id, TEXT_PARAM, text.toString());
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * @param id the id of the response
+     * @param offset the number of characters already read
+     * @param user the name of the user reading the response
+     * @return the text received after {@code offset}, or null if there is no such response (unknown id, or expired)
+     *         or if it was started by another user
+     */
+    public static Chunk read(String id, int offset, String user) {
+
+        TransientStore store = getStore();
+        if (user == null || !user.equals(store.getParameter(id, OWNER_PARAM))) {
+            return null;
+        }
+        // Read the state first: if completed, the text read next is the whole text
+        boolean completed = store.isCompleted(id);
+        String text = (String) store.getParameter(id, TEXT_PARAM);
+        if (text == null) {
+            return null;
+        }
+        String error = (String) store.getParameter(id, ERROR_PARAM);
+        int start = Math.min(Math.max(offset, 0), text.length());
+        return new Chunk(text.substring(start), text.length(), completed, error);
+    }
+
+    /**
+     * A part of a streamed response, see {@link StreamedResponse#read(String, int, String)}
+     *
+     * @since 2023
+     */
+    public static class Chunk {
+
+        protected final String text;
+
+        protected final int offset;
+
+        protected final boolean completed;
+
+        protected final String error;
+
+        public Chunk(String text, int offset, boolean completed, String error) {
+            this.text = text;
+            this.offset = offset;
+            this.completed = completed;
+            this.error = error;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return the offset to pass to the next read
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return true if the whole response has been received (or the call failed): there is nothing more to read
+         */
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return the error message if the call failed, else null
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.text;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Replaces the {@code '\0'} characters (found in the text of some PDFs, and rejected by the models) with spaces, while
+ * reading, so the text does not have to be copied.
+ *
+ * @since 2023
+ */
+public class NulFilterReader extends FilterReader {
+
+    public NulFilterReader(Reader in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        int c = super.read();
+        return c == '\0' ? ' ' : c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+
+        int count = super.read(cbuf, off, len);
+        for (int i = off; i < off + count; i++) {
+            if (cbuf[i] == '\0') {
+                cbuf[i] = ' ';
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.text;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A text made of several segments (instructions, the text of a document, ...), which are not copied: a prompt of
+ * several MB can be assembled, measured and written to the request body without building the whole String.
+ * {@link #toString()} builds it, when a caller really needs it.
+ * <br>
+ * Immutable (if the segments are), so thread-safe.
+ *
+ * @since 2023
+ */
+public class PromptText implements CharSequence {
+
+    protected final CharSequence[] segments;
+
+    // starts[i] is the offset of segments[i], starts[segments.length] is the length
+    protected final int[] starts;
+
+    protected PromptText(CharSequence[] segments) {
+        this.segments = segments;
+        starts = new int[segments.length + 1];
+        for (int i = 0; i < segments.length; i++) {
+            starts[i + 1] = starts[i] + segments[i].length();
+        }
+    }
+
+    /**
+     * @param segments {@code null} and empty segments are ignored
+     */
+    public static PromptText of(CharSequence... segments) {
+
+        List<CharSequence> list = new ArrayList<>(segments.length);
+        for (CharSequence segment : segments) {
+            if (segment == null || segment.length() == 0) {
+                continue;
+            }
+            if (segment instanceof PromptText) {
+                list.addAll(Arrays.asList(((PromptText) segment).segments));
+            } else {
+                list.add(segment);
+            }
+        }
+
+        return new PromptText(list.toArray(CharSequence[]::new));
+    }
+
+    @Override
+    public int length() {
+        return starts[segments.length];
+    }
+
+    @Override
+    public char charAt(int index) {
+
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length());
+        }
+        int segment = segmentIndex(index);
+
+        return segments[segment].charAt(index - starts[segment]);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length());
+        }
+        if (start == end) {
+            return "";
+        }
+
+        int first = segmentIndex(start);
+        int last = segmentIndex(end - 1);
+        if (first == last) {
+            return segments[first].subSequence(start - starts[first], end - starts[first]);
+        }
+        CharSequence[] sub = new CharSequence[last - first + 1];
+        for (int i = first; i <= last; i++) {
+            int from = Math.max(start, starts[i]) - starts[i];
+            int to = Math.min(end, starts[i + 1]) - starts[i];
+            sub[i - first] = from == 0 && to == segments[i].length() ? segments[i] : segments[i].subSequence(from, to);
+        }
+
+        return new PromptText(sub);
+    }
+
+    /**
+     * @return a {@code Reader} over the segments, no copy
+     */
+    public Reader reader() {
+        return new SegmentsReader();
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder(length());
+        for (CharSequence segment : segments) {
+            sb.append(segment);
+        }
+
+        return sb.toString();
+    }
+
+    protected int segmentIndex(int index) {
+
+        int found = Arrays.binarySearch(starts, index);
+        // Exact match: start of a segment (not empty, so the last match is the only one). Else: insertion point - 1
+        return found >= 0 ? found : -found - 2;
+    }
+
+    protected class SegmentsReader extends Reader {
+
+        protected int segment;
+
+        protected int offset;
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+
+            if (len == 0) {
+                return 0;
+            }
+            while (segment < segments.length && offset == segments[segment].length()) {
+                segment++;
+                offset = 0;
+            }
+            if (segment == segments.length) {
+                return -1;
+            }
+
+            CharSequence current = segments[segment];
+            int count = Math.min(len, current.length() - offset);
+            if (current instanceof String) {
+                ((String) current).getChars(offset, offset + count, cbuf, off);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    cbuf[off + i] = current.charAt(offset + i);
+                }
+            }
+            offset += count;
+
+            return count;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.text;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nuxeo.labs.genai.aws.tokens.TokenEstimator;
+import nuxeo.labs.genai.aws.tokens.TokenEstimators;
+
+/**
+ * Splits a text in chunks of at most {@code maxChunkTokens} tokens. A chunk ends at a paragraph boundary when
+ * possible. A paragraph too big for a chunk is split on sentences, and a sentence too big for a chunk is split on
+ * whitespace (or anywhere if there is none).
+ * <br>
+ * Tokens are counted with a {@link TokenEstimator}, use the one of the model (see
+ * {@link TokenEstimators#forModel(String)}). Default is {@link TokenEstimators#CHARS}.
+ * <br>
+ * {@link #chunks(Reader)} gives the same chunks while reading the text, so it never is entirely in memory.
+ *
+ * @since 2023
+ */
+public class TextChunker {
+
+    protected static final Pattern PARAGRAPHS = Pattern.compile("\\n\\s*\\n");
+
+    protected static final Pattern SENTENCES = Pattern.compile("(?<=[.!?])\\s+");
+
+    // Chars read at a time by chunks(Reader)
+    protected static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // A paragraph bigger than this (no blank line) is split at a whitespace while reading
+    protected static final int MAX_PENDING_CHARS = 1024 * 1024;
+
+    protected final int maxChunkTokens;
+
+    protected final TokenEstimator estimator;
+
+    public TextChunker(int maxChunkTokens) {
+        this(maxChunkTokens, TokenEstimators.CHARS);
+    }
+
+    public TextChunker(int maxChunkTokens, TokenEstimator estimator) {
+        if (maxChunkTokens <= 0) {
+            throw new IllegalArgumentException("maxChunkTokens must be > 0");
+        }
+        this.maxChunkTokens = maxChunkTokens;
+        this.estimator = estimator;
+    }
+
+    public List<String> split(String text) {
+
+        List<String> chunks = new ArrayList<>();
+        ChunkBuilder current = new ChunkBuilder();
+        addParagraphs(chunks, current, text);
+        if (!current.isEmpty()) {
+            chunks.add(current.build());
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Same chunks as {@link #split(String)}, read from {@code reader} as they are consumed: the memory used does not
+     * depend on the size of the text. The reader is not closed.
+     *
+     * @throws UncheckedIOException if reading fails
+     * @since 2023
+     */
+    public Iterator<String> chunks(Reader reader) {
+        return new ChunkIterator(reader);
+    }
+
+    public int getMaxChunkTokens() {
+        return maxChunkTokens;
+    }
+
+    protected int estimateTokens(CharSequence text) {
+        return estimator.estimate(text);
+    }
+
+    /**
+     * Splits {@code text} in paragraphs and adds them to {@code current}, moved to {@code chunks} when full
+     */
+    protected void addParagraphs(List<String> chunks, ChunkBuilder current, String text) {
+
+        for (String paragraph : PARAGRAPHS.split(text)) {
+            if (paragraph.isBlank()) {
+                continue;
+            }
+            int paragraphTokens = estimateTokens(paragraph);
+            if (paragraphTokens > maxChunkTokens) {
+                for (String sentence : SENTENCES.split(paragraph)) {
+                    int sentenceTokens = estimateTokens(sentence);
+                    if (sentenceTokens > maxChunkTokens) {
+                        for (String part : splitHard(sentence)) {
+                            append(chunks, current, part, estimateTokens(part), " ");
+                        }
+                    } else {
+                        append(chunks, current, sentence, sentenceTokens, " ");
+                    }
+                }
+            } else {
+                append(chunks, current, paragraph, paragraphTokens, "\n\n");
+            }
+        }
+    }
+
+    /**
+     * Only {@code text} and {@code separator} are estimated, the tokens of {@code current} are the sum of its parts
+     */
+    protected void append(List<String> chunks, ChunkBuilder current, String text, int textTokens,
+            String separator) {
+
+        if (!current.isEmpty()) {
+            int separatorTokens = estimateTokens(separator);
+            if (current.tokens + separatorTokens + textTokens > maxChunkTokens) {
+                chunks.add(current.build());
+            } else {
+                current.text.append(separator);
+                current.tokens += separatorTokens;
+            }
+        }
+        current.text.append(text);
+        current.tokens += textTokens;
+    }
+
+    protected List<String> splitHard(String text) {
+
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int length = estimator.prefixLength(CharBuffer.wrap(text, start, text.length()), maxChunkTokens);
+            // At least one char (both halves of a surrogate pair)
+            int end = start + Math.max(length, Character.charCount(text.codePointAt(start)));
+            if (end < text.length()) {
+                int space = text.lastIndexOf(' ', end);
+                if (space > start) {
+                    end = space;
+                }
+            }
+            String part = text.substring(start, end).trim();
+            if (!part.isEmpty()) {
+                parts.add(part);
+            }
+            start = end;
+        }
+
+        return parts;
+    }
+
+    /**
+     * The chunk being filled, with its estimated tokens (the sum of the tokens of its parts, as the estimators are
+     * additive up to the rounding)
+     */
+    protected static class ChunkBuilder {
+
+        protected final StringBuilder text = new StringBuilder();
+
+        protected int tokens;
+
+        protected boolean isEmpty() {
+            return text.length() == 0;
+        }
+
+        /**
+         * @return the chunk, and starts a new one
+         */
+        protected String build() {
+            String chunk = text.toString();
+            text.setLength(0);
+            tokens = 0;
+            return chunk;
+        }
+    }
+
+    protected class ChunkIterator implements Iterator<String> {
+
+        protected final Reader reader;
+
+        protected final char[] buffer = new char[READ_BUFFER_SIZE];
+
+        // Text read, not split in paragraphs yet
+        protected final StringBuilder pending = new StringBuilder();
+
+        protected final ChunkBuilder current = new ChunkBuilder();
+
+        protected final Deque<String> ready = new ArrayDeque<>();
+
+        protected boolean eof;
+
+        protected ChunkIterator(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            while (ready.isEmpty() && !eof) {
+                read();
+            }
+            return !ready.isEmpty();
+        }
+
+        @Override
+        public String next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return ready.poll();
+        }
+
+        protected void read() {
+
+            int count;
+            try {
+                count = reader.read(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            List<String> chunks = new ArrayList<>();
+            if (count < 0) {
+                eof = true;
+                addParagraphs(chunks, current, pending.toString());
+                pending.setLength(0);
+                if (!current.isEmpty()) {
+                    chunks.add(current.build());
+                }
+            } else {
+                pending.append(buffer, 0, count);
+                // The complete paragraphs: up to the last blank line followed by text, else the blank line may
+                // continue in the next read
+                int end = -1;
+                int next = -1;
+                Matcher matcher = PARAGRAPHS.matcher(pending);
+                while (matcher.find()) {
+                    if (isFollowedByText(pending, matcher.end())) {
+                        end = matcher.start();
+                        next = matcher.end();
+                    }
+                }
+                boolean tooBig = end < 0 && pending.length() > MAX_PENDING_CHARS;
+                if (tooBig) {
+                    end = lastWhitespace(pending);
+                    next = end;
+                }
+                if (end > 0) {
+                    addParagraphs(chunks, current, pending.substring(0, end));
+                    pending.delete(0, next);
+                }
+            }
+            ready.addAll(chunks);
+        }
+
+        /**
+         * @return true if there is text on the line starting at {@code index}, so the blank line before it is
+         *         complete
+         */
+        protected boolean isFollowedByText(CharSequence text, int index) {
+
+            for (int i = index; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\n') {
+                    return false;
+                } else if (!Character.isWhitespace(c)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        protected int lastWhitespace(CharSequence text) {
+
+            for (int i = text.length() - 1; i > 0; i--) {
+                if (Character.isWhitespace(text.charAt(i))) {
+                    return i;
+                }
+            }
+            return text.length();
+        }
+    }
+
+}
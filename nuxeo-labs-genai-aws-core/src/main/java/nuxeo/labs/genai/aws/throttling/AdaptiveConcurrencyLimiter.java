@@ -0,0 +1,190 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.throttling;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Limits the number of calls in flight to a model, adjusting the limit to what the account quota allows (AIMD, as
+ * TCP congestion control):
+ * <ul>
+ * <li>Each successful call increases the limit: by 1 until the first throttling ("slow start"), then by 1/limit (so
+ * roughly +1 when {@code limit} calls have succeeded)</li>
+ * <li>A throttled call multiplies the limit by {@code backoffRatio}</li>
+ * <li>A successful call much slower than the average ({@code latencyTolerance} times) decreases the limit a bit: the
+ * service is getting overloaded. 0 disables this check</li>
+ * </ul>
+ * The limit is increased only if it is actually used (at least half of it in flight, or calls waiting), so it does not
+ * grow forever when the load is low.
+ * <br>
+ * {@link #acquire()} does not block: it returns a future completed when a call is allowed, so it can be used with the
+ * asynchronous client. Every acquired permit must be released with {@link #release(Outcome, long)}.
+ *
+ * @since 2023
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    public enum Outcome {
+        SUCCESS, THROTTLED,
+        /** Other errors: the permit is released, the limit is unchanged */
+        IGNORED
+    }
+
+    protected static final double LATENCY_BACKOFF_RATIO = 0.9;
+
+    protected static final double LATENCY_SMOOTHING = 0.1;
+
+    protected final int minLimit;
+
+    protected final int maxLimit;
+
+    protected final double backoffRatio;
+
+    protected final double latencyTolerance;
+
+    protected final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    protected double limit;
+
+    protected int inFlight;
+
+    protected boolean slowStart = true;
+
+    protected double averageLatencyNanos;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+            double latencyTolerance) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Expecting 1 <= minLimit <= maxLimit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Expecting 0 < backoffRatio < 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        limit = Math.min(Math.max(initialLimit, minLimit), maxLimit);
+    }
+
+    /**
+     * @return a future completed when the call can be done
+     */
+    public CompletableFuture<Void> acquire() {
+
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+    }
+
+    /**
+     * Blocking version of {@link #acquire()}
+     */
+    public void acquireBlocking() throws InterruptedException {
+
+        CompletableFuture<Void> permit = acquire();
+        try {
+            permit.get();
+        } catch (InterruptedException e) {
+            if (!permit.cancel(false)) {
+                // Acquired in the meantime
+                release(Outcome.IGNORED, 0);
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            // Permits are never completed exceptionally
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param outcome of the call
+     * @param latencyNanos duration of the call
+     */
+    public void release(Outcome outcome, long latencyNanos) {
+
+        synchronized (this) {
+            boolean used = inFlight >= (int) limit / 2 || !waiters.isEmpty();
+            inFlight--;
+            switch (outcome) {
+            case SUCCESS:
+                if (latencyTolerance > 0 && averageLatencyNanos > 0
+                        && latencyNanos > averageLatencyNanos * latencyTolerance) {
+                    limit = Math.max(minLimit, limit * LATENCY_BACKOFF_RATIO);
+                } else if (used) {
+                    limit = Math.min(maxLimit, limit + (slowStart ? 1 : 1 / limit));
+                }
+                averageLatencyNanos = averageLatencyNanos == 0 ? latencyNanos
+                        : averageLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - averageLatencyNanos);
+                break;
+            case THROTTLED:
+                slowStart = false;
+                limit = Math.max(minLimit, limit * backoffRatio);
+                break;
+            default:
+                break;
+            }
+        }
+
+        dispatch();
+    }
+
+    protected void dispatch() {
+
+        while (true) {
+            CompletableFuture<Void> waiter;
+            synchronized (this) {
+                if (waiters.isEmpty() || inFlight >= (int) limit) {
+                    return;
+                }
+                waiter = waiters.poll();
+                inFlight++;
+            }
+            // Outside the lock: completing runs the code chained to the future
+            if (!waiter.complete(null)) {
+                // Cancelled by the caller
+                synchronized (this) {
+                    inFlight--;
+                }
+            }
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getWaiting() {
+        return waiters.size();
+    }
+
+}
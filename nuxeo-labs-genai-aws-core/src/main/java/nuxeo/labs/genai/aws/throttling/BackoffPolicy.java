@@ -0,0 +1,98 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.throttling;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+/**
+ * Exponential backoff with "full jitter": the delay before retry #n is random between 0 and
+ * {@code min(maxDelay, baseDelay * 2^n)}, so clients throttled at the same time do not retry at the same time.
+ * <br>
+ * Retries throttling (HTTP 429) and server errors (5xx).
+ *
+ * @since 2023
+ */
+public class BackoffPolicy {
+
+    protected final int maxRetries;
+
+    protected final Duration baseDelay;
+
+    protected final Duration maxDelay;
+
+    public BackoffPolicy(int maxRetries, Duration baseDelay, Duration maxDelay) {
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param attempt 0 for the first call
+     */
+    public boolean shouldRetry(Throwable e, int attempt) {
+        return attempt < maxRetries && isRetryable(e);
+    }
+
+    /**
+     * @param attempt 0 for the first call
+     */
+    public Duration getDelay(int attempt) {
+
+        long base = baseDelay.toMillis();
+        long cap = maxDelay.toMillis();
+        // Avoid overflow
+        long exponential = attempt >= 30 ? cap : Math.min(cap, base << attempt);
+
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(exponential + 1));
+    }
+
+    public static boolean isThrottling(Throwable e) {
+
+        Throwable cause = unwrap(e);
+        return cause instanceof AwsServiceException && ((AwsServiceException) cause).isThrottlingException();
+    }
+
+    public static boolean isRetryable(Throwable e) {
+
+        Throwable cause = unwrap(e);
+        return isThrottling(cause)
+                || (cause instanceof AwsServiceException && ((AwsServiceException) cause).statusCode() >= 500);
+    }
+
+    public static Throwable unwrap(Throwable e) {
+
+        Throwable cause = e;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        return cause;
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.throttling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Stops calling a model in a region that keeps failing, so the callers fail fast (and can call another region, see
+ * {@code InvokeBedrock#getRegions()}) instead of waiting for timeouts:
+ * <ul>
+ * <li>CLOSED: calls go through. After {@code failureThreshold} consecutive failures, the circuit opens</li>
+ * <li>OPEN: calls are rejected right away, during {@code openDuration}</li>
+ * <li>HALF_OPEN: one trial call goes through. If it succeeds the circuit closes, else it opens again</li>
+ * </ul>
+ * Failures are the errors of the region (see {@link #isRegionFailure(Throwable)}), not the errors of the request or
+ * the throttling (handled by the {@link AdaptiveConcurrencyLimiter}). Thread-safe, no lock.
+ *
+ * @since 2023
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LogManager.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    protected final String name;
+
+    protected final int failureThreshold;
+
+    protected final long openNanos;
+
+    protected final LongSupplier nanoClock;
+
+    protected final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    protected final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    // HALF_OPEN: the trial call is in flight
+    protected final AtomicBoolean trial = new AtomicBoolean();
+
+    protected volatile long openedAt;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this(name, failureThreshold, openMillis, System::nanoTime);
+    }
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis, LongSupplier nanoClock) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be > 0: " + failureThreshold);
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.nanoClock = nanoClock;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return {@code true} if the call can be made, then one of {@link #onSuccess()}, {@link #onFailure()} or
+     *         {@link #onIgnored()} must be called once it is done
+     */
+    public boolean tryAcquire() {
+
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAt < openNanos) {
+                return false;
+            }
+            if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                log.debug("{}: circuit half-open", name);
+            }
+        }
+        return state.get() == State.HALF_OPEN && trial.compareAndSet(false, true);
+    }
+
+    public void onSuccess() {
+
+        consecutiveFailures.set(0);
+        if (state.get() != State.CLOSED) {
+            state.set(State.CLOSED);
+            trial.set(false);
+            log.info("{}: circuit closed", name);
+        }
+    }
+
+    public void onFailure() {
+
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * The call neither proves that the region works nor that it fails (invalid request, throttling)
+     */
+    public void onIgnored() {
+        if (state.get() == State.HALF_OPEN) {
+            trial.set(false);
+        }
+    }
+
+    protected void open() {
+
+        openedAt = nanoClock.getAsLong();
+        consecutiveFailures.set(0);
+        if (state.getAndSet(State.OPEN) != State.OPEN) {
+            log.warn("{}: circuit open for {}ms", name, TimeUnit.NANOSECONDS.toMillis(openNanos));
+        }
+        trial.set(false);
+    }
+
+    /**
+     * @return {@code true} for the errors showing the region does not work: server errors (5xx), timeouts and
+     *         connection errors
+     */
+    public static boolean isRegionFailure(Throwable e) {
+
+        Throwable cause = BackoffPolicy.unwrap(e);
+        return cause instanceof SdkClientException
+                || (cause instanceof AwsServiceException && ((AwsServiceException) cause).statusCode() >= 500);
+    }
+
+}
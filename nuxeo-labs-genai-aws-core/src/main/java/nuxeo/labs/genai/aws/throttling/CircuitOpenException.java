@@ -0,0 +1,38 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.throttling;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Thrown instead of calling a model whose {@link CircuitBreaker} is open
+ *
+ * @since 2023
+ */
+public class CircuitOpenException extends NuxeoException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int SC_SERVICE_UNAVAILABLE = 503;
+
+    public CircuitOpenException(String name) {
+        super("Circuit open for " + name + ", not called", SC_SERVICE_UNAVAILABLE);
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.throttling;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces the calls evenly: at most {@code permitsPerSecond} permits per second, a caller asking for a permit too
+ * early sleeps until its turn (no burst). Thread-safe, the callers are served in the order they asked.
+ *
+ * @since 2023
+ */
+public class RateLimiter {
+
+    protected final long intervalNanos;
+
+    // System.nanoTime() of the next free permit
+    protected long next = System.nanoTime();
+
+    public RateLimiter(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be > 0: " + permitsPerSecond);
+        }
+        intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    /**
+     * Waits for a permit
+     *
+     * @since 2023
+     */
+    public void acquire() throws InterruptedException {
+
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (next < now) {
+                next = now;
+            }
+            wait = next - now;
+            next += intervalNanos;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.throttling;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import nuxeo.labs.genai.aws.throttling.AdaptiveConcurrencyLimiter.Outcome;
+
+/**
+ * Runs the calls to a model (one model in one region) through an {@link AdaptiveConcurrencyLimiter} (if any), and
+ * retries them with a {@link BackoffPolicy}. Thread-safe, shared by all the callers of the same model (see
+ * {@code BedrockClientService#getInvoker}).
+ * <br>
+ * With a {@link CircuitBreaker}, each attempt fails right away with a {@link CircuitOpenException} while the circuit
+ * is open.
+ * <br>
+ * Asynchronous calls waiting for a permit are started on an {@link Executor} of the invoker, not on the thread
+ * releasing the permit, which is usually an I/O thread of the SDK.
+ *
+ * @since 2023
+ */
+public class ThrottledInvoker {
+
+    private static final Logger log = LogManager.getLogger(ThrottledInvoker.class);
+
+    protected final String name;
+
+    protected final Executor executor;
+
+    // null => no limit
+    protected final AdaptiveConcurrencyLimiter limiter;
+
+    protected final BackoffPolicy backoff;
+
+    // null => always closed
+    protected final CircuitBreaker circuitBreaker;
+
+    public ThrottledInvoker(String name, AdaptiveConcurrencyLimiter limiter, BackoffPolicy backoff) {
+        this(name, limiter, backoff, null);
+    }
+
+    public ThrottledInvoker(String name, AdaptiveConcurrencyLimiter limiter, BackoffPolicy backoff,
+            CircuitBreaker circuitBreaker) {
+        this(name, limiter, backoff, circuitBreaker, DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * @param executor runs the asynchronous calls once they get a permit, and the retries
+     */
+    public ThrottledInvoker(String name, AdaptiveConcurrencyLimiter limiter, BackoffPolicy backoff,
+            CircuitBreaker circuitBreaker, Executor executor) {
+        this.name = name;
+        this.executor = executor;
+        this.limiter = limiter;
+        this.backoff = backoff;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    public BackoffPolicy getBackoffPolicy() {
+        return backoff;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Blocking call. Waits for a permit, then for the delay between retries.
+     */
+    public <T> T call(Supplier<T> call) {
+
+        for (int attempt = 0;; attempt++) {
+            if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+                throw new CircuitOpenException(name);
+            }
+            try {
+                if (limiter != null) {
+                    limiter.acquireBlocking();
+                }
+            } catch (InterruptedException e) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.onIgnored();
+                }
+                Thread.currentThread().interrupt();
+                throw new NuxeoException(e);
+            }
+            long start = System.nanoTime();
+            T result;
+            try {
+                result = call.get();
+            } catch (RuntimeException e) {
+                release(e, start);
+                if (!backoff.shouldRetry(e, attempt)) {
+                    throw e;
+                }
+                long delay = backoff.getDelay(attempt).toMillis();
+                log.debug("{}: retry #{} in {}ms after {}", name, attempt + 1, delay, e.toString());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new NuxeoException(ie);
+                }
+                continue;
+            }
+            release(null, start);
+            return result;
+        }
+    }
+
+    /**
+     * Asynchronous call: no thread is blocked while waiting for a permit or for the delay between retries.
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call) {
+        return callAsync(call, e -> true);
+    }
+
+    /**
+     * @param canRetry called before retrying a failed call (in addition to the backoff policy), for example to not
+     *            retry a stream that has already sent data
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call, Predicate<Throwable> canRetry) {
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(call, canRetry, 0, result);
+
+        return result;
+    }
+
+    protected <T> void attemptAsync(Supplier<CompletableFuture<T>> call, Predicate<Throwable> canRetry, int attempt,
+            CompletableFuture<T> result) {
+
+        if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+            result.completeExceptionally(new CircuitOpenException(name));
+            return;
+        }
+        CompletableFuture<Void> permit = limiter == null ? CompletableFuture.completedFuture(null) : limiter.acquire();
+        permit.thenRunAsync(() -> {
+            long start = System.nanoTime();
+            CompletableFuture<T> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((value, e) -> {
+                if (e == null) {
+                    release(null, start);
+                    result.complete(value);
+                    return;
+                }
+                Throwable cause = BackoffPolicy.unwrap(e);
+                release(cause, start);
+                if (backoff.shouldRetry(cause, attempt) && canRetry.test(cause)) {
+                    long delay = backoff.getDelay(attempt).toMillis();
+                    log.debug("{}: retry #{} in {}ms after {}", name, attempt + 1, delay, cause.toString());
+                    Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor);
+                    delayed.execute(() -> attemptAsync(call, canRetry, attempt + 1, result));
+                } else {
+                    result.completeExceptionally(cause);
+                }
+            });
+        }, executor);
+    }
+
+    protected void release(Throwable error, long start) {
+
+        if (circuitBreaker != null) {
+            if (error == null) {
+                circuitBreaker.onSuccess();
+            } else if (CircuitBreaker.isRegionFailure(error)) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onIgnored();
+            }
+        }
+        if (limiter == null) {
+            return;
+        }
+
+        Outcome outcome;
+        if (error == null) {
+            outcome = Outcome.SUCCESS;
+        } else if (BackoffPolicy.isThrottling(error)) {
+            outcome = Outcome.THROTTLED;
+        } else {
+            outcome = Outcome.IGNORED;
+        }
+        limiter.release(outcome, System.nanoTime() - start);
+        log.trace("{}: {}, limit is now {}", name, outcome, limiter.getLimit());
+    }
+
+    /**
+     * Shared by the invokers of all models. Starting a call only sends the request, so a few threads are enough; idle
+     * threads are stopped.
+     */
+    protected static class DefaultExecutor {
+
+        protected static final Executor INSTANCE = newExecutor();
+
+        protected static Executor newExecutor() {
+            int threads = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "bedrock-invoker-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.tokens;
+
+/**
+ * Simplest estimation: a fixed number of chars per token.
+ *
+ * @since 2023
+ */
+public class CharCountTokenEstimator implements TokenEstimator {
+
+    protected final int charsPerToken;
+
+    public CharCountTokenEstimator(int charsPerToken) {
+        this.charsPerToken = charsPerToken;
+    }
+
+    @Override
+    public int estimate(CharSequence text) {
+        return (text.length() + charsPerToken - 1) / charsPerToken;
+    }
+
+    @Override
+    public int prefixLength(CharSequence text, int maxTokens) {
+        return TokenEstimator.toCodePointBoundary(text,
+                (int) Math.min(text.length(), (long) maxTokens * charsPerToken));
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.tokens;
+
+/**
+ * Approximation of a BPE tokenizer, in one pass over the text, with no allocation:
+ * <ul>
+ * <li>A word (letters/digits) costs its length divided by {@code charsPerToken}, rounded up. Non ASCII letters count
+ * for 2 chars (they are split in more tokens)</li>
+ * <li>Spaces are free (a BPE token usually includes the space before a word). A sequence of line breaks costs 1</li>
+ * <li>Punctuation and symbols cost 1 each</li>
+ * <li>CJK ideographs, kana and hangul cost 1 each</li>
+ * </ul>
+ *
+ * @since 2023
+ */
+public class HeuristicTokenEstimator implements TokenEstimator {
+
+    // Weights are in tenths of char, to use int arithmetic
+    protected static final int ASCII_WEIGHT = 10;
+
+    protected static final int NON_ASCII_WEIGHT = 20;
+
+    protected final int tokenWeight;
+
+    /**
+     * @param charsPerToken average number of ASCII letters per token for the model family
+     */
+    public HeuristicTokenEstimator(double charsPerToken) {
+        tokenWeight = (int) Math.round(charsPerToken * 10);
+    }
+
+    @Override
+    public int estimate(CharSequence text) {
+        return scan(text, Integer.MAX_VALUE, false);
+    }
+
+    @Override
+    public int prefixLength(CharSequence text, int maxTokens) {
+        return scan(text, maxTokens, true);
+    }
+
+    /**
+     * @return the number of tokens, or the length of the prefix with at most {@code maxTokens} tokens if
+     *         {@code returnLength} is {@code true}
+     */
+    protected int scan(CharSequence text, int maxTokens, boolean returnLength) {
+
+        int tokens = 0;
+        int wordWeight = 0;
+        boolean inLineBreaks = false;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 128 ? (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    : Character.isLetterOrDigit(c) && !isCjk(c)) {
+                wordWeight += c < 128 ? ASCII_WEIGHT : NON_ASCII_WEIGHT;
+                inLineBreaks = false;
+            } else {
+                tokens += wordTokens(wordWeight);
+                wordWeight = 0;
+                if (c == '\n') {
+                    if (!inLineBreaks) {
+                        tokens++;
+                    }
+                    inLineBreaks = true;
+                } else if (c == ' ' || c == '\t' || c == '\r') {
+                    // Part of the next token
+                } else {
+                    // Punctuation, symbols, CJK, surrogates (emojis count for 2)
+                    tokens++;
+                    inLineBreaks = false;
+                }
+            }
+            if (returnLength && tokens + wordTokens(wordWeight) > maxTokens) {
+                return TokenEstimator.toCodePointBoundary(text, i);
+            }
+        }
+        tokens += wordTokens(wordWeight);
+
+        return returnLength ? length : tokens;
+    }
+
+    protected int wordTokens(int wordWeight) {
+        return (wordWeight + tokenWeight - 1) / tokenWeight;
+    }
+
+    protected static boolean isCjk(char c) {
+        return (c >= 0x2E80 && c <= 0x9FFF) || (c >= 0xAC00 && c <= 0xD7AF) || (c >= 0xF900 && c <= 0xFAFF);
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.tokens;
+
+/**
+ * Estimates the number of tokens of a text, locally (no call to a model). Implementations are fast approximations of
+ * the tokenizer of a model family, used to check a prompt fits in the context window before sending it, or to split a
+ * text in chunks. They must be thread-safe.
+ *
+ * @since 2023
+ */
+public interface TokenEstimator {
+
+    public int estimate(CharSequence text);
+
+    /**
+     * Default implementation is a binary search calling {@link #estimate(CharSequence)}, implementations should
+     * provide a faster one.
+     *
+     * @return the length of the longest prefix of {@code text} with at most {@code maxTokens} tokens that does not
+     *         end in the middle of a surrogate pair (see {@link #toCodePointBoundary(CharSequence, int)})
+     * @since 2023
+     */
+    public default int prefixLength(CharSequence text, int maxTokens) {
+
+        if (estimate(text) <= maxTokens) {
+            return text.length();
+        }
+
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (estimate(text.subSequence(0, middle)) <= maxTokens) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return toCodePointBoundary(text, low);
+    }
+
+    /**
+     * @return {@code length}, minus 1 if the prefix of this length would end with the first half of a surrogate pair
+     *         (an emoji, for example): a lone surrogate is not valid in a prompt
+     * @since 2023
+     */
+    public static int toCodePointBoundary(CharSequence text, int length) {
+        return length > 0 && length < text.length() && Character.isHighSurrogate(text.charAt(length - 1)) ? length - 1
+                : length;
+    }
+
+}
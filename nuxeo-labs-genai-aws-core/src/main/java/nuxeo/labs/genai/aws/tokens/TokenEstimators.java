@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.tokens;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Token estimators and context windows per model family.
+ *
+ * @since 2023
+ */
+public class TokenEstimators {
+
+    public static final TokenEstimator CLAUDE = new HeuristicTokenEstimator(3.5);
+
+    public static final TokenEstimator TITAN = new HeuristicTokenEstimator(4.0);
+
+    public static final TokenEstimator CHARS = new CharCountTokenEstimator(4);
+
+    // Unknown model => no limit
+    public static final int UNKNOWN_CONTEXT_WINDOW = Integer.MAX_VALUE;
+
+    private TokenEstimators() {
+        // Utility class
+    }
+
+    public static TokenEstimator forModel(String modelId) {
+
+        if (StringUtils.startsWith(modelId, "anthropic.claude")) {
+            return CLAUDE;
+        }
+
+        if (StringUtils.startsWith(modelId, "amazon.titan")) {
+            return TITAN;
+        }
+
+        return CHARS;
+    }
+
+    /**
+     * @return the max. number of tokens (prompt + response) accepted by the model
+     * @since 2023
+     */
+    public static int getContextWindow(String modelId) {
+
+        if (StringUtils.isBlank(modelId)) {
+            return UNKNOWN_CONTEXT_WINDOW;
+        }
+
+        if (modelId.startsWith("anthropic.claude-v2:1")) {
+            return 200_000;
+        }
+
+        if (modelId.startsWith("anthropic.claude")) {
+            return 100_000;
+        }
+
+        if (modelId.startsWith("amazon.titan-text-express")) {
+            return 8_000;
+        }
+
+        if (modelId.startsWith("amazon.titan-text-lite")) {
+            return 4_000;
+        }
+
+        return UNKNOWN_CONTEXT_WINDOW;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.vectors;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed size float vectors stored off-heap, in a memory-mapped file: vector {@code n} is at offset
+ * {@code n * dimensions * 4}. The file is mapped by segments of {@link #SEGMENT_VECTORS} vectors (a mapping is limited
+ * to 2 GB), a new segment is mapped when needed. Nothing is held on the heap, the OS pages the vectors in and out.
+ * <br>
+ * Not thread-safe for writes: {@link VectorIndex} writes under its write lock.
+ *
+ * @since 2023
+ */
+public class MappedVectorStore implements Closeable {
+
+    public static final int SEGMENT_VECTORS = 1 << 16;
+
+    protected final int dimensions;
+
+    protected final FileChannel channel;
+
+    protected final List<MappedByteBuffer> mapped = new ArrayList<>();
+
+    // Same as mapped, read by the searches
+    protected volatile FloatBuffer[] segments = new FloatBuffer[0];
+
+    public MappedVectorStore(Path file, int dimensions) throws IOException {
+        this.dimensions = dimensions;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    protected FloatBuffer segment(int ordinal) throws IOException {
+
+        int index = ordinal / SEGMENT_VECTORS;
+        FloatBuffer[] current = segments;
+        if (index < current.length) {
+            return current[index];
+        }
+
+        long segmentBytes = (long) SEGMENT_VECTORS * dimensions * Float.BYTES;
+        FloatBuffer[] extended = new FloatBuffer[index + 1];
+        System.arraycopy(current, 0, extended, 0, current.length);
+        for (int i = current.length; i <= index; i++) {
+            // Grows the file
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+            buffer.order(ByteOrder.nativeOrder());
+            mapped.add(buffer);
+            extended[i] = buffer.asFloatBuffer();
+        }
+        segments = extended;
+
+        return extended[index];
+    }
+
+    /**
+     * Maps the segments holding the vectors {@code 0} to {@code count - 1}, when opening an existing file
+     */
+    public void ensureCapacity(int count) throws IOException {
+        if (count > 0) {
+            segment(count - 1);
+        }
+    }
+
+    public void set(int ordinal, float[] vector) throws IOException {
+        segment(ordinal).put((ordinal % SEGMENT_VECTORS) * dimensions, vector, 0, dimensions);
+    }
+
+    public float[] get(int ordinal) {
+
+        float[] vector = new float[dimensions];
+        segments[ordinal / SEGMENT_VECTORS].get((ordinal % SEGMENT_VECTORS) * dimensions, vector, 0, dimensions);
+        return vector;
+    }
+
+    /**
+     * @return the dot product of the stored vector and {@code vector}, without copying the stored vector
+     */
+    public float dot(int ordinal, float[] vector) {
+
+        FloatBuffer segment = segments[ordinal / SEGMENT_VECTORS];
+        int base = (ordinal % SEGMENT_VECTORS) * dimensions;
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += segment.get(base + i) * vector[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Makes sure the vectors are written to disk
+     */
+    public void force() {
+        mapped.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        mapped.clear();
+        segments = new FloatBuffer[0];
+        channel.close();
+    }
+
+}
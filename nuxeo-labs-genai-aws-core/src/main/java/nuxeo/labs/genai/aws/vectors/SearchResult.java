@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.vectors;
+
+/**
+ * A result of {@link VectorIndex#search(float[], int)}
+ *
+ * @since 2023
+ */
+public class SearchResult {
+
+    protected final String id;
+
+    protected final float score;
+
+    public SearchResult(String id, float score) {
+        this.id = id;
+        this.score = score;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the cosine similarity with the query, from -1 to 1 (1 => same direction)
+     */
+    public float getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return id + ":" + score;
+    }
+
+}
@@ -0,0 +1,606 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.vectors;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Approximate nearest neighbours index (HNSW, Hierarchical Navigable Small World graphs), by cosine similarity. The
+ * vectors are normalized then stored off-heap in a memory-mapped file (see {@link MappedVectorStore}), only the graph
+ * (a few int arrays per vector) and the ids are on the heap.
+ * <br>
+ * Each vector is linked to its {@code m} nearest neighbours ({@code 2 * m} on the bottom layer) found when it is
+ * added, a search goes down the layers greedily then explores the {@code efSearch} best candidates of the bottom
+ * layer. Adding an existing id replaces its vector: the previous one is marked as deleted (still used to navigate,
+ * never returned). When a save finds that the deleted vectors are more than {@code compactionThreshold} of the
+ * index, the graph and the vectors file are rebuilt without them.
+ * <br>
+ * Persistence: the vectors are in {@code vectors.f32}, the graph is written to {@code graph.bin} by {@link #save()},
+ * every {@code autoSaveInterval} additions, and when the index is closed. Vectors added after the last save are lost
+ * if the server crashes.
+ * <br>
+ * Thread-safe: additions are serialized, searches run concurrently.
+ *
+ * @since 2023
+ */
+public class VectorIndex implements Closeable {
+
+    private static final Logger log = LogManager.getLogger(VectorIndex.class);
+
+    public static final String VECTORS_FILE = "vectors.f32";
+
+    public static final String GRAPH_FILE = "graph.bin";
+
+    protected static final int MAGIC = 0x484E5357;
+
+    protected static final int VERSION = 1;
+
+    protected static final int[] NO_NEIGHBORS = new int[0];
+
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.2;
+
+    protected final Path directory;
+
+    protected final int dimensions;
+
+    protected final int m;
+
+    protected final int maxConnections0;
+
+    protected final int efConstruction;
+
+    protected final int efSearch;
+
+    protected final int autoSaveInterval;
+
+    protected final double compactionThreshold;
+
+    protected final double levelMultiplier;
+
+    protected final Random random = new Random(42);
+
+    // Replaced when compacting
+    protected MappedVectorStore vectors;
+
+    // ordinal => id
+    protected final List<String> ids = new ArrayList<>();
+
+    // id => ordinal, for the vectors not deleted
+    protected final Map<String, Integer> ordinals = new HashMap<>();
+
+    protected final BitSet deleted = new BitSet();
+
+    // neighbors.get(ordinal)[level]
+    protected final List<int[][]> neighbors = new ArrayList<>();
+
+    protected int entryPoint = -1;
+
+    protected int maxLevel = -1;
+
+    protected int unsaved;
+
+    protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Opens the index stored in {@code directory}, or creates it
+     *
+     * @param autoSaveInterval the graph is saved every {@code autoSaveInterval} additions, 0 => only when closed or
+     *            when {@link #save()} is called
+     * @since 2023
+     */
+    public VectorIndex(Path directory, int dimensions, int m, int efConstruction, int efSearch, int autoSaveInterval)
+            throws IOException {
+        this(directory, dimensions, m, efConstruction, efSearch, autoSaveInterval, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param compactionThreshold the index is compacted when saved if the deleted vectors are more than this fraction
+     *            of all the vectors, 0 => never
+     * @since 2023
+     */
+    public VectorIndex(Path directory, int dimensions, int m, int efConstruction, int efSearch, int autoSaveInterval,
+            double compactionThreshold) throws IOException {
+
+        if (dimensions <= 0 || m < 2) {
+            throw new IllegalArgumentException("Invalid vector index configuration: dimensions=" + dimensions
+                    + ", m=" + m);
+        }
+        this.directory = directory;
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxConnections0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = Math.max(efSearch, 1);
+        this.autoSaveInterval = autoSaveInterval;
+        this.compactionThreshold = compactionThreshold;
+        this.levelMultiplier = 1 / Math.log(m);
+
+        Files.createDirectories(directory);
+        vectors = new MappedVectorStore(directory.resolve(VECTORS_FILE), dimensions);
+        load();
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @return the number of vectors, not counting the deleted ones
+     */
+    public int size() {
+
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of deleted (or replaced) vectors still in the graph, until the next compaction
+     */
+    public int getDeletedCount() {
+
+        lock.readLock().lock();
+        try {
+            return deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String id) {
+
+        lock.readLock().lock();
+        try {
+            return ordinals.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the vector of {@code id} (normalized), {@code null} if not found
+     */
+    public float[] getVector(String id) {
+
+        lock.readLock().lock();
+        try {
+            Integer ordinal = ordinals.get(id);
+            return ordinal == null ? null : vectors.get(ordinal.intValue());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the vector of {@code id}, replacing the previous one if any
+     *
+     * @since 2023
+     */
+    public void add(String id, float[] vector) {
+
+        float[] normalized = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            addLocked(id, normalized);
+            if (autoSaveInterval > 0 && ++unsaved >= autoSaveInterval) {
+                saveLocked();
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot add to the vector index " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    protected void addLocked(String id, float[] normalized) throws IOException {
+
+        Integer previous = ordinals.get(id);
+        if (previous != null) {
+            deleted.set(previous.intValue());
+        }
+        int node = ids.size();
+        vectors.set(node, normalized);
+        ids.add(id);
+        ordinals.put(id, Integer.valueOf(node));
+        int level = randomLevel();
+        int[][] levels = new int[level + 1][];
+        Arrays.fill(levels, NO_NEIGHBORS);
+        neighbors.add(levels);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+        } else {
+            insert(node, normalized, level);
+        }
+    }
+
+    /**
+     * @return {@code true} if {@code id} was in the index
+     * @since 2023
+     */
+    public boolean remove(String id) {
+
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.remove(id);
+            if (ordinal == null) {
+                return false;
+            }
+            deleted.set(ordinal.intValue());
+            unsaved++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the (approximate) {@code k} nearest vectors, most similar first
+     * @since 2023
+     */
+    public List<SearchResult> search(float[] query, int k) {
+
+        float[] normalized = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return Collections.emptyList();
+            }
+            int current = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                current = greedySearch(normalized, current, level);
+            }
+            // Deleted vectors are explored but not returned: the more there are, the more candidates are needed
+            int ef = Math.max(efSearch, k);
+            if (!deleted.isEmpty()) {
+                ef = (int) Math.min(ids.size(), (long) ef * ids.size() / Math.max(ordinals.size(), 1));
+            }
+            List<SearchResult> results = new ArrayList<>(k);
+            for (Candidate candidate : searchLayer(normalized, current, ef, 0)) {
+                if (!deleted.get(candidate.node)) {
+                    results.add(new SearchResult(ids.get(candidate.node), candidate.score));
+                    if (results.size() == k) {
+                        break;
+                    }
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    protected void insert(int node, float[] vector, int level) {
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedySearch(vector, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(vector, current, efConstruction, l);
+            int[] selected = new int[Math.min(m, candidates.size())];
+            for (int i = 0; i < selected.length; i++) {
+                selected[i] = candidates.get(i).node;
+            }
+            neighbors.get(node)[l] = selected;
+            int maxConnections = l == 0 ? maxConnections0 : m;
+            for (int neighbor : selected) {
+                connect(neighbor, node, l, maxConnections);
+            }
+            current = candidates.get(0).node;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    // Adds node to the neighbors of neighbor, keeping the maxConnections nearest ones
+    protected void connect(int neighbor, int node, int level, int maxConnections) {
+
+        int[] current = neighbors.get(neighbor)[level];
+        int[] extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = node;
+        if (extended.length > maxConnections) {
+            float[] base = vectors.get(neighbor);
+            List<Candidate> candidates = new ArrayList<>(extended.length);
+            for (int n : extended) {
+                candidates.add(new Candidate(n, vectors.dot(n, base)));
+            }
+            candidates.sort(Candidate.BEST_FIRST);
+            extended = new int[maxConnections];
+            for (int i = 0; i < maxConnections; i++) {
+                extended[i] = candidates.get(i).node;
+            }
+        }
+        neighbors.get(neighbor)[level] = extended;
+    }
+
+    protected int greedySearch(float[] vector, int start, int level) {
+
+        int current = start;
+        float best = vectors.dot(current, vector);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int neighbor : neighbors.get(current)[level]) {
+                float score = vectors.dot(neighbor, vector);
+                if (score > best) {
+                    best = score;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return the {@code ef} best candidates found from {@code entry} on {@code level}, best first
+     */
+    protected List<Candidate> searchLayer(float[] vector, int entry, int ef, int level) {
+
+        BitSet visited = new BitSet(ids.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Candidate.BEST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Candidate.BEST_FIRST.reversed());
+        Candidate first = new Candidate(entry, vectors.dot(entry, vector));
+        visited.set(entry);
+        candidates.add(first);
+        results.add(first);
+
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (results.size() >= ef && candidate.score < results.peek().score) {
+                break;
+            }
+            for (int neighbor : neighbors.get(candidate.node)[level]) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float score = vectors.dot(neighbor, vector);
+                if (results.size() < ef || score > results.peek().score) {
+                    Candidate next = new Candidate(neighbor, score);
+                    candidates.add(next);
+                    results.add(next);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Candidate.BEST_FIRST);
+        return sorted;
+    }
+
+    protected int randomLevel() {
+        return (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+
+    protected float[] normalize(float[] vector) {
+
+        if (vector == null || vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected a vector of " + dimensions + " dimensions, got "
+                    + (vector == null ? "null" : vector.length));
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            throw new IllegalArgumentException("Cannot index a zero vector");
+        }
+        float inverse = (float) (1 / Math.sqrt(norm));
+        float[] normalized = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            normalized[i] = vector[i] * inverse;
+        }
+        return normalized;
+    }
+
+    /**
+     * Writes the graph and forces the vectors to disk
+     *
+     * @since 2023
+     */
+    public void save() {
+
+        lock.writeLock().lock();
+        try {
+            saveLocked();
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot save the vector index " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    protected void saveLocked() throws IOException {
+
+        if (compactionThreshold > 0 && !deleted.isEmpty()
+                && deleted.cardinality() >= compactionThreshold * ids.size()) {
+            compactLocked();
+        }
+        vectors.force();
+        Path tmp = directory.resolve(GRAPH_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimensions);
+            out.writeInt(ids.size());
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < ids.size(); node++) {
+                out.writeUTF(ids.get(node));
+                out.writeBoolean(deleted.get(node));
+                int[][] levels = neighbors.get(node);
+                out.writeInt(levels.length);
+                for (int[] level : levels) {
+                    out.writeInt(level.length);
+                    for (int neighbor : level) {
+                        out.writeInt(neighbor);
+                    }
+                }
+            }
+        }
+        Files.move(tmp, directory.resolve(GRAPH_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        unsaved = 0;
+        log.debug("Vector index {} saved: {} vectors", directory, ids.size());
+    }
+
+    /**
+     * Rebuilds the graph and the vectors file with only the vectors not deleted. The deleted vectors are otherwise
+     * never freed: they stay in the file, and the searches still visit them.
+     */
+    protected void compactLocked() throws IOException {
+
+        int before = ids.size();
+        List<String> oldIds = new ArrayList<>(ids);
+        BitSet oldDeleted = (BitSet) deleted.clone();
+        MappedVectorStore oldVectors = vectors;
+        Path tmp = directory.resolve(VECTORS_FILE + ".tmp");
+        Files.deleteIfExists(tmp);
+        vectors = new MappedVectorStore(tmp, dimensions);
+        ids.clear();
+        ordinals.clear();
+        deleted.clear();
+        neighbors.clear();
+        entryPoint = -1;
+        maxLevel = -1;
+        for (int node = 0; node < oldIds.size(); node++) {
+            if (!oldDeleted.get(node)) {
+                // Already normalized
+                addLocked(oldIds.get(node), oldVectors.get(node));
+            }
+        }
+        oldVectors.close();
+        vectors.close();
+
+        // The previous graph does not match the new vectors: after a crash before the next one is written, the index
+        // is empty rather than wrong
+        Files.deleteIfExists(directory.resolve(GRAPH_FILE));
+        Files.move(tmp, directory.resolve(VECTORS_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        vectors = new MappedVectorStore(directory.resolve(VECTORS_FILE), dimensions);
+        vectors.ensureCapacity(ids.size());
+        log.debug("Vector index {} compacted: {} vectors, {} deleted ones removed", directory, ids.size(),
+                before - ids.size());
+    }
+
+    protected void load() throws IOException {
+
+        Path graph = directory.resolve(GRAPH_FILE);
+        if (!Files.exists(graph)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(graph), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new NuxeoException("Not a vector index: " + graph);
+            }
+            int storedDimensions = in.readInt();
+            if (storedDimensions != dimensions) {
+                throw new NuxeoException("The vector index " + directory + " has " + storedDimensions
+                        + " dimensions, the configuration has " + dimensions);
+            }
+            int size = in.readInt();
+            entryPoint = in.readInt();
+            maxLevel = in.readInt();
+            for (int node = 0; node < size; node++) {
+                String id = in.readUTF();
+                ids.add(id);
+                if (in.readBoolean()) {
+                    deleted.set(node);
+                } else {
+                    ordinals.put(id, Integer.valueOf(node));
+                }
+                int[][] levels = new int[in.readInt()][];
+                for (int l = 0; l < levels.length; l++) {
+                    int[] level = new int[in.readInt()];
+                    for (int i = 0; i < level.length; i++) {
+                        level[i] = in.readInt();
+                    }
+                    levels[l] = level;
+                }
+                neighbors.add(levels);
+            }
+            vectors.ensureCapacity(size);
+        }
+        log.debug("Vector index {} loaded: {} vectors", directory, ids.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        lock.writeLock().lock();
+        try {
+            if (unsaved > 0) {
+                saveLocked();
+            }
+            vectors.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    protected static class Candidate {
+
+        protected static final Comparator<Candidate> BEST_FIRST = (a, b) -> Float.compare(b.score, a.score);
+
+        protected final int node;
+
+        protected final float score;
+
+        protected Candidate(int node, float score) {
+            this.node = node;
+            this.score = score;
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.vectors;
+
+import static org.nuxeo.ecm.core.api.event.DocumentEventTypes.DOCUMENT_REMOVED;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventBundle;
+import org.nuxeo.ecm.core.event.PostCommitFilteringEventListener;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Post-commit listener: removes the deleted documents from the vector indexes, else their vectors stay in the indexes
+ * forever (see {@link VectorIndex} for the compaction of the removed vectors).
+ * <br>
+ * Only the documents removed explicitly fire an event, not the children of a removed folder: these ones are removed
+ * from the index when {@code Bedrock.FindSimilar} finds them.
+ *
+ * @since 2023
+ */
+public class VectorIndexCleanupListener implements PostCommitFilteringEventListener {
+
+    private static final Logger log = LogManager.getLogger(VectorIndexCleanupListener.class);
+
+    @Override
+    public boolean acceptEvent(Event event) {
+        return DOCUMENT_REMOVED.equals(event.getName()) && event.getContext() instanceof DocumentEventContext;
+    }
+
+    @Override
+    public void handleEvent(EventBundle events) {
+
+        Set<String> ids = new HashSet<>();
+        for (Event event : events) {
+            if (!acceptEvent(event)) {
+                continue;
+            }
+            DocumentModel doc = ((DocumentEventContext) event.getContext()).getSourceDocument();
+            if (doc != null && doc.getId() != null) {
+                ids.add(doc.getId());
+            }
+        }
+        int removed = Framework.getService(VectorIndexService.class).remove(ids);
+        log.debug("Vector indexes: {} vectors removed for {} deleted documents", removed, ids.size());
+    }
+
+}
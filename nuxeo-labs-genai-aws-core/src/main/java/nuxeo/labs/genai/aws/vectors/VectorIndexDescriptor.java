@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.vectors;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.common.xmap.registry.XRegistry;
+import org.nuxeo.common.xmap.registry.XRegistryId;
+
+/**
+ * A vector index, see {@link VectorIndexService}.
+ *
+ * <pre>
+ * &lt;index name="default"&gt;
+ *   &lt;!-- Size of the vectors, depends on the embeddings model --&gt;
+ *   &lt;dimensions&gt;1024&lt;/dimensions&gt;
+ *   &lt;!-- HNSW parameters --&gt;
+ *   &lt;m&gt;16&lt;/m&gt;
+ *   &lt;efConstruction&gt;100&lt;/efConstruction&gt;
+ *   &lt;efSearch&gt;64&lt;/efSearch&gt;
+ *   &lt;!-- Optional, default is {nuxeo data}/bedrock-vector-index/{name} --&gt;
+ *   &lt;directory&gt;/var/lib/nuxeo/vectors&lt;/directory&gt;
+ *   &lt;autoSaveInterval&gt;1000&lt;/autoSaveInterval&gt;
+ *   &lt;!-- Compacted when saved if more than 20% of the vectors are deleted, 0 =&gt; never --&gt;
+ *   &lt;compactionThreshold&gt;0.2&lt;/compactionThreshold&gt;
+ * &lt;/index&gt;
+ * </pre>
+ *
+ * @since 2023
+ */
+@XObject("index")
+@XRegistry(enable = false)
+public class VectorIndexDescriptor {
+
+    @XNode("@name")
+    @XRegistryId
+    protected String name;
+
+    @XNode("@enabled")
+    protected boolean enabled = true;
+
+    @XNode("dimensions")
+    protected int dimensions = 1024;
+
+    @XNode("m")
+    protected int m = 16;
+
+    @XNode("efConstruction")
+    protected int efConstruction = 100;
+
+    @XNode("efSearch")
+    protected int efSearch = 64;
+
+    @XNode("directory")
+    protected String directory;
+
+    @XNode("autoSaveInterval")
+    protected int autoSaveInterval = 1000;
+
+    @XNode("compactionThreshold")
+    protected double compactionThreshold = VectorIndex.DEFAULT_COMPACTION_THRESHOLD;
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public int getAutoSaveInterval() {
+        return autoSaveInterval;
+    }
+
+    public double getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.vectors;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The vector indexes contributed to the {@code vectorIndexes} extension point (see {@link VectorIndexDescriptor}).
+ * An index is opened the first time it is used, and saved and closed when the component stops.
+ *
+ * @since 2023
+ */
+public interface VectorIndexService {
+
+    public static final String DEFAULT_INDEX = "default";
+
+    /**
+     * @throws IllegalArgumentException if there is no such index
+     * @since 2023
+     */
+    public VectorIndex getIndex(String name);
+
+    public boolean hasIndex(String name);
+
+    public List<String> getIndexNames();
+
+    /**
+     * Removes the ids from all the indexes (the indexes never used are not opened), for example when the documents
+     * are deleted
+     *
+     * @return the number of vectors removed
+     * @since 2023
+     */
+    public int remove(Collection<String> ids);
+
+}
@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.labs.genai.aws.vectors;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.common.Environment;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.model.ComponentContext;
+import org.nuxeo.runtime.model.DefaultComponent;
+
+/**
+ * @since 2023
+ */
+public class VectorIndexServiceImpl extends DefaultComponent implements VectorIndexService {
+
+    private static final Logger log = LogManager.getLogger(VectorIndexServiceImpl.class);
+
+    public static final String XP_VECTOR_INDEXES = "vectorIndexes";
+
+    public static final String DEFAULT_DIRECTORY = "bedrock-vector-index";
+
+    protected volatile Map<String, VectorIndexDescriptor> descriptors = Collections.emptyMap();
+
+    protected final Map<String, VectorIndex> indexes = new ConcurrentHashMap<>();
+
+    @Override
+    public void start(ComponentContext context) {
+
+        Map<String, VectorIndexDescriptor> enabled = new ConcurrentHashMap<>();
+        for (VectorIndexDescriptor descriptor : this.<VectorIndexDescriptor> getRegistryContributions(
+                XP_VECTOR_INDEXES)) {
+            if (descriptor.isEnabled()) {
+                enabled.put(descriptor.getName(), descriptor);
+            }
+        }
+        descriptors = enabled;
+    }
+
+    @Override
+    public void stop(ComponentContext context) throws InterruptedException {
+
+        for (Map.Entry<String, VectorIndex> entry : indexes.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException | RuntimeException e) {
+                log.error("Cannot close the vector index {}", entry.getKey(), e);
+            }
+        }
+        indexes.clear();
+        descriptors = Collections.emptyMap();
+        super.stop(context);
+    }
+
+    @Override
+    public VectorIndex getIndex(String name) {
+
+        String indexName = StringUtils.defaultIfBlank(name, DEFAULT_INDEX);
+        VectorIndexDescriptor descriptor = descriptors.get(indexName);
+        if (descriptor == null) {
+            throw new IllegalArgumentException("No vector index named " + indexName);
+        }
+
+        return indexes.computeIfAbsent(indexName, k -> open(descriptor));
+    }
+
+    @Override
+    public boolean hasIndex(String name) {
+        return descriptors.containsKey(name);
+    }
+
+    @Override
+    public List<String> getIndexNames() {
+        return new ArrayList<>(descriptors.keySet());
+    }
+
+    @Override
+    public int remove(Collection<String> ids) {
+
+        int removed = 0;
+        if (ids.isEmpty()) {
+            return removed;
+        }
+        for (VectorIndexDescriptor descriptor : descriptors.values()) {
+            if (!indexes.containsKey(descriptor.getName()) && !Files.exists(getDirectory(descriptor))) {
+                // Never used
+                continue;
+            }
+            VectorIndex index = getIndex(descriptor.getName());
+            for (String id : ids) {
+                if (index.remove(id)) {
+                    removed++;
+                }
+            }
+        }
+
+        return removed;
+    }
+
+    protected Path getDirectory(VectorIndexDescriptor descriptor) {
+
+        if (StringUtils.isNotBlank(descriptor.getDirectory())) {
+            return Paths.get(descriptor.getDirectory());
+        }
+        return Environment.getDefault().getData().toPath().resolve(DEFAULT_DIRECTORY).resolve(descriptor.getName());
+    }
+
+    protected VectorIndex open(VectorIndexDescriptor descriptor) {
+
+        Path directory = getDirectory(descriptor);
+        try {
+            VectorIndex index = new VectorIndex(directory, descriptor.getDimensions(), descriptor.getM(),
+                    descriptor.getEfConstruction(), descriptor.getEfSearch(), descriptor.getAutoSaveInterval(),
+                    descriptor.getCompactionThreshold());
+            log.debug("Vector index {} opened in {}: {} vectors", descriptor.getName(), directory, index.size());
+            return index;
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot open the vector index " + descriptor.getName(), e);
+        }
+    }
+
+}
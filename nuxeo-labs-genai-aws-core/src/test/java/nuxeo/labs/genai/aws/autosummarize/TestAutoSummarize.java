@@ -0,0 +1,134 @@
+package nuxeo.labs.genai.aws.autosummarize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.test.AutomationFeature;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.labs.genai.aws.bulk.BedrockSummarizeAction;
+import nuxeo.labs.genai.aws.bulk.DocumentSummarizer;
+import nuxeo.labs.genai.aws.standin.BedrockStandInFeature;
+import nuxeo.labs.genai.aws.standin.BedrockStandInServer;
+import nuxeo.labs.genai.aws.throttling.RateLimiter;
+
+/*
+ * Summarizes with the local stand-in: no AWS credentials needed
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ AutomationFeature.class, BedrockStandInFeature.class })
+@RepositoryConfig(init = DefaultRepositoryInit.class, cleanup = Granularity.METHOD)
+public class TestAutoSummarize {
+
+    @Inject
+    protected BedrockStandInFeature standIn;
+
+    @Inject
+    protected BedrockStandInServer server;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected KeyValueService keyValueService;
+
+    @Before
+    public void setOutputWords() {
+        server.setOutputWords(20);
+    }
+
+    protected DocumentSummarizer newSummarizer() {
+
+        Map<String, String> params = Map.of(BedrockSummarizeAction.PARAM_TARGET_XPATH, "dc:description",
+                BedrockSummarizeAction.PARAM_CLIENT_CONFIG, BedrockStandInFeature.CLIENT_CONFIG);
+        DocumentSummarizer summarizer = new DocumentSummarizer(params::get);
+        summarizer.getInvokeBedrock().setEndpoint(standIn.getEndpoint());
+        return summarizer;
+    }
+
+    protected DocumentModel createDocument(String name, String text) {
+
+        DocumentModel doc = session.createDocumentModel("/", name, "File");
+        if (text != null) {
+            Blob blob = Blobs.createBlob(text);
+            doc.setPropertyValue("file:content", (Serializable) blob);
+        }
+        return session.createDocument(doc);
+    }
+
+    @Test
+    public void shouldSummarizeDocumentsWithBlob() {
+
+        DocumentModel doc1 = createDocument("doc1", "Some text to summarize");
+        DocumentModel doc2 = createDocument("doc2", null);
+        session.save();
+
+        List<DocumentModel> summarized = newSummarizer().summarize(session, List.of(doc1, doc2), null);
+        assertEquals(1, summarized.size());
+        assertEquals(1, server.getRequests());
+        assertTrue(((String) session.getDocument(doc1.getRef()).getPropertyValue("dc:description")).contains(
+                "answer"));
+        assertNull(session.getDocument(doc2.getRef()).getPropertyValue("dc:description"));
+        assertEquals(Boolean.TRUE, summarized.get(0).getContextData(DocumentSummarizer.SUMMARIZED_CONTEXT_DATA));
+    }
+
+    @Test
+    public void shouldSummarizeOnlyChangedBlobs() {
+
+        DocumentModel doc = createDocument("doc", "Some text to summarize");
+        session.save();
+        Set<String> ids = new LinkedHashSet<>(List.of(doc.getId()));
+        KeyValueStore digests = keyValueService.getKeyValueStore(AutoSummarizeProcessor.KV_STORE);
+        AutoSummarizeProcessor.AutoSummarizeComputation computation = new AutoSummarizeProcessor.AutoSummarizeComputation(
+                null);
+
+        computation.summarize(session, ids, newSummarizer(), digests);
+        assertEquals(1, server.getRequests());
+
+        // Same blob: not summarized again
+        computation.summarize(session, ids, newSummarizer(), digests);
+        assertEquals(1, server.getRequests());
+
+        doc = session.getDocument(doc.getRef());
+        doc.setPropertyValue("file:content", (Serializable) Blobs.createBlob("Another text"));
+        session.saveDocument(doc);
+        session.save();
+        computation.summarize(session, ids, newSummarizer(), digests);
+        assertEquals(2, server.getRequests());
+    }
+
+    @Test
+    public void shouldLimitRate() throws Exception {
+
+        RateLimiter limiter = new RateLimiter(50);
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            limiter.acquire();
+        }
+        // 5 intervals of 20 ms
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 90);
+    }
+
+}
@@ -0,0 +1,172 @@
+package nuxeo.labs.genai.aws.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.test.AutomationFeature;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
+import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import nuxeo.labs.genai.aws.models.ModelHandlerService;
+import nuxeo.labs.genai.aws.operations.BedrockBatchIngestOp;
+import nuxeo.labs.genai.aws.operations.BedrockBatchSubmitOp;
+import nuxeo.labs.genai.aws.standin.BedrockStandInFeature;
+import nuxeo.labs.genai.aws.standin.BedrockStandInServer;
+
+/*
+ * Runs the batch jobs with the LocalBatchJobClient against the local stand-in: no AWS credentials needed
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ AutomationFeature.class, BedrockStandInFeature.class })
+@RepositoryConfig(init = DefaultRepositoryInit.class, cleanup = Granularity.METHOD)
+@Deploy("nuxeo.labs.genai.aws.nuxeo-labs-genai-aws-core:OSGI-INF/test-batch-contrib.xml")
+public class TestBatchInference {
+
+    @Inject
+    protected BedrockStandInFeature standIn;
+
+    @Inject
+    protected BedrockStandInServer server;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected AutomationService automationService;
+
+    @Inject
+    protected BatchInferenceService batchInferenceService;
+
+    @Inject
+    protected ModelHandlerService modelHandlerService;
+
+    @Before
+    public void setEndpoint() {
+        server.setOutputWords(20);
+        ((LocalBatchJobClient) batchInferenceService.getJobClient()).setEndpoint(standIn.getEndpoint());
+    }
+
+    protected BatchJob waitForJob(String jobId) throws InterruptedException {
+
+        BatchJob job = batchInferenceService.getJobClient().getJob(jobId);
+        for (int i = 0; i < 200 && !job.getStatus().isDone(); i++) {
+            Thread.sleep(50);
+        }
+        return job;
+    }
+
+    @Test
+    public void shouldWriteRunAndReadRecords() throws Exception {
+
+        String modelId = InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2;
+        RequestResponseHandlers handler = modelHandlerService.getHandler(modelId);
+        Blob input;
+        try (BatchInputWriter writer = new BatchInputWriter()) {
+            for (int i = 0; i < 5; i++) {
+                RequestParameters params = new RequestParameters("Question \"" + i + "\"\nwith a line break", 0F,
+                        null, 100, null);
+                writer.add("record-" + i, handler.getRequestBodyBytes(params));
+            }
+            input = writer.getBlob();
+            assertEquals(5, writer.getCount());
+        }
+        // One record per line
+        assertEquals(5, input.getString().split("\n").length);
+
+        BatchJobClient jobClient = batchInferenceService.getJobClient();
+        BatchJob job = waitForJob(jobClient.submit(modelId, input).getId());
+        assertEquals(BatchJob.Status.COMPLETED, job.getStatus());
+        assertEquals(5, job.getProcessedCount());
+        assertEquals(0, job.getErrorCount());
+        assertEquals(5, server.getRequests());
+
+        List<BatchResult> results = new ArrayList<>();
+        assertEquals(5, BatchOutputReader.read(jobClient.getOutput(job.getId()), handler, results::add));
+        for (int i = 0; i < 5; i++) {
+            BatchResult result = results.get(i);
+            assertEquals("record-" + i, result.getRecordId());
+            assertTrue(result.getResult().getText().contains("answer"));
+        }
+    }
+
+    @Test
+    public void shouldReadFailedRecords() {
+
+        BatchRecord record = BatchRecord.parse(
+                "{\"recordId\":\"r1\",\"modelInput\":{\"prompt\":\"Hi\"},\"error\":{\"errorCode\":400,\"errorMessage\":\"Bad\"}}",
+                false);
+        assertEquals("r1", record.getRecordId());
+        assertTrue(record.isError());
+        assertNull(record.getModelInput());
+        assertEquals(400, record.getErrorCode());
+        assertEquals("Bad", record.getErrorMessage());
+    }
+
+    @Test
+    public void shouldSubmitAndIngestDocuments() throws Exception {
+
+        DocumentModelList docs = new DocumentModelListImpl();
+        for (int i = 0; i < 3; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            doc.setPropertyValue("dc:title", "Doc " + i);
+            docs.add(session.createDocument(doc));
+        }
+        session.save();
+
+        OperationContext ctx = new OperationContext(session);
+        ctx.setInput(docs);
+        Map<String, Object> params = new HashMap<>();
+        params.put("modelId", InvokeBedrock.MODEL_TITAN_TEXT_EXPRESS_V1);
+        params.put("prompt", "Give a title");
+        // The prompt only, no blob
+        params.put("xpath", "");
+        Blob blob = (Blob) automationService.run(ctx, BedrockBatchSubmitOp.ID, params);
+        JSONObject report = new JSONObject(blob.getString());
+        assertEquals(3, report.getInt("records"));
+
+        String jobId = report.getString("jobId");
+        assertEquals(BatchJob.Status.COMPLETED, waitForJob(jobId).getStatus());
+
+        ctx = new OperationContext(session);
+        params = new HashMap<>();
+        params.put("jobId", jobId);
+        params.put("xpath", "dc:description");
+        blob = (Blob) automationService.run(ctx, BedrockBatchIngestOp.ID, params);
+        report = new JSONObject(blob.getString());
+        assertEquals("COMPLETED", report.getString("status"));
+        assertEquals(3, report.getInt("updated"));
+        assertEquals(0, report.getInt("errors"));
+
+        for (DocumentModel doc : docs) {
+            String description = (String) session.getDocument(doc.getRef()).getPropertyValue("dc:description");
+            assertTrue(description.contains("answer"));
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+package nuxeo.labs.genai.aws.budget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.standin.BedrockStandInFeature;
+import nuxeo.labs.genai.aws.standin.BedrockStandInServer;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class, BedrockStandInFeature.class })
+@Deploy("nuxeo.labs.genai.aws.nuxeo-labs-genai-aws-core")
+@Deploy("nuxeo.labs.genai.aws.nuxeo-labs-genai-aws-core:OSGI-INF/test-token-budget-contrib.xml")
+public class TestTokenBudgets {
+
+    @Inject
+    protected TokenBudgetService tokenBudgetService;
+
+    @Inject
+    protected KeyValueService keyValueService;
+
+    @Inject
+    protected BedrockStandInFeature standIn;
+
+    @Inject
+    protected BedrockStandInServer server;
+
+    /**
+     * @return an {@code InvokeBedrock} calling the stand-in, charging the budgets of {@code principal}
+     */
+    protected InvokeBedrock newInvokeBedrock(NuxeoPrincipal principal) {
+
+        InvokeBedrock ibr = new InvokeBedrock() {
+
+            @Override
+            protected TokenCharge chargeTokenBudget(CharSequence input) {
+                return tokenBudgetService.charge(principal, estimateTokens(input));
+            }
+
+            @Override
+            protected CompletableFuture<TokenCharge> chargeTokenBudgetAsync(CharSequence input) {
+                return tokenBudgetService.chargeAsync(principal, estimateTokens(input));
+            }
+        };
+        ibr.setModelId(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2);
+        ibr.setClientConfig(BedrockStandInFeature.CLIENT_CONFIG);
+        ibr.setEndpoint(standIn.getEndpoint());
+        return ibr;
+    }
+
+    @Test
+    public void shouldSlideWindow() {
+
+        // 4 buckets of 1s
+        SlidingWindowCounter counter = new SlidingWindowCounter(4000, 4);
+        counter.add(10, 0);
+        counter.add(5, 1500);
+        assertEquals(15, counter.sum(1500));
+        assertEquals(15, counter.sum(3999));
+        // The first bucket leaves the window
+        assertEquals(5, counter.sum(4000));
+        // Reused for a new period
+        counter.add(1, 4500);
+        assertEquals(6, counter.sum(4500));
+        assertEquals(0, counter.sum(10_000));
+    }
+
+    @Test
+    public void shouldRejectOverBudget() {
+
+        assertEquals(List.of("perUser"), tokenBudgetService.getBudgetNames());
+        NuxeoPrincipal bob = new UserPrincipal("bob", List.of(), false, false);
+
+        TokenCharge first = tokenBudgetService.charge(bob, 60);
+        assertEquals(60, tokenBudgetService.getUsage("perUser", "bob"));
+        try {
+            tokenBudgetService.charge(bob, 60);
+            fail("Should be over budget");
+        } catch (NuxeoException e) {
+            assertEquals(429, e.getStatusCode());
+        }
+        // Nothing charged when rejected
+        assertEquals(60, tokenBudgetService.getUsage("perUser", "bob"));
+
+        // Actual counts: 20 + 10 instead of 60
+        first.complete(20, 10);
+        assertEquals(30, tokenBudgetService.getUsage("perUser", "bob"));
+        TokenCharge second = tokenBudgetService.charge(bob, 60);
+        assertEquals(90, tokenBudgetService.getUsage("perUser", "bob"));
+        second.cancel();
+        second.complete(100, 100);
+        assertEquals(30, tokenBudgetService.getUsage("perUser", "bob"));
+
+        // Other users and the system are not affected
+        tokenBudgetService.charge(new UserPrincipal("alice", List.of(), false, false), 100);
+        NuxeoPrincipal system = new UserPrincipal(SecurityConstants.SYSTEM_USERNAME, List.of(), false, true);
+        assertSame(TokenCharge.NONE, tokenBudgetService.charge(system, 1000));
+    }
+
+    @Test
+    public void shouldAggregateCluster() {
+
+        NuxeoPrincipal carol = new UserPrincipal("carol", List.of(), false, false);
+        tokenBudgetService.charge(carol, 30).complete(-1, -1);
+        tokenBudgetService.flush();
+        assertEquals(30, tokenBudgetService.getUsage("perUser", "carol"));
+
+        // Another node counted 50 tokens for the same user
+        TokenBudget budget = ((TokenBudgetServiceImpl) tokenBudgetService).budgets.get("perUser");
+        SlidingWindowCounter counter = budget.usages.get("carol").local;
+        String key = budget.getBucketKey("carol", counter.getPeriod(System.currentTimeMillis()));
+        keyValueService.getKeyValueStore(TokenBudgetDescriptor.DEFAULT_KEY_VALUE_STORE).addAndGet(key, 50);
+        tokenBudgetService.flush();
+        assertEquals(80, tokenBudgetService.getUsage("perUser", "carol"));
+
+        try {
+            tokenBudgetService.charge(carol, 30);
+            fail("Should be over budget");
+        } catch (NuxeoException e) {
+            assertEquals(429, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void shouldNotChargeForgottenUsage() {
+
+        TokenBudgetDescriptor descriptor = new TokenBudgetDescriptor();
+        descriptor.name = "local";
+        descriptor.maxTokens = 100;
+        descriptor.window = Duration.ofSeconds(60);
+        descriptor.keyValueStore = null;
+        AtomicLong clock = new AtomicLong();
+        TokenBudget budget = new TokenBudget(descriptor, clock::get);
+
+        TokenBudget.Usage idle = budget.charge("dave", 10);
+        // The tokens leave the window: the user is forgotten
+        clock.addAndGet(120_000);
+        budget.flush();
+        assertTrue(idle.detached);
+        assertTrue(budget.usages.isEmpty());
+
+        // Charged to a new usage, so the budget still applies
+        assertNotSame(idle, budget.charge("dave", 60));
+        assertEquals(60, budget.getUsage("dave"));
+        try {
+            budget.charge("dave", 60);
+            fail("Should be over budget");
+        } catch (NuxeoException e) {
+            assertEquals(429, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void shouldChargeAsyncWithoutBlocking() throws Exception {
+
+        NuxeoPrincipal frank = new UserPrincipal("frank", List.of(), false, false);
+        CompletableFuture<TokenCharge> rejected = tokenBudgetService.chargeAsync(frank, 200);
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.join();
+            fail("Should be over budget");
+        } catch (CompletionException e) {
+            assertEquals(429, ((NuxeoException) e.getCause()).getStatusCode());
+        }
+
+        // 2s window, waits up to 10s
+        TokenBudgetDescriptor descriptor = new TokenBudgetDescriptor();
+        descriptor.name = "waiting";
+        descriptor.maxTokens = 100;
+        descriptor.window = Duration.ofSeconds(2);
+        descriptor.buckets = 2;
+        descriptor.maxWait = Duration.ofSeconds(10);
+        descriptor.keyValueStore = null;
+        TokenBudgetServiceImpl impl = (TokenBudgetServiceImpl) tokenBudgetService;
+        Map<String, TokenBudget> budgets = impl.budgets;
+        impl.budgets = Map.of("waiting", new TokenBudget(descriptor));
+        try {
+            tokenBudgetService.chargeAsync(frank, 80).join();
+            CompletableFuture<TokenCharge> waiting = tokenBudgetService.chargeAsync(frank, 80);
+            // Returned right away, charged once the first tokens have left the window
+            assertFalse(waiting.isDone());
+            waiting.get(10, TimeUnit.SECONDS);
+            assertEquals(80, tokenBudgetService.getUsage("waiting", "frank"));
+        } finally {
+            impl.budgets = budgets;
+        }
+    }
+
+    @Test
+    public void shouldChargeEachCallerOfSharedCall() {
+
+        NuxeoPrincipal henry = new UserPrincipal("henry", List.of(), false, false);
+        NuxeoPrincipal ivy = new UserPrincipal("ivy", List.of(), false, false);
+        NuxeoPrincipal jack = new UserPrincipal("jack", List.of(), false, false);
+        // No budget left
+        tokenBudgetService.charge(henry, 100);
+
+        // Slow enough for the 3 calls to be in flight at the same time
+        server.setLatency(Duration.ofMillis(500), 0);
+        CompletableFuture<String> henryResult = newInvokeBedrock(henry).runAsync("Hello shared", null, null);
+        CompletableFuture<String> ivyResult = newInvokeBedrock(ivy).runAsync("Hello shared", null, null);
+        CompletableFuture<String> jackResult = newInvokeBedrock(jack).runAsync("Hello shared", null, null);
+
+        // Only the user over budget is rejected
+        try {
+            henryResult.join();
+            fail("Should be over budget");
+        } catch (CompletionException e) {
+            assertEquals(429, ((NuxeoException) e.getCause()).getStatusCode());
+        }
+        assertTrue(ivyResult.join().contains("answer"));
+        assertTrue(jackResult.join().contains("answer"));
+        assertEquals(1, server.getRequests());
+
+        // Both users sharing the call are charged
+        assertEquals(100, tokenBudgetService.getUsage("perUser", "henry"));
+        long usage = tokenBudgetService.getUsage("perUser", "ivy");
+        assertTrue(usage > 0);
+        assertEquals(usage, tokenBudgetService.getUsage("perUser", "jack"));
+    }
+
+}
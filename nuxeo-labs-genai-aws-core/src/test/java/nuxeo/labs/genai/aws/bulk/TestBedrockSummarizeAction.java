@@ -0,0 +1,133 @@
+package nuxeo.labs.genai.aws.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.time.Duration;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.test.AutomationFeature;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.bulk.BulkService;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.core.bulk.message.BulkStatus;
+import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.TransactionalFeature;
+
+import nuxeo.labs.genai.aws.standin.BedrockStandInFeature;
+import nuxeo.labs.genai.aws.standin.BedrockStandInServer;
+
+/*
+ * Runs the bedrockSummarize bulk action against the local stand-in: no AWS credentials needed
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ AutomationFeature.class, BedrockStandInFeature.class })
+@RepositoryConfig(init = DefaultRepositoryInit.class, cleanup = Granularity.METHOD)
+@Deploy("org.nuxeo.runtime.stream")
+@Deploy("org.nuxeo.ecm.core.bulk")
+public class TestBedrockSummarizeAction {
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected BulkService bulkService;
+
+    @Inject
+    protected TransactionalFeature txFeature;
+
+    @Inject
+    protected BedrockStandInServer server;
+
+    protected DocumentModel createDocument(String name, String text) {
+
+        DocumentModel doc = session.createDocumentModel("/", name, "File");
+        doc.setPropertyValue("dc:source", "bulk-test");
+        if (text != null) {
+            doc.setPropertyValue("file:content", (Serializable) Blobs.createBlob(text));
+        }
+        return session.createDocument(doc);
+    }
+
+    @Test
+    public void shouldSummarizeQueryResults() throws Exception {
+
+        server.setOutputWords(20);
+        DocumentModel doc1 = createDocument("doc1", "Some text to summarize");
+        DocumentModel doc2 = createDocument("doc2", "Another text to summarize");
+        // No blob: processed, not summarized
+        DocumentModel doc3 = createDocument("doc3", null);
+        // Not in the query
+        DocumentModel other = createDocument("other", "Not to summarize");
+        other.setPropertyValue("dc:source", "other");
+        session.saveDocument(other);
+        txFeature.nextTransaction();
+
+        String query = "SELECT * FROM File WHERE dc:source = 'bulk-test' AND ecm:isVersion = 0";
+        BulkCommand command = new BulkCommand.Builder(BedrockSummarizeAction.ACTION_NAME, query,
+                session.getPrincipal().getName()).param(BedrockSummarizeAction.PARAM_TARGET_XPATH, "dc:description")
+                                                 .param(BedrockSummarizeAction.PARAM_CLIENT_CONFIG,
+                                                         BedrockStandInFeature.CLIENT_CONFIG)
+                                                 .build();
+        String commandId = bulkService.submit(command);
+        assertTrue("Bulk command not completed in time", bulkService.await(commandId, Duration.ofSeconds(60)));
+
+        BulkStatus status = bulkService.getStatus(commandId);
+        assertEquals(BulkStatus.State.COMPLETED, status.getState());
+        assertEquals(3, status.getTotal());
+        assertEquals(3, status.getProcessed());
+        assertEquals(0, status.getErrorCount());
+        assertEquals(2, server.getRequests());
+
+        txFeature.nextTransaction();
+        for (DocumentModel doc : new DocumentModel[] { doc1, doc2 }) {
+            String summary = (String) session.getDocument(doc.getRef()).getPropertyValue("dc:description");
+            assertTrue(summary.contains("answer"));
+        }
+        assertNull(session.getDocument(doc3.getRef()).getPropertyValue("dc:description"));
+        assertNull(session.getDocument(other.getRef()).getPropertyValue("dc:description"));
+    }
+
+    @Test
+    public void shouldCountFailuresAsErrors() throws Exception {
+
+        server.setInvalidPrompt("invalid");
+        DocumentModel doc1 = createDocument("doc1", "Some text to summarize");
+        DocumentModel doc2 = createDocument("doc2", "An invalid text");
+        txFeature.nextTransaction();
+
+        String query = "SELECT * FROM File WHERE dc:source = 'bulk-test' AND ecm:isVersion = 0";
+        BulkCommand command = new BulkCommand.Builder(BedrockSummarizeAction.ACTION_NAME, query,
+                session.getPrincipal().getName()).param(BedrockSummarizeAction.PARAM_TARGET_XPATH, "dc:description")
+                                                 .param(BedrockSummarizeAction.PARAM_CLIENT_CONFIG,
+                                                         BedrockStandInFeature.CLIENT_CONFIG)
+                                                 .build();
+        String commandId = bulkService.submit(command);
+        assertTrue("Bulk command not completed in time", bulkService.await(commandId, Duration.ofSeconds(60)));
+
+        BulkStatus status = bulkService.getStatus(commandId);
+        assertEquals(BulkStatus.State.COMPLETED, status.getState());
+        assertEquals(2, status.getProcessed());
+        assertTrue(status.getErrorMessage().contains("Injected invalid request"));
+
+        // After the first failure, the calls in flight are cancelled: doc1 is summarized or counted as an error,
+        // depending on the order of the documents
+        txFeature.nextTransaction();
+        assertNull(session.getDocument(doc2.getRef()).getPropertyValue("dc:description"));
+        long summarized = session.getDocument(doc1.getRef()).getPropertyValue("dc:description") == null ? 0 : 1;
+        assertEquals(2, status.getErrorCount() + summarized);
+    }
+
+}
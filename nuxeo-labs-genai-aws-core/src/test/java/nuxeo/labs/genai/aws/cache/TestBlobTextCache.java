@@ -0,0 +1,65 @@
+package nuxeo.labs.genai.aws.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBlobTextCache {
+
+    protected File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("test-bedrock-text-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void shouldStoreBigTextsOnDisk() {
+
+        TextCacheDescriptor descriptor = new TextCacheDescriptor();
+        descriptor.diskThresholdKB = 1;
+        BlobTextCache cache = new BlobTextCache(descriptor, directory);
+
+        String small = "Hello";
+        String big = StringUtils.repeat("Hello world. ", 1000);
+        cache.put("small", small);
+        cache.put("big", big);
+
+        assertEquals(1, directory.listFiles().length);
+        assertEquals(small, cache.get("small"));
+        assertEquals(big, cache.get("big"));
+
+        cache.clear();
+        assertEquals(0, directory.listFiles().length);
+        assertNull(cache.get("big"));
+    }
+
+    @Test
+    public void shouldEvictWhenMemoryIsFull() {
+
+        TextCacheDescriptor descriptor = new TextCacheDescriptor();
+        descriptor.maxMemoryMB = 1;
+        descriptor.diskThresholdKB = 2048;
+        BlobTextCache cache = new BlobTextCache(descriptor, directory);
+
+        // 300K chars => 600KB each
+        String text = StringUtils.repeat('a', 300_000);
+        cache.put("1", text);
+        cache.put("2", text);
+        assertNull(cache.get("1"));
+        assertEquals(text, cache.get("2"));
+    }
+}
@@ -0,0 +1,59 @@
+package nuxeo.labs.genai.aws.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+import software.amazon.awssdk.core.SdkBytes;
+
+public class TestResponseCache {
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+
+        ResponseCacheDescriptor descriptor = new ResponseCacheDescriptor();
+        descriptor.maxEntries = 2;
+
+        InMemoryResponseCache cache = new InMemoryResponseCache();
+        cache.init(descriptor);
+
+        cache.put("a", "A");
+        cache.put("b", "B");
+        // "a" is now the most recently used
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C");
+
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("C", cache.get("c"));
+    }
+
+    @Test
+    public void shouldExpireEntries() throws Exception {
+
+        ResponseCacheDescriptor descriptor = new ResponseCacheDescriptor();
+        descriptor.ttl = Duration.ofMillis(1);
+
+        InMemoryResponseCache cache = new InMemoryResponseCache();
+        cache.init(descriptor);
+
+        cache.put("a", "A");
+        Thread.sleep(10);
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void shouldComputeKeyFromModelAndBody() {
+
+        SdkBytes body = SdkBytes.fromUtf8String("{\"prompt\":\"Hello\"}");
+        String key = BedrockCacheService.computeResponseKey("anthropic.claude-v2", body);
+
+        assertEquals(key, BedrockCacheService.computeResponseKey("anthropic.claude-v2",
+                SdkBytes.fromUtf8String("{\"prompt\":\"Hello\"}")));
+        assertNotEquals(key, BedrockCacheService.computeResponseKey("anthropic.claude-instant-v1", body));
+    }
+}
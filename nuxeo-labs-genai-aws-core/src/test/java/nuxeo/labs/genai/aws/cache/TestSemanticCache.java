@@ -0,0 +1,156 @@
+package nuxeo.labs.genai.aws.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.time.Duration;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.standin.BedrockStandInFeature;
+import nuxeo.labs.genai.aws.standin.BedrockStandInServer;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class, BedrockStandInFeature.class })
+@Deploy("nuxeo.labs.genai.aws.nuxeo-labs-genai-aws-core:OSGI-INF/test-semantic-cache-contrib.xml")
+public class TestSemanticCache {
+
+    @Inject
+    protected BedrockStandInFeature standIn;
+
+    @Inject
+    protected BedrockStandInServer server;
+
+    @Inject
+    protected BedrockCacheService cacheService;
+
+    @Before
+    public void clearCaches() {
+        cacheService.clearResponseCache();
+        cacheService.getSemanticCache().clear();
+    }
+
+    protected static SemanticCache newCache(int maxEntries, int maxEntriesPerScope) {
+
+        SemanticCacheDescriptor descriptor = new SemanticCacheDescriptor();
+        descriptor.threshold = 0.9F;
+        descriptor.maxEntries = maxEntries;
+        descriptor.maxEntriesPerScope = maxEntriesPerScope;
+        descriptor.ttl = Duration.ofHours(1);
+        return new SemanticCache(descriptor);
+    }
+
+    @Test
+    public void shouldReturnMostSimilarAboveThreshold() {
+
+        SemanticCache cache = newCache(10, 10);
+        cache.put("doc1", new float[] { 1, 0, 0 }, "A");
+        cache.put("doc1", new float[] { 0, 1, 0 }, "B");
+
+        // Not normalized: only the direction matters
+        assertEquals("A", cache.get("doc1", new float[] { 2, 0.1F, 0 }));
+        assertEquals("B", cache.get("doc1", new float[] { 0.1F, 1, 0 }));
+        assertNull(cache.get("doc1", new float[] { 1, 1, 0 }));
+        // Other scope
+        assertNull(cache.get("doc2", new float[] { 1, 0, 0 }));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void shouldEvict() {
+
+        SemanticCache cache = newCache(3, 2);
+        cache.put("doc1", new float[] { 1, 0 }, "A");
+        cache.put("doc1", new float[] { 0, 1 }, "B");
+        cache.put("doc1", new float[] { -1, 0 }, "C");
+        // Oldest of the scope evicted
+        assertNull(cache.get("doc1", new float[] { 1, 0 }));
+        assertEquals(2, cache.size());
+
+        cache.put("doc2", new float[] { 1, 0 }, "D");
+        cache.put("doc3", new float[] { 1, 0 }, "E");
+        // doc1, least recently used, evicted
+        assertEquals(2, cache.size());
+        assertNull(cache.get("doc1", new float[] { 0, 1 }));
+        assertEquals("E", cache.get("doc3", new float[] { 1, 0 }));
+    }
+
+    @Test
+    public void shouldReturnResponseOfSimilarPrompt() throws Exception {
+
+        InvokeBedrock ibr = standIn.newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2);
+        ibr.setTemperature(0F);
+
+        Blob blob = new StringBlob("Some text about foxes and dogs", "text/plain");
+        blob.setDigest("digest1");
+
+        // 1 embedding + 1 generation
+        String first = ibr.run("Please summarize this text", blob, null);
+        assertEquals(2, server.getRequests());
+
+        // Similar prompt, same blob: 1 embedding only
+        assertEquals(first, ibr.run("Please summarize the text", blob, null));
+        assertEquals(3, server.getRequests());
+
+        // Other blob: not cached
+        Blob other = new StringBlob("Some other text", "text/plain");
+        other.setDigest("digest2");
+        assertNotNull(ibr.run("Please summarize the text", other, null));
+        assertEquals(5, server.getRequests());
+
+        // Not similar: not cached
+        assertNotNull(ibr.run("Translate to French", blob, null));
+        assertEquals(7, server.getRequests());
+
+        // Not cacheable (temperature > 0): no embedding
+        ibr.setTemperature(0.8F);
+        ibr.run("Please summarize this text", blob, null);
+        assertEquals(8, server.getRequests());
+    }
+
+    @Test
+    public void shouldNotUseSemanticCacheWithoutBlob() {
+
+        InvokeBedrock ibr = standIn.newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2);
+        ibr.setTemperature(0F);
+
+        // The whole request is the prompt: similar prompts are different questions, no embedding
+        ibr.run("What is the distance between the Earth and the Moon?", null, null);
+        assertEquals(1, server.getRequests());
+        ibr.run("What is the distance between the Earth and the Sun?", null, null);
+        assertEquals(2, server.getRequests());
+        assertEquals(0, cacheService.getSemanticCache().size());
+    }
+
+    @Test
+    public void shouldNotUseSemanticCacheWithTooLongPrompt() {
+
+        InvokeBedrock ibr = standIn.newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2);
+        ibr.setTemperature(0F);
+        Blob blob = new StringBlob("Some text about foxes and dogs", "text/plain");
+        blob.setDigest("digest1");
+
+        // Over the embeddings model limit: would be truncated, only the end differs
+        String instructions = StringUtils.repeat("Please read the text carefully. ", 2000);
+        ibr.run(instructions + "Then summarize it.", blob, null);
+        assertEquals(1, server.getRequests());
+        ibr.run(instructions + "Then translate it.", blob, null);
+        assertEquals(2, server.getRequests());
+        assertEquals(0, cacheService.getSemanticCache().size());
+    }
+
+}
@@ -0,0 +1,93 @@
+package nuxeo.labs.genai.aws.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestSingleFlight {
+
+    @Test
+    public void shouldShareConcurrentCalls() throws Exception {
+
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int count = 10;
+
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                results.add(executor.submit(() -> singleFlight.call("key", () -> {
+                    calls.incrementAndGet();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "result";
+                })));
+            }
+            // Wait for all the callers to be in flight
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (singleFlight.getCalls() + singleFlight.getShared() < count
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("result", result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.getCalls());
+        assertEquals(count - 1, singleFlight.getShared());
+        assertEquals(0, singleFlight.getInFlight());
+
+        // Not in flight anymore => new call
+        assertEquals("again", singleFlight.call("key", () -> "again"));
+        assertEquals(2, singleFlight.getCalls());
+    }
+
+    @Test
+    public void shouldShareAsyncResultAndError() {
+
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> call = new CompletableFuture<>();
+
+        CompletableFuture<String> first = singleFlight.callAsync("key", () -> call);
+        CompletableFuture<String> second = singleFlight.callAsync("key", () -> {
+            throw new AssertionError("Should not be called");
+        });
+        CompletableFuture<String> other = singleFlight.callAsync("other", () -> CompletableFuture.completedFuture("x"));
+        assertEquals("x", other.join());
+
+        call.completeExceptionally(new IllegalStateException("failed"));
+        for (CompletableFuture<String> future : List.of(first, second)) {
+            try {
+                future.join();
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        assertEquals(0, singleFlight.getInFlight());
+    }
+
+}
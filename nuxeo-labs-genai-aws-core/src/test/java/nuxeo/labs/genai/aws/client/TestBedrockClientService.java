@@ -0,0 +1,62 @@
+package nuxeo.labs.genai.aws.client;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
+
+/*
+ * Building a client does not call AWS, so these tests do not need AWS credentials
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.labs.genai.aws.nuxeo-labs-genai-aws-core")
+public class TestBedrockClientService {
+
+    @Inject
+    protected BedrockClientService bedrockClientService;
+
+    @Test
+    public void shouldHaveDefaultConfig() {
+
+        assertNotNull(bedrockClientService.getConfig(null));
+        assertNotNull(bedrockClientService.getConfig(BedrockClientDescriptor.DEFAULT_CONFIG));
+    }
+
+    @Test
+    public void shouldReuseClientForSameRegion() {
+
+        BedrockRuntimeClient client1 = bedrockClientService.getClient(null, Region.US_EAST_1);
+        BedrockRuntimeClient client2 = bedrockClientService.getClient("default", Region.US_EAST_1);
+        assertSame(client1, client2);
+
+        // No region => default region
+        assertSame(client1, bedrockClientService.getClient(null, null));
+    }
+
+    @Test
+    public void shouldUseOneClientPerRegion() {
+
+        BedrockRuntimeClient client1 = bedrockClientService.getClient(null, Region.US_EAST_1);
+        BedrockRuntimeClient client2 = bedrockClientService.getClient(null, Region.EU_CENTRAL_1);
+        assertNotSame(client1, client2);
+    }
+
+    @Test(expected = NuxeoException.class)
+    public void shouldFailOnUnknownConfig() {
+
+        bedrockClientService.getClient("doesNotExist", Region.US_EAST_1);
+    }
+}
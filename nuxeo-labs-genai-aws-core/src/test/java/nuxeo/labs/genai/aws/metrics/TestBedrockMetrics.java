@@ -0,0 +1,38 @@
+package nuxeo.labs.genai.aws.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import software.amazon.awssdk.services.bedrockruntime.model.ThrottlingException;
+import software.amazon.awssdk.services.bedrockruntime.model.ValidationException;
+
+public class TestBedrockMetrics {
+
+    protected static MetricName name(String name) {
+        return BedrockMetrics.name(name, "test.model-v1", "us-east-1");
+    }
+
+    @Test
+    public void shouldRecordCalls() {
+
+        BedrockMetrics metrics = BedrockMetrics.of("test.model-v1", "us-east-1");
+        assertSame(metrics, BedrockMetrics.of("test.model-v1", "us-east-1"));
+
+        metrics.recordSuccess(1_000_000, 100, 20);
+        metrics.recordSuccess(2_000_000, -1, -1);
+        metrics.recordError(1_000_000, ThrottlingException.builder().statusCode(429).build());
+        metrics.recordError(1_000_000, ValidationException.builder().statusCode(400).build());
+
+        MetricRegistry registry = BedrockMetrics.getRegistry();
+        assertEquals(4, registry.timer(name("invoke")).getCount());
+        assertEquals(1, registry.histogram(name("tokens.input")).getCount());
+        assertEquals(20, registry.histogram(name("tokens.output")).getSnapshot().getMax());
+        assertEquals(1, registry.counter(name("throttles")).getCount());
+        assertEquals(1, registry.counter(name("errors")).getCount());
+    }
+
+}
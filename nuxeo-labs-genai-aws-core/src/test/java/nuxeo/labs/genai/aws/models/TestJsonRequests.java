@@ -0,0 +1,58 @@
+package nuxeo.labs.genai.aws.models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import nuxeo.labs.genai.aws.batch.BatchRecord;
+import software.amazon.awssdk.core.SdkBytes;
+
+public class TestJsonRequests {
+
+    @Test
+    public void shouldWrapWrittenPartOfBuffer() {
+
+        // Sized for 10000 chars + overhead, 18 bytes written
+        SdkBytes body = JsonRequests.write(10000, generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("prompt", "Hello");
+            generator.writeEndObject();
+        });
+        assertEquals("{\"prompt\":\"Hello\"}", body.asUtf8String());
+        assertEquals(18, body.asByteBuffer().remaining());
+    }
+
+    @Test
+    public void shouldNotCopyBuffer() throws IOException {
+
+        JsonRequests.BodyOutputStream out = new JsonRequests.BodyOutputStream(100);
+        out.write("first".getBytes(StandardCharsets.UTF_8));
+        SdkBytes body = out.toSdkBytes();
+        assertEquals("first", body.asUtf8String());
+
+        // Same buffer => the body sees the new bytes
+        out.reset();
+        out.write("other".getBytes(StandardCharsets.UTF_8));
+        assertEquals("other", body.asUtf8String());
+    }
+
+    @Test
+    public void shouldWriteWrappedBodyInBatchRecord() throws IOException {
+
+        SdkBytes body = JsonRequests.write(100, generator -> {
+            generator.writeStartObject();
+            generator.writeNumberField("a", 1);
+            generator.writeEndObject();
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchRecord.writeInput(out, "r1", body);
+        assertArrayEquals("{\"recordId\":\"r1\",\"modelInput\":{\"a\":1}}\n".getBytes(StandardCharsets.UTF_8),
+                out.toByteArray());
+    }
+
+}
@@ -0,0 +1,105 @@
+package nuxeo.labs.genai.aws.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import nuxeo.labs.genai.aws.tokens.TokenEstimators;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.labs.genai.aws.nuxeo-labs-genai-aws-core")
+public class TestModelHandlerService {
+
+    @Inject
+    protected ModelHandlerService modelHandlerService;
+
+    @Test
+    public void shouldResolveHandlers() {
+
+        assertTrue(modelHandlerService.getHandler(
+                InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_INSTANT_V1) instanceof AnthropicClaude);
+        assertTrue(modelHandlerService.getHandler(
+                InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_3_HAIKU) instanceof AnthropicClaudeMessages);
+        assertTrue(modelHandlerService.getHandler(
+                "us." + InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_3_SONNET) instanceof AnthropicClaudeMessages);
+        assertTrue(modelHandlerService.getHandler(InvokeBedrock.MODEL_TITAN_TEXT_PREMIER_V1) instanceof AWSTitan);
+        assertTrue(modelHandlerService.getHandler(
+                InvokeBedrock.MODEL_META_LLAMA3_8B_INSTRUCT) instanceof MetaLlama);
+        assertTrue(modelHandlerService.getHandler("meta.llama2-13b-chat-v1") instanceof MetaLlama2);
+        assertTrue(modelHandlerService.getHandler(InvokeBedrock.MODEL_MIXTRAL_8X7B_INSTRUCT) instanceof MistralAI);
+
+        // One instance per class
+        assertSame(modelHandlerService.getHandler(InvokeBedrock.MODEL_TITAN_TEXT_EXPRESS_V1),
+                modelHandlerService.getHandler(InvokeBedrock.MODEL_TITAN_TEXT_PREMIER_V1));
+
+        assertFalse(modelHandlerService.hasHandler("amazon.titan-embed-text-v1"));
+        assertFalse(modelHandlerService.hasHandler("some.other-model"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailForUnknownModel() {
+        modelHandlerService.getHandler("some.other-model");
+    }
+
+    @Test
+    public void shouldGetContextWindowsAndEstimators() {
+
+        assertEquals(200_000, modelHandlerService.getContextWindow(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_3_HAIKU));
+        assertEquals(32_000, modelHandlerService.getContextWindow(InvokeBedrock.MODEL_TITAN_TEXT_PREMIER_V1));
+        assertEquals(8_000, modelHandlerService.getContextWindow(InvokeBedrock.MODEL_META_LLAMA3_70B_INSTRUCT));
+        assertEquals(128_000, modelHandlerService.getContextWindow("meta.llama3-1-8b-instruct-v1:0"));
+        // Not set by the handler => TokenEstimators
+        assertEquals(100_000, modelHandlerService.getContextWindow(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2));
+        assertEquals(8_000, modelHandlerService.getContextWindow(InvokeBedrock.MODEL_TITAN_TEXT_EXPRESS_V1));
+        assertEquals(TokenEstimators.UNKNOWN_CONTEXT_WINDOW, modelHandlerService.getContextWindow("some.other-model"));
+
+        assertSame(TokenEstimators.CHARS, modelHandlerService.getTokenEstimator("some.other-model"));
+        assertSame(modelHandlerService.getTokenEstimator(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_3_HAIKU),
+                modelHandlerService.getTokenEstimator(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_3_SONNET));
+    }
+
+    @Test
+    public void shouldBuildRequestBodies() {
+
+        ArrayList<String> stops = new ArrayList<>(List.of("END"));
+        RequestParameters params = new RequestParameters("Say \"hello\"", 0.5F, null, 100, stops);
+
+        RequestResponseHandlers handler = modelHandlerService.getHandler(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_3_HAIKU);
+        JSONObject body = handler.getRequestBody(params);
+        assertEquals(AnthropicClaudeMessages.ANTHROPIC_VERSION, body.getString("anthropic_version"));
+        assertEquals(100, body.getInt("max_tokens"));
+        JSONObject message = body.getJSONArray("messages").getJSONObject(0);
+        assertEquals("user", message.getString("role"));
+        assertEquals("Say \"hello\"", message.getJSONArray("content").getJSONObject(0).getString("text"));
+        assertEquals("END", body.getJSONArray("stop_sequences").getString(0));
+
+        body = modelHandlerService.getHandler(InvokeBedrock.MODEL_META_LLAMA3_8B_INSTRUCT).getRequestBody(params);
+        assertTrue(body.getString("prompt").contains("<|start_header_id|>user<|end_header_id|>\n\nSay \"hello\"<|eot_id|>"));
+        assertEquals(100, body.getInt("max_gen_len"));
+        assertFalse(body.has("stop"));
+
+        body = modelHandlerService.getHandler(InvokeBedrock.MODEL_MISTRAL_7B_INSTRUCT).getRequestBody(params);
+        assertEquals("<s>[INST] Say \"hello\" [/INST]", body.getString("prompt"));
+        assertEquals(100, body.getInt("max_tokens"));
+        assertEquals("END", body.getJSONArray("stop").getString(0));
+    }
+
+}
@@ -0,0 +1,144 @@
+package nuxeo.labs.genai.aws.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import nuxeo.labs.genai.aws.ModelResult;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.PayloadPart;
+
+public class TestModelResponses {
+
+    protected static InvokeModelResponse response(String json) {
+        return InvokeModelResponse.builder().body(SdkBytes.fromUtf8String(json)).build();
+    }
+
+    protected static PayloadPart chunk(String json) {
+        return PayloadPart.builder().bytes(SdkBytes.fromUtf8String(json)).build();
+    }
+
+    @Test
+    public void shouldReadTitanResult() {
+
+        String json = "{\"inputTextTokenCount\": 11, \"extra\": {\"a\": [1, 2, {\"b\": null}]},"
+                + " \"results\": [{\"tokenCount\": 31, \"outputText\": \"\\nThe distance is \\\"384,400 km\\\".\","
+                + " \"completionReason\": \"FINISH\"}, {\"tokenCount\": 4, \"outputText\": \"Other\"}]}";
+        ModelResult result = new AWSTitan().getResult(response(json));
+
+        assertEquals("\nThe distance is \"384,400 km\".", result.getText());
+        assertEquals(11, result.getInputTokenCount());
+        assertEquals(35, result.getOutputTokenCount());
+        assertEquals("FINISH", result.getStopReason());
+        assertEquals(result.getText(), new AWSTitan().getStringResult(response(json)));
+        assertEquals(11, new AWSTitan().getInputTokenCount(response(json)));
+        assertEquals(35, new AWSTitan().getOutputTokenCount(response(json)));
+    }
+
+    @Test
+    public void shouldReadTokenCountsWithoutResult() {
+
+        // Counts are read on their own, the texts are skipped
+        String json = "{\"results\": [{\"outputText\": \"Skipped\", \"tokenCount\": 3}], \"inputTextTokenCount\": 8}";
+        assertEquals(8, new AWSTitan().getInputTokenCount(response(json)));
+        assertEquals(3, new AWSTitan().getOutputTokenCount(response(json)));
+        assertEquals(-1, new AWSTitan().getOutputTokenCount(response("{\"inputTextTokenCount\": 8}")));
+        // No content nor generation: getResult would fail
+        assertEquals(5, new AnthropicClaudeMessages().getOutputTokenCount(
+                response("{\"usage\": {\"input_tokens\": 2, \"output_tokens\": 5}}")));
+        assertEquals(7, new MetaLlama().getInputTokenCount(response("{\"prompt_token_count\": 7}")));
+
+        assertEquals(4, JsonResponses.readIntPath(SdkBytes.fromUtf8String("{\"a\": \"x\", \"b\": {\"c\": 4}}"), -1, "b",
+                "c"));
+        assertEquals(-1, JsonResponses.readIntPath(SdkBytes.fromUtf8String("{\"b\": {\"c\": \"4\"}}"), -1, "b", "c"));
+    }
+
+    @Test
+    public void shouldReadClaudeResult() {
+
+        String json = "{\"completion\": \" Bonjour, ça va ?\", \"stop_reason\": \"stop_sequence\", \"stop\": null}";
+        ModelResult result = new AnthropicClaude().getResult(response(json));
+
+        assertEquals(" Bonjour, ça va ?", result.getText());
+        assertEquals("stop_sequence", result.getStopReason());
+        // No headers
+        assertEquals(-1, result.getInputTokenCount());
+        assertEquals(-1, result.getOutputTokenCount());
+    }
+
+    @Test(expected = NuxeoException.class)
+    public void shouldFailWithoutText() {
+        new AnthropicClaude().getResult(response("{\"stop_reason\": \"max_tokens\"}"));
+    }
+
+    @Test
+    public void shouldReadChunks() {
+
+        assertEquals(" The", new AnthropicClaude().getStringChunk(chunk("{\"completion\":\" The\",\"stop_reason\":null}")));
+        assertEquals("", new AnthropicClaude().getStringChunk(chunk("{\"stop_reason\":\"stop_sequence\"}")));
+        assertEquals(" The", new AWSTitan().getStringChunk(chunk(
+                "{\"outputText\":\" The\",\"index\":0,\"totalOutputTextTokenCount\":null,\"inputTextTokenCount\":11}")));
+        assertEquals("", new AWSTitan().getStringChunk(chunk("{\"outputText\":null,\"index\":0}")));
+
+        assertNull(JsonResponses.readStringField(SdkBytes.fromUtf8String("{\"a\": {\"completion\": \"no\"}}"),
+                "completion", null));
+    }
+
+    @Test
+    public void shouldReadClaudeMessagesResult() {
+
+        String json = "{\"id\": \"msg_1\", \"type\": \"message\", \"role\": \"assistant\","
+                + " \"content\": [{\"type\": \"text\", \"text\": \"The distance\"},"
+                + " {\"type\": \"text\", \"text\": \" is 384,400 km.\"}], \"stop_reason\": \"end_turn\","
+                + " \"stop_sequence\": null, \"usage\": {\"input_tokens\": 14, \"output_tokens\": 31}}";
+        ModelResult result = new AnthropicClaudeMessages().getResult(response(json));
+
+        assertEquals("The distance is 384,400 km.", result.getText());
+        assertEquals(14, result.getInputTokenCount());
+        assertEquals(31, result.getOutputTokenCount());
+        assertEquals("end_turn", result.getStopReason());
+        assertEquals(14, new AnthropicClaudeMessages().getInputTokenCount(response(json)));
+        assertEquals(31, new AnthropicClaudeMessages().getOutputTokenCount(response(json)));
+    }
+
+    @Test
+    public void shouldReadLlamaAndMistralResults() {
+
+        String json = "{\"generation\": \"Hello\", \"prompt_token_count\": 9, \"generation_token_count\": 2,"
+                + " \"stop_reason\": \"stop\"}";
+        ModelResult result = new MetaLlama().getResult(response(json));
+        assertEquals("Hello", result.getText());
+        assertEquals(9, result.getInputTokenCount());
+        assertEquals(2, result.getOutputTokenCount());
+        assertEquals("stop", result.getStopReason());
+        assertEquals(9, new MetaLlama().getInputTokenCount(response(json)));
+        assertEquals(2, new MetaLlama().getOutputTokenCount(response(json)));
+
+        json = "{\"outputs\": [{\"text\": \" Hello\", \"stop_reason\": \"length\"}, {\"text\": \"Other\"}]}";
+        result = new MistralAI().getResult(response(json));
+        assertEquals(" Hello", result.getText());
+        assertEquals("length", result.getStopReason());
+        assertEquals(-1, result.getInputTokenCount());
+    }
+
+    @Test
+    public void shouldReadNewModelsChunks() {
+
+        AnthropicClaudeMessages claude = new AnthropicClaudeMessages();
+        assertEquals(" The", claude.getStringChunk(chunk(
+                "{\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\" The\"}}")));
+        assertEquals("", claude.getStringChunk(chunk(
+                "{\"type\":\"message_delta\",\"delta\":{\"stop_reason\":\"end_turn\"},\"usage\":{\"output_tokens\":9}}")));
+        assertEquals("", claude.getStringChunk(chunk("{\"type\":\"message_start\",\"message\":{\"content\":[]}}")));
+
+        assertEquals(" The", new MetaLlama().getStringChunk(chunk(
+                "{\"generation\":\" The\",\"prompt_token_count\":null,\"stop_reason\":null}")));
+        assertEquals(" The", new MistralAI().getStringChunk(chunk(
+                "{\"outputs\":[{\"text\":\" The\",\"stop_reason\":null}]}")));
+        assertEquals("", new MistralAI().getStringChunk(chunk("{\"outputs\":[]}")));
+    }
+
+}
@@ -0,0 +1,158 @@
+package nuxeo.labs.genai.aws.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.core.util.Properties;
+import org.nuxeo.ecm.automation.test.AutomationFeature;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.standin.BedrockStandInFeature;
+import nuxeo.labs.genai.aws.standin.BedrockStandInServer;
+import nuxeo.labs.genai.aws.stream.StreamedResponse;
+
+/*
+ * Runs Bedrock.RunStream and Bedrock.GetStream against the local stand-in: no AWS credentials needed
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ AutomationFeature.class, BedrockStandInFeature.class })
+@Deploy("org.nuxeo.ecm.core.cache")
+public class TestBedrockRunStreamOp {
+
+    protected static final String MODEL_ID = InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_INSTANT_V1;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected AutomationService automationService;
+
+    @Inject
+    protected BedrockStandInFeature standIn;
+
+    @Inject
+    protected BedrockStandInServer server;
+
+    protected Blob runStream(boolean waitForCompletion) throws Exception {
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("modelId", MODEL_ID);
+        params.put("clientConfig", BedrockStandInFeature.CLIENT_CONFIG);
+        params.put("prompt", "Hello");
+        params.put("waitForCompletion", waitForCompletion);
+        return (Blob) automationService.run(new OperationContext(session), BedrockRunStreamOp.ID, params);
+    }
+
+    protected JSONObject getStream(String streamId, int offset) throws Exception {
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("streamId", streamId);
+        params.put("offset", offset);
+        Blob blob = (Blob) automationService.run(new OperationContext(session), BedrockGetStreamOp.ID, params);
+        return new JSONObject(blob.getString());
+    }
+
+    @Test
+    public void shouldStreamToBlob() throws Exception {
+
+        String expected = standIn.newInvokeBedrock(MODEL_ID).run("Hello", null, null);
+        Blob result = runStream(true);
+        assertEquals("text/plain", result.getMimeType());
+        assertEquals(expected, result.getString());
+    }
+
+    @Test
+    public void shouldPollStreamedResponse() throws Exception {
+
+        String expected = standIn.newInvokeBedrock(MODEL_ID).run("Hello", null, null);
+        // 5 chunks, 100ms apart: the operation returns before the end of the response
+        server.setChunks(5, Duration.ofMillis(100));
+        String streamId = new JSONObject(runStream(false).getString()).getString("streamId");
+
+        StringBuilder text = new StringBuilder();
+        int offset = 0;
+        int polls = 0;
+        boolean completed = false;
+        while (!completed && polls < 200) {
+            JSONObject chunk = getStream(streamId, offset);
+            polls++;
+            assertFalse(chunk.has("error"));
+            text.append(chunk.getString("text"));
+            offset = chunk.getInt("offset");
+            completed = chunk.getBoolean("completed");
+            if (!completed) {
+                Thread.sleep(50);
+            }
+        }
+        assertTrue(completed);
+        assertTrue(polls > 1);
+        assertEquals(expected, text.toString());
+        assertEquals(expected.length(), offset);
+    }
+
+    @Test
+    public void shouldReportStreamError() throws Exception {
+
+        server.setErrorRate(1);
+        String streamId = new JSONObject(runStream(false).getString()).getString("streamId");
+
+        JSONObject chunk = getStream(streamId, 0);
+        for (int i = 0; i < 200 && !chunk.getBoolean("completed"); i++) {
+            Thread.sleep(50);
+            chunk = getStream(streamId, 0);
+        }
+        assertTrue(chunk.getBoolean("completed"));
+        assertTrue(chunk.has("error"));
+        assertEquals("", chunk.getString("text"));
+    }
+
+    @Test
+    public void shouldRenderPromptTemplate() throws Exception {
+
+        Properties values = new Properties();
+        values.put("count", "3");
+        Map<String, Object> params = new HashMap<>();
+        params.put("modelId", MODEL_ID);
+        params.put("clientConfig", BedrockStandInFeature.CLIENT_CONFIG);
+        params.put("promptTemplate", "summarize.en.sentences");
+        params.put("templateValues", values);
+        Blob result = (Blob) automationService.run(new OperationContext(session), BedrockRunStreamOp.ID, params);
+
+        assertFalse(result.getString().isEmpty());
+        assertTrue(server.getLastPrompt().contains("Please summarize this text in 3 sentences :"));
+    }
+
+    @Test
+    public void shouldNotReadUnknownStream() {
+        assertNull(StreamedResponse.read("unknown", 0, session.getPrincipal().getName()));
+    }
+
+    @Test
+    public void shouldNotReadStreamOfOtherUser() throws Exception {
+
+        String streamId = new JSONObject(runStream(false).getString()).getString("streamId");
+        assertNotNull(StreamedResponse.read(streamId, 0, session.getPrincipal().getName()));
+        assertNull(StreamedResponse.read(streamId, 0, "bob"));
+        assertNull(StreamedResponse.read(streamId, 0, null));
+    }
+
+}
@@ -0,0 +1,203 @@
+package nuxeo.labs.genai.aws.preprocessing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.cache.BedrockCacheService;
+import nuxeo.labs.genai.aws.metrics.BedrockMetrics;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.labs.genai.aws.nuxeo-labs-genai-aws-core")
+public class TestTextPreprocessing {
+
+    // As written by pdftotext: a form feed between the pages
+    protected static final String PAGES = "ACME Corp. - Confidential\n" //
+            + "First page text.\n" //
+            + "Page 1 of 3\n\f" //
+            + "ACME Corp. - Confidential\n" //
+            + "Second page text.\n" //
+            + "Page 2 of 3\n\f" //
+            + "ACME Corp. - Confidential\n" //
+            + "Third page text.\n" //
+            + "Page 3 of 3";
+
+    @Inject
+    protected TextPreprocessingService preprocessingService;
+
+    @Inject
+    protected BedrockCacheService cacheService;
+
+    protected static String messyText(int paragraphs) {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= paragraphs; i++) {
+            sb.append("  Paragraph ").append(i).append(" has\tan exam-\nple of   hyphen-  \nated words,\r\n");
+            sb.append("on two lines. \r\n\r\n \n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void shouldCollapseWhitespaces() {
+
+        TextPreprocessor preprocessor = new WhitespacePreprocessor();
+        assertEquals("Hello world\n\nNext line\nLast",
+                preprocessor.process("  Hello   world \r\n\n\n\nNext\tline  \r\nLast\n"));
+
+        String clean = "Nothing to change\nhere";
+        assertSame(clean, preprocessor.process(clean));
+
+        // Page breaks are kept on their own line
+        assertEquals("Page 1\n\f\nPage 2", preprocessor.process("Page 1 \n\f\f  Page 2\f"));
+        assertEquals("a\n\f\nb", preprocessor.process("a \f\fb"));
+    }
+
+    @Test
+    public void shouldRemoveRepeatedLines() {
+
+        TextPreprocessor preprocessor = new RepeatedLinesPreprocessor();
+        preprocessor.init(Map.of());
+        assertEquals("First page text.\n\fSecond page text.\n\fThird page text.\n", preprocessor.process(PAGES));
+
+        // Not enough occurrences
+        preprocessor.init(Map.of("minOccurrences", "4"));
+        assertSame(PAGES, preprocessor.process(PAGES));
+
+        // No pages: nothing can be told apart from the content
+        String noPages = PAGES.replace("\f", "");
+        preprocessor.init(Map.of("minOccurrences", "3"));
+        assertSame(noPages, preprocessor.process(noPages));
+    }
+
+    @Test
+    public void shouldKeepRepeatedLinesInPageBody() {
+
+        TextPreprocessor preprocessor = new RepeatedLinesPreprocessor();
+        preprocessor.init(Map.of("edgeLines", "1"));
+        StringBuilder sb = new StringBuilder();
+        for (int page = 1; page <= 3; page++) {
+            sb.append("Report\nQuestion ").append(page).append("\nYes\nNo\nYes\nAnswered\n").append(page).append("\f");
+        }
+        // The header and the page numbers are removed, not the lines repeated in the body of the pages
+        String result = preprocessor.process(sb.toString());
+        assertEquals("Question 1\nYes\nNo\nYes\nAnswered\n\fQuestion 2\nYes\nNo\nYes\nAnswered\n\f"
+                + "Question 3\nYes\nNo\nYes\nAnswered\n\f", result);
+    }
+
+    @Test
+    public void shouldDehyphenate() {
+
+        TextPreprocessor preprocessor = new DehyphenationPreprocessor();
+        assertEquals("An example of self-\nService in 2023-\n24", //
+                preprocessor.process("An exam-\nple of self-\nService in 2023-\n24"));
+    }
+
+    @Test
+    public void shouldCapLength() {
+
+        TextPreprocessor preprocessor = new MaxCharsPreprocessor();
+        preprocessor.init(Map.of("maxChars", "10"));
+        assertEquals("Hello", preprocessor.process("Hello wonderful world"));
+        assertEquals("Hellowonde", preprocessor.process("Hellowonderfulworld"));
+        assertEquals("Hello", preprocessor.process("Hello"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRequireMaxChars() {
+        new MaxCharsPreprocessor().init(Map.of());
+    }
+
+    @Test
+    public void shouldApplyDefaultPreprocessors() {
+
+        assertEquals(List.of("whitespace", "repeatedLines", "dehyphenation"),
+                preprocessingService.getPreprocessorNames());
+
+        Counter tokensSaved = SharedMetricRegistries.getOrCreate(MetricsService.class.getName())
+                                                    .counter(MetricName.build(BedrockMetrics.PREFIX,
+                                                            "preprocessing.tokens.saved"));
+        long before = tokensSaved.getCount();
+
+        String text = StringUtils.replace(PAGES, "First page text", "First   page hyphen-  \nated\ttext");
+        assertEquals("First page hyphenated text.\n\f\nSecond page text.\n\f\nThird page text.\n",
+                preprocessingService.preprocess(text));
+        assertTrue(tokensSaved.getCount() > before);
+    }
+
+    @Test
+    public void shouldSkipWholeTextPreprocessorsByPart() {
+
+        assertTrue(new RepeatedLinesPreprocessor().isWholeText());
+        assertTrue(new MaxCharsPreprocessor().isWholeText());
+        assertFalse(new WhitespacePreprocessor().isWholeText());
+        assertFalse(new DehyphenationPreprocessor().isWholeText());
+
+        // The headers and footers cannot be told apart in a part of the text
+        assertEquals("ACME Corp. - Confidential\nFirst page text.\nPage 1 of 3\n\f\nACME Corp. - Confidential",
+                preprocessingService.preprocessPart(StringUtils.substringBefore(PAGES, "\nSecond")));
+    }
+
+    @Test
+    public void shouldPreprocessByBlocks() throws IOException {
+
+        String text = messyText(20) + "a" + StringUtils.repeat("long", 20) + " word";
+        try (Reader reader = new PreprocessingReader(new StringReader(text), preprocessingService, 64)) {
+            assertEquals(preprocessingService.preprocess(text), IOUtils.toString(reader));
+        }
+    }
+
+    @Test
+    public void shouldPreprocessCachedAndStreamedTextTheSame() throws IOException {
+
+        // Bigger than a block
+        Blob blob = new StringBlob(messyText(3000), "text/plain");
+        blob.setDigest("preprocessing-digest");
+        cacheService.clearTextCache();
+
+        String streamed;
+        try (Reader reader = InvokeBedrock.openText(blob)) {
+            streamed = IOUtils.toString(reader);
+        }
+        assertNull(cacheService.getCachedBlobText(blob));
+
+        String cached = InvokeBedrock.blobToText(blob);
+        assertNotNull(cacheService.getCachedBlobText(blob));
+        assertEquals(cached, streamed);
+        assertTrue(cached.startsWith("Paragraph 1 has an example of hyphenated words,\non two lines.\n\nParagraph 2"));
+
+        // Read from the cache, not preprocessed again
+        try (Reader reader = InvokeBedrock.openText(blob)) {
+            assertEquals(cached, IOUtils.toString(reader));
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package nuxeo.labs.genai.aws.prompts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.operations.BedrockSummarizeOp;
+
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.labs.genai.aws.nuxeo-labs-genai-aws-core")
+public class TestPromptTemplates {
+
+    @Inject
+    protected PromptTemplateService promptTemplateService;
+
+    @Test
+    public void shouldCompileAndRender() {
+
+        PromptTemplate template = PromptTemplate.compile(
+                "Answer {question} in {count} words. {not a placeholder} {{literal} {} {unclosed");
+        assertEquals(Set.of("question", "count"), template.getPlaceholders());
+        assertFalse(template.hasPlaceholder(PromptTemplate.TEXT));
+
+        String rendered = template.render(Map.of("question", "this", "count", 3)).toString();
+        assertEquals("Answer this in 3 words. {not a placeholder} {literal} {} {unclosed", rendered);
+
+        // No {text} => appended after a blank line
+        assertEquals(rendered + "\n\nThe text.",
+                template.render(Map.of("question", "this", "count", 3), "The text.").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailOnMissingValue() {
+        PromptTemplate.compile("Answer {question}").render(Map.of());
+    }
+
+    @Test
+    public void shouldInsertBlobText() {
+
+        PromptTemplate template = PromptTemplate.compile("<text>{text}</text> Summarize in {count} words.");
+        String prompt = template.renderPrompt(Map.of("count", 10), true);
+
+        assertEquals("<text>The text</text> Summarize in 10 words.",
+                InvokeBedrock.assemblePrompt(prompt, "The text", PromptTemplate.TEXT_TAG));
+    }
+
+    @Test
+    public void shouldProvideSummarizeTemplates() {
+
+        for (String language : new String[] { "en", "fr" }) {
+            assertTrue(promptTemplateService.hasTemplate(BedrockSummarizeOp.SUMMARIZE_TEMPLATE_PREFIX + language));
+            for (int count : new int[] { 0, 1, 3 }) {
+                // Same prompts as before the templates
+                PromptTemplate template = BedrockSummarizeOp.getSummarizeTemplate(language, count);
+                Map<String, Object> values = BedrockSummarizeOp.getSummarizeValues(language, count);
+                assertEquals(BedrockSummarizeOp.buildPrompt(language, count) + "The text",
+                        template.render(values, "The text").toString());
+            }
+        }
+
+        // Unknown language => English
+        assertEquals(BedrockSummarizeOp.getSummarizeTemplate("en", 2),
+                BedrockSummarizeOp.getSummarizeTemplate("xx", 2));
+    }
+
+}
@@ -0,0 +1,83 @@
+package nuxeo.labs.genai.aws.standin;
+
+import org.junit.runners.model.FrameworkMethod;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.RunnerFeature;
+
+import com.google.inject.Binder;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+
+/**
+ * Starts a {@link BedrockStandInServer} for the test class, and deploys the {@code "standin"} client configuration,
+ * whose endpoint is the server (see {@value #ENDPOINT_PROPERTY}), so operations can use it. The server is reset (settings and counters) before each test. Tests get it by injection, and call the models with
+ * {@link #newInvokeBedrock(String)}:
+ *
+ * <pre>
+ * &#64;RunWith(FeaturesRunner.class)
+ * &#64;Features({ PlatformFeature.class, BedrockStandInFeature.class })
+ * public class MyTest {
+ *     &#64;Inject
+ *     protected BedrockStandInFeature standIn;
+ * </pre>
+ *
+ * @since 2023
+ */
+@Deploy("nuxeo.labs.genai.aws.nuxeo-labs-genai-aws-core")
+@Deploy("nuxeo.labs.genai.aws.nuxeo-labs-genai-aws-core:OSGI-INF/test-standin-client-contrib.xml")
+public class BedrockStandInFeature implements RunnerFeature {
+
+    public static final String CLIENT_CONFIG = "standin";
+
+    public static final String ENDPOINT_PROPERTY = "nuxeo.test.bedrock.standin.endpoint";
+
+    protected BedrockStandInServer server;
+
+    @Override
+    public void start(FeaturesRunner runner) throws Exception {
+        server = new BedrockStandInServer();
+        // Before the deployment of the contributions, which use it
+        Framework.getProperties().setProperty(ENDPOINT_PROPERTY, getEndpoint());
+    }
+
+    @Override
+    public void configure(FeaturesRunner runner, Binder binder) {
+        binder.bind(BedrockStandInServer.class).toInstance(server);
+    }
+
+    @Override
+    public void beforeSetup(FeaturesRunner runner, FrameworkMethod method, Object test) {
+        server.reset();
+    }
+
+    @Override
+    public void stop(FeaturesRunner runner) {
+        server.close();
+    }
+
+    public BedrockStandInServer getServer() {
+        return server;
+    }
+
+    /**
+     * @return the endpoint of the server, to pass to {@code setEndpoint}
+     */
+    public String getEndpoint() {
+        return server.getEndpoint().toString();
+    }
+
+    /**
+     * @return an {@code InvokeBedrock} calling {@code modelId} on the server
+     */
+    public InvokeBedrock newInvokeBedrock(String modelId) {
+
+        InvokeBedrock ibr = new InvokeBedrock();
+        ibr.setModelId(modelId);
+        ibr.setClientConfig(CLIENT_CONFIG);
+        ibr.setEndpoint(getEndpoint());
+        return ibr;
+    }
+
+}
@@ -0,0 +1,503 @@
+package nuxeo.labs.genai.aws.standin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for the Bedrock runtime endpoint, to test and load-test without AWS. Implements
+ * {@code POST /model/{modelId}/invoke} and {@code POST /model/{modelId}/invoke-with-response-stream} (AWS event
+ * stream encoding), with the payloads of Anthropic Claude and Amazon Titan text models. The response is made of
+ * {@code outputWords} generated words, the token counts are estimated (4 chars per token).
+ * <br>
+ * Amazon Titan Embeddings models return a bag of words vector (hashed words, normalized): texts sharing words are
+ * similar.
+ * <br>
+ * Can inject:
+ * <ul>
+ * <li>Latency: log-normal, median {@code latency}, spread {@code latencySigma} (0 => always {@code latency}). For
+ * streaming, {@code latency} is the time to the first chunk, then {@code chunkInterval} between chunks</li>
+ * <li>Throttling (HTTP 429 {@code ThrottlingException}): when more than {@code maxConcurrency} requests are in flight
+ * (as an account quota would), randomly ({@code throttleRate}), or for the next n requests ({@link #throttleNext(int)})
+ * </li>
+ * <li>Server errors (HTTP 500 {@code InternalServerException}), randomly ({@code errorRate})</li>
+ * <li>Request errors (HTTP 400 {@code ValidationException}), for the prompts containing {@code invalidPrompt}</li>
+ * </ul>
+ * Signatures are not checked: use anonymous credentials (or any) and an endpoint override pointing to
+ * {@link #getEndpoint()}.
+ * <br>
+ * Can also be started standalone: {@code java ... BedrockStandInServer [port]}
+ *
+ * @since 2023
+ */
+public class BedrockStandInServer implements AutoCloseable {
+
+    public static final String EVENT_STREAM_CONTENT_TYPE = "application/vnd.amazon.eventstream";
+
+    protected static final String ERROR_TYPE_SUFFIX = ":http://internal.amazon.com/coral/com.amazon.bedrock/";
+
+    protected static final String[] WORDS = { "The", "answer", "is", "a", "summary", "of", "the", "document", "and",
+            "its", "main", "points", "with", "some", "details", "about", "content", "in", "short", "sentences." };
+
+    protected final HttpServer server;
+
+    protected final ExecutorService executor;
+
+    protected volatile Duration latency = Duration.ZERO;
+
+    protected volatile double latencySigma = 0;
+
+    protected volatile Duration chunkInterval = Duration.ZERO;
+
+    protected volatile int chunkCount = 5;
+
+    protected volatile int outputWords = 50;
+
+    protected volatile int maxConcurrency = Integer.MAX_VALUE;
+
+    protected volatile double throttleRate = 0;
+
+    protected volatile double errorRate = 0;
+
+    protected volatile String invalidPrompt;
+
+    protected final AtomicInteger throttleNext = new AtomicInteger();
+
+    protected final AtomicInteger inFlight = new AtomicInteger();
+
+    protected final LongAdder requests = new LongAdder();
+
+    protected final LongAdder throttled = new LongAdder();
+
+    protected final LongAdder errors = new LongAdder();
+
+    protected volatile String lastPrompt;
+
+    /**
+     * Starts the server on a free port
+     */
+    public BedrockStandInServer() throws IOException {
+        this(0);
+    }
+
+    public BedrockStandInServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "bedrock-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/model/", this::handle);
+        server.start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        BedrockStandInServer server = new BedrockStandInServer(port);
+        System.out.println("Bedrock stand-in listening on " + server.getEndpoint());
+        Thread.currentThread().join();
+    }
+
+    public URI getEndpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    public BedrockStandInServer setLatency(Duration median, double sigma) {
+        latency = median;
+        latencySigma = sigma;
+        return this;
+    }
+
+    public BedrockStandInServer setChunks(int count, Duration interval) {
+        chunkCount = Math.max(count, 1);
+        chunkInterval = interval;
+        return this;
+    }
+
+    public BedrockStandInServer setOutputWords(int value) {
+        outputWords = value;
+        return this;
+    }
+
+    public BedrockStandInServer setMaxConcurrency(int value) {
+        maxConcurrency = value;
+        return this;
+    }
+
+    public BedrockStandInServer setThrottleRate(double value) {
+        throttleRate = value;
+        return this;
+    }
+
+    public BedrockStandInServer setErrorRate(double value) {
+        errorRate = value;
+        return this;
+    }
+
+    /**
+     * The requests whose prompt contains {@code value} are rejected (not retried), {@code null} => none
+     */
+    public BedrockStandInServer setInvalidPrompt(String value) {
+        invalidPrompt = value;
+        return this;
+    }
+
+    /**
+     * The next {@code count} requests are throttled
+     */
+    public BedrockStandInServer throttleNext(int count) {
+        throttleNext.set(count);
+        return this;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public void resetCounters() {
+        requests.reset();
+        throttled.reset();
+        errors.reset();
+        lastPrompt = null;
+    }
+
+    /**
+     * @return the prompt of the last text request, as sent to the model
+     */
+    public String getLastPrompt() {
+        return lastPrompt;
+    }
+
+    /**
+     * Back to the initial settings (no latency, throttling or errors), and resets the counters
+     */
+    public BedrockStandInServer reset() {
+        setLatency(Duration.ZERO, 0).setChunks(5, Duration.ZERO).setOutputWords(50);
+        setMaxConcurrency(Integer.MAX_VALUE).setThrottleRate(0).setErrorRate(0).throttleNext(0);
+        setInvalidPrompt(null);
+        resetCounters();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    protected void handle(HttpExchange exchange) throws IOException {
+
+        requests.increment();
+        int current = inFlight.incrementAndGet();
+        try {
+            // /model/{modelId}/{action}
+            String path = exchange.getRequestURI().getRawPath().substring("/model/".length());
+            int slash = path.lastIndexOf('/');
+            if (!"POST".equals(exchange.getRequestMethod()) || slash < 0) {
+                sendError(exchange, 404, "UnknownOperationException", "Unknown operation");
+                return;
+            }
+            String modelId = URLDecoder.decode(path.substring(0, slash), StandardCharsets.UTF_8);
+            String action = path.substring(slash + 1);
+            JSONObject request = new JSONObject(
+                    new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (current > maxConcurrency || decrementIfPositive(throttleNext) || random.nextDouble() < throttleRate) {
+                throttled.increment();
+                sendError(exchange, 429, "ThrottlingException", "Too many requests, please wait before trying again.");
+                return;
+            }
+            if (random.nextDouble() < errorRate) {
+                errors.increment();
+                sendError(exchange, 500, "InternalServerException", "Injected error");
+                return;
+            }
+
+            if (modelId.startsWith("amazon.titan-embed")) {
+                sleep(sampleLatency());
+                sendEmbedding(exchange, modelId, request);
+                return;
+            }
+
+            boolean claude = modelId.startsWith("anthropic.claude");
+            if (!claude && !modelId.startsWith("amazon.titan")) {
+                sendError(exchange, 400, "ValidationException", "The stand-in supports Claude and Titan text models");
+                return;
+            }
+            String prompt = claude ? request.optString("prompt") : request.optString("inputText");
+            lastPrompt = prompt;
+            String invalid = invalidPrompt;
+            if (invalid != null && prompt.contains(invalid)) {
+                sendError(exchange, 400, "ValidationException", "Injected invalid request");
+                return;
+            }
+            int inputTokens = estimateTokens(prompt);
+            String text = generateText();
+
+            long start = System.nanoTime();
+            sleep(sampleLatency());
+            switch (action) {
+            case "invoke":
+                sendResponse(exchange, claude, text, inputTokens, start);
+                break;
+            case "invoke-with-response-stream":
+                sendStream(exchange, claude, text, inputTokens, start);
+                break;
+            default:
+                sendError(exchange, 404, "UnknownOperationException", "Unknown operation " + action);
+            }
+        } catch (RuntimeException e) {
+            errors.increment();
+            try {
+                sendError(exchange, 500, "InternalServerException", e.toString());
+            } catch (IOException ioe) {
+                // Response already started
+            }
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    protected void sendResponse(HttpExchange exchange, boolean claude, String text, int inputTokens, long start)
+            throws IOException {
+
+        int outputTokens = estimateTokens(text);
+        JSONObject body = new JSONObject();
+        if (claude) {
+            body.put("completion", text);
+            body.put("stop_reason", "stop_sequence");
+            body.put("stop", "\n\nHuman:");
+        } else {
+            JSONObject result = new JSONObject();
+            result.put("tokenCount", outputTokens);
+            result.put("outputText", text);
+            result.put("completionReason", "FINISH");
+            body.put("inputTextTokenCount", inputTokens);
+            body.append("results", result);
+        }
+
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("x-amzn-RequestId", UUID.randomUUID().toString());
+        exchange.getResponseHeaders().add("X-Amzn-Bedrock-Input-Token-Count", String.valueOf(inputTokens));
+        exchange.getResponseHeaders().add("X-Amzn-Bedrock-Output-Token-Count", String.valueOf(outputTokens));
+        exchange.getResponseHeaders()
+                .add("X-Amzn-Bedrock-Invocation-Latency", String.valueOf(elapsedMillis(start)));
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    protected void sendEmbedding(HttpExchange exchange, String modelId, JSONObject request) throws IOException {
+
+        String text = request.optString("inputText");
+        int dimensions = request.optInt("dimensions", modelId.contains("-v1") ? 1536 : 1024);
+        float[] vector = new float[dimensions];
+        for (String word : text.toLowerCase().split("\\W+")) {
+            if (!word.isEmpty()) {
+                vector[Math.floorMod(word.hashCode(), dimensions)] += 1;
+            }
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        JSONArray embedding = new JSONArray();
+        for (float value : vector) {
+            embedding.put(norm == 0 ? 0 : value / Math.sqrt(norm));
+        }
+        JSONObject body = new JSONObject();
+        body.put("embedding", embedding);
+        body.put("inputTextTokenCount", estimateTokens(text));
+
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("x-amzn-RequestId", UUID.randomUUID().toString());
+        exchange.getResponseHeaders().add("X-Amzn-Bedrock-Input-Token-Count", String.valueOf(estimateTokens(text)));
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    protected void sendStream(HttpExchange exchange, boolean claude, String text, int inputTokens, long start)
+            throws IOException {
+
+        exchange.getResponseHeaders().add("Content-Type", EVENT_STREAM_CONTENT_TYPE);
+        exchange.getResponseHeaders().add("x-amzn-RequestId", UUID.randomUUID().toString());
+        exchange.sendResponseHeaders(200, 0);
+
+        long firstByteLatency = elapsedMillis(start);
+        int count = chunkCount;
+        int partLength = (text.length() + count - 1) / count;
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sleep(chunkInterval);
+                }
+                String part = text.substring(Math.min(i * partLength, text.length()),
+                        Math.min((i + 1) * partLength, text.length()));
+                boolean last = i == count - 1;
+                JSONObject chunk = new JSONObject();
+                if (claude) {
+                    chunk.put("completion", part);
+                    chunk.put("stop_reason", last ? "stop_sequence" : JSONObject.NULL);
+                } else {
+                    chunk.put("outputText", part);
+                    chunk.put("index", 0);
+                    chunk.put("completionReason", last ? "FINISH" : JSONObject.NULL);
+                    chunk.put("inputTextTokenCount", inputTokens);
+                }
+                if (last) {
+                    JSONObject metrics = new JSONObject();
+                    metrics.put("inputTokenCount", inputTokens);
+                    metrics.put("outputTokenCount", estimateTokens(text));
+                    metrics.put("invocationLatency", elapsedMillis(start));
+                    metrics.put("firstByteLatency", firstByteLatency);
+                    chunk.put("amazon-bedrock-invocationMetrics", metrics);
+                }
+                JSONObject event = new JSONObject();
+                event.put("bytes", Base64.getEncoder()
+                                         .encodeToString(chunk.toString().getBytes(StandardCharsets.UTF_8)));
+                out.write(encodeEvent(event.toString().getBytes(StandardCharsets.UTF_8)));
+                out.flush();
+            }
+        }
+    }
+
+    protected void sendError(HttpExchange exchange, int status, String type, String message) throws IOException {
+
+        JSONObject body = new JSONObject();
+        body.put("message", message);
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("x-amzn-RequestId", UUID.randomUUID().toString());
+        exchange.getResponseHeaders().add("x-amzn-ErrorType", type + ERROR_TYPE_SUFFIX);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * AWS event stream message: prelude (total length, headers length, CRC), headers, payload, CRC of the whole
+     * message
+     */
+    protected static byte[] encodeEvent(byte[] payload) {
+
+        byte[] headers = encodeHeaders(":event-type", "chunk", ":content-type", "application/json", ":message-type",
+                "event");
+        int total = 12 + headers.length + payload.length + 4;
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        buffer.putInt(total);
+        buffer.putInt(headers.length);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, 8);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(headers);
+        buffer.put(payload);
+        crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        return buffer.array();
+    }
+
+    protected static byte[] encodeHeaders(String... namesAndValues) {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            byte[] name = namesAndValues[i].getBytes(StandardCharsets.UTF_8);
+            byte[] value = namesAndValues[i + 1].getBytes(StandardCharsets.UTF_8);
+            out.write(name.length);
+            out.write(name, 0, name.length);
+            // Type 7: string
+            out.write(7);
+            out.write((value.length >> 8) & 0xFF);
+            out.write(value.length & 0xFF);
+            out.write(value, 0, value.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    protected String generateText() {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < outputWords; i++) {
+            sb.append(' ').append(WORDS[i % WORDS.length]);
+        }
+
+        return sb.toString();
+    }
+
+    protected Duration sampleLatency() {
+
+        if (latency.isZero() || latencySigma <= 0) {
+            return latency;
+        }
+        double factor = Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian());
+
+        return Duration.ofNanos((long) (latency.toNanos() * factor));
+    }
+
+    protected static int estimateTokens(String text) {
+        return (text.length() + 3) / 4;
+    }
+
+    protected static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    protected static boolean decrementIfPositive(AtomicInteger counter) {
+        return counter.getAndUpdate(value -> value > 0 ? value - 1 : 0) > 0;
+    }
+
+    protected static void sleep(Duration duration) {
+
+        if (duration.isZero() || duration.isNegative()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration.toMillis(), (int) (duration.toNanos() % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
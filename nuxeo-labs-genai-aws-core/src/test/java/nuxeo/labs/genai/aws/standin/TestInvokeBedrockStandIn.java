@@ -0,0 +1,179 @@
+package nuxeo.labs.genai.aws.standin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.labs.genai.aws.ChunkedSummarizer;
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.throttling.BackoffPolicy;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.ThrottlingException;
+import software.amazon.awssdk.services.bedrockruntime.model.ValidationException;
+
+/*
+ * Runs InvokeBedrock against the local stand-in: no AWS credentials needed
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class, BedrockStandInFeature.class })
+public class TestInvokeBedrockStandIn {
+
+    @Inject
+    protected BedrockStandInFeature standIn;
+
+    @Inject
+    protected BedrockStandInServer server;
+
+    protected InvokeBedrock newInvokeBedrock(String modelId) {
+        return standIn.newInvokeBedrock(modelId);
+    }
+
+    @Test
+    public void shouldRunClaudeAndTitan() {
+
+        String result = newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2).run("Hello", null, null);
+        assertTrue(result.contains("answer"));
+
+        result = newInvokeBedrock(InvokeBedrock.MODEL_TITAN_TEXT_EXPRESS_V1).run("Hello", null, null);
+        assertTrue(result.contains("answer"));
+
+        assertEquals(2, server.getRequests());
+    }
+
+    @Test
+    public void shouldStream() {
+
+        InvokeBedrock ibr = newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_INSTANT_V1);
+        String expected = ibr.run("Hello", null, null);
+
+        StringBuilder streamed = new StringBuilder();
+        ibr.runStream("Hello", null, null, streamed::append).join();
+        assertEquals(expected, streamed.toString());
+    }
+
+    @Test
+    public void shouldRetryWhenThrottled() {
+
+        server.throttleNext(2);
+        String result = newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2).run("Hello", null, null);
+        assertTrue(result.contains("answer"));
+        assertEquals(2, server.getThrottled());
+        assertEquals(3, server.getRequests());
+    }
+
+    @Test
+    public void shouldFailAfterMaxRetries() {
+
+        server.throttleNext(100);
+        try {
+            newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2).run("Hello", null, null);
+            fail();
+        } catch (ThrottlingException e) {
+            // ok
+        }
+        // maxRetries is 3 in the test configuration
+        assertEquals(4, server.getRequests());
+    }
+
+    @Test
+    public void shouldRunAsync() {
+
+        String result = newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2).runAsync("Hello async", null, null)
+                                                                                   .join();
+        assertTrue(result.contains("answer"));
+        assertEquals(1, server.getRequests());
+    }
+
+    @Test
+    public void shouldRetryAsyncWhenThrottled() {
+
+        server.throttleNext(2);
+        String result = newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2).runAsync("Hello", null, null)
+                                                                                   .join();
+        assertTrue(result.contains("answer"));
+        assertEquals(2, server.getThrottled());
+        assertEquals(3, server.getRequests());
+    }
+
+    @Test
+    public void shouldFailAsync() {
+
+        // Not supported by the stand-in: 400, not retried
+        CompletableFuture<String> future = newInvokeBedrock(InvokeBedrock.MODEL_MISTRAL_7B_INSTRUCT).runAsync("Hello",
+                null, null);
+        try {
+            future.join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(BackoffPolicy.unwrap(e) instanceof ValidationException);
+        }
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(1, server.getRequests());
+    }
+
+    @Test
+    public void shouldRunAsyncWithRequestBody() {
+
+        JSONObject body = new JSONObject();
+        body.put("prompt", "\n\nHuman: Hello\n\nAssistant:");
+        body.put("max_tokens_to_sample", 100);
+        InvokeModelResponse response = newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2).runAsync(body).join();
+        assertTrue(new JSONObject(response.body().asUtf8String()).getString("completion").contains("answer"));
+        assertEquals(1, server.getRequests());
+    }
+
+    @Test
+    public void shouldNotCoalesceCallsToOtherRegions() {
+
+        // Slow enough for the 3 calls to be in flight at the same time
+        server.setLatency(Duration.ofMillis(500), 0);
+        InvokeBedrock ibr1 = newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2);
+        InvokeBedrock ibr2 = newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2);
+        InvokeBedrock ibr3 = newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2);
+        ibr3.setRegion(Region.EU_CENTRAL_1);
+        CompletableFuture<String> result1 = ibr1.runAsync("Hello coalesced", null, null);
+        CompletableFuture<String> result2 = ibr2.runAsync("Hello coalesced", null, null);
+        CompletableFuture<String> result3 = ibr3.runAsync("Hello coalesced", null, null);
+        CompletableFuture.allOf(result1, result2, result3).join();
+        // The first 2 share the same call, not the one calling another region
+        assertEquals(2, server.getRequests());
+    }
+
+    @Test
+    public void shouldStopSummarizingChunksAtFirstFailure() {
+
+        server.setInvalidPrompt("invalid");
+        ChunkedSummarizer summarizer = new ChunkedSummarizer(newInvokeBedrock(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2),
+                "en", 0);
+        summarizer.setMaxChunkTokens(20);
+        summarizer.setMaxInFlight(1);
+        // Only the first chunk is rejected
+        String text = "An invalid paragraph.\n\n" + StringUtils.repeat("Another paragraph to summarize.\n\n", 20);
+        try {
+            summarizer.summarize(new StringReader(text));
+            fail();
+        } catch (NuxeoException e) {
+            assertTrue(e.getCause() instanceof ValidationException);
+        }
+        // The next chunks are not sent
+        assertEquals(1, server.getRequests());
+    }
+
+}
@@ -0,0 +1,73 @@
+package nuxeo.labs.genai.aws.text;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.RequestParameters;
+import nuxeo.labs.genai.aws.RequestResponseHandlers;
+import nuxeo.labs.genai.aws.models.AWSTitan;
+import nuxeo.labs.genai.aws.models.AnthropicClaude;
+
+public class TestPromptText {
+
+    @Test
+    public void shouldBehaveLikeAString() throws IOException {
+
+        PromptText text = PromptText.of("Hello ", null, "", "world", PromptText.of(", ", "again"), ".");
+        String expected = "Hello world, again.";
+
+        assertEquals(expected, text.toString());
+        assertEquals(expected.length(), text.length());
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.charAt(i), text.charAt(i));
+        }
+        for (int start = 0; start <= expected.length(); start++) {
+            for (int end = start; end <= expected.length(); end++) {
+                assertEquals(expected.substring(start, end), text.subSequence(start, end).toString());
+            }
+        }
+        assertEquals(expected, IOUtils.toString(text.reader()));
+    }
+
+    @Test
+    public void shouldAssemblePrompt() {
+
+        String blobText = "The text of the blob.";
+        for (String prompt : Arrays.asList("Summarize:", "Summarize:\n", "Summarize:\n\n")) {
+            String expected = InvokeBedrock.assemblePrompt(prompt, blobText, null);
+            assertEquals(expected, InvokeBedrock.assemblePromptText(prompt, blobText, null).toString());
+        }
+
+        String prompt = "{TEXT} Summarize <text>{TEXT}</text>";
+        assertEquals(prompt.replace("{TEXT}", blobText),
+                InvokeBedrock.assemblePromptText(prompt, blobText, "{TEXT}").toString());
+        assertEquals(blobText, InvokeBedrock.assemblePromptText(null, blobText, null).toString());
+    }
+
+    @Test
+    public void shouldWriteSameRequestBody() {
+
+        CharSequence prompt = InvokeBedrock.assemblePromptText("Résumez ce \"texte\" :", "Ligne 1\n\tLigne 2 é日本",
+                null);
+        ArrayList<String> stopSequences = new ArrayList<>(Arrays.asList("\n\nHuman:", "END"));
+        for (RequestResponseHandlers handler : new RequestResponseHandlers[] { new AnthropicClaude(),
+                new AWSTitan() }) {
+            for (RequestParameters params : Arrays.asList(new RequestParameters(prompt, 0.5F, 0.9F, 300, stopSequences),
+                    new RequestParameters(prompt, 0F, null, null, null))) {
+                // Both parsed, to compare the same number representations
+                JSONObject expected = new JSONObject(handler.getRequestBody(params).toString());
+                JSONObject actual = new JSONObject(handler.getRequestBodyBytes(params).asUtf8String());
+                assertEquals(expected.toString(), actual.toString());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package nuxeo.labs.genai.aws.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import nuxeo.labs.genai.aws.tokens.TokenEstimator;
+import nuxeo.labs.genai.aws.tokens.TokenEstimators;
+
+public class TestTextChunker {
+
+    @Test
+    public void shouldKeepSmallTextInOneChunk() {
+
+        List<String> chunks = new TextChunker(100).split("First paragraph.\n\nSecond paragraph.");
+        assertEquals(1, chunks.size());
+        assertEquals("First paragraph.\n\nSecond paragraph.", chunks.get(0));
+    }
+
+    @Test
+    public void shouldSplitOnParagraphs() {
+
+        String paragraph = StringUtils.repeat("word ", 30).trim() + ".";
+        String text = paragraph + "\n\n" + paragraph + "\n\n" + paragraph;
+
+        // ~38 tokens per paragraph => 2 paragraphs per chunk
+        List<String> chunks = new TextChunker(80).split(text);
+        assertEquals(2, chunks.size());
+        assertEquals(paragraph + "\n\n" + paragraph, chunks.get(0));
+        assertEquals(paragraph, chunks.get(1));
+    }
+
+    @Test
+    public void shouldSplitBigParagraphOnSentences() {
+
+        String sentence = StringUtils.repeat("word ", 10).trim() + ".";
+        String text = StringUtils.repeat(sentence, " ", 10);
+
+        TextChunker chunker = new TextChunker(30);
+        List<String> chunks = chunker.split(text);
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(chunker.estimateTokens(chunk) <= 30);
+            assertTrue(chunk.endsWith("."));
+        }
+    }
+
+    @Test
+    public void shouldSplitHugeSentence() {
+
+        String text = StringUtils.repeat("abc ", 1000);
+
+        TextChunker chunker = new TextChunker(50);
+        List<String> chunks = chunker.split(text);
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(chunker.estimateTokens(chunk) <= 50);
+        }
+    }
+
+    @Test
+    public void shouldEstimateEachPartOnce() {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("Short paragraph ").append(i).append(".\n\n");
+        }
+        String text = sb.toString();
+
+        AtomicLong scanned = new AtomicLong();
+        TokenEstimator counting = part -> {
+            scanned.addAndGet(part.length());
+            return TokenEstimators.CLAUDE.estimate(part);
+        };
+        TextChunker chunker = new TextChunker(2000, counting);
+        List<String> chunks = chunker.split(text);
+        assertTrue(chunks.size() > 1);
+        // Each paragraph and separator is estimated once, not the whole chunk at each append
+        assertTrue(scanned.get() < 2L * text.length());
+        for (String chunk : chunks) {
+            assertTrue(TokenEstimators.CLAUDE.estimate(chunk) <= 2000);
+        }
+    }
+
+    @Test
+    public void shouldStreamSameChunks() {
+
+        // Bigger than the read buffer, paragraphs of different sizes
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append(StringUtils.repeat("word" + i + " ", i % 37 + 1).trim()).append(".\n \n");
+        }
+        String text = sb.toString();
+
+        TextChunker chunker = new TextChunker(500);
+        List<String> streamed = new ArrayList<>();
+        Iterator<String> chunks = chunker.chunks(new StringReader(text));
+        while (chunks.hasNext()) {
+            streamed.add(chunks.next());
+        }
+        assertTrue(streamed.size() > 1);
+        assertEquals(chunker.split(text), streamed);
+
+        assertFalse(chunker.chunks(new StringReader("")).hasNext());
+    }
+
+    @Test
+    public void shouldFilterNulChars() throws IOException {
+
+        try (Reader reader = new NulFilterReader(new StringReader("a\0b\0\0c"))) {
+            assertEquals("a b  c", IOUtils.toString(reader));
+        }
+    }
+}
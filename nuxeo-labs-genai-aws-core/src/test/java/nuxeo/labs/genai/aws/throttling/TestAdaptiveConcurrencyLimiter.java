@@ -0,0 +1,63 @@
+package nuxeo.labs.genai.aws.throttling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import nuxeo.labs.genai.aws.throttling.AdaptiveConcurrencyLimiter.Outcome;
+
+public class TestAdaptiveConcurrencyLimiter {
+
+    @Test
+    public void shouldQueueAboveLimit() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.5, 0);
+        assertTrue(limiter.acquire().isDone());
+        assertTrue(limiter.acquire().isDone());
+        CompletableFuture<Void> third = limiter.acquire();
+        assertFalse(third.isDone());
+        assertEquals(1, limiter.getWaiting());
+
+        limiter.release(Outcome.IGNORED, 0);
+        assertTrue(third.isDone());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    @Test
+    public void shouldIncreaseThenDecreaseLimit() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10, 0.5, 0);
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire();
+        }
+        limiter.release(Outcome.SUCCESS, 1000);
+        assertEquals(5, limiter.getLimit());
+
+        limiter.release(Outcome.THROTTLED, 1000);
+        assertEquals(2, limiter.getLimit());
+
+        // Never less than minLimit
+        limiter.release(Outcome.THROTTLED, 1000);
+        limiter.release(Outcome.THROTTLED, 1000);
+        assertEquals(1, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void shouldDecreaseLimitOnHighLatency() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 10, 0.5, 2);
+        limiter.acquire();
+        limiter.acquire();
+        limiter.release(Outcome.SUCCESS, 1000);
+        assertEquals(10, limiter.getLimit());
+        limiter.release(Outcome.SUCCESS, 10_000);
+        assertEquals(9, limiter.getLimit());
+    }
+
+}
@@ -0,0 +1,159 @@
+package nuxeo.labs.genai.aws.throttling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import nuxeo.labs.genai.aws.throttling.CircuitBreaker.State;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.bedrockruntime.model.InternalServerException;
+import software.amazon.awssdk.services.bedrockruntime.model.ThrottlingException;
+import software.amazon.awssdk.services.bedrockruntime.model.ValidationException;
+
+public class TestCircuitBreaker {
+
+    protected final AtomicLong now = new AtomicLong();
+
+    protected CircuitBreaker newCircuitBreaker(int failureThreshold) {
+        return new CircuitBreaker("test", failureThreshold, 1000, now::get);
+    }
+
+    protected static RuntimeException serverError() {
+        return InternalServerException.builder().message("Internal error").statusCode(500).build();
+    }
+
+    @Test
+    public void shouldOpenAfterConsecutiveFailures() {
+
+        CircuitBreaker breaker = newCircuitBreaker(3);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        // A success resets the count
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess();
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void shouldCloseAfterSuccessfulTrial() {
+
+        CircuitBreaker breaker = newCircuitBreaker(1);
+        breaker.tryAcquire();
+        breaker.onFailure();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertFalse(breaker.tryAcquire());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(breaker.tryAcquire());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        // Only one trial call at a time
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess();
+        assertEquals(State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void shouldReopenAfterFailedTrial() {
+
+        CircuitBreaker breaker = newCircuitBreaker(1);
+        breaker.tryAcquire();
+        breaker.onFailure();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(breaker.tryAcquire());
+
+        // An ignored trial lets another caller try
+        breaker.onIgnored();
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void shouldDetectRegionFailures() {
+
+        assertTrue(CircuitBreaker.isRegionFailure(serverError()));
+        assertTrue(CircuitBreaker.isRegionFailure(SdkClientException.create("Connection timed out")));
+        assertTrue(CircuitBreaker.isRegionFailure(new CompletionException(serverError())));
+        assertFalse(CircuitBreaker.isRegionFailure(
+                ThrottlingException.builder().message("Too many requests").statusCode(429).build()));
+        assertFalse(CircuitBreaker.isRegionFailure(
+                ValidationException.builder().message("Bad request").statusCode(400).build()));
+    }
+
+    @Test
+    public void shouldFailFastWhenOpen() {
+
+        BackoffPolicy backoff = new BackoffPolicy(0, Duration.ofMillis(1), Duration.ofMillis(5));
+        ThrottledInvoker invoker = new ThrottledInvoker("test", null, backoff, newCircuitBreaker(2));
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            try {
+                invoker.call(() -> {
+                    calls.incrementAndGet();
+                    throw serverError();
+                });
+                fail();
+            } catch (InternalServerException e) {
+                // ok
+            }
+        }
+        assertEquals(State.OPEN, invoker.getCircuitBreaker().getState());
+
+        try {
+            invoker.call(() -> calls.incrementAndGet());
+            fail();
+        } catch (CircuitOpenException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        try {
+            invoker.callAsync(() -> {
+                calls.incrementAndGet();
+                return null;
+            }).join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof CircuitOpenException);
+        }
+        assertEquals(2, calls.get());
+
+        // Errors of the request do not open the circuit
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        try {
+            invoker.call(() -> {
+                throw ValidationException.builder().message("Bad request").statusCode(400).build();
+            });
+            fail();
+        } catch (ValidationException e) {
+            // ok
+        }
+        assertEquals(State.HALF_OPEN, invoker.getCircuitBreaker().getState());
+        assertEquals("ok", invoker.call(() -> "ok"));
+        assertEquals(State.CLOSED, invoker.getCircuitBreaker().getState());
+    }
+
+}
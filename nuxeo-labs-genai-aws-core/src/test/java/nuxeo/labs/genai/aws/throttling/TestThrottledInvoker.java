@@ -0,0 +1,127 @@
+package nuxeo.labs.genai.aws.throttling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import software.amazon.awssdk.services.bedrockruntime.model.ThrottlingException;
+import software.amazon.awssdk.services.bedrockruntime.model.ValidationException;
+
+public class TestThrottledInvoker {
+
+    protected ThrottledInvoker newInvoker(int maxRetries) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10, 0.5, 0);
+        BackoffPolicy backoff = new BackoffPolicy(maxRetries, Duration.ofMillis(1), Duration.ofMillis(5));
+        return new ThrottledInvoker("test", limiter, backoff);
+    }
+
+    protected static RuntimeException throttling() {
+        return ThrottlingException.builder().message("Too many requests").statusCode(429).build();
+    }
+
+    @Test
+    public void shouldRetryWhenThrottled() {
+
+        ThrottledInvoker invoker = newInvoker(3);
+        AtomicInteger calls = new AtomicInteger();
+        String result = invoker.call(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw throttling();
+            }
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+        // 4 => *0.5 => 2 => *0.5 => 1 => +1/limit => 2
+        assertTrue(invoker.getLimiter().getLimit() <= 2);
+        assertEquals(0, invoker.getLimiter().getInFlight());
+    }
+
+    @Test
+    public void shouldNotRetryOtherErrors() {
+
+        ThrottledInvoker invoker = newInvoker(3);
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            invoker.call(() -> {
+                calls.incrementAndGet();
+                throw ValidationException.builder().message("Bad request").statusCode(400).build();
+            });
+            fail();
+        } catch (ValidationException e) {
+            // ok
+        }
+        assertEquals(1, calls.get());
+        assertEquals(4, invoker.getLimiter().getLimit());
+    }
+
+    @Test
+    public void shouldRetryAsyncUntilMaxRetries() {
+
+        ThrottledInvoker invoker = newInvoker(2);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> result = invoker.callAsync(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.failedFuture(throttling());
+        });
+        try {
+            result.join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof ThrottlingException);
+        }
+        assertEquals(3, calls.get());
+        assertEquals(0, invoker.getLimiter().getInFlight());
+    }
+
+    @Test
+    public void shouldNotStartWaitingCallOnReleasingThread() throws InterruptedException {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 0);
+        BackoffPolicy backoff = new BackoffPolicy(0, Duration.ofMillis(1), Duration.ofMillis(5));
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "invoker"));
+        try {
+            ThrottledInvoker invoker = new ThrottledInvoker("test", limiter, backoff, null, executor);
+            CompletableFuture<String> response = new CompletableFuture<>();
+            CompletableFuture<String> first = invoker.callAsync(() -> response);
+            AtomicReference<String> startedOn = new AtomicReference<>();
+            CompletableFuture<String> second = invoker.callAsync(() -> {
+                startedOn.set(Thread.currentThread().getName());
+                return CompletableFuture.completedFuture("second");
+            });
+            assertEquals(1, limiter.getInFlight());
+
+            // Like the I/O thread of the SDK completing the first response
+            Thread io = new Thread(() -> response.complete("first"), "io");
+            io.start();
+            io.join();
+
+            assertEquals("first", first.join());
+            assertEquals("second", second.join());
+            assertEquals("invoker", startedOn.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldGetJitteredDelay() {
+
+        BackoffPolicy backoff = new BackoffPolicy(10, Duration.ofMillis(100), Duration.ofSeconds(1));
+        for (int attempt = 0; attempt < 40; attempt++) {
+            long delay = backoff.getDelay(attempt).toMillis();
+            assertTrue(delay >= 0 && delay <= Math.min(1000, 100L << Math.min(attempt, 20)));
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package nuxeo.labs.genai.aws.tokens;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+
+public class TestTokenEstimators {
+
+    @Test
+    public void shouldGetEstimatorForModel() {
+
+        assertSame(TokenEstimators.CLAUDE, TokenEstimators.forModel(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_V2));
+        assertSame(TokenEstimators.TITAN, TokenEstimators.forModel(InvokeBedrock.MODEL_TITAN_TEXT_EXPRESS_V1));
+        assertSame(TokenEstimators.CHARS, TokenEstimators.forModel("some.other-model"));
+
+        assertEquals(100_000, TokenEstimators.getContextWindow(InvokeBedrock.MODEL_ANTHROPIC_CLAUDE_INSTANT_V1));
+        assertEquals(8_000, TokenEstimators.getContextWindow(InvokeBedrock.MODEL_TITAN_TEXT_EXPRESS_V1));
+        assertEquals(TokenEstimators.UNKNOWN_CONTEXT_WINDOW, TokenEstimators.getContextWindow("some.other-model"));
+    }
+
+    @Test
+    public void shouldEstimate() {
+
+        TokenEstimator estimator = new HeuristicTokenEstimator(4.0);
+        assertEquals(0, estimator.estimate(""));
+        // 2 words of 1 token, 2 punctuation signs
+        assertEquals(4, estimator.estimate("word, word."));
+        // Several line breaks => 1 token
+        assertEquals(3, estimator.estimate("word\n\n\nword"));
+        // 1 token per ideograph
+        assertEquals(3, estimator.estimate("日本語"));
+
+        // Same order of magnitude as the usual 4 chars per token for English
+        String text = StringUtils.repeat("The quick brown fox jumps over the lazy dog. ", 100);
+        int estimate = TokenEstimators.CLAUDE.estimate(text);
+        int chars = TokenEstimators.CHARS.estimate(text);
+        assertTrue(estimate > chars / 2 && estimate < chars * 2);
+    }
+
+    @Test
+    public void shouldGetPrefixLength() {
+
+        String text = StringUtils.repeat("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ", 50);
+        for (TokenEstimator estimator : new TokenEstimator[] { TokenEstimators.CLAUDE, TokenEstimators.CHARS,
+                TokenEstimators.CLAUDE::estimate }) {
+            int max = estimator.estimate(text) / 3;
+            int length = estimator.prefixLength(text, max);
+            assertTrue(length > 0 && length < text.length());
+            assertTrue(estimator.estimate(text.substring(0, length)) <= max);
+            assertTrue(estimator.estimate(text.substring(0, length + 1)) > max);
+
+            assertEquals(text.length(), estimator.prefixLength(text, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void shouldNotCutSurrogatePairs() {
+
+        // Emojis are surrogate pairs: the prefix must not end between the 2 chars
+        String text = StringUtils.repeat("word \uD83D\uDE00\uD83D\uDE00 ", 20);
+        for (TokenEstimator estimator : new TokenEstimator[] { TokenEstimators.CLAUDE, TokenEstimators.CHARS,
+                TokenEstimators.CLAUDE::estimate }) {
+            for (int max = 0; max <= estimator.estimate(text); max++) {
+                int length = estimator.prefixLength(text, max);
+                assertFalse(length > 0 && Character.isHighSurrogate(text.charAt(length - 1)));
+            }
+        }
+        assertEquals(2, TokenEstimator.toCodePointBoundary("ab\uD83D\uDE00", 3));
+        assertEquals(4, TokenEstimator.toCodePointBoundary("ab\uD83D\uDE00", 4));
+    }
+
+}
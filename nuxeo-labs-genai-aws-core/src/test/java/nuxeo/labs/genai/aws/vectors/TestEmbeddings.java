@@ -0,0 +1,121 @@
+package nuxeo.labs.genai.aws.vectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.test.AutomationFeature;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.labs.genai.aws.InvokeBedrock;
+import nuxeo.labs.genai.aws.models.TitanEmbeddings;
+import nuxeo.labs.genai.aws.operations.BedrockFindSimilarOp;
+import nuxeo.labs.genai.aws.standin.BedrockStandInFeature;
+import software.amazon.awssdk.core.SdkBytes;
+
+/*
+ * Computes the embeddings with the local stand-in (bag of words vectors): no AWS credentials needed
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ AutomationFeature.class, BedrockStandInFeature.class })
+@RepositoryConfig(init = DefaultRepositoryInit.class, cleanup = Granularity.METHOD)
+public class TestEmbeddings {
+
+    @Inject
+    protected BedrockStandInFeature standIn;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected AutomationService automationService;
+
+    @Inject
+    protected VectorIndexService vectorIndexService;
+
+    protected InvokeBedrock newInvokeBedrock() {
+        return standIn.newInvokeBedrock(InvokeBedrock.MODEL_TITAN_EMBED_TEXT_V2);
+    }
+
+    @Test
+    public void shouldBuildRequestAndReadEmbedding() {
+
+        JSONObject request = new JSONObject(
+                TitanEmbeddings.getRequestBody("Some \"text\"", 256, Boolean.TRUE).asUtf8String());
+        assertEquals("Some \"text\"", request.getString("inputText"));
+        assertEquals(256, request.getInt("dimensions"));
+        assertTrue(request.getBoolean("normalize"));
+
+        float[] vector = TitanEmbeddings.readEmbedding(
+                SdkBytes.fromUtf8String("{\"embedding\":[0.5,-0.25,1e-3],\"inputTextTokenCount\":3}"));
+        assertEquals(3, vector.length);
+        assertEquals(-0.25F, vector[1], 0F);
+    }
+
+    @Test
+    public void shouldEmbedAndFindSimilarDocuments() throws Exception {
+
+        InvokeBedrock ibr = newInvokeBedrock();
+        float[] vector = ibr.embed("The quick brown fox");
+        assertEquals(1024, vector.length);
+        ibr.setEmbeddingDimensions(256);
+        assertEquals(256, ibr.embed("The quick brown fox").length);
+        ibr.setEmbeddingDimensions(null);
+
+        String[] texts = { "The quick brown fox jumps over the lazy dog", "A quick brown fox jumps over a dog",
+                "Nuxeo stores documents and their metadata", "Bedrock runs foundation models on AWS" };
+        VectorIndex index = vectorIndexService.getIndex(VectorIndexService.DEFAULT_INDEX);
+        DocumentModel[] docs = new DocumentModel[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            doc.setPropertyValue("dc:title", "Doc " + i);
+            docs[i] = session.createDocument(doc);
+            index.add(docs[i].getId(), ibr.embed(texts[i]));
+        }
+        session.save();
+
+        // The input document is in the index: its vector is used, no call to the model
+        OperationContext ctx = new OperationContext(session);
+        ctx.setInput(docs[0]);
+        Map<String, Object> params = new HashMap<>();
+        params.put("k", 2);
+        DocumentModelList similar = (DocumentModelList) automationService.run(ctx, BedrockFindSimilarOp.ID, params);
+        assertEquals(2, similar.size());
+        assertEquals(docs[1].getId(), similar.get(0).getId());
+
+        params.put("minScore", 0.5);
+        similar = (DocumentModelList) automationService.run(ctx, BedrockFindSimilarOp.ID, params);
+        assertEquals(1, similar.size());
+
+        // Deleted documents are skipped
+        session.removeDocument(docs[1].getRef());
+        session.save();
+        params.remove("minScore");
+        similar = (DocumentModelList) automationService.run(ctx, BedrockFindSimilarOp.ID, params);
+        for (DocumentModel doc : similar) {
+            assertTrue(!doc.getId().equals(docs[1].getId()) && !doc.getId().equals(docs[0].getId()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownIndex() {
+        vectorIndexService.getIndex("unknown");
+    }
+
+}
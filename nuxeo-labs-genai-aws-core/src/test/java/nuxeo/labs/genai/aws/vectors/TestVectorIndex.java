@@ -0,0 +1,199 @@
+package nuxeo.labs.genai.aws.vectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestVectorIndex {
+
+    protected static final int DIMENSIONS = 32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected static float[] randomVector(Random random) {
+
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    protected static float cosine(float[] a, float[] b) {
+
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return (float) (dot / Math.sqrt(normA * normB));
+    }
+
+    @Test
+    public void shouldFindNearestNeighbors() throws Exception {
+
+        Random random = new Random(1);
+        List<float[]> vectors = new ArrayList<>();
+        try (VectorIndex index = new VectorIndex(folder.newFolder().toPath(), DIMENSIONS, 16, 100, 64, 0)) {
+            for (int i = 0; i < 2000; i++) {
+                float[] vector = randomVector(random);
+                vectors.add(vector);
+                index.add("v" + i, vector);
+            }
+            assertEquals(2000, index.size());
+
+            // Recall@10 against a brute force search
+            int k = 10;
+            int found = 0;
+            for (int q = 0; q < 50; q++) {
+                float[] query = randomVector(random);
+                List<Integer> ordinals = new ArrayList<>();
+                for (int i = 0; i < vectors.size(); i++) {
+                    ordinals.add(i);
+                }
+                ordinals.sort(Comparator.comparingDouble(i -> -cosine(vectors.get(i), query)));
+                Set<String> expected = new HashSet<>();
+                for (int i = 0; i < k; i++) {
+                    expected.add("v" + ordinals.get(i));
+                }
+
+                List<SearchResult> results = index.search(query, k);
+                assertEquals(k, results.size());
+                assertEquals(cosine(vectors.get(ordinals.get(0)), query), results.get(0).getScore(), 1e-4);
+                for (SearchResult result : results) {
+                    if (expected.contains(result.getId())) {
+                        found++;
+                    }
+                }
+            }
+            assertTrue("Recall too low: " + found, found >= 50 * k * 9 / 10);
+        }
+    }
+
+    @Test
+    public void shouldReplaceAndRemove() throws Exception {
+
+        Random random = new Random(2);
+        try (VectorIndex index = new VectorIndex(folder.newFolder().toPath(), DIMENSIONS, 8, 50, 32, 0)) {
+            for (int i = 0; i < 100; i++) {
+                index.add("v" + i, randomVector(random));
+            }
+            float[] vector = randomVector(random);
+            index.add("v0", vector);
+            assertEquals(100, index.size());
+            List<SearchResult> results = index.search(vector, 1);
+            assertEquals("v0", results.get(0).getId());
+            assertEquals(1F, results.get(0).getScore(), 1e-5);
+
+            assertTrue(index.remove("v0"));
+            assertFalse(index.remove("v0"));
+            assertFalse(index.contains("v0"));
+            assertNull(index.getVector("v0"));
+            for (SearchResult result : index.search(vector, 20)) {
+                assertFalse(result.getId().equals("v0"));
+            }
+        }
+    }
+
+    @Test
+    public void shouldPersist() throws Exception {
+
+        Path directory = folder.newFolder().toPath();
+        Random random = new Random(3);
+        float[] query = randomVector(random);
+        List<SearchResult> expected;
+        float[] vector;
+        try (VectorIndex index = new VectorIndex(directory, DIMENSIONS, 8, 50, 32, 0)) {
+            for (int i = 0; i < 500; i++) {
+                index.add("v" + i, randomVector(random));
+            }
+            index.remove("v1");
+            expected = index.search(query, 5);
+            vector = index.getVector("v42");
+        }
+
+        try (VectorIndex index = new VectorIndex(directory, DIMENSIONS, 8, 50, 32, 0)) {
+            assertEquals(499, index.size());
+            assertFalse(index.contains("v1"));
+            assertArrayEquals(vector, index.getVector("v42"), 0F);
+            assertEquals(expected.toString(), index.search(query, 5).toString());
+        }
+    }
+
+    @Test
+    public void shouldCompactWhenSaved() throws Exception {
+
+        Path directory = folder.newFolder().toPath();
+        Random random = new Random(4);
+        float[] kept;
+        try (VectorIndex index = new VectorIndex(directory, DIMENSIONS, 8, 50, 32, 0, 0.2)) {
+            for (int i = 0; i < 200; i++) {
+                index.add("v" + i, randomVector(random));
+            }
+            for (int i = 0; i < 200; i += 2) {
+                index.remove("v" + i);
+            }
+            kept = index.getVector("v1");
+            assertEquals(100, index.getDeletedCount());
+
+            index.save();
+            assertEquals(0, index.getDeletedCount());
+            assertEquals(100, index.size());
+            assertFalse(index.contains("v0"));
+            assertArrayEquals(kept, index.getVector("v1"), 0F);
+            assertEquals("v1", index.search(kept, 1).get(0).getId());
+        }
+
+        try (VectorIndex index = new VectorIndex(directory, DIMENSIONS, 8, 50, 32, 0, 0.2)) {
+            assertEquals(100, index.size());
+            assertEquals(0, index.getDeletedCount());
+            assertArrayEquals(kept, index.getVector("v1"), 0F);
+            assertEquals("v1", index.search(kept, 1).get(0).getId());
+        }
+    }
+
+    @Test
+    public void shouldFindEnoughResultsWithManyDeleted() throws Exception {
+
+        Random random = new Random(5);
+        // Never compacted
+        try (VectorIndex index = new VectorIndex(folder.newFolder().toPath(), DIMENSIONS, 8, 50, 8, 0, 0)) {
+            for (int i = 0; i < 500; i++) {
+                index.add("v" + i, randomVector(random));
+            }
+            for (int i = 0; i < 500; i++) {
+                if (i % 10 != 0) {
+                    index.remove("v" + i);
+                }
+            }
+            index.save();
+            assertEquals(450, index.getDeletedCount());
+            assertEquals(10, index.search(randomVector(random), 10).size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectOtherDimensions() throws Exception {
+
+        try (VectorIndex index = new VectorIndex(folder.newFolder().toPath(), DIMENSIONS, 8, 50, 32, 0)) {
+            index.add("v", new float[DIMENSIONS + 1]);
+        }
+    }
+
+}